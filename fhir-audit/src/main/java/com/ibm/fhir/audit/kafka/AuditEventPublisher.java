@@ -0,0 +1,289 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.audit.kafka;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+
+/**
+ * Publishes audit events to a Kafka topic without blocking the calling thread.
+ * <p>
+ * Events are placed on a bounded in-memory queue and handed to the (batching) Kafka producer by a dedicated sender
+ * thread; delivery is confirmed through the producer callback. Events that cannot be queued, sent, or acknowledged
+ * are appended to a local spill file, one event per line. While the broker is failing, new events go straight to the
+ * spill file; once the retry interval has passed, the spill file is replayed (in order) before any newly queued events
+ * are sent. A spill file left behind by a previous run is replayed at startup.
+ */
+public class AuditEventPublisher {
+    private static final Logger logger = java.util.logging.Logger.getLogger(AuditEventPublisher.class.getName());
+    private static final String CLASSNAME = AuditEventPublisher.class.getName();
+
+    private static final long POLL_TIMEOUT_MS = 500;
+
+    private final Producer<String, String> producer;
+    private final String topic;
+    private final BlockingQueue<String> queue;
+    private final long retryIntervalMillis;
+
+    // Spill file handling; guarded by spillLock
+    private final Object spillLock = new Object();
+    private final File spillFile;
+    private final File replayFile;
+    private BufferedWriter spillWriter;
+
+    // The time of the last failed send, or 0 if the last send attempt succeeded
+    private volatile long lastFailure = 0;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+
+    private final Thread sender;
+    private volatile boolean running = true;
+
+    /**
+     * @param producer
+     *            the producer used to send events; this publisher takes ownership and closes it on shutdown
+     * @param topic
+     *            the topic to which events are published
+     * @param queueCapacity
+     *            the maximum number of events held in memory before events are spilled
+     * @param spillDirectory
+     *            the directory that holds the spill file
+     * @param retryIntervalMillis
+     *            how long to wait after a failed send before trying the broker again
+     */
+    public AuditEventPublisher(Producer<String, String> producer, String topic, int queueCapacity, File spillDirectory,
+            long retryIntervalMillis) {
+        this.producer = producer;
+        this.topic = topic;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.retryIntervalMillis = retryIntervalMillis;
+
+        String baseName = topic.replaceAll("[^A-Za-z0-9._-]", "_");
+        this.spillFile = new File(spillDirectory, baseName + ".spill");
+        this.replayFile = new File(spillDirectory, baseName + ".replay");
+
+        this.sender = new Thread(this::run, "fhir-audit-publisher-" + topic);
+        this.sender.setDaemon(true);
+        this.sender.start();
+    }
+
+    /**
+     * Hands the event to the publisher; this method never waits for the broker.
+     *
+     * @param event
+     *            the serialized audit event
+     */
+    public void publish(String event) {
+        if (!running || isFailing() || !queue.offer(event)) {
+            spill(event);
+        }
+    }
+
+    /**
+     * Sends the queued events, waits up to the specified time for them to be acknowledged, and closes the producer.
+     * Events that are still queued or unacknowledged at that point remain in the spill file for the next run.
+     */
+    public void shutdown(long timeoutMillis) {
+        final String METHODNAME = "shutdown";
+        logger.entering(CLASSNAME, METHODNAME);
+
+        running = false;
+        try {
+            sender.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (sender.isAlive()) {
+            sender.interrupt();
+        }
+        try {
+            producer.close(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Error closing audit Kafka producer", e);
+        }
+        String event;
+        while ((event = queue.poll()) != null) {
+            spill(event);
+        }
+        synchronized (spillLock) {
+            closeSpillWriter();
+        }
+
+        logger.exiting(CLASSNAME, METHODNAME);
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of events acknowledged by the broker
+     */
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    /**
+     * @return the number of events written to the spill file
+     */
+    public long getSpilledCount() {
+        return spilled.get();
+    }
+
+    /**
+     * @return the number of events that could neither be sent nor spilled
+     */
+    public long getLostCount() {
+        return lost.get();
+    }
+
+    private boolean isFailing() {
+        long failure = lastFailure;
+        return failure != 0 && System.currentTimeMillis() - failure < retryIntervalMillis;
+    }
+
+    private void run() {
+        replaySpill();
+        while (running || !queue.isEmpty()) {
+            try {
+                String event = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (!isFailing() && (spillFile.exists() || replayFile.exists())) {
+                    replaySpill();
+                }
+                if (event != null) {
+                    if (isFailing()) {
+                        spill(event);
+                    } else {
+                        send(event);
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable t) {
+                logger.log(Level.SEVERE, "Unexpected error in audit event publisher for topic '" + topic + "'", t);
+            }
+        }
+    }
+
+    /**
+     * Sends the event asynchronously; the event is spilled if the send fails or is not acknowledged.
+     */
+    private void send(String event) {
+        try {
+            producer.send(new ProducerRecord<>(topic, event), (metadata, exception) -> {
+                if (exception == null) {
+                    sent.incrementAndGet();
+                    lastFailure = 0;
+                } else {
+                    onFailure(event, exception);
+                }
+            });
+        } catch (Exception e) {
+            onFailure(event, e);
+        }
+    }
+
+    private void onFailure(String event, Exception e) {
+        if (!isFailing()) {
+            logger.log(Level.WARNING, "Unable to publish audit event to topic '" + topic + "'; spilling events to '"
+                    + spillFile + "' for the next " + retryIntervalMillis + "ms", e);
+        }
+        lastFailure = System.currentTimeMillis();
+        spill(event);
+    }
+
+    /**
+     * Appends the event to the spill file.
+     */
+    private void spill(String event) {
+        synchronized (spillLock) {
+            try {
+                if (spillWriter == null) {
+                    spillFile.getParentFile().mkdirs();
+                    spillWriter = Files.newBufferedWriter(spillFile.toPath(), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                // Events are JSON, so a line break can only appear as whitespace between tokens.
+                spillWriter.write(event.replace('\r', ' ').replace('\n', ' '));
+                spillWriter.newLine();
+                spillWriter.flush();
+                spilled.incrementAndGet();
+            } catch (IOException e) {
+                lost.incrementAndGet();
+                logger.log(Level.SEVERE, "Unable to spill audit event to '" + spillFile + "': " + event, e);
+            }
+        }
+    }
+
+    /**
+     * Moves the spill file aside so that new failures start a new one, and re-sends its contents.
+     */
+    private void replaySpill() {
+        try {
+            synchronized (spillLock) {
+                closeSpillWriter();
+                if (!replayFile.exists()) {
+                    if (!spillFile.exists()) {
+                        return;
+                    }
+                    Files.move(spillFile.toPath(), replayFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+
+            long count = 0;
+            try (BufferedReader reader = Files.newBufferedReader(replayFile.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        // A failed send re-spills the event, so the remainder of the file is re-spilled too
+                        if (isFailing()) {
+                            spill(line);
+                        } else {
+                            send(line);
+                        }
+                        count++;
+                    }
+                }
+            }
+            Files.delete(replayFile.toPath());
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Replayed " + count + " spilled audit events for topic '" + topic + "'");
+            }
+        } catch (IOException e) {
+            lastFailure = System.currentTimeMillis();
+            logger.log(Level.SEVERE, "Unable to replay spilled audit events from '" + replayFile + "'", e);
+        }
+    }
+
+    private void closeSpillWriter() {
+        if (spillWriter != null) {
+            try {
+                spillWriter.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Error closing spill file '" + spillFile + "'", e);
+            }
+            spillWriter = null;
+        }
+    }
+}
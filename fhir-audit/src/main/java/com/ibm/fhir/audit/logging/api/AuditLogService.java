@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016,2019
+ * (C) Copyright IBM Corp. 2016,2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -39,4 +39,11 @@ public interface AuditLogService {
      * 
      */
     void initialize(PropertyGroup auditLogProperties) throws Exception;
+
+    /**
+     * Releases any resources held by the audit log service, publishing any pending audit log entries first.
+     */
+    default void stop() {
+        // nothing to release by default
+    }
 }
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016,2019
+ * (C) Copyright IBM Corp. 2016,2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -109,10 +109,25 @@ public class AuditLogServiceFactory {
         final String METHODNAME = "resetService";
         log.entering(CLASSNAME, METHODNAME);
         
-        serviceInstance = null;
+        shutdown();
         AuditLogService newService = getService();
         log.exiting(CLASSNAME, METHODNAME);
         return newService;
     }
 
+    /**
+     * Stops the cached audit log service object, if any, so that pending audit log entries are published.
+     */
+    public static synchronized void shutdown() {
+        final String METHODNAME = "shutdown";
+        log.entering(CLASSNAME, METHODNAME);
+
+        AuditLogService service = serviceInstance;
+        serviceInstance = null;
+        if (service != null) {
+            service.stop();
+        }
+        log.exiting(CLASSNAME, METHODNAME);
+    }
+
 }
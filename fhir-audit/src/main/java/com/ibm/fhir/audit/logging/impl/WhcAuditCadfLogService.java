@@ -6,6 +6,7 @@
 
 package com.ibm.fhir.audit.logging.impl;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
@@ -16,7 +17,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.kafka.clients.producer.KafkaProducer;
-import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.ProducerConfig;
 
 import com.ibm.fhir.audit.cadf.model.CadfAttachment;
 import com.ibm.fhir.audit.cadf.model.CadfCredential;
@@ -28,6 +29,7 @@ import com.ibm.fhir.audit.cadf.model.enums.Action;
 import com.ibm.fhir.audit.cadf.model.enums.EventType;
 import com.ibm.fhir.audit.cadf.model.enums.Outcome;
 import com.ibm.fhir.audit.cadf.model.enums.ResourceType;
+import com.ibm.fhir.audit.kafka.AuditEventPublisher;
 import com.ibm.fhir.audit.kafka.Environment;
 import com.ibm.fhir.audit.kafka.EventStreamsCredentials;
 import com.ibm.fhir.audit.logging.api.AuditLogEventType;
@@ -50,6 +52,12 @@ public class WhcAuditCadfLogService implements AuditLogService {
     private static final String PROPERTY_AUDIT_GEO_CITY = "geoCity";
     private static final String PROPERTY_AUDIT_GEO_STATE = "geoState";
     private static final String PROPERTY_AUDIT_GEO_COUNTRY = "geoCounty";
+    private static final String PROPERTY_AUDIT_QUEUE_CAPACITY = "queueCapacity";
+    private static final String PROPERTY_AUDIT_SPILL_DIRECTORY = "spillDirectory";
+    private static final String PROPERTY_AUDIT_RETRY_INTERVAL = "retryIntervalMs";
+    private static final String PROPERTY_AUDIT_KAFKA_LINGER = "lingerMs";
+    private static final String PROPERTY_AUDIT_KAFKA_BATCH_SIZE = "batchSize";
+    private static final String PROPERTY_AUDIT_KAFKA_COMPRESSION = "compressionType";
     private static final String HEALTHCHECKOP = "healthcheck";
 
     private static final String KAFKA_USERNAME = "token";
@@ -57,8 +65,14 @@ public class WhcAuditCadfLogService implements AuditLogService {
     private static final String DEFAULT_AUDIT_GEO_CITY = "Dallas";
     private static final String DEFAULT_AUDIT_GEO_STATE = "TX";
     private static final String DEFAULT_AUDIT_GEO_COUNTRY = "US";
-
-    private KafkaProducer<String, String> producer = null;
+    private static final int DEFAULT_AUDIT_QUEUE_CAPACITY = 10000;
+    private static final int DEFAULT_AUDIT_RETRY_INTERVAL = 30000;
+    private static final int DEFAULT_AUDIT_KAFKA_LINGER = 50;
+    private static final int DEFAULT_AUDIT_KAFKA_BATCH_SIZE = 65536;
+    private static final String DEFAULT_AUDIT_KAFKA_COMPRESSION = "gzip";
+    private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+
+    private AuditEventPublisher publisher = null;
     private static String bootstrapServers = null;
     private static String apiKey = null;
     private static String auditTopic = DEFAULT_AUDIT_KAFKA_TOPIC;
@@ -120,12 +134,26 @@ public class WhcAuditCadfLogService implements AuditLogService {
         }
 
         // Now, let's get the audit topic from FHIR config, if not found, then use the default topic
+        int queueCapacity = DEFAULT_AUDIT_QUEUE_CAPACITY;
+        int retryInterval = DEFAULT_AUDIT_RETRY_INTERVAL;
+        int lingerMs = DEFAULT_AUDIT_KAFKA_LINGER;
+        int batchSize = DEFAULT_AUDIT_KAFKA_BATCH_SIZE;
+        String compressionType = DEFAULT_AUDIT_KAFKA_COMPRESSION;
+        String spillDirectory = null;
         if (auditLogProperties != null) {
             auditTopic = auditLogProperties.getStringProperty(PROPERTY_AUDIT_KAFKA_TOPIC, DEFAULT_AUDIT_KAFKA_TOPIC);
             geoCity    = auditLogProperties.getStringProperty(PROPERTY_AUDIT_GEO_CITY, DEFAULT_AUDIT_GEO_CITY);
             geoState   = auditLogProperties.getStringProperty(PROPERTY_AUDIT_GEO_STATE, DEFAULT_AUDIT_GEO_STATE);
             geoCountry = auditLogProperties.getStringProperty(PROPERTY_AUDIT_GEO_COUNTRY, DEFAULT_AUDIT_GEO_COUNTRY);
+            queueCapacity   = auditLogProperties.getIntProperty(PROPERTY_AUDIT_QUEUE_CAPACITY, DEFAULT_AUDIT_QUEUE_CAPACITY);
+            retryInterval   = auditLogProperties.getIntProperty(PROPERTY_AUDIT_RETRY_INTERVAL, DEFAULT_AUDIT_RETRY_INTERVAL);
+            lingerMs        = auditLogProperties.getIntProperty(PROPERTY_AUDIT_KAFKA_LINGER, DEFAULT_AUDIT_KAFKA_LINGER);
+            batchSize       = auditLogProperties.getIntProperty(PROPERTY_AUDIT_KAFKA_BATCH_SIZE, DEFAULT_AUDIT_KAFKA_BATCH_SIZE);
+            compressionType = auditLogProperties.getStringProperty(PROPERTY_AUDIT_KAFKA_COMPRESSION, DEFAULT_AUDIT_KAFKA_COMPRESSION);
+            spillDirectory  = auditLogProperties.getStringProperty(PROPERTY_AUDIT_SPILL_DIRECTORY, null);
         }
+        File spillDir = spillDirectory != null ? new File(spillDirectory)
+                : new File(System.getProperty("java.io.tmpdir"), "fhir-audit-spill");
 
         Properties kafkaProps = new Properties();
         kafkaProps.put("sasl.jaas.config", String.format(
@@ -139,15 +167,15 @@ public class WhcAuditCadfLogService implements AuditLogService {
         kafkaProps.put("ssl.endpoint.identification.algorithm", "HTTPS");
         kafkaProps.put("key.serializer", "org.apache.kafka.common.serialization.StringSerializer");
         kafkaProps.put("value.serializer", "org.apache.kafka.common.serialization.StringSerializer");
+        // Let the producer batch and compress events; delivery is confirmed through the send callback.
+        kafkaProps.put(ProducerConfig.ACKS_CONFIG, "all");
+        kafkaProps.put(ProducerConfig.LINGER_MS_CONFIG, Integer.toString(lingerMs));
+        kafkaProps.put(ProducerConfig.BATCH_SIZE_CONFIG, Integer.toString(batchSize));
+        kafkaProps.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
 
-        this.producer = new KafkaProducer<>(kafkaProps);
-
-        if (this.producer == null) {
-            throw new FHIRException("Failed to init kafka producer!");
-        } else {
-            logger.info("Initialized Audit logger.");
-            this.isEnabled = true;
-        }
+        this.publisher = new AuditEventPublisher(new KafkaProducer<>(kafkaProps), auditTopic, queueCapacity, spillDir, retryInterval);
+        logger.info("Initialized Audit logger.");
+        this.isEnabled = true;
 
         logger.exiting(CLASSNAME, METHODNAME);
     }
@@ -168,9 +196,8 @@ public class WhcAuditCadfLogService implements AuditLogService {
 
         if (eventObject != null) {
             String eventString = CadfEvent.Writer.generate(eventObject);
-            ProducerRecord<String, String> record = new ProducerRecord<>(auditTopic, eventString);
-            // Block till the message is sent to kafka server.
-            this.producer.send(record).get();
+            // Queued for the publisher thread; the request never waits for the kafka server.
+            this.publisher.publish(eventString);
         }
 
         logger.exiting(CLASSNAME, METHODNAME);
@@ -256,14 +283,17 @@ public class WhcAuditCadfLogService implements AuditLogService {
         return event;
     }
 
-    // release kafka resource for producer
+    // publish (or spill) queued events and release kafka resource for producer
+    @Override
     public void stop() {
-        if (this.producer != null) {
+        if (this.publisher != null) {
             try {
-                this.producer.close();
+                this.publisher.shutdown(SHUTDOWN_TIMEOUT_MS);
             } catch (Exception e) {
                 logger.info(e.getMessage());
             }
+            this.publisher = null;
+            this.isEnabled = false;
         }
     }
 }
@@ -0,0 +1,89 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.audit.cadf.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.audit.kafka.AuditEventPublisher;
+
+public class AuditEventPublisherTest {
+
+    @Test
+    public void testPublish() throws Exception {
+        File spillDir = Files.createTempDirectory("audit").toFile();
+        MockProducer<String, String> producer = new MockProducer<>(true, new StringSerializer(), new StringSerializer());
+        AuditEventPublisher publisher = new AuditEventPublisher(producer, "FHIR_AUDIT", 10, spillDir, 60000);
+
+        publisher.publish("{\"id\":1}");
+        publisher.publish("{\"id\":2}");
+        publisher.publish("{\"id\":3}");
+        publisher.shutdown(5000);
+
+        assertEquals(values(producer.history()), Arrays.asList("{\"id\":1}", "{\"id\":2}", "{\"id\":3}"));
+        assertEquals(publisher.getSentCount(), 3);
+        assertEquals(publisher.getSpilledCount(), 0);
+        assertFalse(new File(spillDir, "FHIR_AUDIT.spill").exists());
+    }
+
+    @Test
+    public void testSpillAndReplay() throws Exception {
+        File spillDir = Files.createTempDirectory("audit").toFile();
+        File spillFile = new File(spillDir, "FHIR_AUDIT.spill");
+        MockProducer<String, String> producer = new MockProducer<>(false, new StringSerializer(), new StringSerializer());
+        AuditEventPublisher publisher = new AuditEventPublisher(producer, "FHIR_AUDIT", 10, spillDir, 500);
+
+        // The broker fails to acknowledge the first event
+        publisher.publish("e1");
+        waitForHistory(producer, 1);
+        assertTrue(producer.errorNext(new TimeoutException("broker unavailable")));
+        assertEquals(publisher.getSpilledCount(), 1);
+
+        // While the broker is failing, events go straight to the spill file
+        publisher.publish("e2");
+        assertEquals(publisher.getSpilledCount(), 2);
+        assertEquals(Files.readAllLines(spillFile.toPath()), Arrays.asList("e1", "e2"));
+
+        // After the retry interval, the spilled events are re-sent ahead of new events
+        Thread.sleep(600);
+        publisher.publish("e3");
+        waitForHistory(producer, 4);
+        while (producer.completeNext()) {
+            // acknowledge everything
+        }
+        List<String> history = values(producer.history());
+        assertEquals(history.subList(1, 4), Arrays.asList("e1", "e2", "e3"));
+        assertEquals(publisher.getSentCount(), 3);
+
+        publisher.shutdown(5000);
+        assertFalse(spillFile.exists());
+    }
+
+    private static List<String> values(List<ProducerRecord<String, String>> records) {
+        return records.stream().map(ProducerRecord::value).collect(Collectors.toList());
+    }
+
+    private static void waitForHistory(MockProducer<String, String> producer, int size) throws InterruptedException {
+        for (int i = 0; i < 100 && producer.history().size() < size; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(producer.history().size(), size);
+    }
+}
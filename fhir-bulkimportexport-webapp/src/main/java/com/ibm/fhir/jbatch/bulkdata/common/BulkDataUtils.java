@@ -6,16 +6,24 @@
 
 package com.ibm.fhir.jbatch.bulkdata.common;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.StringReader;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -59,11 +67,9 @@ import com.ibm.cloud.objectstorage.services.s3.model.S3Object;
 import com.ibm.cloud.objectstorage.services.s3.model.S3ObjectInputStream;
 import com.ibm.cloud.objectstorage.services.s3.model.UploadPartRequest;
 import com.ibm.cloud.objectstorage.services.s3.model.UploadPartResult;
+import com.ibm.fhir.core.FHIRMediaType;
 import com.ibm.fhir.exception.FHIROperationException;
 import com.ibm.fhir.jbatch.bulkdata.load.ImportTransientUserData;
-import com.ibm.fhir.model.format.Format;
-import com.ibm.fhir.model.parser.FHIRParser;
-import com.ibm.fhir.model.parser.exception.FHIRParserException;
 import com.ibm.fhir.model.resource.OperationOutcome;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.util.FHIRUtil;
@@ -88,16 +94,34 @@ public class BulkDataUtils {
     }
 
     public static String startPartUpload(AmazonS3 cosClient, String bucketName, String itemName, boolean isPublicAccess) throws Exception {
+        return startPartUpload(cosClient, bucketName, itemName, isPublicAccess, null);
+    }
+
+    /**
+     * @param contentEncoding - the Content-Encoding of the object, e.g, gzip, or null.
+     */
+    public static String startPartUpload(AmazonS3 cosClient, String bucketName, String itemName, boolean isPublicAccess,
+            String contentEncoding) throws Exception {
         try {
             log("startPartUpload", "Start multi-part upload for " + itemName + " to bucket - " + bucketName);
 
             InitiateMultipartUploadRequest initMultipartUploadReq = new InitiateMultipartUploadRequest(bucketName, itemName);
+            ObjectMetadata metadata = null;
             if (isPublicAccess) {
                 initMultipartUploadReq.setCannedACL(CannedAccessControlList.PublicRead);
-                ObjectMetadata metadata = new ObjectMetadata();
+                metadata = new ObjectMetadata();
                 // Set expiration time to 2 hours(7200 seconds).
                 // Note: IBM COS doesn't honor this but also doesn't fail on this.
                 metadata.setExpirationTime(Date.from(Instant.now().plusSeconds(7200)));
+            }
+            if (contentEncoding != null) {
+                if (metadata == null) {
+                    metadata = new ObjectMetadata();
+                }
+                metadata.setContentType(FHIRMediaType.APPLICATION_NDJSON);
+                metadata.setContentEncoding(contentEncoding);
+            }
+            if (metadata != null) {
                 initMultipartUploadReq.setObjectMetadata(metadata);
             }
 
@@ -109,6 +133,14 @@ public class BulkDataUtils {
         }
     }
 
+    /**
+     * @return true if the exported NDJSON files are gzipped; parquet files are compressed by the parquet writer itself.
+     */
+    public static boolean isCompressedExport(String exportCompression, String exportFormat) {
+        return Constants.EXPORT_COMPRESSION_GZIP.equals(exportCompression)
+                && !FHIRMediaType.APPLICATION_PARQUET.equals(exportFormat);
+    }
+
     public static AmazonS3 getCosClient(String cosCredentialIbm, String cosApiKeyProperty, String cosSrvinstId,
             String cosEndpointUrl, String cosLocation, boolean useFhirServerTrustStore) {
         SDKGlobalConfiguration.IAM_ENDPOINT = "https://iam.cloud.ibm.com/oidc/token";
@@ -167,6 +199,94 @@ public class BulkDataUtils {
         }
     }
 
+    /**
+     * Concatenates COS/S3 objects into a new object and deletes them.
+     *
+     * @param cosClient - COS/S3 client.
+     * @param bucketName - COS/S3 bucket name of the objects.
+     * @param itemNames - names of the objects to concatenate, in order.
+     * @param targetItemName - name of the concatenated object.
+     * @param isPublicAccess - if the concatenated object is public.
+     * @throws Exception
+     */
+    public static void mergeObjects(AmazonS3 cosClient, String bucketName, List<String> itemNames, String targetItemName,
+            boolean isPublicAccess) throws Exception {
+        String uploadId = startPartUpload(cosClient, bucketName, targetItemName, isPublicAccess);
+        List<PartETag> dataPacks = new ArrayList<>();
+        ByteArrayOutputStream bufferStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        for (String itemName : itemNames) {
+            try (S3ObjectInputStream inputStream = cosClient.getObject(bucketName, itemName).getObjectContent()) {
+                int read;
+                while ((read = inputStream.read(buffer)) > 0) {
+                    bufferStream.write(buffer, 0, read);
+                    if (bufferStream.size() > Constants.COS_PART_MINIMALSIZE) {
+                        dataPacks.add(multiPartUpload(cosClient, bucketName, targetItemName, uploadId,
+                                new ByteArrayInputStream(bufferStream.toByteArray()), bufferStream.size(), dataPacks.size() + 1));
+                        bufferStream.reset();
+                    }
+                }
+            }
+        }
+        if (bufferStream.size() > 0 || dataPacks.isEmpty()) {
+            dataPacks.add(multiPartUpload(cosClient, bucketName, targetItemName, uploadId,
+                    new ByteArrayInputStream(bufferStream.toByteArray()), bufferStream.size(), dataPacks.size() + 1));
+        }
+        finishMultiPartUpload(cosClient, bucketName, targetItemName, uploadId, dataPacks);
+
+        for (String itemName : itemNames) {
+            cosClient.deleteObject(bucketName, itemName);
+        }
+    }
+
+    /**
+     * Appends data to the .part file of a file upload; the file is cut back to the given size first, so the data which
+     * was written after the last checkpoint of a restarted partition is overwritten.
+     *
+     * @param partFile - the .part file of the upload.
+     * @param file - the final file of the upload, which is moved back to the .part file if the upload was finished
+     *            after the last checkpoint.
+     * @param fileSize - the size of the .part file after the last write.
+     * @param data - the data to append.
+     * @return the size of the .part file after the write.
+     * @throws IOException
+     */
+    public static long appendToFile(Path partFile, Path file, long fileSize, ByteArrayOutputStream data) throws IOException {
+        if (fileSize > 0 && !Files.exists(partFile) && Files.exists(file)) {
+            Files.move(file, partFile, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.createDirectories(partFile.getParent());
+        try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (channel.size() < fileSize) {
+                throw new IOException("File " + partFile + " is shorter than its last checkpoint (" + channel.size()
+                        + " < " + fileSize + " bytes)");
+            }
+            channel.truncate(fileSize);
+            channel.position(fileSize);
+            data.writeTo(Channels.newOutputStream(channel));
+            return channel.position();
+        }
+    }
+
+    /**
+     * Flushes the .part file of a file upload to the disk and renames it to the final file.
+     *
+     * @param partFile - the .part file of the upload.
+     * @param file - the final file of the upload.
+     * @throws IOException
+     */
+    public static void finishFileUpload(Path partFile, Path file) throws IOException {
+        if (!Files.exists(partFile) && Files.exists(file)) {
+            // Finished before the partition was restarted.
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(partFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        log("finishFileUpload", "Upload finished for " + file);
+    }
+
     public static void listBuckets(AmazonS3 cosClient) {
         if (cosClient == null) {
             return;
@@ -179,46 +299,6 @@ public class BulkDataUtils {
         }
     }
 
-    /**
-     * @param resReader - the buffer reader to read FHIR resource from.
-     * @param numOfProcessedLines - number of the already processed lines.
-     * @param fhirResources - List holds the FHIR resources.
-     * @param isSkipProcessed - if need to skip the processed lines before read.
-     * @return - the number of parsing failures.
-     * @throws Exception
-     */
-    private static int getFhirResourceFromBufferReader(BufferedReader resReader, int numOfProcessedLines, List<Resource> fhirResources,
-            boolean isSkipProcessed, String dataSource) throws Exception {
-        int exported = 0;
-        int lineRed = 0;
-        int parseFailures = 0;
-
-        String resLine = null;
-        do {
-            resLine = resReader.readLine();
-            if (resLine != null) {
-                lineRed++;
-                if (isSkipProcessed && lineRed <= numOfProcessedLines) {
-                    continue;
-                }
-                try {
-                    fhirResources.add(FHIRParser.parser(Format.JSON).parse(new StringReader(resLine)));
-                    exported++;
-                    if (exported == Constants.IMPORT_NUMOFFHIRRESOURCES_PERREAD) {
-                        break;
-                    }
-                } catch (FHIRParserException e) {
-                    // Log and skip the invalid FHIR resource.
-                    parseFailures++;
-                    logger.log(Level.INFO, "getFhirResourceFromBufferReader: " + "Failed to parse line "
-                            + (numOfProcessedLines + exported + parseFailures) + " of [" + dataSource + "].", e);
-                    continue;
-                }
-            }
-        } while (resLine != null);
-        return parseFailures;
-    }
-
     public static void cleanupTransientUserData(ImportTransientUserData transientUserData, boolean isAbort) throws Exception {
         if (transientUserData.getInputStream() != null) {
             if (isAbort && transientUserData.getInputStream() instanceof S3ObjectInputStream) {
@@ -229,55 +309,61 @@ public class BulkDataUtils {
             transientUserData.setInputStream(null);
         }
 
-        if (transientUserData.getBufferReader() != null) {
-            transientUserData.getBufferReader().close();
-            transientUserData.setBufferReader(null);
+        if (transientUserData.getLineReader() != null) {
+            transientUserData.getLineReader().close();
+            transientUserData.setLineReader(null);
         }
     }
 
+    /**
+     * @param offset - the byte offset to open the input at.
+     * @param transientUserData - transient user data for the chunk.
+     * @return - true if the offset is at (or past) the end of the input, so there is nothing left to open.
+     */
+    private static boolean isEndOfInput(long offset, ImportTransientUserData transientUserData) {
+        return transientUserData.getImportFileSize() > 0 && offset >= transientUserData.getImportFileSize();
+    }
+
     /**
      * @param cosClient - COS/S3 client.
      * @param bucketName - COS/S3 bucket name to read from.
      * @param itemName - COS/S3 object name to read from.
-     * @param numOfLinesToSkip - number of lines to skip before read.
-     * @param fhirResources - List holds the FHIR resources.
+     * @param offset - the byte offset right after the last line read, where the object is (re)opened if needed.
      * @param transientUserData - transient user data for the chunk.
-     * @return - number of parsing failures.
+     * @return - the next line, or null at the end of the object.
      * @throws Exception
      */
-    public static int readFhirResourceFromObjectStore(AmazonS3 cosClient, String bucketName, String itemName,
-           int numOfLinesToSkip, List<Resource> fhirResources, ImportTransientUserData transientUserData) throws Exception {
-        int parseFailures = 0;
+    public static String readLineFromObjectStore(AmazonS3 cosClient, String bucketName, String itemName,
+           long offset, ImportTransientUserData transientUserData) throws Exception {
         int retryTimes = Constants.IMPORT_RETRY_TIMES;
-        do {
+        while (true) {
             try {
-                if (transientUserData.getBufferReader() == null) {
-                    S3Object item = cosClient.getObject(new GetObjectRequest(bucketName, itemName));
-                    S3ObjectInputStream s3InStream = item.getObjectContent();
+                if (transientUserData.getLineReader() == null) {
+                    if (isEndOfInput(offset, transientUserData)) {
+                        return null;
+                    }
+                    // Only fetch the part of the object after the offset.
+                    GetObjectRequest request = new GetObjectRequest(bucketName, itemName);
+                    if (offset > 0) {
+                        request.setRange(offset);
+                    }
+                    S3ObjectInputStream s3InStream = cosClient.getObject(request).getObjectContent();
                     transientUserData.setInputStream(s3InStream);
-                    BufferedReader resReader = new BufferedReader(new InputStreamReader(s3InStream));
-                    transientUserData.setBufferReader(resReader);
-                    // Skip the already processed lines after opening the input stream for first read.
-                    parseFailures = getFhirResourceFromBufferReader(transientUserData.getBufferReader(), numOfLinesToSkip, fhirResources, true, itemName);
-                } else {
-                    parseFailures = getFhirResourceFromBufferReader(transientUserData.getBufferReader(), numOfLinesToSkip, fhirResources, false, itemName);
+                    transientUserData.setLineReader(new NDJSONLineReader(s3InStream, offset));
                 }
-                break;
+                return transientUserData.getLineReader().readLine();
             } catch (Exception ex) {
-                // Prepare for retry, skip all the processed lines in previous batches and this batch.
-                numOfLinesToSkip = numOfLinesToSkip + fhirResources.size() + parseFailures;
+                // Prepare for retry, the object is reopened right after the last line read.
                 cleanupTransientUserData(transientUserData, true);
-                logger.warning("readFhirResourceFromObjectStore: Error proccesing file [" + itemName + "] - " + ex.getMessage());
+                logger.warning("readLineFromObjectStore: Error proccesing file [" + itemName + "] - " + ex.getMessage());
                 if ((retryTimes--) > 0) {
-                    logger.warning("readFhirResourceFromObjectStore: Retry ...");
+                    logger.warning("readLineFromObjectStore: Retry ...");
                 } else {
                     // Throw exception to fail the job, the job can be continued from the current checkpoint after the problem is solved.
                     throw ex;
                 }
             }
-        } while (retryTimes > 0);
-
-        return parseFailures;
+        }
     }
 
 
@@ -288,35 +374,28 @@ public class BulkDataUtils {
 
     /**
      * @param filePath - file path to the ndjson file.
-     * @param numOfLinesToSkip - number of lines to skip before read.
-     * @param fhirResources - List holds the FHIR resources.
+     * @param offset - the byte offset right after the last line read, where the file is (re)opened if needed.
      * @param transientUserData - transient user data for the chunk.
-     * @return - number of parsing failures.
+     * @return - the next line, or null at the end of the file.
      * @throws Exception
      */
-    public static int readFhirResourceFromLocalFile(String filePath, int numOfLinesToSkip, List<Resource> fhirResources,
-            ImportTransientUserData transientUserData) throws Exception {
-        int parseFailures = 0;
-
+    public static String readLineFromLocalFile(String filePath, long offset, ImportTransientUserData transientUserData) throws Exception {
         try {
-            if (transientUserData.getBufferReader() == null) {
-                BufferedReader resReader = Files.newBufferedReader(Paths.get(filePath));
-                transientUserData.setBufferReader(resReader);
-                // Skip the already processed lines after opening the input stream for first read.
-                parseFailures = getFhirResourceFromBufferReader(transientUserData.getBufferReader(), numOfLinesToSkip, fhirResources, true, filePath);
-            } else {
-                parseFailures = getFhirResourceFromBufferReader(transientUserData.getBufferReader(), numOfLinesToSkip, fhirResources, false, filePath);
+            if (transientUserData.getLineReader() == null) {
+                FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+                channel.position(offset);
+                InputStream inputStream = Channels.newInputStream(channel);
+                transientUserData.setInputStream(inputStream);
+                transientUserData.setLineReader(new NDJSONLineReader(inputStream, offset));
             }
+            return transientUserData.getLineReader().readLine();
         } catch (Exception ex) {
             // Clean up.
-            fhirResources.clear();
             cleanupTransientUserData(transientUserData, true);
             // Log the error and throw exception to fail the job, the job can be continued from the current checkpoint after the problem is solved.
-            logger.warning("readFhirResourceFromLocalFile: Error proccesing file [" + filePath + "] - " + ex.getMessage());
+            logger.warning("readLineFromLocalFile: Error proccesing file [" + filePath + "] - " + ex.getMessage());
             throw ex;
         }
-
-        return parseFailures;
     }
 
 
@@ -327,44 +406,59 @@ public class BulkDataUtils {
 
     /**
      * @param dataUrl - URL to the ndjson file.
-     * @param numOfLinesToSkip - number of lines to skip before read.
-     * @param fhirResources - List holds the FHIR resources.
+     * @param offset - the byte offset right after the last line read, where the file is (re)opened if needed.
      * @param transientUserData - transient user data for the chunk.
-     * @return - number of parsing failures.
+     * @return - the next line, or null at the end of the file.
      * @throws Exception
      */
-    public static int readFhirResourceFromHttps(String dataUrl, int numOfLinesToSkip, List<Resource> fhirResources,
-            ImportTransientUserData transientUserData) throws Exception {
-        int parseFailures = 0;
+    public static String readLineFromHttps(String dataUrl, long offset, ImportTransientUserData transientUserData) throws Exception {
         int retryTimes = Constants.IMPORT_RETRY_TIMES;
-        do {
+        while (true) {
             try {
-                if (transientUserData.getBufferReader() == null) {
-                    InputStream inputStream = new URL(dataUrl).openConnection().getInputStream();
+                if (transientUserData.getLineReader() == null) {
+                    if (isEndOfInput(offset, transientUserData)) {
+                        return null;
+                    }
+                    HttpURLConnection connection = (HttpURLConnection) new URL(dataUrl).openConnection();
+                    // Only fetch the part of the file after the offset.
+                    if (offset > 0) {
+                        connection.setRequestProperty("Range", "bytes=" + offset + "-");
+                    }
+                    InputStream inputStream = connection.getInputStream();
                     transientUserData.setInputStream(inputStream);
-                    BufferedReader resReader = new BufferedReader(new InputStreamReader(inputStream));
-                    transientUserData.setBufferReader(resReader);
-                    // Skip the already processed lines after opening the input stream for first read.
-                    parseFailures = getFhirResourceFromBufferReader(transientUserData.getBufferReader(), numOfLinesToSkip, fhirResources, true, dataUrl);
-                } else {
-                    parseFailures = getFhirResourceFromBufferReader(transientUserData.getBufferReader(), numOfLinesToSkip, fhirResources, false, dataUrl);
+                    if (offset > 0 && connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                        // The server doesn't support ranges and sent the whole file.
+                        skipFully(inputStream, offset);
+                    }
+                    transientUserData.setLineReader(new NDJSONLineReader(inputStream, offset));
                 }
-                break;
+                return transientUserData.getLineReader().readLine();
             } catch (Exception ex) {
-                // Prepare for retry, skip all the processed lines in previous batches and this batch.
-                numOfLinesToSkip = numOfLinesToSkip + fhirResources.size() + parseFailures;
+                // Prepare for retry, the file is reopened right after the last line read.
                 cleanupTransientUserData(transientUserData, true);
-                logger.warning("readFhirResourceFromHttps: Error proccesing file [" + dataUrl + "] - " + ex.getMessage());
+                logger.warning("readLineFromHttps: Error proccesing file [" + dataUrl + "] - " + ex.getMessage());
                 if ((retryTimes--) > 0) {
-                    logger.warning("readFhirResourceFromHttps: Retry ...");
+                    logger.warning("readLineFromHttps: Retry ...");
                 } else {
                     // Throw exception to fail the job, the job can be continued from the current checkpoint after the problem is solved.
                     throw ex;
                 }
             }
-        } while (retryTimes > 0);
+        }
+    }
 
-        return parseFailures;
+    private static void skipFully(InputStream inputStream, long numOfBytes) throws IOException {
+        long remaining = numOfBytes;
+        while (remaining > 0) {
+            long skipped = inputStream.skip(remaining);
+            if (skipped <= 0) {
+                if (inputStream.read() < 0) {
+                    throw new EOFException("Unexpected end of input after " + (numOfBytes - remaining) + " of " + numOfBytes + " bytes");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
     }
 
 
@@ -386,6 +480,29 @@ public class BulkDataUtils {
         }
       }
 
+    /**
+     * @param dataUrl - URL to the ndjson file.
+     * @return - true if the server accepts byte range requests for the file.
+     * @throws Exception
+     */
+    public static boolean isHttpsRangeSupported(String dataUrl) throws Exception {
+        HttpsURLConnection httpsConnection = null;
+        try {
+            // Check before trying to use 'http://' with an 'https://' url connection.
+            if (dataUrl.startsWith("http://")) {
+                throw new FHIROperationException("No support for 'http'");
+            }
+
+            httpsConnection = (HttpsURLConnection) new URL(dataUrl).openConnection();
+            httpsConnection.setRequestMethod("HEAD");
+            return "bytes".equalsIgnoreCase(httpsConnection.getHeaderField("Accept-Ranges"));
+        } finally {
+          if (httpsConnection != null) {
+              httpsConnection.disconnect();
+          }
+        }
+    }
+
     /**
      * Validate the input resource and throw if there are validation errors
      *
@@ -38,6 +38,11 @@ public class Constants {
      * 200,000 at 1 KB/file would lead to roughly 200 MB files; similar to the DEFAULT_COSFILE_MAX_SIZE.
      */
     public static final int DEFAULT_COSFILE_MAX_RESOURCESNUMBER = 200000;
+    /**
+     * The minimal number of resources per _lastUpdated range of a resource type in system export; resource types with at
+     * least twice as many resources are exported by parallel partitions, up to EXPORT_MAX_PARTITIONPROCESSING_THREADNUMBER.
+     */
+    public static final int EXPORT_MIN_RANGE_RESOURCESNUMBER = 200000;
 
     public static final String FHIR_SEARCH_LASTUPDATED = "_lastUpdated";
     public static final byte[] NDJSON_LINESEPERATOR = "\r\n".getBytes();
@@ -49,6 +54,13 @@ public class Constants {
     // this value should be set.
     public static final int IMPORT_NUMOFFHIRRESOURCES_PERREAD = 20;
     public static final int IMPORT_INFLY_RATE_NUMOFFHIRRESOURCES = 2000;
+    // The number of threads which parse (and validate) the FHIR resources of each import partition, and the upper limit
+    // for the per-job setting.
+    public static final int IMPORT_DEFAULT_NUMOFPARSERS = 2;
+    public static final int IMPORT_MAX_NUMOFPARSERS = 16;
+    // Files of at least twice this size (256MiB) are split into byte ranges which are imported by parallel partitions;
+    // a file is split into at most IMPORT_MAX_PARTITIONPROCESSING_THREADNUMBER ranges.
+    public static final long IMPORT_MIN_RANGE_SIZE = 268435456L;
     public static final String IMPORT_INPUT_RESOURCE_TYPE = "type";
     public static final String IMPORT_INPUT_RESOURCE_URL = "url";
 
@@ -69,6 +81,7 @@ public class Constants {
     public static final String FHIR_RESOURCETYPES = "fhir.resourcetype";
     public static final String IMPORT_FHIR_STORAGE_TYPE = "import.fhir.storagetype";
     public static final String IMPORT_FHIR_IS_VALIDATION_ON = "import.fhir.validation";
+    public static final String IMPORT_FHIR_NUMOFPARSERS = "import.fhir.numofparsers";
     public static final String IMPORT_FHIR_DATASOURCES = "fhir.dataSourcesInfo";
     public static final String EXPORT_FHIR_SEARCH_FROMDATE = "fhir.search.fromdate";
     public static final String EXPORT_FHIR_SEARCH_TODATE = "fhir.search.todate";
@@ -77,10 +90,28 @@ public class Constants {
     public static final String EXPORT_FHIR_FORMAT = "fhir.exportFormat";
     public static final String EXPORT_FHIR_SEARCH_PATIENTGROUPID = "fhir.search.patientgroupid";
     public static final String EXPORT_COS_OBJECT_PATHPREFIX = "cos.bucket.pathprefix";
+    // Set to "file" to write the exported files to the export directory instead of the COS/S3 bucket.
+    public static final String EXPORT_FHIR_STORAGE_TYPE = "export.fhir.storagetype";
+    public static final String EXPORT_FHIR_DIRECTORY = "export.fhir.directory";
+    public static final String EXPORT_STORAGE_TYPE_FILE = "file";
+    // Set to "gzip" to gzip the exported NDJSON files, which are then named <ResourceType>_<n>.ndjson.gz.
+    public static final String EXPORT_FHIR_COMPRESSION = "export.fhir.compression";
+    public static final String EXPORT_COMPRESSION_GZIP = "gzip";
 
     // Partition work item info generated in ImportPartitionMapper.
     public static final String IMPORT_PARTITTION_WORKITEM = "import.partition.workitem";
     public static final String PARTITION_RESOURCE_TYPE = "partition.resourcetype";
+    // The byte range of the work item to process, see IMPORT_MIN_RANGE_SIZE; the range end is 0 for the last range.
+    public static final String IMPORT_PARTITTION_RANGESTART = "import.partition.rangestart";
+    public static final String IMPORT_PARTITTION_RANGEEND = "import.partition.rangeend";
+    public static final String IMPORT_PARTITTION_RANGEINDEX = "import.partition.rangeindex";
+    public static final String IMPORT_PARTITTION_NUMOFRANGES = "import.partition.numofranges";
+    // Partition _lastUpdated range info generated in SystemExportPartitionMapper; the first range has no start and the
+    // last range has no end.
+    public static final String EXPORT_PARTITTION_LASTUPDATED_START = "export.partition.lastupdatedstart";
+    public static final String EXPORT_PARTITTION_LASTUPDATED_END = "export.partition.lastupdatedend";
+    public static final String EXPORT_PARTITTION_RANGEINDEX = "export.partition.rangeindex";
+    public static final String EXPORT_PARTITTION_NUMOFRANGES = "export.partition.numofranges";
 
     // Control if push OperationOutcomes to COS/S3.
     public static final boolean IMPORT_IS_COLLECT_OPERATIONOUTCOMES = true;
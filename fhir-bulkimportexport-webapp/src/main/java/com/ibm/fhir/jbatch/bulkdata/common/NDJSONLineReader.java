@@ -0,0 +1,112 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.jbatch.bulkdata.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the UTF-8 lines of an NDJSON input and keeps track of the byte offset of the input,
+ * so that the import can be resumed right after the last processed line.
+ * <p>
+ * Lines are terminated by "\n" or "\r\n"; the terminator is not part of the returned line.
+ */
+public class NDJSONLineReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream inputStream;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    // Holds the part of a line which spans more than one buffer.
+    private byte[] lineBuffer = new byte[BUFFER_SIZE];
+    private long offset;
+
+    /**
+     * @param inputStream - the input, positioned at the offset.
+     * @param offset - the byte offset of the input stream within the NDJSON input.
+     */
+    public NDJSONLineReader(InputStream inputStream, long offset) {
+        this.inputStream = inputStream;
+        this.offset = offset;
+    }
+
+    /**
+     * @return the next line, or null at the end of the input.
+     * @throws IOException
+     */
+    public String readLine() throws IOException {
+        int lineLength = 0;
+        while (true) {
+            if (position == limit && !fill()) {
+                // The last line of the input may not be terminated.
+                if (lineLength == 0) {
+                    return null;
+                }
+                offset += lineLength;
+                return decode(lineBuffer, 0, lineLength);
+            }
+
+            int start = position;
+            while (position < limit && buffer[position] != '\n') {
+                position++;
+            }
+            if (position < limit) {
+                // Found the end of the line; skip the '\n'.
+                int length = position - start;
+                position++;
+                offset += lineLength + length + 1;
+                if (lineLength == 0) {
+                    return decode(buffer, start, length);
+                }
+                appendToLine(start, length, lineLength);
+                return decode(lineBuffer, 0, lineLength + length);
+            }
+            appendToLine(start, position - start, lineLength);
+            lineLength += position - start;
+        }
+    }
+
+    /**
+     * @return the byte offset right after the last line returned by {@link #readLine()}.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    private boolean fill() throws IOException {
+        int read = inputStream.read(buffer);
+        if (read <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    private void appendToLine(int start, int length, int lineLength) {
+        if (lineLength + length > lineBuffer.length) {
+            lineBuffer = Arrays.copyOf(lineBuffer, Math.max(2 * lineBuffer.length, lineLength + length));
+        }
+        System.arraycopy(buffer, start, lineBuffer, lineLength, length);
+    }
+
+    private static String decode(byte[] bytes, int start, int length) {
+        if (length > 0 && bytes[start + length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, start, length, StandardCharsets.UTF_8);
+    }
+}
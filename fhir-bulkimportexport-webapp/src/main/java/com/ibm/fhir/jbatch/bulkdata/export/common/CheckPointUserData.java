@@ -6,6 +6,9 @@
 
 package com.ibm.fhir.jbatch.bulkdata.export.common;
 
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import com.ibm.cloud.objectstorage.services.s3.model.PartETag;
@@ -24,6 +27,8 @@ public class CheckPointUserData implements java.io.Serializable {
     protected List<PartETag> cosDataPacks;
     protected int currentUploadResourceNum = 0;
     protected int currentUploadSize = 0;
+    // The size of the .part file of the current upload after the last write, used when exporting to the file system.
+    protected long currentUploadFileSize = 0;
     private boolean isFinishCurrentUpload = false;
     protected int totalResourcesNum = 0;
     // One resource type can have 0 to multiple typeFilters, indexOfCurrentTypeFilter is used to tell the currently processed typeFilter.
@@ -33,6 +38,15 @@ public class CheckPointUserData implements java.io.Serializable {
     // Used to mark the complete of the partition.
     private boolean isMoreToExport = true;
     protected int lastWritePageNum;
+    // The (lastUpdated, resourceId) keyset of the last resource read, used to search for the next page.
+    protected Instant keysetLastUpdated;
+    protected Long keysetResourceId;
+    // The keyset of the last resource written, from which the reader resumes on restart.
+    protected Instant lastWriteKeysetLastUpdated;
+    protected Long lastWriteKeysetResourceId;
+    // The index of the _lastUpdated range exported by the partition and the number of ranges the resource type is split into.
+    protected int rangeIndex = 0;
+    protected int numOfRanges = 1;
 
     protected CheckPointUserData() {
         super();
@@ -49,9 +63,16 @@ public class CheckPointUserData implements java.io.Serializable {
             .totalResourcesNum(userData.totalResourcesNum)
             .currentUploadResourceNum(userData.currentUploadResourceNum)
             .currentUploadSize(userData.currentUploadSize)
+            .currentUploadFileSize(userData.currentUploadFileSize)
             .uploadCount(userData.uploadCount)
             .lastPageNum(userData.lastPageNum)
             .lastWritePageNum(userData.lastWritePageNum)
+            .keysetLastUpdated(userData.keysetLastUpdated)
+            .keysetResourceId(userData.keysetResourceId)
+            .lastWriteKeysetLastUpdated(userData.lastWriteKeysetLastUpdated)
+            .lastWriteKeysetResourceId(userData.lastWriteKeysetResourceId)
+            .rangeIndex(userData.rangeIndex)
+            .numOfRanges(userData.numOfRanges)
             .build();
     }
 
@@ -64,10 +85,17 @@ public class CheckPointUserData implements java.io.Serializable {
         protected List<PartETag> cosDataPacks;
         protected int currentUploadResourceNum = 0;
         protected int currentUploadSize = 0;
+        protected long currentUploadFileSize = 0;
         protected int totalResourcesNum = 0;
         protected int indexOfCurrentTypeFilter;
         protected String resourceTypeSummary = null;
         protected int lastWritePageNum;
+        protected Instant keysetLastUpdated;
+        protected Long keysetResourceId;
+        protected Instant lastWriteKeysetLastUpdated;
+        protected Long lastWriteKeysetResourceId;
+        protected int rangeIndex = 0;
+        protected int numOfRanges = 1;
 
         public Builder() {
             super();
@@ -137,6 +165,41 @@ public class CheckPointUserData implements java.io.Serializable {
             return this;
         }
 
+        public Builder keysetLastUpdated(Instant keysetLastUpdated) {
+            this.keysetLastUpdated = keysetLastUpdated;
+            return this;
+        }
+
+        public Builder keysetResourceId(Long keysetResourceId) {
+            this.keysetResourceId = keysetResourceId;
+            return this;
+        }
+
+        public Builder lastWriteKeysetLastUpdated(Instant lastWriteKeysetLastUpdated) {
+            this.lastWriteKeysetLastUpdated = lastWriteKeysetLastUpdated;
+            return this;
+        }
+
+        public Builder lastWriteKeysetResourceId(Long lastWriteKeysetResourceId) {
+            this.lastWriteKeysetResourceId = lastWriteKeysetResourceId;
+            return this;
+        }
+
+        public Builder currentUploadFileSize(long currentUploadFileSize) {
+            this.currentUploadFileSize = currentUploadFileSize;
+            return this;
+        }
+
+        public Builder rangeIndex(int rangeIndex) {
+            this.rangeIndex = rangeIndex;
+            return this;
+        }
+
+        public Builder numOfRanges(int numOfRanges) {
+            this.numOfRanges = numOfRanges;
+            return this;
+        }
+
         public CheckPointUserData build(){
             CheckPointUserData checkPointUserData = new CheckPointUserData();
             checkPointUserData.pageNum  = this.pageNum;
@@ -147,10 +210,17 @@ public class CheckPointUserData implements java.io.Serializable {
             checkPointUserData.cosDataPacks = this.cosDataPacks;
             checkPointUserData.currentUploadResourceNum = this.currentUploadResourceNum;
             checkPointUserData.currentUploadSize = this.currentUploadSize;
+            checkPointUserData.currentUploadFileSize = this.currentUploadFileSize;
             checkPointUserData.totalResourcesNum = this.totalResourcesNum;
             checkPointUserData.indexOfCurrentTypeFilter = this.indexOfCurrentTypeFilter;
             checkPointUserData.resourceTypeSummary = this.resourceTypeSummary;
             checkPointUserData.lastWritePageNum = this.lastWritePageNum;
+            checkPointUserData.keysetLastUpdated = this.keysetLastUpdated;
+            checkPointUserData.keysetResourceId = this.keysetResourceId;
+            checkPointUserData.lastWriteKeysetLastUpdated = this.lastWriteKeysetLastUpdated;
+            checkPointUserData.lastWriteKeysetResourceId = this.lastWriteKeysetResourceId;
+            checkPointUserData.rangeIndex = this.rangeIndex;
+            checkPointUserData.numOfRanges = this.numOfRanges;
 
             return checkPointUserData;
         }
@@ -268,4 +338,69 @@ public class CheckPointUserData implements java.io.Serializable {
         this.lastWritePageNum = lastWritePageNum;
     }
 
+    public Instant getKeysetLastUpdated() {
+        return keysetLastUpdated;
+    }
+
+    public void setKeysetLastUpdated(Instant keysetLastUpdated) {
+        this.keysetLastUpdated = keysetLastUpdated;
+    }
+
+    public Long getKeysetResourceId() {
+        return keysetResourceId;
+    }
+
+    public void setKeysetResourceId(Long keysetResourceId) {
+        this.keysetResourceId = keysetResourceId;
+    }
+
+    public Instant getLastWriteKeysetLastUpdated() {
+        return lastWriteKeysetLastUpdated;
+    }
+
+    public Long getLastWriteKeysetResourceId() {
+        return lastWriteKeysetResourceId;
+    }
+
+    /**
+     * @return the resource type of the resourceTypeSummary, e.g, Patient for Patient[1000,1000,200]
+     */
+    public String getResourceType() {
+        return resourceTypeSummary.substring(0, resourceTypeSummary.indexOf("["));
+    }
+
+    /**
+     * @return the numbers of resources per file of the resourceTypeSummary, e.g, [1000, 1000, 200] for Patient[1000,1000,200]
+     */
+    public List<String> getResourceCounts() {
+        String resourceCounts = resourceTypeSummary.substring(resourceTypeSummary.indexOf("[") + 1, resourceTypeSummary.indexOf("]"));
+        return resourceCounts.isEmpty() ? Collections.emptyList() : Arrays.asList(resourceCounts.split(","));
+    }
+
+    public long getCurrentUploadFileSize() {
+        return currentUploadFileSize;
+    }
+
+    public void setCurrentUploadFileSize(long currentUploadFileSize) {
+        this.currentUploadFileSize = currentUploadFileSize;
+    }
+
+    public int getRangeIndex() {
+        return rangeIndex;
+    }
+
+    public int getNumOfRanges() {
+        return numOfRanges;
+    }
+
+    /**
+     * Record the current page number and keyset as the point from which the reader resumes on restart;
+     * called after the data read so far has been written.
+     */
+    public void markLastWrite() {
+        this.lastWritePageNum = this.pageNum;
+        this.lastWriteKeysetLastUpdated = this.keysetLastUpdated;
+        this.lastWriteKeysetResourceId = this.keysetResourceId;
+    }
+
 }
@@ -0,0 +1,256 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.jbatch.bulkdata.export.common;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.OriginalType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type;
+import org.apache.parquet.schema.Type.Repetition;
+
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Base64Binary;
+import com.ibm.fhir.model.type.Extension;
+import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.model.util.ModelSupport.ElementInfo;
+
+/**
+ * A Parquet schema for a FHIR resource type, derived from the {@link ModelSupport} element info of the type.
+ * <p>
+ * The columns mirror the FHIR JSON representation of the resource:
+ * <ul>
+ * <li>complex elements are groups and repeating elements are Parquet lists;
+ * <li>choice elements have one column per choice type, named as in JSON (e.g. valueQuantity);
+ * <li>boolean and integer primitives are BOOLEAN and INT32 columns, base64Binary is a BINARY column, and every other
+ * primitive is a UTF8 column holding its JSON string value;
+ * <li>the id and extensions of a primitive element are held in a companion "_" UTF8 column holding their JSON
+ * (e.g. {"id":"a","extension":[...]}), as in JSON.
+ * </ul>
+ * Elements that cannot be described by a finite schema are written as UTF8 columns holding the JSON of the element:
+ * extensions, nested resources (like contained resources and Bundle entries) and any complex type nested within
+ * itself (like Identifier.assigner.identifier or QuestionnaireResponse.item.item).
+ * <p>
+ * To keep the number of columns manageable, complex elements are only expanded into groups down to
+ * {@link #MAX_GROUP_DEPTH} levels below the resource; deeper complex elements are JSON columns as well
+ * (e.g. Patient.contact.name.period or Observation.component.code.coding).
+ */
+final class FHIRParquetSchema {
+    private static final Map<Class<? extends Resource>, FHIRParquetSchema> SCHEMAS = new ConcurrentHashMap<>();
+
+    static final String RESOURCE_TYPE = "resourceType";
+    static final String LIST = "list";
+    static final String ELEMENT = "element";
+    static final String ID = "id";
+    static final String EXTENSION = "extension";
+
+    /**
+     * The number of nested complex types (including backbone elements) that are expanded into groups
+     */
+    static final int MAX_GROUP_DEPTH = 2;
+
+    enum Kind {
+        BOOLEAN, INTEGER, STRING, BINARY, JSON, GROUP, COMPANION
+    }
+
+    /**
+     * A column (at any level) of the schema.
+     */
+    static final class Column {
+        final String name;
+        final int index;
+        final Kind kind;
+        final boolean repeating;
+        // the elements of a GROUP column, in column order
+        final List<Slot> slots;
+        // the id and extensions of a primitive element; null for all other elements
+        final Column companion;
+
+        Column(String name, int index, Kind kind, boolean repeating, List<Slot> slots, Column companion) {
+            this.name = name;
+            this.index = index;
+            this.kind = kind;
+            this.repeating = repeating;
+            this.slots = slots;
+            this.companion = companion;
+        }
+    }
+
+    /**
+     * An element of a model class and the column(s) that hold its value.
+     */
+    static final class Slot {
+        final Field field;
+        // the value column, keyed by model type; choice elements have one entry per choice type
+        final Map<Class<?>, Column> columns;
+
+        Slot(Field field, Map<Class<?>, Column> columns) {
+            this.field = field;
+            this.columns = columns;
+        }
+
+        /**
+         * @return the column for a value of this element, or null if the value type is not part of the schema
+         */
+        Column getColumn(Object value) {
+            if (columns.size() == 1) {
+                return columns.values().iterator().next();
+            }
+            for (Class<?> type = value.getClass(); type != null; type = type.getSuperclass()) {
+                Column column = columns.get(type);
+                if (column != null) {
+                    return column;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final MessageType messageType;
+    private final List<Slot> slots;
+
+    private FHIRParquetSchema(Class<? extends Resource> resourceType) {
+        Set<Class<?>> path = new HashSet<>();
+        path.add(resourceType);
+        List<Type> fields = new ArrayList<>();
+        fields.add(new PrimitiveType(Repetition.REQUIRED, PrimitiveTypeName.BINARY, RESOURCE_TYPE, OriginalType.UTF8));
+        this.slots = buildSlots(resourceType, fields, path);
+        this.messageType = new MessageType(resourceType.getSimpleName(), fields);
+    }
+
+    /**
+     * @return the schema for the passed resource type
+     */
+    static FHIRParquetSchema of(Class<? extends Resource> resourceType) {
+        return SCHEMAS.computeIfAbsent(resourceType, FHIRParquetSchema::new);
+    }
+
+    MessageType getMessageType() {
+        return messageType;
+    }
+
+    /**
+     * @return the elements of the resource type; the resourceType column is not included
+     */
+    List<Slot> getSlots() {
+        return slots;
+    }
+
+    /**
+     * Adds the columns for the elements of the model class to {@code fields} and returns the slots of these elements.
+     */
+    private static List<Slot> buildSlots(Class<?> modelClass, List<Type> fields, Set<Class<?>> path) {
+        Map<String, Field> javaFields = getFields(modelClass);
+        List<Slot> slots = new ArrayList<>();
+        for (ElementInfo elementInfo : ModelSupport.getElementInfo(modelClass)) {
+            Map<Class<?>, Column> columns = new LinkedHashMap<>();
+            if (elementInfo.isChoice()) {
+                Map<String, Class<?>> choiceTypes = new LinkedHashMap<>();
+                for (Class<?> choiceType : elementInfo.getChoiceTypes()) {
+                    choiceTypes.putIfAbsent(ModelSupport.getChoiceElementName(elementInfo.getName(), choiceType),
+                            ModelSupport.getConcreteType(choiceType));
+                }
+                for (Map.Entry<String, Class<?>> entry : choiceTypes.entrySet()) {
+                    columns.put(entry.getValue(), buildColumn(entry.getKey(), entry.getValue(), elementInfo.isRepeating(), fields, path));
+                }
+            } else {
+                columns.put(elementInfo.getType(), buildColumn(elementInfo.getName(), elementInfo.getType(), elementInfo.isRepeating(), fields, path));
+            }
+            slots.add(new Slot(javaFields.get(elementInfo.getName()), Collections.unmodifiableMap(columns)));
+        }
+        return Collections.unmodifiableList(slots);
+    }
+
+    /**
+     * Adds the column(s) for an element of the passed type to {@code fields}.
+     */
+    private static Column buildColumn(String name, Class<?> type, boolean repeating, List<Type> fields, Set<Class<?>> path) {
+        int index = fields.size();
+        Kind kind;
+        Type parquetType;
+        List<Slot> slots = null;
+        if (String.class.equals(type)) {
+            kind = Kind.STRING;
+            parquetType = new PrimitiveType(Repetition.OPTIONAL, PrimitiveTypeName.BINARY, name, OriginalType.UTF8);
+        } else if (com.ibm.fhir.model.type.Boolean.class.equals(type)) {
+            kind = Kind.BOOLEAN;
+            parquetType = new PrimitiveType(Repetition.OPTIONAL, PrimitiveTypeName.BOOLEAN, name);
+        } else if (com.ibm.fhir.model.type.Integer.class.isAssignableFrom(type)) {
+            kind = Kind.INTEGER;
+            parquetType = new PrimitiveType(Repetition.OPTIONAL, PrimitiveTypeName.INT32, name);
+        } else if (Base64Binary.class.equals(type)) {
+            kind = Kind.BINARY;
+            parquetType = new PrimitiveType(Repetition.OPTIONAL, PrimitiveTypeName.BINARY, name);
+        } else if (ModelSupport.isPrimitiveType(type)) {
+            kind = Kind.STRING;
+            parquetType = new PrimitiveType(Repetition.OPTIONAL, PrimitiveTypeName.BINARY, name, OriginalType.UTF8);
+        } else if (Extension.class.equals(type) || Resource.class.isAssignableFrom(type) || path.contains(type)
+                || path.size() > MAX_GROUP_DEPTH) {
+            kind = Kind.JSON;
+            parquetType = new PrimitiveType(Repetition.OPTIONAL, PrimitiveTypeName.BINARY, name, OriginalType.UTF8);
+        } else {
+            kind = Kind.GROUP;
+            List<Type> children = new ArrayList<>();
+            path.add(type);
+            slots = buildSlots(type, children, path);
+            path.remove(type);
+            parquetType = new GroupType(Repetition.OPTIONAL, name, children);
+        }
+        fields.add(repeating ? list(parquetType) : parquetType);
+
+        Column companion = null;
+        if (ModelSupport.isPrimitiveType(type)) {
+            PrimitiveType companionType = new PrimitiveType(Repetition.OPTIONAL, PrimitiveTypeName.BINARY, "_" + name, OriginalType.UTF8);
+            companion = new Column(companionType.getName(), fields.size(), Kind.COMPANION, repeating, null, null);
+            fields.add(repeating ? list(companionType) : companionType);
+        }
+        return new Column(name, index, kind, repeating, slots, companion);
+    }
+
+    /**
+     * @return a list (using the standard three-level list structure) of the passed element type
+     */
+    private static GroupType list(Type elementType) {
+        Type element = elementType.isPrimitive()
+                ? new PrimitiveType(Repetition.OPTIONAL, elementType.asPrimitiveType().getPrimitiveTypeName(), ELEMENT,
+                        elementType.getOriginalType())
+                : new GroupType(Repetition.OPTIONAL, ELEMENT, elementType.asGroupType().getFields());
+        return new GroupType(Repetition.OPTIONAL, elementType.getName(), OriginalType.LIST,
+                new GroupType(Repetition.REPEATED, LIST, element));
+    }
+
+    /**
+     * @return the fields of the model class, keyed by element name
+     */
+    private static Map<String, Field> getFields(Class<?> modelClass) {
+        Map<String, Field> fields = new HashMap<>();
+        for (Class<?> clazz : ModelSupport.getClosure(modelClass)) {
+            for (Field field : clazz.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isVolatile(modifiers)) {
+                    continue;
+                }
+                field.setAccessible(true);
+                fields.put(ModelSupport.getElementName(field), field);
+            }
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.jbatch.bulkdata.export.common;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+
+import com.ibm.fhir.model.resource.Resource;
+
+/**
+ * Writes FHIR resources to Parquet files, using a schema derived from the FHIR model (see {@link FHIRParquetSchema}).
+ * Resources are written one at a time straight into the row groups of the file.
+ */
+public class FHIRParquetWriter implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(FHIRParquetWriter.class.getName());
+
+    private final Configuration conf;
+
+    /**
+     * Create a FHIRParquetWriter that can only write to file URIs
+     */
+    public FHIRParquetWriter() {
+        conf = new Configuration();
+    }
+
+    /**
+     * Create a FHIRParquetWriter that can write to either file or cos URIs
+     *
+     * @param useIAM whether to use IBM Cloud Identity and Access Management; if false we use "HMAC" auth
+     * @param cosEndpoint the S3 endpoint to connect to; include the scheme, typically "https://")
+     * @param apiKeyOrAccessKey a valid ServiceCredential ApiKey (for IAM) or AccessKey (for HMAC)
+     * @param serviceInstanceIdOrSecretKey a valid ServiceInstanceId (for IAM) or SecretKey (for HMAC)
+     */
+    public FHIRParquetWriter(boolean useIAM, String cosEndpoint, String apiKeyOrAccessKey, String serviceInstanceIdOrSecretKey) {
+        conf = new Configuration();
+        conf.set("fs.cos.impl", "com.ibm.stocator.fs.ObjectStoreFileSystem");
+        conf.set("fs.stocator.scheme.list", "cos");
+        conf.set("fs.stocator.cos.impl", "com.ibm.stocator.fs.cos.COSAPIClient");
+        conf.set("fs.stocator.cos.scheme", "cos");
+        conf.set("fs.cos.fhir.endpoint", cosEndpoint);
+
+        if (useIAM) {
+            conf.set("fs.cos.fhir.iam.api.key", apiKeyOrAccessKey);
+            conf.set("fs.cos.fhir.iam.service.id", serviceInstanceIdOrSecretKey);
+        } else {
+            conf.set("fs.cos.fhir.access.key", apiKeyOrAccessKey);
+            conf.set("fs.cos.fhir.secret.key", serviceInstanceIdOrSecretKey);
+        }
+    }
+
+    /**
+     * Write a list of resources of a single resource type to a parquet file.
+     *
+     * @param resources the list of resources to write
+     * @param outFileName the target file, using either a file URI or a cos URI like "cos://bucket.service/object-key"
+     * @throws IOException
+     * @implNote an existing file with the same name is overwritten
+     */
+    public void writeParquet(List<? extends Resource> resources, String outFileName) throws IOException {
+        if (resources.isEmpty()) {
+            return;
+        }
+        Class<? extends Resource> resourceType = resources.get(0).getClass();
+        try (ParquetWriter<Resource> writer = new Builder(new Path(outFileName), resourceType)
+                .withConf(conf)
+                .withWriteMode(ParquetFileWriter.Mode.OVERWRITE)
+                .withCompressionCodec(CompressionCodecName.SNAPPY)
+                .build()) {
+            for (Resource resource : resources) {
+                writer.write(resource);
+            }
+        }
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Parquet file written to " + outFileName);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        // nothing to clean up; each call to writeParquet opens and closes its own file
+    }
+
+    private static class Builder extends ParquetWriter.Builder<Resource, Builder> {
+        private final Class<? extends Resource> resourceType;
+
+        private Builder(Path path, Class<? extends Resource> resourceType) {
+            super(path);
+            this.resourceType = resourceType;
+        }
+
+        @Override
+        protected Builder self() {
+            return this;
+        }
+
+        @Override
+        protected WriteSupport<Resource> getWriteSupport(Configuration conf) {
+            return new FHIRWriteSupport(resourceType);
+        }
+    }
+}
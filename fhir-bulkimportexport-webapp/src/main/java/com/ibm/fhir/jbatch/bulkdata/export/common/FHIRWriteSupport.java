@@ -0,0 +1,312 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.jbatch.bulkdata.export.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonReader;
+import javax.json.JsonReaderFactory;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.ParquetEncodingException;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+
+import com.ibm.fhir.jbatch.bulkdata.export.common.FHIRParquetSchema.Column;
+import com.ibm.fhir.jbatch.bulkdata.export.common.FHIRParquetSchema.Slot;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.generator.FHIRGenerator;
+import com.ibm.fhir.model.generator.exception.FHIRGeneratorException;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Base64Binary;
+import com.ibm.fhir.model.type.Date;
+import com.ibm.fhir.model.type.DateTime;
+import com.ibm.fhir.model.type.Decimal;
+import com.ibm.fhir.model.type.Element;
+import com.ibm.fhir.model.type.Instant;
+import com.ibm.fhir.model.type.Time;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.Xhtml;
+import com.ibm.fhir.model.visitor.Visitable;
+
+/**
+ * Writes FHIR resources of a single resource type as records of the {@link FHIRParquetSchema} for that type.
+ * The element values are read straight from the model objects; there is no intermediate JSON representation,
+ * except for the elements that the schema holds as JSON.
+ */
+class FHIRWriteSupport extends WriteSupport<Resource> {
+    private static final JsonReaderFactory JSON_READER_FACTORY = Json.createReaderFactory(null);
+    private static final JsonGeneratorFactory JSON_GENERATOR_FACTORY = Json.createGeneratorFactory(null);
+
+    private final Class<? extends Resource> resourceType;
+    private final FHIRParquetSchema schema;
+    private final FHIRGenerator generator = FHIRGenerator.generator(Format.JSON);
+    private final ByteArrayOutputStream jsonBuffer = new ByteArrayOutputStream(4096);
+    private RecordConsumer consumer;
+
+    FHIRWriteSupport(Class<? extends Resource> resourceType) {
+        this.resourceType = resourceType;
+        this.schema = FHIRParquetSchema.of(resourceType);
+    }
+
+    @Override
+    public WriteContext init(Configuration configuration) {
+        return new WriteContext(schema.getMessageType(), Collections.emptyMap());
+    }
+
+    @Override
+    public void prepareForWrite(RecordConsumer recordConsumer) {
+        this.consumer = recordConsumer;
+    }
+
+    @Override
+    public void write(Resource resource) {
+        if (!resourceType.equals(resource.getClass())) {
+            throw new IllegalArgumentException("Expected a resource of type '" + resourceType.getSimpleName()
+                    + "' but found '" + resource.getClass().getSimpleName() + "'");
+        }
+        consumer.startMessage();
+        consumer.startField(FHIRParquetSchema.RESOURCE_TYPE, 0);
+        consumer.addBinary(Binary.fromString(resourceType.getSimpleName()));
+        consumer.endField(FHIRParquetSchema.RESOURCE_TYPE, 0);
+        writeSlots(resource, schema.getSlots());
+        consumer.endMessage();
+    }
+
+    private void writeSlots(Object modelObject, List<Slot> slots) {
+        for (Slot slot : slots) {
+            Object value = getValue(slot, modelObject);
+            if (value == null) {
+                continue;
+            }
+            if (value instanceof List) {
+                List<?> values = (List<?>) value;
+                if (values.isEmpty()) {
+                    continue;
+                }
+                Column column = slot.getColumn(values.get(0));
+                if (hasValue(values)) {
+                    startList(column.name, column.index);
+                    for (Object item : values) {
+                        consumer.startGroup();
+                        if (item != null && hasValue(item)) {
+                            consumer.startField(FHIRParquetSchema.ELEMENT, 0);
+                            writeValue(column, item);
+                            consumer.endField(FHIRParquetSchema.ELEMENT, 0);
+                        }
+                        consumer.endGroup();
+                    }
+                    endList(column.name, column.index);
+                }
+                if (column.companion != null && hasIdOrExtension(values)) {
+                    Column companion = column.companion;
+                    startList(companion.name, companion.index);
+                    for (Object item : values) {
+                        consumer.startGroup();
+                        if (hasIdOrExtension(item)) {
+                            consumer.startField(FHIRParquetSchema.ELEMENT, 0);
+                            writeCompanion((Element) item);
+                            consumer.endField(FHIRParquetSchema.ELEMENT, 0);
+                        }
+                        consumer.endGroup();
+                    }
+                    endList(companion.name, companion.index);
+                }
+            } else {
+                Column column = slot.getColumn(value);
+                if (column == null) {
+                    continue;
+                }
+                if (hasValue(value)) {
+                    consumer.startField(column.name, column.index);
+                    writeValue(column, value);
+                    consumer.endField(column.name, column.index);
+                }
+                if (column.companion != null && hasIdOrExtension(value)) {
+                    consumer.startField(column.companion.name, column.companion.index);
+                    writeCompanion((Element) value);
+                    consumer.endField(column.companion.name, column.companion.index);
+                }
+            }
+        }
+    }
+
+    private void writeValue(Column column, Object value) {
+        switch (column.kind) {
+        case BOOLEAN:
+            consumer.addBoolean(((com.ibm.fhir.model.type.Boolean) value).getValue());
+            break;
+        case INTEGER:
+            consumer.addInteger(((com.ibm.fhir.model.type.Integer) value).getValue());
+            break;
+        case BINARY:
+            consumer.addBinary(Binary.fromConstantByteArray(((Base64Binary) value).getValue()));
+            break;
+        case STRING:
+            consumer.addBinary(Binary.fromString(toString(value)));
+            break;
+        case JSON:
+            consumer.addBinary(toJson((Visitable) value));
+            break;
+        case GROUP:
+            consumer.startGroup();
+            writeSlots(value, column.slots);
+            consumer.endGroup();
+            break;
+        default:
+            throw new IllegalStateException("Unexpected column kind: " + column.kind);
+        }
+    }
+
+    /**
+     * Writes the id and extensions of a primitive element as the JSON object of its "_" member.
+     */
+    private void writeCompanion(Element element) {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator companion = JSON_GENERATOR_FACTORY.createGenerator(writer)) {
+            companion.writeStartObject();
+            if (element.getId() != null) {
+                companion.write(FHIRParquetSchema.ID, element.getId());
+            }
+            if (!element.getExtension().isEmpty()) {
+                companion.writeStartArray(FHIRParquetSchema.EXTENSION);
+                for (Visitable extension : element.getExtension()) {
+                    // Primitive extensions are rare, so the extension JSON is simply read back in
+                    Binary json = toJson(extension);
+                    try (JsonReader reader = JSON_READER_FACTORY.createReader(new ByteArrayInputStream(json.getBytes()))) {
+                        companion.write(reader.readObject());
+                    }
+                }
+                companion.writeEnd();
+            }
+            companion.writeEnd();
+        }
+        consumer.addBinary(Binary.fromString(writer.toString()));
+    }
+
+    private void startList(String name, int index) {
+        consumer.startField(name, index);
+        consumer.startGroup();
+        consumer.startField(FHIRParquetSchema.LIST, 0);
+    }
+
+    private void endList(String name, int index) {
+        consumer.endField(FHIRParquetSchema.LIST, 0);
+        consumer.endGroup();
+        consumer.endField(name, index);
+    }
+
+    private Binary toJson(Visitable visitable) {
+        jsonBuffer.reset();
+        try {
+            generator.generate(visitable, jsonBuffer);
+        } catch (FHIRGeneratorException e) {
+            throw new ParquetEncodingException("Unable to generate JSON for element '" + e.getPath() + "'", e);
+        }
+        return Binary.fromConstantByteArray(jsonBuffer.toByteArray());
+    }
+
+    private static Object getValue(Slot slot, Object modelObject) {
+        try {
+            return slot.field.get(modelObject);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the JSON string value of a primitive element
+     */
+    private static String toString(Object value) {
+        if (value instanceof String) {
+            return (String) value;
+        } else if (value instanceof com.ibm.fhir.model.type.String) {
+            return ((com.ibm.fhir.model.type.String) value).getValue();
+        } else if (value instanceof Uri) {
+            return ((Uri) value).getValue();
+        } else if (value instanceof DateTime) {
+            return DateTime.PARSER_FORMATTER.format(((DateTime) value).getValue());
+        } else if (value instanceof Date) {
+            return Date.PARSER_FORMATTER.format(((Date) value).getValue());
+        } else if (value instanceof Instant) {
+            return Instant.PARSER_FORMATTER.format(((Instant) value).getValue());
+        } else if (value instanceof Time) {
+            return Time.PARSER_FORMATTER.format(((Time) value).getValue());
+        } else if (value instanceof Decimal) {
+            return ((Decimal) value).getValue().toString();
+        } else if (value instanceof Xhtml) {
+            return ((Xhtml) value).getValue();
+        }
+        throw new IllegalArgumentException("Unexpected primitive type: " + value.getClass().getName());
+    }
+
+    /**
+     * @return false for a primitive element that has only an id and/or extensions
+     */
+    private static boolean hasValue(Object value) {
+        if (value instanceof String || !(value instanceof Element)) {
+            return true;
+        }
+        Element element = (Element) value;
+        if (element instanceof com.ibm.fhir.model.type.Boolean) {
+            return ((com.ibm.fhir.model.type.Boolean) element).getValue() != null;
+        } else if (element instanceof com.ibm.fhir.model.type.Integer) {
+            return ((com.ibm.fhir.model.type.Integer) element).getValue() != null;
+        } else if (element instanceof Base64Binary) {
+            return ((Base64Binary) element).getValue() != null;
+        } else if (element instanceof com.ibm.fhir.model.type.String) {
+            return ((com.ibm.fhir.model.type.String) element).getValue() != null;
+        } else if (element instanceof Uri) {
+            return ((Uri) element).getValue() != null;
+        } else if (element instanceof DateTime) {
+            return ((DateTime) element).getValue() != null;
+        } else if (element instanceof Date) {
+            return ((Date) element).getValue() != null;
+        } else if (element instanceof Instant) {
+            return ((Instant) element).getValue() != null;
+        } else if (element instanceof Time) {
+            return ((Time) element).getValue() != null;
+        } else if (element instanceof Decimal) {
+            return ((Decimal) element).getValue() != null;
+        }
+        return true;
+    }
+
+    private static boolean hasValue(List<?> values) {
+        for (Object value : values) {
+            if (hasValue(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasIdOrExtension(Object value) {
+        if (!(value instanceof Element)) {
+            return false;
+        }
+        Element element = (Element) value;
+        return element.getId() != null || !element.getExtension().isEmpty();
+    }
+
+    private static boolean hasIdOrExtension(List<?> values) {
+        for (Object value : values) {
+            if (hasIdOrExtension(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -7,6 +7,12 @@
 package com.ibm.fhir.jbatch.bulkdata.export.common;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.ibm.fhir.jbatch.bulkdata.common.Constants;
 
 /**
  * Bulk export Chunk implementation - job cache data.
@@ -14,8 +20,13 @@ import java.io.ByteArrayOutputStream;
  */
 public class TransientUserData extends CheckPointUserData {
     private static final long serialVersionUID = -5892726731783560418L;
+    private static final int COMPRESSION_BUFFER_SIZE = 64 * 1024;
 
     private ByteArrayOutputStream bufferStream = new ByteArrayOutputStream(2 ^ 16); // 2 ^ 20 = 1 MiB
+    private transient byte[] copyBuffer;
+    private transient boolean isCompressed = false;
+    // Compresses into the buffer; a new gzip member is started after each finishCompression.
+    private transient GZIPOutputStream compressionStream;
 
     protected TransientUserData() {
         super();
@@ -32,16 +43,73 @@ public class TransientUserData extends CheckPointUserData {
             .totalResourcesNum(checkPointData.totalResourcesNum)
             .currentUploadResourceNum(checkPointData.currentUploadResourceNum)
             .currentUploadSize(checkPointData.currentUploadSize)
+            .currentUploadFileSize(checkPointData.currentUploadFileSize)
             .uploadCount(checkPointData.uploadCount)
             .lastPageNum(checkPointData.lastPageNum)
             .lastWritePageNum(checkPointData.lastWritePageNum)
+            .keysetLastUpdated(checkPointData.keysetLastUpdated)
+            .keysetResourceId(checkPointData.keysetResourceId)
+            .lastWriteKeysetLastUpdated(checkPointData.lastWriteKeysetLastUpdated)
+            .lastWriteKeysetResourceId(checkPointData.lastWriteKeysetResourceId)
+            .rangeIndex(checkPointData.rangeIndex)
+            .numOfRanges(checkPointData.numOfRanges)
             .build();
     }
 
+    /**
+     * @return the buffer which holds the data of the next write, compressed if the export is compressed.
+     */
     public ByteArrayOutputStream getBufferStream() {
         return bufferStream;
     }
 
+    /**
+     * @return the stream to write the NDJSON lines to, which compresses them into the buffer if the export is compressed.
+     */
+    public OutputStream getOutputStream() throws IOException {
+        if (!isCompressed) {
+            return bufferStream;
+        }
+        if (compressionStream == null) {
+            compressionStream = new GZIPOutputStream(bufferStream, COMPRESSION_BUFFER_SIZE);
+        }
+        return compressionStream;
+    }
+
+    public boolean isCompressed() {
+        return isCompressed;
+    }
+
+    public void setCompressed(boolean isCompressed) {
+        this.isCompressed = isCompressed;
+    }
+
+    /**
+     * Completes the gzip member of the data written so far, so the buffer can be written out on its own. The members of
+     * the consecutive writes, and of a partition restarted from the last checkpoint, simply form a multi-member gzip file.
+     */
+    public void finishCompression() throws IOException {
+        if (compressionStream != null) {
+            compressionStream.finish();
+            compressionStream = null;
+        }
+    }
+
+    /**
+     * Copies a single-line JSON payload into the buffer, followed by the NDJSON line separator.
+     */
+    public void appendNdjsonLine(InputStream payload) throws IOException {
+        if (copyBuffer == null) {
+            copyBuffer = new byte[8192];
+        }
+        int n;
+        OutputStream out = getOutputStream();
+        while ((n = payload.read(copyBuffer)) != -1) {
+            out.write(copyBuffer, 0, n);
+        }
+        out.write(Constants.NDJSON_LINESEPERATOR);
+    }
+
     public static class Builder extends CheckPointUserData.Builder {
 
         public static Builder builder() {
@@ -59,10 +127,17 @@ public class TransientUserData extends CheckPointUserData {
             transientUserData.cosDataPacks = this.cosDataPacks;
             transientUserData.currentUploadResourceNum = this.currentUploadResourceNum;
             transientUserData.currentUploadSize = this.currentUploadSize;
+            transientUserData.currentUploadFileSize = this.currentUploadFileSize;
             transientUserData.totalResourcesNum = this.totalResourcesNum;
             transientUserData.indexOfCurrentTypeFilter = this.indexOfCurrentTypeFilter;
             transientUserData.resourceTypeSummary = this.resourceTypeSummary;
             transientUserData.lastWritePageNum = this.lastWritePageNum;
+            transientUserData.keysetLastUpdated = this.keysetLastUpdated;
+            transientUserData.keysetResourceId = this.keysetResourceId;
+            transientUserData.lastWriteKeysetLastUpdated = this.lastWriteKeysetLastUpdated;
+            transientUserData.lastWriteKeysetResourceId = this.lastWriteKeysetResourceId;
+            transientUserData.rangeIndex = this.rangeIndex;
+            transientUserData.numOfRanges = this.numOfRanges;
             return transientUserData;
         }
     }
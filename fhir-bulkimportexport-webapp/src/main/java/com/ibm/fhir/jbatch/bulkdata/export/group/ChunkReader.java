@@ -22,6 +22,7 @@ import javax.enterprise.context.Dependent;
 import javax.inject.Inject;
 
 import com.ibm.cloud.objectstorage.services.s3.model.PartETag;
+import com.ibm.fhir.jbatch.bulkdata.common.BulkDataUtils;
 import com.ibm.fhir.jbatch.bulkdata.common.Constants;
 import com.ibm.fhir.jbatch.bulkdata.export.common.TransientUserData;
 import com.ibm.fhir.model.resource.Group;
@@ -160,6 +161,7 @@ public class ChunkReader extends com.ibm.fhir.jbatch.bulkdata.export.patient.Chu
                 .lastPageNum(0)
                 .lastWritePageNum(1)
                 .build();
+            chunkData.setCompressed(BulkDataUtils.isCompressedExport(fhirExportCompression, fhirExportFormat));
 
             stepCtx.setTransientUserData(chunkData);
         } else {
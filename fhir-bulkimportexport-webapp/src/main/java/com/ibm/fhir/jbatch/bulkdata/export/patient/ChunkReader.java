@@ -7,9 +7,11 @@
 package com.ibm.fhir.jbatch.bulkdata.export.patient;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -45,7 +47,6 @@ import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
 import com.ibm.fhir.persistence.helper.FHIRPersistenceHelper;
 import com.ibm.fhir.persistence.helper.FHIRTransactionHelper;
-import com.ibm.fhir.search.compartment.CompartmentUtil;
 import com.ibm.fhir.search.context.FHIRSearchContext;
 import com.ibm.fhir.search.util.SearchUtil;
 
@@ -57,6 +58,9 @@ import com.ibm.fhir.search.util.SearchUtil;
 public class ChunkReader extends AbstractItemReader {
     private final static Logger logger = Logger.getLogger(ChunkReader.class.getName());
     protected int pageNum = 1;
+    // The (lastUpdated, resourceId) keyset of the last patient read; null to start from the beginning.
+    protected Instant keysetLastUpdated = null;
+    protected Long keysetResourceId = null;
     // Control the number of records to read in each "item".
     protected int pageSize;
 
@@ -66,10 +70,12 @@ public class ChunkReader extends AbstractItemReader {
     // Search parameters for resource types gotten from fhir.typeFilters job parameter.
     Map<Class<? extends Resource>, List<Map<String, List<String>>>> searchParametersForResoureTypes = null;
     // Used to prevent the same resource from being exported multiple times when multiple _typeFilter for the same
-    // resource type are used, which leads to multiple search requests which can have overlaps of resources,
-    // loadedResourceIds and isDoDuplicationCheck are always reset when moving to the next resource type.
+    // resource type are used, which leads to multiple search requests which can have overlaps of resources.
+    // The compartment inclusion criteria don't need this because they are searched for in a single query.
     Set<String> loadedResourceIds = new HashSet<>();
     boolean isDoDuplicationCheck = false;
+    // The number of resources copied to the chunk buffer by payload searches.
+    int payloadSubTotal = 0;
 
     /**
      * Fhir tenant id.
@@ -127,6 +133,13 @@ public class ChunkReader extends AbstractItemReader {
     @BatchProperty(name = Constants.EXPORT_FHIR_SEARCH_TYPEFILTERS)
     String fhirTypeFilters;
 
+    /**
+     * The compression of the exported NDJSON files, "gzip" or none.
+     */
+    @Inject
+    @BatchProperty(name = Constants.EXPORT_FHIR_COMPRESSION)
+    protected String fhirExportCompression;
+
     @Inject
     StepContext stepCtx;
 
@@ -137,13 +150,13 @@ public class ChunkReader extends AbstractItemReader {
     protected void fillChunkDataBuffer(List<String> patientIds) throws Exception {
         TransientUserData chunkData = (TransientUserData) stepCtx.getTransientUserData();
         int indexOfCurrentTypeFilter = 0;
-        int compartmentPageNum = 1;
         int resSubTotal = 0;
         FHIRSearchContext searchContext;
 
         if (chunkData != null) {
-            // TODO the following replaceAll can be dropped after issue(https://github.com/IBM/FHIR/issues/300) is fixed.
-            patientIds.replaceAll(x -> "Patient/" + x);
+            boolean isPayloadSearchSupported = !FHIRMediaType.APPLICATION_PARQUET.equals(fhirExportFormat)
+                    && fhirPersistence.isPayloadSearchSupported();
+            payloadSubTotal = 0;
             do {
                 Map<String, List<String>> queryParameters = new HashMap<>();
                 // Add the search parameters from the current typeFilter for current resource type.
@@ -165,71 +178,72 @@ public class ChunkReader extends AbstractItemReader {
                 if (!searchCriteria.isEmpty()) {
                     queryParameters.put(Constants.FHIR_SEARCH_LASTUPDATED, searchCriteria);
                 }
-                queryParameters.put("_sort", Arrays.asList(new String[] { Constants.FHIR_SEARCH_LASTUPDATED }));
-
-                List<String> compartmentSearchCriterias = CompartmentUtil.getCompartmentResourceTypeInclusionCriteria("Patient", resourceType.getSimpleName());
-                if (compartmentSearchCriterias.size() > 1) {
-                    isDoDuplicationCheck = true;
-                }
 
-                for (String compartmentSearchCriteria: compartmentSearchCriterias) {
-                    HashMap<String, List<String>> queryTmpParameters = new HashMap<>();
-                    queryTmpParameters.putAll(queryParameters);
-
-                    queryTmpParameters.put(compartmentSearchCriteria, Arrays.asList(new String[] {String.join(",", patientIds)}));
-                    searchContext = SearchUtil.parseQueryParameters(resourceType, queryTmpParameters);
-
-                    do {
-                        searchContext.setPageSize(pageSize);
-                        searchContext.setPageNumber(compartmentPageNum);
-                        FHIRTransactionHelper txn = new FHIRTransactionHelper(fhirPersistence.getTransaction());
-                        FHIRPersistenceContext persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext);
-
-                        List<Resource> resources;
-                        txn.begin();
-                        try {
+                // A single search over the Patient compartments of all the patients of the page, which ORs all the
+                // compartment inclusion criteria of the resource type and returns each matching resource only once.
+                searchContext = SearchUtil.parseCompartmentQueryParameters("Patient", patientIds, resourceType, queryParameters, false);
+                searchContext.setPageSize(pageSize);
+                searchContext.setKeysetPaging(true);
+
+                // Compartment resources are written from the stored JSON as is, unless exporting to parquet or
+                // the typeFilter asks for a subset of the elements.
+                boolean isPayloadExport = isPayloadSearchSupported
+                        && !searchContext.hasElementsParameters() && !searchContext.hasSummaryParameter();
+
+                List<Resource> resources;
+                int resultCount;
+                do {
+                    FHIRTransactionHelper txn = new FHIRTransactionHelper(fhirPersistence.getTransaction());
+                    FHIRPersistenceContext persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext);
+
+                    txn.begin();
+                    try {
+                        if (isPayloadExport) {
+                            resources = Collections.emptyList();
+                            resultCount = fhirPersistence.searchPayloads(persistenceContext, resourceType, this::writePayload);
+                        } else {
                             resources = fhirPersistence.search(persistenceContext, resourceType).getResource();
-                        } finally {
-                            txn.end();
+                            resultCount = resources.size();
                         }
-                        compartmentPageNum++;
+                    } finally {
+                        txn.end();
+                    }
 
-                        for (Resource res : resources) {
-                            if (res == null || (isDoDuplicationCheck && loadedResourceIds.contains(res.getId()))) {
-                                continue;
+                    for (Resource res : resources) {
+                        if (res == null || (isDoDuplicationCheck && loadedResourceIds.contains(res.getId()))) {
+                            continue;
+                        }
+                        try {
+                            // No need to fill buffer for parquet because the parquet writer writes to COS;
+                            // we don't need to control the Multi-part upload like in the NDJSON case
+                            if (!FHIRMediaType.APPLICATION_PARQUET.equals(fhirExportFormat)) {
+                                FHIRGenerator.generator(Format.JSON).generate(res, chunkData.getOutputStream());
+                                chunkData.getOutputStream().write(Constants.NDJSON_LINESEPERATOR);
+                            }
+                            resSubTotal++;
+                            if (isDoDuplicationCheck) {
+                                loadedResourceIds.add(res.getId());
                             }
-                            try {
-                                // No need to fill buffer for parquet because we're letting spark write to COS;
-                                // we don't need to control the Multi-part upload like in the NDJSON case
-                                if (!FHIRMediaType.APPLICATION_PARQUET.equals(fhirExportFormat)) {
-                                    FHIRGenerator.generator(Format.JSON).generate(res, chunkData.getBufferStream());
-                                    chunkData.getBufferStream().write(Constants.NDJSON_LINESEPERATOR);
-                                }
-                                resSubTotal++;
-                                if (isDoDuplicationCheck) {
-                                    loadedResourceIds.add(res.getId());
-                                }
-                            } catch (FHIRGeneratorException e) {
-                                if (res.getId() != null) {
-                                    logger.log(Level.WARNING, "fillChunkDataBuffer: Error while writing resources with id '"
-                                            + res.getId() + "'", e);
-                                } else {
-                                    logger.log(Level.WARNING,
-                                            "fillChunkDataBuffer: Error while writing resources with unknown id", e);
-                                }
-                            } catch (IOException e) {
-                                logger.warning("fillChunkDataBuffer: chunkDataBuffer written error!");
-                                throw e;
+                        } catch (FHIRGeneratorException e) {
+                            if (res.getId() != null) {
+                                logger.log(Level.WARNING, "fillChunkDataBuffer: Error while writing resources with id '"
+                                        + res.getId() + "'", e);
+                            } else {
+                                logger.log(Level.WARNING,
+                                        "fillChunkDataBuffer: Error while writing resources with unknown id", e);
                             }
+                        } catch (IOException e) {
+                            logger.warning("fillChunkDataBuffer: chunkDataBuffer written error!");
+                            throw e;
                         }
+                    }
 
-                    } while (searchContext.getLastPageNumber() >= compartmentPageNum);
-                    compartmentPageNum = 1;
-                }
+                } while (resultCount >= pageSize);
 
                 indexOfCurrentTypeFilter++;
             } while (searchParametersForResoureTypes.get(resourceType) != null && indexOfCurrentTypeFilter < searchParametersForResoureTypes.get(resourceType).size());
 
+            resSubTotal += payloadSubTotal;
             chunkData.setCurrentUploadResourceNum(chunkData.getCurrentUploadResourceNum() + resSubTotal);
             chunkData.setTotalResourcesNum(chunkData.getTotalResourcesNum() + resSubTotal);
             if (logger.isLoggable(Level.FINE)) {
@@ -245,16 +259,27 @@ public class ChunkReader extends AbstractItemReader {
     }
 
 
+    /**
+     * Copies the stored JSON of a resource straight into the chunk buffer, skipping parse and generate.
+     */
+    private void writePayload(String logicalId, InputStream payload) throws IOException {
+        if (isDoDuplicationCheck && !loadedResourceIds.add(logicalId)) {
+            return;
+        }
+        ((TransientUserData) stepCtx.getTransientUserData()).appendNdjsonLine(payload);
+        payloadSubTotal++;
+    }
+
     protected void fillChunkPatientDataBuffer(List<Resource> patients) throws Exception {
         int resSubTotal = 0;
         TransientUserData chunkData = (TransientUserData) stepCtx.getTransientUserData();
         for (Resource res : patients) {
             try {
-                // No need to fill buffer for parquet because we're letting spark write to COS;
+                // No need to fill buffer for parquet because the parquet writer writes to COS;
                 // we don't need to control the Multi-part upload like in the NDJSON case
                 if (!FHIRMediaType.APPLICATION_PARQUET.equals(fhirExportFormat)) {
-                    FHIRGenerator.generator(Format.JSON).generate(res, chunkData.getBufferStream());
-                    chunkData.getBufferStream().write(Constants.NDJSON_LINESEPERATOR);
+                    FHIRGenerator.generator(Format.JSON).generate(res, chunkData.getOutputStream());
+                    chunkData.getOutputStream().write(Constants.NDJSON_LINESEPERATOR);
                 }
                 resSubTotal++;
             } catch (FHIRGeneratorException e) {
@@ -312,10 +337,11 @@ public class ChunkReader extends AbstractItemReader {
             queryParameters.put(Constants.FHIR_SEARCH_LASTUPDATED, searchCreterial);
         }
 
-        queryParameters.put("_sort", Arrays.asList(new String[] { Constants.FHIR_SEARCH_LASTUPDATED }));
+        // Page by (lastUpdated, resourceId) keyset, which also orders the patients by lastUpdated
         searchContext = SearchUtil.parseQueryParameters(Patient.class, queryParameters);
         searchContext.setPageSize(pageSize);
-        searchContext.setPageNumber(pageNum);
+        searchContext.setKeysetPaging(true);
+        searchContext.setKeyset(keysetLastUpdated, keysetResourceId);
         List<Resource> resources = null;
         FHIRTransactionHelper txn = new FHIRTransactionHelper(fhirPersistence.getTransaction());
         txn.begin();
@@ -326,6 +352,10 @@ public class ChunkReader extends AbstractItemReader {
         } finally {
             txn.end();
         }
+        keysetLastUpdated = searchContext.getKeysetLastUpdated();
+        keysetResourceId = searchContext.getKeysetResourceId();
+        // Keyset searches don't count the results; a short page is the last one.
+        int lastPageNum = (resources == null || resources.size() < pageSize) ? pageNum : pageNum + 1;
         pageNum++;
 
         if (chunkData == null) {
@@ -340,14 +370,19 @@ public class ChunkReader extends AbstractItemReader {
                     .currentUploadResourceNum(0)
                     .currentUploadSize(0)
                     .uploadCount(1)
-                    .lastPageNum(searchContext.getLastPageNumber())
+                    .lastPageNum(lastPageNum)
                     .lastWritePageNum(1)
+                    .keysetLastUpdated(keysetLastUpdated)
+                    .keysetResourceId(keysetResourceId)
                     .build();
+            chunkData.setCompressed(BulkDataUtils.isCompressedExport(fhirExportCompression, fhirExportFormat));
 
             stepCtx.setTransientUserData(chunkData);
         } else {
             chunkData.setPageNum(pageNum);
-            chunkData.setLastPageNum(searchContext.getLastPageNumber());
+            chunkData.setLastPageNum(lastPageNum);
+            chunkData.setKeysetLastUpdated(keysetLastUpdated);
+            chunkData.setKeysetResourceId(keysetResourceId);
         }
 
         if (resources != null) {
@@ -371,7 +406,11 @@ public class ChunkReader extends AbstractItemReader {
         if (checkpoint != null) {
             CheckPointUserData checkPointData = (CheckPointUserData) checkpoint;
             pageNum = checkPointData.getLastWritePageNum();
-            stepCtx.setTransientUserData(TransientUserData.fromCheckPointUserData(checkPointData));
+            keysetLastUpdated = checkPointData.getLastWriteKeysetLastUpdated();
+            keysetResourceId = checkPointData.getLastWriteKeysetResourceId();
+            TransientUserData chunkData = TransientUserData.fromCheckPointUserData(checkPointData);
+            chunkData.setCompressed(BulkDataUtils.isCompressedExport(fhirExportCompression, fhirExportFormat));
+            stepCtx.setTransientUserData(chunkData);
         }
 
         if (fhirTenant == null) {
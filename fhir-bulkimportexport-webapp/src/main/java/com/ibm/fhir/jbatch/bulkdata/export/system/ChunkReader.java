@@ -7,9 +7,11 @@
 package com.ibm.fhir.jbatch.bulkdata.export.system;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -52,6 +54,9 @@ public class ChunkReader extends AbstractItemReader {
     private final static Logger logger = Logger.getLogger(ChunkReader.class.getName());
     boolean isSingleCosObject = false;
     int pageNum = 1;
+    // The (lastUpdated, resourceId) keyset of the last resource read; null to start from the beginning.
+    Instant keysetLastUpdated = null;
+    Long keysetResourceId = null;
     // Control the number of records to read in each "item".
     int pageSize = Constants.DEFAULT_SEARCH_PAGE_SIZE;
     // Search parameters for resource types gotten from fhir.typeFilters job parameter.
@@ -63,6 +68,8 @@ public class ChunkReader extends AbstractItemReader {
     // loadedResourceIds and isDoDuplicationCheck are always reset when moving to the next resource type.
     Set<String> loadedResourceIds = new HashSet<>();
     boolean isDoDuplicationCheck = false;
+    // The number of resources copied to the chunk buffer by the current payload search.
+    int payloadSubTotal = 0;
 
     FHIRPersistence fhirPersistence;
     Class<? extends Resource> resourceType;
@@ -109,6 +116,28 @@ public class ChunkReader extends AbstractItemReader {
     @BatchProperty(name = Constants.EXPORT_FHIR_SEARCH_TODATE)
     String fhirSearchToDate;
 
+    /**
+     * The _lastUpdated range of the resource type to process.
+     */
+    @Inject
+    @BatchProperty(name = Constants.EXPORT_PARTITTION_LASTUPDATED_START)
+    String partitionLastUpdatedStart;
+
+    @Inject
+    @BatchProperty(name = Constants.EXPORT_PARTITTION_LASTUPDATED_END)
+    String partitionLastUpdatedEnd;
+
+    /**
+     * The index of the range and the number of ranges the resource type is split into.
+     */
+    @Inject
+    @BatchProperty(name = Constants.EXPORT_PARTITTION_RANGEINDEX)
+    String partitionRangeIndex;
+
+    @Inject
+    @BatchProperty(name = Constants.EXPORT_PARTITTION_NUMOFRANGES)
+    String partitionNumOfRanges;
+
     /**
      * Fhir export type filters.
      */
@@ -123,6 +152,13 @@ public class ChunkReader extends AbstractItemReader {
     @BatchProperty(name = Constants.EXPORT_FHIR_SEARCH_PAGESIZE)
     String fhirSearchPageSize;
 
+    /**
+     * The compression of the exported NDJSON files, "gzip" or none.
+     */
+    @Inject
+    @BatchProperty(name = Constants.EXPORT_FHIR_COMPRESSION)
+    String fhirExportCompression;
+
     @Inject
     StepContext stepCtx;
 
@@ -144,11 +180,11 @@ public class ChunkReader extends AbstractItemReader {
             }
 
             try {
-                // No need to fill buffer for parquet because we're letting spark write to COS;
+                // No need to fill buffer for parquet because the parquet writer writes to COS;
                 // we don't need to control the Multi-part upload like in the NDJSON case
                 if (!FHIRMediaType.APPLICATION_PARQUET.equals(fhirExportFormat)) {
-                    FHIRGenerator.generator(Format.JSON).generate(res, chunkData.getBufferStream());
-                    chunkData.getBufferStream().write(Constants.NDJSON_LINESEPERATOR);
+                    FHIRGenerator.generator(Format.JSON).generate(res, chunkData.getOutputStream());
+                    chunkData.getOutputStream().write(Constants.NDJSON_LINESEPERATOR);
                 }
                 resSubTotal++;
                 if (isDoDuplicationCheck && res.getId() != null) {
@@ -168,6 +204,21 @@ public class ChunkReader extends AbstractItemReader {
                 throw e;
             }
         }
+        updateChunkDataCounts(chunkData, resSubTotal);
+    }
+
+    /**
+     * Copies the stored JSON of a resource straight into the chunk buffer, skipping parse and generate.
+     */
+    private void writePayload(String logicalId, InputStream payload) throws IOException {
+        if (isDoDuplicationCheck && !loadedResourceIds.add(logicalId)) {
+            return;
+        }
+        ((TransientUserData) stepCtx.getTransientUserData()).appendNdjsonLine(payload);
+        payloadSubTotal++;
+    }
+
+    private void updateChunkDataCounts(TransientUserData chunkData, int resSubTotal) {
         chunkData.setCurrentUploadResourceNum(chunkData.getCurrentUploadResourceNum() + resSubTotal);
         chunkData.setCurrentUploadSize(chunkData.getCurrentUploadSize() + chunkData.getBufferStream().size());
         chunkData.setTotalResourcesNum(chunkData.getTotalResourcesNum() + resSubTotal);
@@ -184,8 +235,10 @@ public class ChunkReader extends AbstractItemReader {
                 chunkData.setMoreToExport(false);
                 return null;
             } else {
-                // If there is more typeFilter to process for current resource type, then reset pageNum only and move to the next typeFilter.
+                // If there is more typeFilter to process for current resource type, then reset pageNum and keyset only and move to the next typeFilter.
                 pageNum = 1;
+                keysetLastUpdated = null;
+                keysetResourceId = null;
                 indexOfCurrentTypeFilter++;
             }
         }
@@ -210,25 +263,22 @@ public class ChunkReader extends AbstractItemReader {
         if (fhirSearchToDate != null) {
             searchCriteria.add("lt" + fhirSearchToDate);
         }
+        if (partitionLastUpdatedStart != null && !partitionLastUpdatedStart.isEmpty()) {
+            searchCriteria.add("ge" + partitionLastUpdatedStart);
+        }
+        if (partitionLastUpdatedEnd != null && !partitionLastUpdatedEnd.isEmpty()) {
+            searchCriteria.add("lt" + partitionLastUpdatedEnd);
+        }
 
         if (!searchCriteria.isEmpty()) {
             queryParameters.put(Constants.FHIR_SEARCH_LASTUPDATED, searchCriteria);
         }
 
-        queryParameters.put("_sort", Arrays.asList(new String[] { Constants.FHIR_SEARCH_LASTUPDATED }));
+        // Page by (lastUpdated, resourceId) keyset, which also orders the results by lastUpdated
         searchContext = SearchUtil.parseQueryParameters(resourceType, queryParameters);
         searchContext.setPageSize(pageSize);
-        searchContext.setPageNumber(pageNum);
-        List<Resource> resources = null;
-        FHIRTransactionHelper txn = new FHIRTransactionHelper(fhirPersistence.getTransaction());
-        txn.begin();
-        try {
-            persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext);
-            resources = fhirPersistence.search(persistenceContext, resourceType).getResource();
-        } finally {
-            txn.end();
-        }
-        pageNum++;
+        searchContext.setKeysetPaging(true);
+        searchContext.setKeyset(keysetLastUpdated, keysetResourceId);
 
         if (chunkData == null) {
             chunkData = (TransientUserData)TransientUserData.Builder.builder()
@@ -242,25 +292,56 @@ public class ChunkReader extends AbstractItemReader {
                     .currentUploadResourceNum(0)
                     .currentUploadSize(0)
                     .uploadCount(1)
-                    .lastPageNum(searchContext.getLastPageNumber())
                     .lastWritePageNum(1)
+                    .rangeIndex(partitionRangeIndex == null || partitionRangeIndex.isEmpty() ? 0 : Integer.parseInt(partitionRangeIndex))
+                    .numOfRanges(partitionNumOfRanges == null || partitionNumOfRanges.isEmpty() ? 1 : Integer.parseInt(partitionNumOfRanges))
                     .build();
+            chunkData.setCompressed(BulkDataUtils.isCompressedExport(fhirExportCompression, fhirExportFormat));
 
             stepCtx.setTransientUserData(chunkData);
-        } else {
-            chunkData.setPageNum(pageNum);
-            chunkData.setIndexOfCurrentTypeFilter(indexOfCurrentTypeFilter);
-            chunkData.setLastPageNum(searchContext.getLastPageNumber());
         }
 
-        if (resources != null) {
-            if (logger.isLoggable(Level.FINE)) {
-                logger.fine("readItem: loaded " + resources.size() + " resources");
+        // Without element filtering, NDJSON can be written from the stored JSON as is.
+        boolean isPayloadExport = !FHIRMediaType.APPLICATION_PARQUET.equals(fhirExportFormat)
+                && fhirPersistence.isPayloadSearchSupported()
+                && !searchContext.hasElementsParameters() && !searchContext.hasSummaryParameter();
+
+        List<Resource> resources = null;
+        int resultCount;
+        FHIRTransactionHelper txn = new FHIRTransactionHelper(fhirPersistence.getTransaction());
+        txn.begin();
+        try {
+            persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext);
+            if (isPayloadExport) {
+                payloadSubTotal = 0;
+                resultCount = fhirPersistence.searchPayloads(persistenceContext, resourceType, this::writePayload);
+            } else {
+                resources = fhirPersistence.search(persistenceContext, resourceType).getResource();
+                resultCount = resources.size();
             }
-            fillChunkDataBuffer(resources);
-        } else {
-            logger.fine("readItem: End of reading!");
+        } finally {
+            txn.end();
         }
+        keysetLastUpdated = searchContext.getKeysetLastUpdated();
+        keysetResourceId = searchContext.getKeysetResourceId();
+        // Keyset searches don't count the results; a short page is the last one.
+        int lastPageNum = resultCount < pageSize ? pageNum : pageNum + 1;
+        pageNum++;
+
+        chunkData.setPageNum(pageNum);
+        chunkData.setIndexOfCurrentTypeFilter(indexOfCurrentTypeFilter);
+        chunkData.setLastPageNum(lastPageNum);
+        chunkData.setKeysetLastUpdated(keysetLastUpdated);
+        chunkData.setKeysetResourceId(keysetResourceId);
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("readItem: loaded " + resultCount + " resources");
+        }
+        if (isPayloadExport) {
+            updateChunkDataCounts(chunkData, payloadSubTotal);
+            return Collections.emptyList();
+        }
+        fillChunkDataBuffer(resources);
 
         return resources;
     }
@@ -270,8 +351,12 @@ public class ChunkReader extends AbstractItemReader {
         if (checkpoint != null) {
             CheckPointUserData checkPointData = (CheckPointUserData) checkpoint;
             pageNum = checkPointData.getLastWritePageNum();
+            keysetLastUpdated = checkPointData.getLastWriteKeysetLastUpdated();
+            keysetResourceId = checkPointData.getLastWriteKeysetResourceId();
             indexOfCurrentTypeFilter = checkPointData.getIndexOfCurrentTypeFilter();
-            stepCtx.setTransientUserData(TransientUserData.fromCheckPointUserData(checkPointData));
+            TransientUserData chunkData = TransientUserData.fromCheckPointUserData(checkPointData);
+            chunkData.setCompressed(BulkDataUtils.isCompressedExport(fhirExportCompression, fhirExportFormat));
+            stepCtx.setTransientUserData(chunkData);
         }
 
         if (fhirTenant == null) {
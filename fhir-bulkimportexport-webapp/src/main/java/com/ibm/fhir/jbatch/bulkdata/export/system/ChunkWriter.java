@@ -9,6 +9,10 @@ package com.ibm.fhir.jbatch.bulkdata.export.system;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -29,7 +33,7 @@ import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.core.FHIRMediaType;
 import com.ibm.fhir.jbatch.bulkdata.common.BulkDataUtils;
 import com.ibm.fhir.jbatch.bulkdata.common.Constants;
-import com.ibm.fhir.jbatch.bulkdata.export.common.SparkParquetWriter;
+import com.ibm.fhir.jbatch.bulkdata.export.common.FHIRParquetWriter;
 import com.ibm.fhir.jbatch.bulkdata.export.common.TransientUserData;
 import com.ibm.fhir.model.resource.Resource;
 
@@ -41,7 +45,7 @@ import com.ibm.fhir.model.resource.Resource;
 public class ChunkWriter extends AbstractItemWriter {
     private static final Logger logger = Logger.getLogger(ChunkWriter.class.getName());
     private AmazonS3 cosClient = null;
-    private SparkParquetWriter parquetWriter = null;
+    private FHIRParquetWriter parquetWriter = null;
     private boolean isExportPublic = true;
 
     /**
@@ -107,6 +111,27 @@ public class ChunkWriter extends AbstractItemWriter {
     @BatchProperty(name = Constants.EXPORT_FHIR_FORMAT)
     String fhirExportFormat;
 
+    /**
+     * The export storage type, "file" to write the exported files to the export directory instead of COS/S3.
+     */
+    @Inject
+    @BatchProperty(name = Constants.EXPORT_FHIR_STORAGE_TYPE)
+    String exportStorageType;
+
+    /**
+     * The directory of the exported files when exporting to the file system.
+     */
+    @Inject
+    @BatchProperty(name = Constants.EXPORT_FHIR_DIRECTORY)
+    String exportDirectory;
+
+    /**
+     * The compression of the exported NDJSON files, "gzip" or none.
+     */
+    @Inject
+    @BatchProperty(name = Constants.EXPORT_FHIR_COMPRESSION)
+    String fhirExportCompression;
+
     @Inject
     StepContext stepCtx;
 
@@ -132,15 +157,11 @@ public class ChunkWriter extends AbstractItemWriter {
             throw new Exception("pushFhirJsons2Cos: chunkData is null, this should never happen!");
         }
 
-        String itemName;
-        if (cosBucketPathPrefix != null && cosBucketPathPrefix.trim().length() > 0) {
-          itemName = cosBucketPathPrefix + "/" + fhirResourceType + "_" + chunkData.getUploadCount() + ".ndjson";
-        } else {
-          itemName = "job" + jobContext.getExecutionId() + "/" + fhirResourceType + "_" + chunkData.getUploadCount() + ".ndjson";
-        }
+        String itemName = getPathPrefix() + "/" + getNdjsonFileName(chunkData);
 
         if (chunkData.getUploadId() == null) {
-            chunkData.setUploadId(BulkDataUtils.startPartUpload(cosClient, cosBucketName, itemName, isExportPublic));
+            chunkData.setUploadId(BulkDataUtils.startPartUpload(cosClient, cosBucketName, itemName, isExportPublic,
+                    chunkData.isCompressed() ? Constants.EXPORT_COMPRESSION_GZIP : null));
         }
 
         chunkData.getCosDataPacks().add(BulkDataUtils.multiPartUpload(cosClient, cosBucketName, itemName,
@@ -153,19 +174,7 @@ public class ChunkWriter extends AbstractItemWriter {
         if (chunkData.getPageNum() > chunkData.getLastPageNum() || chunkData.isFinishCurrentUpload()) {
             BulkDataUtils.finishMultiPartUpload(cosClient, cosBucketName, itemName, chunkData.getUploadId(),
                     chunkData.getCosDataPacks());
-            // Partition status for the exported resources, e.g, Patient[1000,1000,200]
-            if (chunkData.getResourceTypeSummary() == null) {
-                chunkData.setResourceTypeSummary(fhirResourceType + "[" + chunkData.getCurrentUploadResourceNum());
-                if (chunkData.getPageNum() > chunkData.getLastPageNum()) {
-                    chunkData.setResourceTypeSummary(chunkData.getResourceTypeSummary() + "]");
-                }
-            } else {
-                chunkData.setResourceTypeSummary(chunkData.getResourceTypeSummary() + "," + chunkData.getCurrentUploadResourceNum());
-                if (chunkData.getPageNum() > chunkData.getLastPageNum()) {
-                    chunkData.setResourceTypeSummary(chunkData.getResourceTypeSummary() + "]");
-                    stepCtx.setTransientUserData(chunkData);
-                }
-            }
+            updateResourceTypeSummary(chunkData);
 
             if (chunkData.getPageNum() <= chunkData.getLastPageNum()) {
                 chunkData.setPartNum(1);
@@ -179,23 +188,37 @@ public class ChunkWriter extends AbstractItemWriter {
         }
     }
 
-    private void pushFhirParquetToCos(List<Resource> resources) throws Exception {
-        TransientUserData chunkData = (TransientUserData) stepCtx.getTransientUserData();
-        if (chunkData == null) {
-            logger.warning("pushFhirParquet2Cos: chunkData is null, this should never happen!");
-            throw new Exception("pushFhirParquet2Cos: chunkData is null, this should never happen!");
-        }
+    /**
+     * Appends the buffered NDJSON to the .part file of the current upload with a FileChannel, and renames the .part file
+     * once the upload is finished, so only complete files are ever visible under their final name.
+     */
+    private void pushFhirJsonsToFile(TransientUserData chunkData) throws Exception {
+        Path file = Paths.get(exportDirectory, getPathPrefix(), getNdjsonFileName(chunkData));
+        Path partFile = file.resolveSibling(file.getFileName() + ".part");
+        int dataLength = chunkData.getBufferStream().size();
+        chunkData.setCurrentUploadFileSize(BulkDataUtils.appendToFile(partFile, file, chunkData.getCurrentUploadFileSize(),
+                chunkData.getBufferStream()));
+        logger.info("pushFhirJsonsToFile: " + dataLength + " bytes were successfully appended to file - " + partFile);
+        chunkData.getBufferStream().reset();
 
-        String itemName;
-        if (cosBucketPathPrefix != null && cosBucketPathPrefix.trim().length() > 0) {
-          itemName = "cos://" + cosBucketName + ".fhir/" + cosBucketPathPrefix + "/" + fhirResourceType + "_" + chunkData.getUploadCount() + ".parquet";
-        } else {
-          itemName = "cos://" + cosBucketName + ".fhir/job" + jobContext.getExecutionId() + "/" + fhirResourceType + "_" + chunkData.getUploadCount() + ".parquet";
-        }
+        if (chunkData.getPageNum() > chunkData.getLastPageNum() || chunkData.isFinishCurrentUpload()) {
+            BulkDataUtils.finishFileUpload(partFile, file);
+            updateResourceTypeSummary(chunkData);
 
-        parquetWriter.writeParquet(resources, itemName);
+            if (chunkData.getPageNum() <= chunkData.getLastPageNum()) {
+                chunkData.setCurrentUploadResourceNum(0);
+                chunkData.setCurrentUploadSize(0);
+                chunkData.setCurrentUploadFileSize(0);
+                chunkData.setFinishCurrentUpload(false);
+                chunkData.setUploadCount(chunkData.getUploadCount() + 1);
+            }
+        }
+    }
 
-        // Partition status for the exported resources, e.g, Patient[1000,1000,200]
+    /**
+     * Adds the number of resources of the finished upload to the partition status, e.g, Patient[1000,1000,200]
+     */
+    private void updateResourceTypeSummary(TransientUserData chunkData) {
         if (chunkData.getResourceTypeSummary() == null) {
             chunkData.setResourceTypeSummary(fhirResourceType + "[" + chunkData.getCurrentUploadResourceNum());
             if (chunkData.getPageNum() > chunkData.getLastPageNum()) {
@@ -208,6 +231,53 @@ public class ChunkWriter extends AbstractItemWriter {
                 stepCtx.setTransientUserData(chunkData);
             }
         }
+    }
+
+    /**
+     * The files of the _lastUpdated ranges of a split resource type are renamed by ExportPartitionAnalyzer once all the
+     * ranges are exported, e.g, Observation_range1_1.ndjson to Observation_3.ndjson.
+     * Gzipped files are named .ndjson.gz instead.
+     */
+    private String getNdjsonFileName(TransientUserData chunkData) {
+        String extension = chunkData.isCompressed() ? ".ndjson.gz" : ".ndjson";
+        if (chunkData.getNumOfRanges() > 1) {
+            return fhirResourceType + "_range" + chunkData.getRangeIndex() + "_" + chunkData.getUploadCount() + extension;
+        }
+        return fhirResourceType + "_" + chunkData.getUploadCount() + extension;
+    }
+
+    private String getPathPrefix() {
+        if (cosBucketPathPrefix != null && cosBucketPathPrefix.trim().length() > 0) {
+            return cosBucketPathPrefix;
+        }
+        return "job" + jobContext.getExecutionId();
+    }
+
+    private boolean isExportToFile() {
+        return Constants.EXPORT_STORAGE_TYPE_FILE.equals(exportStorageType);
+    }
+
+    private void pushFhirParquet(List<Resource> resources) throws Exception {
+        TransientUserData chunkData = (TransientUserData) stepCtx.getTransientUserData();
+        if (chunkData == null) {
+            logger.warning("pushFhirParquet: chunkData is null, this should never happen!");
+            throw new Exception("pushFhirParquet: chunkData is null, this should never happen!");
+        }
+
+        String fileName = fhirResourceType + "_" + chunkData.getUploadCount() + ".parquet";
+        if (isExportToFile()) {
+            Path file = Paths.get(exportDirectory, getPathPrefix(), fileName);
+            Path partFile = file.resolveSibling(file.getFileName() + ".part");
+            Files.createDirectories(file.getParent());
+            parquetWriter.writeParquet(resources, partFile.toString());
+            // Drop the checksum file of the local hadoop file system, it doesn't match the final file name.
+            Files.deleteIfExists(partFile.resolveSibling("." + partFile.getFileName() + ".crc"));
+            Files.move(partFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            parquetWriter.writeParquet(resources, "cos://" + cosBucketName + ".fhir/" + getPathPrefix() + "/" + fileName);
+        }
+
+        updateResourceTypeSummary(chunkData);
         if (chunkData.getPageNum() <= chunkData.getLastPageNum()) {
             chunkData.setPartNum(1);
             chunkData.setUploadId(null);
@@ -223,13 +293,15 @@ public class ChunkWriter extends AbstractItemWriter {
      */
     @Override
     public void writeItems(List<java.lang.Object> resourceLists) throws Exception {
-        if (cosBucketName == null) {
-            cosBucketName = Constants.DEFAULT_COS_BUCKETNAME;
-        }
-        cosBucketName = cosBucketName.toLowerCase();
-        if (!cosClient.doesBucketExistV2(cosBucketName)) {
-            CreateBucketRequest req = new CreateBucketRequest(cosBucketName);
-            cosClient.createBucket(req);
+        if (!isExportToFile()) {
+            if (cosBucketName == null) {
+                cosBucketName = Constants.DEFAULT_COS_BUCKETNAME;
+            }
+            cosBucketName = cosBucketName.toLowerCase();
+            if (!cosClient.doesBucketExistV2(cosBucketName)) {
+                CreateBucketRequest req = new CreateBucketRequest(cosBucketName);
+                cosClient.createBucket(req);
+            }
         }
 
         TransientUserData chunkData = (TransientUserData) stepCtx.getTransientUserData();
@@ -257,8 +329,8 @@ public class ChunkWriter extends AbstractItemWriter {
                             }
                         }
                     }
-                    pushFhirParquetToCos(resources);
-                    chunkData.setLastWritePageNum(chunkData.getPageNum());
+                    pushFhirParquet(resources);
+                    chunkData.markLastWrite();
                 }
                 break;
             case FHIRMediaType.APPLICATION_NDJSON:
@@ -267,10 +339,16 @@ public class ChunkWriter extends AbstractItemWriter {
                         || chunkData.getBufferStream().size() > Constants.COS_PART_MINIMALSIZE
                         || chunkData.isFinishCurrentUpload();
                 if (isTimeToWrite && chunkData.getBufferStream().size() > 0) {
-                    // TODO try PipedOutputStream -> PipedInputStream instead?
-                    pushFhirJsonsToCos(new ByteArrayInputStream(chunkData.getBufferStream().toByteArray()),
-                            chunkData.getBufferStream().size());
-                    chunkData.setLastWritePageNum(chunkData.getPageNum());
+                    // Each write is a complete gzip member, so it doesn't depend on the state of the partition.
+                    chunkData.finishCompression();
+                    if (isExportToFile()) {
+                        pushFhirJsonsToFile(chunkData);
+                    } else {
+                        // TODO try PipedOutputStream -> PipedInputStream instead?
+                        pushFhirJsonsToCos(new ByteArrayInputStream(chunkData.getBufferStream().toByteArray()),
+                                chunkData.getBufferStream().size());
+                    }
+                    chunkData.markLastWrite();
                 }
             }
         } catch (Exception e) {
@@ -281,6 +359,20 @@ public class ChunkWriter extends AbstractItemWriter {
 
     @Override
     public void open(Serializable checkpoint) throws Exception  {
+        if (isExportToFile()) {
+            if (exportDirectory == null || exportDirectory.trim().isEmpty()) {
+                logger.warning("open: No export directory!");
+                throw new Exception("No export directory!!");
+            }
+            try {
+                Class.forName("org.apache.parquet.hadoop.ParquetWriter");
+                parquetWriter = new FHIRParquetWriter();
+            } catch (ClassNotFoundException e) {
+                logger.info("No ParquetWriter in classpath; skipping FHIRParquetWriter initialization");
+            }
+            return;
+        }
+
         isExportPublic = FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_BULKDATA_BATCHJOB_ISEXPORTPUBLIC, true);
         boolean isCosClientUseFhirServerTrustStore = FHIRConfigHelper
                 .getBooleanProperty(FHIRConfiguration.PROPERTY_BULKDATA_BATCHJOB_USEFHIRSERVERTRUSTSTORE, false);
@@ -288,10 +380,10 @@ public class ChunkWriter extends AbstractItemWriter {
                 cosLocation, isCosClientUseFhirServerTrustStore);
 
         try {
-            Class.forName("org.apache.spark.sql.SparkSession");
-            parquetWriter = new SparkParquetWriter("Y".equalsIgnoreCase(cosCredentialIbm), cosEndpointUrl, cosApiKeyProperty, cosSrvinstId);
+            Class.forName("org.apache.parquet.hadoop.ParquetWriter");
+            parquetWriter = new FHIRParquetWriter("Y".equalsIgnoreCase(cosCredentialIbm), cosEndpointUrl, cosApiKeyProperty, cosSrvinstId);
         } catch (ClassNotFoundException e) {
-            logger.info("No SparkSession in classpath; skipping SparkParquetWriter initialization");
+            logger.info("No ParquetWriter in classpath; skipping FHIRParquetWriter initialization");
         }
 
         if (cosClient == null) {
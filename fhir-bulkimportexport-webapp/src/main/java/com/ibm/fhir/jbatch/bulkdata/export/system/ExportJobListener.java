@@ -21,8 +21,6 @@ import javax.batch.runtime.context.JobContext;
 import javax.enterprise.context.Dependent;
 import javax.inject.Inject;
 
-import org.apache.spark.sql.SparkSession;
-
 import com.ibm.fhir.jbatch.bulkdata.common.Constants;
 import com.ibm.fhir.jbatch.bulkdata.export.common.CheckPointUserData;
 
@@ -40,25 +38,9 @@ public class ExportJobListener implements JobListener {
     String dataSourcesInfo;
 
     public ExportJobListener() {
-        try {
-            Class.forName("org.apache.spark.sql.SparkSession");
-
-            // Create the global spark session
-            SparkSession.builder()
-                .appName("parquetWriter")
-                // local : Run Spark locally with one worker thread (i.e. no parallelism at all).
-                // local[*] : Run Spark locally with as many worker threads as logical cores on your machine.
-                .master("local[*]")
-                // this undocumented feature allows us to avoid a bunch of unneccessary dependencies and avoid
-                // launching the unnecessary SparkUI stuff, but there is some risk in using it as its undocumented.
-                .config("spark.ui.enabled", false)
-                .getOrCreate();
-        } catch (ClassNotFoundException e) {
-            logger.info("No SparkSession in classpath; skipping spark session initialization");
-        }
+        // No-op
     }
 
-
     @Override
     public void afterJob() {
         long currentExecutionEndTimeInMS = TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
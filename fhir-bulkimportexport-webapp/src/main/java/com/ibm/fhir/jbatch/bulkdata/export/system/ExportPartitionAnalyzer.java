@@ -7,23 +7,134 @@
 package com.ibm.fhir.jbatch.bulkdata.export.system;
 
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import javax.batch.api.BatchProperty;
 import javax.batch.api.partition.PartitionAnalyzer;
 import javax.batch.runtime.BatchStatus;
 import javax.batch.runtime.context.JobContext;
+import javax.batch.runtime.context.StepContext;
 import javax.enterprise.context.Dependent;
 import javax.inject.Inject;
 
+import com.ibm.cloud.objectstorage.services.s3.AmazonS3;
+import com.ibm.cloud.objectstorage.services.s3.model.CannedAccessControlList;
+import com.ibm.cloud.objectstorage.services.s3.model.CopyObjectRequest;
+import com.ibm.fhir.config.FHIRConfigHelper;
+import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.jbatch.bulkdata.common.BulkDataUtils;
+import com.ibm.fhir.jbatch.bulkdata.common.Constants;
 import com.ibm.fhir.jbatch.bulkdata.export.common.CheckPointUserData;
 
 @Dependent
 public class ExportPartitionAnalyzer implements PartitionAnalyzer {
+    private static final Logger logger = Logger.getLogger(ExportPartitionAnalyzer.class.getName());
+
     @Inject
     JobContext jobContext;
 
+    @Inject
+    StepContext stepContext;
+
+    /**
+     * The IBM COS API key or S3 access key.
+     */
+    @Inject
+    @BatchProperty(name = Constants.COS_API_KEY)
+    String cosApiKeyProperty;
+
+    /**
+     * The IBM COS service instance id or s3 secret key.
+     */
+    @Inject
+    @BatchProperty(name = Constants.COS_SRVINST_ID)
+    String cosSrvinstId;
+
+    /**
+     * The Cos End point URL.
+     */
+    @Inject
+    @BatchProperty(name = Constants.COS_ENDPOINT_URL)
+    String cosEndpointUrl;
+
+    /**
+     * The Cos End point location.
+     */
+    @Inject
+    @BatchProperty(name = Constants.COS_LOCATION)
+    String cosLocation;
+
+    /**
+     * The Cos bucket name.
+     */
+    @Inject
+    @BatchProperty(name = Constants.COS_BUCKET_NAME)
+    String cosBucketName;
+
+    /**
+     * The Cos bucket path prefix.
+     */
+    @Inject
+    @BatchProperty(name = Constants.EXPORT_COS_OBJECT_PATHPREFIX)
+    String cosBucketPathPrefix;
+
+    /**
+     * If use IBM credential or Amazon secret keys.
+     */
+    @Inject
+    @BatchProperty(name = Constants.COS_IS_IBM_CREDENTIAL)
+    String cosCredentialIbm;
+
+    /**
+     * The export storage type, "file" to write the exported files to the export directory instead of COS/S3.
+     */
+    @Inject
+    @BatchProperty(name = Constants.EXPORT_FHIR_STORAGE_TYPE)
+    String exportStorageType;
+
+    /**
+     * The directory of the exported files when exporting to the file system.
+     */
+    @Inject
+    @BatchProperty(name = Constants.EXPORT_FHIR_DIRECTORY)
+    String exportDirectory;
+
+    /**
+     * The compression of the exported NDJSON files, "gzip" or none.
+     */
+    @Inject
+    @BatchProperty(name = Constants.EXPORT_FHIR_COMPRESSION)
+    String fhirExportCompression;
+
     private List<CheckPointUserData> partitionSummaries = new ArrayList<>();
+    // The partition summaries of the _lastUpdated ranges of the split resource types, in range order.
+    private Map<String, TreeMap<Integer, CheckPointUserData>> rangeSummaries = new HashMap<>();
+    // The merged partition summary of each split resource type, as added to partitionSummaries.
+    private Map<String, CheckPointUserData> mergedRangeSummaries = new HashMap<>();
+    // The summaries collected so far, kept in the persistent user data of the step, because the partitions which
+    // finished before a restart don't report again to the analyzer of the restarted step.
+    private CollectedSummaries collectedSummaries;
+
+    /**
+     * The partition summaries collected by the step and the split resource types whose range files are renamed.
+     */
+    static class CollectedSummaries implements Serializable {
+        private static final long serialVersionUID = 1L;
+        List<CheckPointUserData> summaries = new ArrayList<>();
+        Set<String> renamedResourceTypes = new HashSet<>();
+    }
 
     public ExportPartitionAnalyzer() {
         // do nothing.
@@ -35,13 +146,191 @@ public class ExportPartitionAnalyzer implements PartitionAnalyzer {
     }
 
     @Override
-    public void analyzeCollectorData(Serializable data) {
+    public void analyzeCollectorData(Serializable data) throws Exception {
         if (data == null) {
             return;
         }
+        if (collectedSummaries == null) {
+            restoreSummaries();
+        }
 
         CheckPointUserData partitionSummary  = (CheckPointUserData) data;
-        partitionSummaries.add(partitionSummary);
+        // Only the summary is kept, not the upload state of the partition.
+        partitionSummary = CheckPointUserData.Builder.builder()
+                .resourceTypeSummary(partitionSummary.getResourceTypeSummary())
+                .totalResourcesNum(partitionSummary.getTotalResourcesNum())
+                .rangeIndex(partitionSummary.getRangeIndex())
+                .numOfRanges(partitionSummary.getNumOfRanges())
+                .build();
+        if (addSummary(partitionSummary)) {
+            collectedSummaries.summaries.add(partitionSummary);
+            stepContext.setPersistentUserData(collectedSummaries);
+            jobContext.setTransientUserData(partitionSummaries);
+
+            String resourceType = partitionSummary.getResourceType();
+            if (isAllRangesCollected(resourceType, partitionSummary.getNumOfRanges())) {
+                renameRangeFiles(resourceType);
+            }
+        }
+    }
+
+    /**
+     * Restores the summaries collected before a restart of the step, and renames the range files of the resource types
+     * whose ranges all finished but whose range files weren't renamed yet.
+     */
+    private void restoreSummaries() throws Exception {
+        Serializable persistentUserData = stepContext.getPersistentUserData();
+        if (!(persistentUserData instanceof CollectedSummaries)) {
+            collectedSummaries = new CollectedSummaries();
+            return;
+        }
+
+        collectedSummaries = (CollectedSummaries) persistentUserData;
+        for (CheckPointUserData summary : collectedSummaries.summaries) {
+            addSummary(summary);
+        }
         jobContext.setTransientUserData(partitionSummaries);
+
+        for (Map.Entry<String, TreeMap<Integer, CheckPointUserData>> entry : rangeSummaries.entrySet()) {
+            if (isAllRangesCollected(entry.getKey(), entry.getValue().firstEntry().getValue().getNumOfRanges())) {
+                renameRangeFiles(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * @return false if the summary was already collected
+     */
+    private boolean addSummary(CheckPointUserData partitionSummary) {
+        if (partitionSummary.getNumOfRanges() > 1) {
+            return addRangeSummary(partitionSummary);
+        }
+        partitionSummaries.add(partitionSummary);
+        return true;
+    }
+
+    /**
+     * Merges the summary of a finished range into the summary of its resource type, e.g, Observation[1000,1000,200] for
+     * Observation[1000] and Observation[1000,200].
+     *
+     * @return false if the summary of the range was already collected
+     */
+    private boolean addRangeSummary(CheckPointUserData rangeSummary) {
+        String resourceType = rangeSummary.getResourceType();
+        TreeMap<Integer, CheckPointUserData> summaries = rangeSummaries.computeIfAbsent(resourceType, k -> new TreeMap<>());
+        if (summaries.containsKey(rangeSummary.getRangeIndex())) {
+            return false;
+        }
+        summaries.put(rangeSummary.getRangeIndex(), rangeSummary);
+
+        List<String> resourceCounts = new ArrayList<>();
+        int totalResourcesNum = 0;
+        for (CheckPointUserData summary : summaries.values()) {
+            resourceCounts.addAll(summary.getResourceCounts());
+            totalResourcesNum += summary.getTotalResourcesNum();
+        }
+        partitionSummaries.remove(mergedRangeSummaries.remove(resourceType));
+        if (!resourceCounts.isEmpty()) {
+            CheckPointUserData mergedSummary = CheckPointUserData.Builder.builder()
+                    .resourceTypeSummary(resourceType + "[" + String.join(",", resourceCounts) + "]")
+                    .totalResourcesNum(totalResourcesNum)
+                    .build();
+            mergedRangeSummaries.put(resourceType, mergedSummary);
+            partitionSummaries.add(mergedSummary);
+        }
+        return true;
+    }
+
+    private boolean isAllRangesCollected(String resourceType, int numOfRanges) {
+        TreeMap<Integer, CheckPointUserData> summaries = rangeSummaries.get(resourceType);
+        return summaries != null && summaries.size() == numOfRanges
+                && !collectedSummaries.renamedResourceTypes.contains(resourceType);
+    }
+
+    /**
+     * Renames the range files of the resource type once all its ranges are finished, and records the rename in the
+     * persistent user data of the step so that a restarted step doesn't rename them again.
+     */
+    private void renameRangeFiles(String resourceType) throws Exception {
+        renameRangeFiles(resourceType, rangeSummaries.get(resourceType));
+        collectedSummaries.renamedResourceTypes.add(resourceType);
+        stepContext.setPersistentUserData(collectedSummaries);
+    }
+
+    /**
+     * Renames the files of the ranges to the file names of the resource type, in range order,
+     * e.g, Observation_range0_1.ndjson, Observation_range0_2.ndjson and Observation_range1_1.ndjson
+     * to Observation_1.ndjson, Observation_2.ndjson and Observation_3.ndjson, or the same .ndjson.gz files if gzipped.
+     */
+    private void renameRangeFiles(String resourceType, TreeMap<Integer, CheckPointUserData> summaries) throws Exception {
+        String pathPrefix = cosBucketPathPrefix != null && cosBucketPathPrefix.trim().length() > 0
+                ? cosBucketPathPrefix : "job" + jobContext.getExecutionId();
+        if (Constants.EXPORT_STORAGE_TYPE_FILE.equals(exportStorageType)) {
+            renameRangeFiles(resourceType, summaries, Paths.get(exportDirectory, pathPrefix));
+            return;
+        }
+
+        boolean isExportPublic = FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_BULKDATA_BATCHJOB_ISEXPORTPUBLIC, true);
+        boolean isCosClientUseFhirServerTrustStore = FHIRConfigHelper
+                .getBooleanProperty(FHIRConfiguration.PROPERTY_BULKDATA_BATCHJOB_USEFHIRSERVERTRUSTSTORE, false);
+        AmazonS3 cosClient = BulkDataUtils.getCosClient(cosCredentialIbm, cosApiKeyProperty, cosSrvinstId, cosEndpointUrl,
+                cosLocation, isCosClientUseFhirServerTrustStore);
+        if (cosClient == null) {
+            logger.warning("renameRangeFiles: Failed to get CosClient!");
+            throw new Exception("Failed to get CosClient!!");
+        }
+        String bucketName = cosBucketName == null ? Constants.DEFAULT_COS_BUCKETNAME.toLowerCase() : cosBucketName.toLowerCase();
+
+        int fileNum = 1;
+        for (Map.Entry<Integer, CheckPointUserData> entry : summaries.entrySet()) {
+            int numOfFiles = entry.getValue().getResourceCounts().size();
+            for (int uploadCount = 1; uploadCount <= numOfFiles; uploadCount++) {
+                String rangeItemName = pathPrefix + "/" + resourceType + "_range" + entry.getKey() + "_" + uploadCount + getExtension();
+                String itemName = pathPrefix + "/" + resourceType + "_" + fileNum++ + getExtension();
+                if (!cosClient.doesObjectExist(bucketName, rangeItemName)) {
+                    // Already renamed before a restart.
+                    continue;
+                }
+                CopyObjectRequest request = new CopyObjectRequest(bucketName, rangeItemName, bucketName, itemName);
+                if (isExportPublic) {
+                    request.setCannedAccessControlList(CannedAccessControlList.PublicRead);
+                }
+                cosClient.copyObject(request);
+                cosClient.deleteObject(bucketName, rangeItemName);
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("renameRangeFiles: Renamed " + rangeItemName + " to " + itemName);
+                }
+            }
+        }
+    }
+
+    /**
+     * Renames the range files in the export directory of the job, like {@link #renameRangeFiles(String, TreeMap)}.
+     */
+    void renameRangeFiles(String resourceType, TreeMap<Integer, CheckPointUserData> summaries, Path directory)
+            throws Exception {
+        int fileNum = 1;
+        for (Map.Entry<Integer, CheckPointUserData> entry : summaries.entrySet()) {
+            int numOfFiles = entry.getValue().getResourceCounts().size();
+            for (int uploadCount = 1; uploadCount <= numOfFiles; uploadCount++) {
+                Path rangeFile = directory.resolve(resourceType + "_range" + entry.getKey() + "_" + uploadCount + getExtension());
+                Path file = directory.resolve(resourceType + "_" + fileNum++ + getExtension());
+                if (!Files.exists(rangeFile)) {
+                    // Already renamed before a restart.
+                    continue;
+                }
+                Files.move(rangeFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("renameRangeFiles: Renamed " + rangeFile + " to " + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Only NDJSON exports are split into ranges.
+     */
+    private String getExtension() {
+        return Constants.EXPORT_COMPRESSION_GZIP.equals(fhirExportCompression) ? ".ndjson.gz" : ".ndjson";
     }
 }
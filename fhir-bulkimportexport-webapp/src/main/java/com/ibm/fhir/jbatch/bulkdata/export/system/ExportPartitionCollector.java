@@ -8,12 +8,14 @@ package com.ibm.fhir.jbatch.bulkdata.export.system;
 
 import java.io.Serializable;
 
+import javax.batch.api.BatchProperty;
 import javax.batch.api.partition.PartitionCollector;
 import javax.batch.runtime.BatchStatus;
 import javax.batch.runtime.context.StepContext;
 import javax.enterprise.context.Dependent;
 import javax.inject.Inject;
 
+import com.ibm.fhir.jbatch.bulkdata.common.Constants;
 import com.ibm.fhir.jbatch.bulkdata.export.common.CheckPointUserData;
 import com.ibm.fhir.jbatch.bulkdata.export.common.TransientUserData;
 
@@ -22,6 +24,13 @@ public class ExportPartitionCollector implements PartitionCollector {
     @Inject
     StepContext stepCtx;
 
+    /**
+     * Fhir resource type to process.
+     */
+    @Inject
+    @BatchProperty(name = Constants.PARTITION_RESOURCE_TYPE)
+    String fhirResourceType;
+
     public ExportPartitionCollector() {
         // The injected properties are not available at class construction time
         // These values are lazy injected BEFORE calling 'collectPartitionData'.
@@ -34,13 +43,20 @@ public class ExportPartitionCollector implements PartitionCollector {
 
         // If the job is being stopped or in other status except for "started", or if there is more page to process, then collect nothing.
         if (!batchStatus.equals(BatchStatus.STARTED)
-            || transientUserData.isMoreToExport()
-            || transientUserData.getResourceTypeSummary() == null)
+            || transientUserData.isMoreToExport())
         {
             return null;
         }
 
         CheckPointUserData partitionSummary = CheckPointUserData.fromTransientUserData(transientUserData);
+        if (partitionSummary.getResourceTypeSummary() == null) {
+            // Nothing is exported; only the _lastUpdated ranges of a split resource type still report, so that
+            // ExportPartitionAnalyzer knows when all the ranges are finished.
+            if (partitionSummary.getNumOfRanges() == 1) {
+                return null;
+            }
+            partitionSummary.setResourceTypeSummary(fhirResourceType + "[]");
+        }
         return partitionSummary;
     }
 
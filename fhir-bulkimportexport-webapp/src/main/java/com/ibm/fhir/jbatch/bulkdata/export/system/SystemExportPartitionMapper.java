@@ -6,9 +6,16 @@
 
 package com.ibm.fhir.jbatch.bulkdata.export.system;
 
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import javax.batch.api.BatchProperty;
@@ -18,11 +25,22 @@ import javax.batch.api.partition.PartitionPlanImpl;
 import javax.enterprise.context.Dependent;
 import javax.inject.Inject;
 
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.core.FHIRMediaType;
 import com.ibm.fhir.jbatch.bulkdata.common.Constants;
+import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
+import com.ibm.fhir.persistence.helper.FHIRPersistenceHelper;
+import com.ibm.fhir.persistence.helper.FHIRTransactionHelper;
+import com.ibm.fhir.search.SearchConstants;
+import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.util.SearchUtil;
 
 @Dependent
 public class SystemExportPartitionMapper implements PartitionMapper {
+    private static final Logger logger = Logger.getLogger(SystemExportPartitionMapper.class.getName());
 
     /**
      * Fhir ResourceType.
@@ -31,6 +49,43 @@ public class SystemExportPartitionMapper implements PartitionMapper {
     @BatchProperty(name = Constants.FHIR_RESOURCETYPES)
     String fhirResourceType;
 
+    /**
+     * Fhir tenant id.
+     */
+    @Inject
+    @BatchProperty(name = Constants.FHIR_TENANT)
+    String fhirTenant;
+
+    /**
+     * Fhir data store id.
+     */
+    @Inject
+    @BatchProperty(name = Constants.FHIR_DATASTORE_ID)
+    String fhirDatastoreId;
+
+    /**
+     * Fhir Search from date.
+     */
+    @Inject
+    @BatchProperty(name = Constants.EXPORT_FHIR_SEARCH_FROMDATE)
+    String fhirSearchFromDate;
+
+    /**
+     * Fhir search to date.
+     */
+    @Inject
+    @BatchProperty(name = Constants.EXPORT_FHIR_SEARCH_TODATE)
+    String fhirSearchToDate;
+
+    /**
+     * Fhir export format.
+     */
+    @Inject
+    @BatchProperty(name = Constants.EXPORT_FHIR_FORMAT)
+    String fhirExportFormat;
+
+    FHIRPersistence fhirPersistence;
+
 
     public SystemExportPartitionMapper() {
         // No Operation
@@ -44,19 +99,130 @@ public class SystemExportPartitionMapper implements PartitionMapper {
             throw new Exception("open: None of the input resource types is valid!");
         }
 
-        PartitionPlanImpl pp = new PartitionPlanImpl();
-        pp.setPartitions(resourceTypes.size());
-        pp.setThreads(Math.min(Constants.IMPORT_MAX_PARTITIONPROCESSING_THREADNUMBER, resourceTypes.size()));
-        Properties[] partitionProps = new Properties[resourceTypes.size()];
+        // Parquet files are written from the resources of a whole chunk, so only NDJSON exports are split.
+        boolean isSplitLargeTypes = !FHIRMediaType.APPLICATION_PARQUET.equals(fhirExportFormat);
+        if (isSplitLargeTypes) {
+            FHIRRequestContext.set(new FHIRRequestContext(fhirTenant == null ? Constants.DEFAULT_FHIR_TENANT : fhirTenant,
+                    fhirDatastoreId == null ? Constants.DEFAULT_FHIR_TENANT : fhirDatastoreId));
+            fhirPersistence = new FHIRPersistenceHelper().getFHIRPersistenceImplementation();
+        }
 
-        int propCount = 0;
+        List<Properties> partitionProps = new ArrayList<>();
         for (String resourceType : resourceTypes) {
-            Properties p = new Properties();
-            p.setProperty(Constants.PARTITION_RESOURCE_TYPE, resourceType);
-            partitionProps[propCount++] = p;
+            // Split the large resource types into _lastUpdated ranges, so that a single large resource type is also
+            // exported in parallel.
+            List<Instant> boundaries = isSplitLargeTypes ? getRangeBoundaries(ModelSupport.getResourceType(resourceType))
+                    : Collections.emptyList();
+            for (int rangeIndex = 0; rangeIndex <= boundaries.size(); rangeIndex++) {
+                Properties p = new Properties();
+                p.setProperty(Constants.PARTITION_RESOURCE_TYPE, resourceType);
+                if (!boundaries.isEmpty()) {
+                    if (rangeIndex > 0) {
+                        p.setProperty(Constants.EXPORT_PARTITTION_LASTUPDATED_START, boundaries.get(rangeIndex - 1).toString());
+                    }
+                    if (rangeIndex < boundaries.size()) {
+                        p.setProperty(Constants.EXPORT_PARTITTION_LASTUPDATED_END, boundaries.get(rangeIndex).toString());
+                    }
+                    p.setProperty(Constants.EXPORT_PARTITTION_RANGEINDEX, String.valueOf(rangeIndex));
+                    p.setProperty(Constants.EXPORT_PARTITTION_NUMOFRANGES, String.valueOf(boundaries.size() + 1));
+                }
+                partitionProps.add(p);
+            }
         }
-        pp.setPartitionProperties(partitionProps);
+
+        PartitionPlanImpl pp = new PartitionPlanImpl();
+        pp.setPartitions(partitionProps.size());
+        pp.setThreads(Math.min(Constants.EXPORT_MAX_PARTITIONPROCESSING_THREADNUMBER, partitionProps.size()));
+        pp.setPartitionProperties(partitionProps.toArray(new Properties[partitionProps.size()]));
 
         return pp;
     }
-}
\ No newline at end of file
+
+    /**
+     * Splits the _lastUpdated span of the resource type evenly by the number of resources, assuming the resources are
+     * spread evenly over the span. The boundaries are truncated to seconds so that the ranges are disjoint regardless of
+     * the precision the search applies to them.
+     *
+     * @return the boundaries between the ranges, in ascending order; empty if the resource type is not split
+     */
+    private List<Instant> getRangeBoundaries(Class<? extends Resource> resourceType) throws Exception {
+        FHIRSearchContext searchContext = getSearchContext(resourceType, "_lastUpdated");
+        Instant minLastUpdated = getLastUpdated(searchFirst(resourceType, searchContext));
+        int numOfRanges = Math.min(Constants.EXPORT_MAX_PARTITIONPROCESSING_THREADNUMBER,
+                searchContext.getTotalCount() / Constants.EXPORT_MIN_RANGE_RESOURCESNUMBER);
+        if (numOfRanges < 2 || minLastUpdated == null) {
+            return Collections.emptyList();
+        }
+        Instant maxLastUpdated = getLastUpdated(searchFirst(resourceType, getSearchContext(resourceType, "-_lastUpdated")));
+        if (maxLastUpdated == null) {
+            return Collections.emptyList();
+        }
+
+        List<Instant> boundaries = getRangeBoundaries(minLastUpdated, maxLastUpdated, numOfRanges);
+        if (!boundaries.isEmpty()) {
+            logger.info("mapPartitions: Split " + resourceType.getSimpleName() + " (" + searchContext.getTotalCount()
+                    + " resources) into " + (boundaries.size() + 1) + " _lastUpdated ranges.");
+        }
+        return boundaries;
+    }
+
+    /**
+     * @return the boundaries which split the span from minLastUpdated to maxLastUpdated into numOfRanges ranges,
+     *     truncated to seconds, in ascending order; the boundaries which collapse after the truncation are dropped
+     */
+    static List<Instant> getRangeBoundaries(Instant minLastUpdated, Instant maxLastUpdated, int numOfRanges) {
+        List<Instant> boundaries = new ArrayList<>();
+        long spanMillis = maxLastUpdated.toEpochMilli() - minLastUpdated.toEpochMilli();
+        for (int i = 1; i < numOfRanges; i++) {
+            Instant boundary = minLastUpdated.plusMillis(spanMillis * i / numOfRanges).truncatedTo(ChronoUnit.SECONDS);
+            if (boundary.isAfter(minLastUpdated) && (boundaries.isEmpty() || boundary.isAfter(boundaries.get(boundaries.size() - 1)))) {
+                boundaries.add(boundary);
+            }
+        }
+        return boundaries;
+    }
+
+    /**
+     * @return a search context for the first resource of the export in the given _sort order.
+     */
+    private FHIRSearchContext getSearchContext(Class<? extends Resource> resourceType, String sort) throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        List<String> searchCriteria = new ArrayList<>();
+        if (fhirSearchFromDate != null) {
+            searchCriteria.add("ge" + fhirSearchFromDate);
+        }
+        if (fhirSearchToDate != null) {
+            searchCriteria.add("lt" + fhirSearchToDate);
+        }
+        if (!searchCriteria.isEmpty()) {
+            queryParameters.put(Constants.FHIR_SEARCH_LASTUPDATED, searchCriteria);
+        }
+        queryParameters.put(SearchConstants.SORT, Collections.singletonList(sort));
+
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(resourceType, queryParameters);
+        searchContext.setPageSize(1);
+        return searchContext;
+    }
+
+    /**
+     * @return the first resource found, or null; the total count is set on the search context.
+     */
+    private Resource searchFirst(Class<? extends Resource> resourceType, FHIRSearchContext searchContext) throws Exception {
+        List<Resource> resources;
+        FHIRTransactionHelper txn = new FHIRTransactionHelper(fhirPersistence.getTransaction());
+        txn.begin();
+        try {
+            resources = fhirPersistence.search(FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext), resourceType).getResource();
+        } finally {
+            txn.end();
+        }
+        return resources.isEmpty() ? null : resources.get(0);
+    }
+
+    private static Instant getLastUpdated(Resource resource) {
+        if (resource == null || resource.getMeta() == null || resource.getMeta().getLastUpdated() == null) {
+            return null;
+        }
+        return resource.getMeta().getLastUpdated().getValue().toInstant();
+    }
+}
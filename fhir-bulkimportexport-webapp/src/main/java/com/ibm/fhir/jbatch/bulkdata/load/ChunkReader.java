@@ -23,9 +23,15 @@ import com.ibm.cloud.objectstorage.services.s3.AmazonS3;
 import com.ibm.fhir.config.FHIRConfigHelper;
 import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.exception.FHIROperationException;
 import com.ibm.fhir.jbatch.bulkdata.common.BulkDataUtils;
 import com.ibm.fhir.jbatch.bulkdata.common.Constants;
+import com.ibm.fhir.jbatch.bulkdata.load.ImportPipeline.ParsedLine;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.generator.FHIRGenerator;
+import com.ibm.fhir.model.resource.OperationOutcome;
 import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.util.FHIRUtil;
 
 /**
  * Bulk import Chunk implementation - the Reader.
@@ -36,6 +42,7 @@ public class ChunkReader extends AbstractItemReader {
     private static final Logger logger = Logger.getLogger(ChunkReader.class.getName());
     private AmazonS3 cosClient = null;
     private int numOfLinesToSkip = 0;
+    private ImportPipeline pipeline = null;
 
     @Inject
     StepContext stepCtx;
@@ -102,7 +109,29 @@ public class ChunkReader extends AbstractItemReader {
     @Inject
     @BatchProperty(name = Constants.PARTITION_RESOURCE_TYPE)
     String importPartitionResourceType;
-    
+
+    /**
+     * The byte range of the work item to process.
+     */
+    @Inject
+    @BatchProperty(name = Constants.IMPORT_PARTITTION_RANGESTART)
+    String importPartitionRangeStart;
+
+    @Inject
+    @BatchProperty(name = Constants.IMPORT_PARTITTION_RANGEEND)
+    String importPartitionRangeEnd;
+
+    /**
+     * The index of the range and the number of ranges the work item is split into.
+     */
+    @Inject
+    @BatchProperty(name = Constants.IMPORT_PARTITTION_RANGEINDEX)
+    String importPartitionRangeIndex;
+
+    @Inject
+    @BatchProperty(name = Constants.IMPORT_PARTITTION_NUMOFRANGES)
+    String importPartitionNumOfRanges;
+
     /**
      * Fhir tenant id.
      */
@@ -117,6 +146,20 @@ public class ChunkReader extends AbstractItemReader {
     @BatchProperty(name = Constants.FHIR_DATASTORE_ID)
     String fhirDatastoreId;
 
+    /**
+     * If validate FHIR resources.
+     */
+    @Inject
+    @BatchProperty(name = Constants.IMPORT_FHIR_IS_VALIDATION_ON)
+    String fhirValidation;
+
+    /**
+     * The number of threads which parse and validate the FHIR resources of the partition.
+     */
+    @Inject
+    @BatchProperty(name = Constants.IMPORT_FHIR_NUMOFPARSERS)
+    String fhirNumOfParsers;
+
     public ChunkReader() {
         super();
     }
@@ -127,42 +170,49 @@ public class ChunkReader extends AbstractItemReader {
         if (!stepCtx.getBatchStatus().equals(BatchStatus.STARTED)) {
             return null;
         }
-        List<Resource> loadedFhirResources = new ArrayList<Resource>();
         if (logger.isLoggable(Level.FINE)) {
             logger.fine("readItem: get work item:" + importPartitionWorkitem + " resource type: " + importPartitionResourceType);
         }
 
         ImportTransientUserData chunkData = (ImportTransientUserData) stepCtx.getTransientUserData();
-        numOfLinesToSkip = chunkData.getNumOfProcessedResources();
 
         long readStartTimeInMilliSeconds = System.currentTimeMillis();
-        int numOfLoaded = 0;
+        List<ParsedLine> parsedLines = pipeline.next(Constants.IMPORT_NUMOFFHIRRESOURCES_PERREAD);
+        List<Resource> loadedFhirResources = new ArrayList<Resource>(parsedLines.size());
         int numOfParseFailures = 0;
-        switch (BulkImportDataSourceStorageType.from(dataSourceStorageType)) {
-        case HTTPS:
-            numOfParseFailures = BulkDataUtils.readFhirResourceFromHttps(importPartitionWorkitem, numOfLinesToSkip, loadedFhirResources, chunkData);
-            break;
-        case FILE:
-            numOfParseFailures = BulkDataUtils.readFhirResourceFromLocalFile(importPartitionWorkitem, numOfLinesToSkip, loadedFhirResources, chunkData);
-            break;
-        case AWSS3:
-        case IBMCOS:
-            numOfParseFailures = BulkDataUtils.readFhirResourceFromObjectStore(cosClient, cosBucketName, importPartitionWorkitem,
-                    numOfLinesToSkip, loadedFhirResources, chunkData);
-            break;
-        default:
-            logger.warning("readItem: Data source storage type not found!");
-            break;
+        int numOfValidationFailures = 0;
+        for (ParsedLine parsedLine : parsedLines) {
+            if (parsedLine.getResource() != null) {
+                loadedFhirResources.add(parsedLine.getResource());
+            } else if (parsedLine.isParseFailure()) {
+                numOfParseFailures++;
+            } else {
+                numOfValidationFailures++;
+                if (Constants.IMPORT_IS_COLLECT_OPERATIONOUTCOMES) {
+                    // Include the validation issues of the resource.
+                    OperationOutcome operationOutCome = parsedLine.getFailure() instanceof FHIROperationException
+                            ? FHIRUtil.buildOperationOutcome((FHIROperationException) parsedLine.getFailure(), false)
+                            : FHIRUtil.buildOperationOutcome(parsedLine.getFailure(), false);
+                    FHIRGenerator.generator(Format.JSON).generate(operationOutCome, chunkData.getBufferStreamForImportError());
+                    chunkData.getBufferStreamForImportError().write(Constants.NDJSON_LINESEPERATOR);
+                }
+            }
         }
 
         chunkData.setTotalReadMilliSeconds(chunkData.getTotalReadMilliSeconds() + (System.currentTimeMillis() - readStartTimeInMilliSeconds));
+        chunkData.setTotalValidationMilliSeconds(chunkData.getTotalValidationMilliSeconds() + pipeline.takeValidationMilliSeconds());
         chunkData.setNumOfParseFailures(chunkData.getNumOfParseFailures() + numOfParseFailures);
-        numOfLoaded = loadedFhirResources.size();
+        chunkData.setNumOfValidationFailures(chunkData.getNumOfValidationFailures() + numOfValidationFailures);
+        if (!parsedLines.isEmpty()) {
+            chunkData.setReadOffset(parsedLines.get(parsedLines.size() - 1).getEndOffset());
+        }
         if (logger.isLoggable(Level.FINE)) {
-            logger.fine("readItem: loaded " + numOfLoaded + " " + importPartitionResourceType + " from " + importPartitionWorkitem);
+            logger.fine("readItem: loaded " + loadedFhirResources.size() + " " + importPartitionResourceType + " from " + importPartitionWorkitem);
         }
-        chunkData.setNumOfToBeImported(numOfLoaded);
-        if (numOfLoaded == 0) {
+        // Lines which failed the parsing or the validation still have to be counted by the writer, so only the end of
+        // the input ends the partition.
+        chunkData.setNumOfToBeImported(parsedLines.size());
+        if (parsedLines.isEmpty()) {
             return null;
         } else {
             return loadedFhirResources;
@@ -171,18 +221,18 @@ public class ChunkReader extends AbstractItemReader {
 
     @Override
     public void open(Serializable checkpoint) throws Exception {
+        if (fhirTenant == null) {
+            fhirTenant = "default";
+            logger.info("open: Set tenant to default!");
+        }
+        if (fhirDatastoreId == null) {
+            fhirDatastoreId = Constants.DEFAULT_FHIR_TENANT;
+            logger.info("open: Set DatastoreId to default!");
+        }
+
         if (BulkImportDataSourceStorageType.from(dataSourceStorageType).equals(BulkImportDataSourceStorageType.AWSS3)
                 || BulkImportDataSourceStorageType.from(dataSourceStorageType).equals(BulkImportDataSourceStorageType.IBMCOS)) {
 
-            if (fhirTenant == null) {
-                fhirTenant = "default";
-                logger.info("open: Set tenant to default!");
-            }
-            if (fhirDatastoreId == null) {
-                fhirDatastoreId = Constants.DEFAULT_FHIR_TENANT;
-                logger.info("open: Set DatastoreId to default!");
-            }
-
             FHIRRequestContext.set(new FHIRRequestContext(fhirTenant, fhirDatastoreId));
             boolean isCosClientUseFhirServerTrustStore = FHIRConfigHelper
                 .getBooleanProperty(FHIRConfiguration.PROPERTY_BULKDATA_BATCHJOB_USEFHIRSERVERTRUSTSTORE, false);
@@ -205,17 +255,25 @@ public class ChunkReader extends AbstractItemReader {
             checkPointData.setInFlyRateBeginMilliSeconds(System.currentTimeMillis());
             stepCtx.setTransientUserData(ImportTransientUserData.fromImportCheckPointData(checkPointData));
         } else {
+            int numOfRanges = parseInt(importPartitionNumOfRanges, 1);
+            int rangeIndex = parseInt(importPartitionRangeIndex, 0);
+            // The OperationOutcomes of the ranges of a split work item are merged by ImportJobListener at the end of the job.
+            String operationOutcomesPrefix = numOfRanges > 1 ? importPartitionWorkitem + "_range" + rangeIndex : importPartitionWorkitem;
             ImportTransientUserData chunkData = (ImportTransientUserData)ImportTransientUserData.Builder.builder()
                     .importPartitionWorkitem(importPartitionWorkitem)
                     .numOfProcessedResources(numOfLinesToSkip)
                     .importPartitionResourceType(importPartitionResourceType)
+                    .rangeStart(parseLong(importPartitionRangeStart))
+                    .rangeEnd(parseLong(importPartitionRangeEnd))
+                    .rangeIndex(rangeIndex)
+                    .numOfRanges(numOfRanges)
                     // This naming pattern is used in bulkdata operation to generate file links for import OperationOutcomes.
                     // e.g, for input file test1.ndjson, if there is any error during the importing, then the errors are in
                     // test1.ndjson_oo_errors.ndjson
                     // Note: for those good imports, we don't really generate any meaningful OperationOutcome, so only error import
                     //       OperationOutcomes are supported for now.
-                    .uniqueIDForImportOperationOutcomes(importPartitionWorkitem + "_oo_success.ndjson")
-                    .uniqueIDForImportFailureOperationOutcomes(importPartitionWorkitem + "_oo_errors.ndjson")
+                    .uniqueIDForImportOperationOutcomes(operationOutcomesPrefix + "_oo_success.ndjson")
+                    .uniqueIDForImportFailureOperationOutcomes(operationOutcomesPrefix + "_oo_errors.ndjson")
                     .build();
             long importFileSize = 0;
             switch (BulkImportDataSourceStorageType.from(dataSourceStorageType)) {
@@ -237,12 +295,78 @@ public class ChunkReader extends AbstractItemReader {
             stepCtx.setTransientUserData(chunkData);
         }
 
+        ImportTransientUserData chunkData = (ImportTransientUserData) stepCtx.getTransientUserData();
+        boolean isValidationOn = fhirValidation != null && fhirValidation.equalsIgnoreCase("Y");
+        String dataSource = importPartitionWorkitem;
+        if (chunkData.getNumOfRanges() > 1) {
+            dataSource += " (bytes " + chunkData.getRangeStart() + "-" + (chunkData.getRangeEnd() > 0 ? chunkData.getRangeEnd() : "") + ")";
+        }
+        pipeline = new ImportPipeline(new ImportPipeline.LineSource() {
+            @Override
+            public String readLine(long offset) throws Exception {
+                return ChunkReader.this.readLine(chunkData, offset);
+            }
 
+            @Override
+            public long getOffset() {
+                return chunkData.getLineReader().getOffset();
+            }
+        }, dataSource, numOfLinesToSkip, chunkData.getProcessedOffset(), chunkData.getRangeStart(), chunkData.getRangeEnd(),
+                getNumOfParsers(), isValidationOn, fhirTenant, fhirDatastoreId);
+    }
+
+    /**
+     * Reads the next line of the work item; called on the reader thread of the pipeline.
+     */
+    private String readLine(ImportTransientUserData chunkData, long offset) throws Exception {
+        switch (BulkImportDataSourceStorageType.from(dataSourceStorageType)) {
+        case HTTPS:
+            return BulkDataUtils.readLineFromHttps(importPartitionWorkitem, offset, chunkData);
+        case FILE:
+            return BulkDataUtils.readLineFromLocalFile(importPartitionWorkitem, offset, chunkData);
+        case AWSS3:
+        case IBMCOS:
+            return BulkDataUtils.readLineFromObjectStore(cosClient, cosBucketName, importPartitionWorkitem, offset, chunkData);
+        default:
+            logger.warning("readLine: Data source storage type not found!");
+            return null;
+        }
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static long parseLong(String value) {
+        return value == null || value.isEmpty() ? 0 : Long.parseLong(value);
+    }
+
+    private int getNumOfParsers() {
+        int numOfParsers = Constants.IMPORT_DEFAULT_NUMOFPARSERS;
+        if (fhirNumOfParsers != null && !fhirNumOfParsers.isEmpty()) {
+            try {
+                numOfParsers = Integer.parseInt(fhirNumOfParsers);
+            } catch (NumberFormatException e) {
+                logger.warning("open: Invalid number of parsers '" + fhirNumOfParsers + "', using the default!");
+            }
+        }
+        return Math.max(1, Math.min(numOfParsers, Constants.IMPORT_MAX_NUMOFPARSERS));
     }
 
     @Override
     public void close() throws Exception {
-
+        if (pipeline != null) {
+            pipeline.close();
+            // Release the input if the partition is stopped (or rolled back) before the end of the input; at the end of
+            // the input, the partition collector releases it.
+            if (!pipeline.isEndOfInput()) {
+                ImportTransientUserData chunkData = (ImportTransientUserData) stepCtx.getTransientUserData();
+                if (chunkData != null) {
+                    BulkDataUtils.cleanupTransientUserData(chunkData, true);
+                }
+            }
+            pipeline = null;
+        }
     }
 
     @Override
@@ -8,9 +8,7 @@ package com.ibm.fhir.jbatch.bulkdata.load;
 
 import java.io.ByteArrayInputStream;
 import java.io.Serializable;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -37,7 +35,6 @@ import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
 import com.ibm.fhir.persistence.helper.FHIRPersistenceHelper;
 import com.ibm.fhir.persistence.helper.FHIRTransactionHelper;
-import com.ibm.fhir.validation.exception.FHIRValidationException;
 
 /**
  * Bulk import Chunk implementation - the Writer.
@@ -47,7 +44,6 @@ import com.ibm.fhir.validation.exception.FHIRValidationException;
 public class ChunkWriter extends AbstractItemWriter {
     private static final Logger logger = Logger.getLogger(ChunkWriter.class.getName());
     AmazonS3 cosClient = null;
-    boolean isValidationOn = false;
 
     @Inject
     StepContext stepCtx;
@@ -116,14 +112,6 @@ public class ChunkWriter extends AbstractItemWriter {
     String importPartitionResourceType;
 
 
-    /**
-     * If validate FHIR resources.
-     */
-    @Inject
-    @BatchProperty(name = Constants.IMPORT_FHIR_IS_VALIDATION_ON)
-    String fhirValidation;
-
-
     public ChunkWriter() {
         super();
     }
@@ -131,8 +119,6 @@ public class ChunkWriter extends AbstractItemWriter {
     // This is for the warning triggered by IMPORT_IS_COLLECT_OPERATIONOUTCOMES which controls if upload OperationOutcomes to COS/S3.
     @Override
     public void writeItems(List<java.lang.Object> arg0) throws Exception {
-        Set<String> failValidationIds = new HashSet<>();
-
         FHIRPersistenceHelper fhirPersistenceHelper = new FHIRPersistenceHelper();
         FHIRPersistence fhirPersistence = fhirPersistenceHelper.getFHIRPersistenceImplementation();
         FHIRPersistenceContext persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(null);
@@ -141,32 +127,6 @@ public class ChunkWriter extends AbstractItemWriter {
         int processedNum = 0, succeededNum =0, failedNum = 0;
         ImportTransientUserData chunkData = (ImportTransientUserData) stepCtx.getTransientUserData();
 
-        // Validate the resources first if required.
-        if (isValidationOn) {
-            long validationStartTimeInMilliSeconds = System.currentTimeMillis();
-            for (Object objResJsonList : arg0) {
-                @SuppressWarnings("unchecked")
-                List<Resource> fhirResourceList = (List<Resource>) objResJsonList;
-
-                for (Resource fhirResource : fhirResourceList) {
-                    try {
-                        BulkDataUtils.validateInput(fhirResource);
-                    } catch (FHIRValidationException|FHIROperationException e) {
-                        logger.warning("Failed to validate '" + fhirResource.getId() + "' due to error: " + e.getMessage());
-                        failedNum++;
-                        failValidationIds.add(fhirResource.getId());
-                        if (Constants.IMPORT_IS_COLLECT_OPERATIONOUTCOMES) {
-                            OperationOutcome operationOutCome = FHIRUtil.buildOperationOutcome(e, false);
-                            FHIRGenerator.generator(Format.JSON).generate(operationOutCome, chunkData.getBufferStreamForImportError());
-                            chunkData.getBufferStreamForImportError().write(Constants.NDJSON_LINESEPERATOR);
-                        }
-                    }
-                }
-            }
-            chunkData.setTotalValidationMilliSeconds(chunkData.getTotalValidationMilliSeconds()
-                    + (System.currentTimeMillis() - validationStartTimeInMilliSeconds));
-        }
-
         // Begin writing the resources into DB.
         long writeStartTimeInMilliSeconds = System.currentTimeMillis();
         // Acquire a DB connection which will be used in the batch.
@@ -182,10 +142,6 @@ public class ChunkWriter extends AbstractItemWriter {
                     try {
                         String id = fhirResource.getId();
                         processedNum++;
-                        // Skip the resources which failed the validation
-                        if (failValidationIds.contains(id)) {
-                            continue;
-                        }
                         OperationOutcome operationOutcome;
                         if (id == null) {
                             operationOutcome =
@@ -219,11 +175,16 @@ public class ChunkWriter extends AbstractItemWriter {
         }
 
         chunkData.setTotalWriteMilliSeconds(chunkData.getTotalWriteMilliSeconds() + (System.currentTimeMillis() - writeStartTimeInMilliSeconds));
-        chunkData.setNumOfProcessedResources(chunkData.getNumOfProcessedResources() + processedNum + chunkData.getNumOfParseFailures());
+        // The resources which failed the parsing or the validation were dropped by the reader, but their lines are processed too.
+        int numOfReaderFailures = chunkData.getNumOfParseFailures() + chunkData.getNumOfValidationFailures();
+        chunkData.setNumOfProcessedResources(chunkData.getNumOfProcessedResources() + processedNum + numOfReaderFailures);
+        // A restarted partition resumes reading right after the last line of this chunk.
+        chunkData.setProcessedOffset(chunkData.getReadOffset());
         chunkData.setNumOfImportedResources(chunkData.getNumOfImportedResources() + succeededNum);
-        chunkData.setNumOfImportFailures(chunkData.getNumOfImportFailures() + failedNum + chunkData.getNumOfParseFailures());
-        // Reset NumOfParseFailures for next batch.
+        chunkData.setNumOfImportFailures(chunkData.getNumOfImportFailures() + failedNum + numOfReaderFailures);
+        // Reset NumOfParseFailures and NumOfValidationFailures for next batch.
         chunkData.setNumOfParseFailures(0);
+        chunkData.setNumOfValidationFailures(0);
         if (logger.isLoggable(Level.FINE)) {
             logger.fine("writeItems: processed " + processedNum + " " + importPartitionResourceType + " from " +  chunkData.getImportPartitionWorkitem());
         }
@@ -276,9 +237,6 @@ public class ChunkWriter extends AbstractItemWriter {
 
     @Override
     public void open(Serializable checkpoint) throws Exception {
-        if (fhirValidation != null) {
-            isValidationOn = fhirValidation.equalsIgnoreCase("Y");
-        }
         if (fhirTenant == null) {
             fhirTenant = "default";
             logger.info("open: Set tenant to default!");
@@ -27,6 +27,15 @@ public class ImportCheckPointData implements Serializable {
     protected long totalWriteMilliSeconds = 0;
     protected long totalValidationMilliSeconds = 0;
     protected long importFileSize = 0;
+    // The byte offset right after the last processed line, where a restarted partition resumes reading.
+    protected long processedOffset = 0;
+    // The byte range of the import file processed by this partition; rangeEnd is 0 if the partition processes the
+    // whole file. The partition processes the lines which start within the range.
+    protected long rangeStart = 0;
+    protected long rangeEnd = 0;
+    // The index of the range and the number of ranges the import file is split into.
+    protected int rangeIndex = 0;
+    protected int numOfRanges = 1;
 
     protected long inFlyRateBeginMilliSeconds = 0;
 
@@ -63,6 +72,11 @@ public class ImportCheckPointData implements Serializable {
     public static class Builder {
         protected String importPartitionWorkitem;
         protected int numOfProcessedResources;
+        protected long processedOffset;
+        protected long rangeStart;
+        protected long rangeEnd;
+        protected int rangeIndex;
+        protected int numOfRanges = 1;
         protected String importPartitionResourceType;
         protected int numOfImportedResources;
         protected int numOfImportFailures;
@@ -98,6 +112,31 @@ public class ImportCheckPointData implements Serializable {
             return this;
         }
 
+        public Builder processedOffset(long processedOffset) {
+            this.processedOffset = processedOffset;
+            return this;
+        }
+
+        public Builder rangeStart(long rangeStart) {
+            this.rangeStart = rangeStart;
+            return this;
+        }
+
+        public Builder rangeEnd(long rangeEnd) {
+            this.rangeEnd = rangeEnd;
+            return this;
+        }
+
+        public Builder rangeIndex(int rangeIndex) {
+            this.rangeIndex = rangeIndex;
+            return this;
+        }
+
+        public Builder numOfRanges(int numOfRanges) {
+            this.numOfRanges = numOfRanges;
+            return this;
+        }
+
         public Builder importPartitionResourceType(String importPartitionResourceType) {
             this.importPartitionResourceType = importPartitionResourceType;
             return this;
@@ -182,6 +221,11 @@ public class ImportCheckPointData implements Serializable {
             ImportCheckPointData importCheckPointData = new ImportCheckPointData();
             importCheckPointData.importPartitionWorkitem = this.importPartitionWorkitem;
             importCheckPointData.numOfProcessedResources = this.numOfProcessedResources;
+            importCheckPointData.processedOffset = this.processedOffset;
+            importCheckPointData.rangeStart = this.rangeStart;
+            importCheckPointData.rangeEnd = this.rangeEnd;
+            importCheckPointData.rangeIndex = this.rangeIndex;
+            importCheckPointData.numOfRanges = this.numOfRanges;
             importCheckPointData.importPartitionResourceType = this.importPartitionResourceType;
             importCheckPointData.numOfImportedResources = this.numOfImportedResources;
             importCheckPointData.numOfImportFailures = this.numOfImportFailures;
@@ -216,6 +260,30 @@ public class ImportCheckPointData implements Serializable {
         this.numOfProcessedResources = numOfProcessedResources;
     }
 
+    public long getProcessedOffset() {
+        return processedOffset;
+    }
+
+    public void setProcessedOffset(long processedOffset) {
+        this.processedOffset = processedOffset;
+    }
+
+    public long getRangeStart() {
+        return rangeStart;
+    }
+
+    public long getRangeEnd() {
+        return rangeEnd;
+    }
+
+    public int getRangeIndex() {
+        return rangeIndex;
+    }
+
+    public int getNumOfRanges() {
+        return numOfRanges;
+    }
+
     public int getNumOfImportedResources() {
         return numOfImportedResources;
     }
@@ -248,6 +316,11 @@ public class ImportCheckPointData implements Serializable {
         return ImportCheckPointData.Builder.builder()
                 .importPartitionWorkitem(userData.getImportPartitionWorkitem())
                 .numOfProcessedResources(userData.getNumOfProcessedResources())
+                .processedOffset(userData.getProcessedOffset())
+                .rangeStart(userData.getRangeStart())
+                .rangeEnd(userData.getRangeEnd())
+                .rangeIndex(userData.getRangeIndex())
+                .numOfRanges(userData.getNumOfRanges())
                 .importPartitionResourceType(userData.getImportPartitionResourceType())
                 .numOfImportedResources(userData.getNumOfImportedResources())
                 .numOfImportFailures(userData.getNumOfImportFailures())
@@ -366,7 +439,8 @@ public class ImportCheckPointData implements Serializable {
     @Override
     public String toString() {
         return "ImportCheckPointData [importPartitionWorkitem=" + importPartitionWorkitem + ", numOfProcessedResources=" + numOfProcessedResources
-                + ", numOfImportedResources=" + numOfImportedResources + ", numOfImportFailures=" + numOfImportFailures + ", totalReadMilliSeconds="
+                + ", processedOffset=" + processedOffset + ", rangeStart=" + rangeStart + ", rangeEnd=" + rangeEnd + ", rangeIndex=" + rangeIndex
+                + ", numOfRanges=" + numOfRanges + ", numOfImportedResources=" + numOfImportedResources + ", numOfImportFailures=" + numOfImportFailures + ", totalReadMilliSeconds="
                 + totalReadMilliSeconds + ", totalWriteMilliSeconds=" + totalWriteMilliSeconds + ", totalValidationMilliSeconds=" + totalValidationMilliSeconds
                 + ", importFileSize=" + importFileSize + ", inFlyRateBeginMilliSeconds=" + inFlyRateBeginMilliSeconds + ", numOfToBeImported="
                 + numOfToBeImported + ", numOfParseFailures=" + numOfParseFailures + ", importPartitionResourceType=" + importPartitionResourceType
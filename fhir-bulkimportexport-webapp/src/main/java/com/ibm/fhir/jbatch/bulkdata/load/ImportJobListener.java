@@ -7,18 +7,27 @@
 package com.ibm.fhir.jbatch.bulkdata.load;
 
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.batch.api.BatchProperty;
 import javax.batch.api.listener.JobListener;
 import javax.batch.operations.JobOperator;
 import javax.batch.runtime.BatchRuntime;
+import javax.batch.runtime.BatchStatus;
 import javax.batch.runtime.JobExecution;
+import javax.batch.runtime.StepExecution;
 import javax.batch.runtime.context.JobContext;
 import javax.enterprise.context.Dependent;
 import javax.inject.Inject;
@@ -26,12 +35,20 @@ import javax.json.JsonArray;
 import javax.json.JsonObject;
 import javax.json.JsonValue;
 
+import com.ibm.cloud.objectstorage.services.s3.AmazonS3;
+import com.ibm.cloud.objectstorage.services.s3.model.ListObjectsV2Request;
+import com.ibm.cloud.objectstorage.services.s3.model.ListObjectsV2Result;
+import com.ibm.cloud.objectstorage.services.s3.model.S3ObjectSummary;
+import com.ibm.fhir.config.FHIRConfigHelper;
+import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.jbatch.bulkdata.common.BulkDataUtils;
 import com.ibm.fhir.jbatch.bulkdata.common.Constants;
 
 @Dependent
 public class ImportJobListener implements JobListener {
     private static final Logger logger = Logger.getLogger(ImportJobListener.class.getName());
+    // e.g, test1.ndjson_range2_oo_errors.ndjson for the 3rd range of test1.ndjson.
+    private static final Pattern RANGE_OPERATIONOUTCOMES_PATTERN = Pattern.compile("(.*)_range(\\d+)(_oo_(?:success|errors)\\.ndjson)");
 
     long currentExecutionStartTimeInMS;
 
@@ -42,6 +59,48 @@ public class ImportJobListener implements JobListener {
     @BatchProperty(name = Constants.IMPORT_FHIR_DATASOURCES)
     String dataSourcesInfo;
 
+    /**
+     * The IBM COS API key or S3 access key.
+     */
+    @Inject
+    @BatchProperty(name = Constants.COS_API_KEY)
+    String cosApiKeyProperty;
+
+    /**
+     * The IBM COS service instance id or S3 secret key.
+     */
+    @Inject
+    @BatchProperty(name = Constants.COS_SRVINST_ID)
+    String cosSrvinstId;
+
+    /**
+     * The IBM COS or S3 End point URL.
+     */
+    @Inject
+    @BatchProperty(name = Constants.COS_ENDPOINT_URL)
+    String cosEndpointUrl;
+
+    /**
+     * The IBM COS or S3 location.
+     */
+    @Inject
+    @BatchProperty(name = Constants.COS_LOCATION)
+    String cosLocation;
+
+    /**
+     * The IBM COS or S3 bucket name for import OperationOutcomes.
+     */
+    @Inject
+    @BatchProperty(name = Constants.COS_OPERATIONOUTCOMES_BUCKET_NAME)
+    String cosOperationOutcomesBucketName;
+
+    /**
+     * If use IBM credential or S3 secret keys.
+     */
+    @Inject
+    @BatchProperty(name = Constants.COS_IS_IBM_CREDENTIAL)
+    String cosCredentialIbm;
+
     public ImportJobListener() {
 
     }
@@ -100,6 +159,14 @@ public class ImportJobListener implements JobListener {
 
         jobContext.setExitStatus(Arrays.toString(resultInExitStatus));
 
+        if (Constants.IMPORT_IS_COLLECT_OPERATIONOUTCOMES) {
+            try {
+                mergeRangeOperationOutcomes(jobOperator, partitionSummaries);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "afterJob: Failed to merge the OperationOutcomes of the split files", e);
+            }
+        }
+
         for (ImportCheckPointData partitionSummary : partitionSummaries) {
             ImportCheckPointData partitionSummaryInMap = importedResourceTypeSummaries.get(partitionSummary.getImportPartitionResourceType());
             if (partitionSummaryInMap == null) {
@@ -138,6 +205,80 @@ public class ImportJobListener implements JobListener {
                 + " ImportRate: " + new DecimalFormat("#0.00").format(totalImportedFhirResources/jobProcessingSeconds) + " ----");
     }
 
+    /**
+     * The partitions of the ranges of a split file write their OperationOutcomes to separate objects (see ChunkReader),
+     * so concatenate these into the objects of the file once all the partitions are finished.
+     */
+    private void mergeRangeOperationOutcomes(JobOperator jobOperator, List<ImportCheckPointData> partitionSummaries) throws Exception {
+        // Only the split files have range objects to merge.
+        Set<String> splitWorkitems = new LinkedHashSet<>();
+        for (ImportCheckPointData partitionSummary : partitionSummaries) {
+            if (partitionSummary != null && partitionSummary.getNumOfRanges() > 1) {
+                splitWorkitems.add(partitionSummary.getImportPartitionWorkitem());
+            }
+        }
+        if (splitWorkitems.isEmpty()) {
+            return;
+        }
+
+        // The ranges of a stopped or failed job are merged when the restarted job completes.
+        for (StepExecution stepExecution : jobOperator.getStepExecutions(jobContext.getExecutionId())) {
+            if (!BatchStatus.COMPLETED.equals(stepExecution.getBatchStatus())) {
+                return;
+            }
+        }
+
+        boolean isCosClientUseFhirServerTrustStore = FHIRConfigHelper
+                .getBooleanProperty(FHIRConfiguration.PROPERTY_BULKDATA_BATCHJOB_USEFHIRSERVERTRUSTSTORE, false);
+        AmazonS3 cosClient = BulkDataUtils.getCosClient(cosCredentialIbm, cosApiKeyProperty, cosSrvinstId, cosEndpointUrl,
+                cosLocation, isCosClientUseFhirServerTrustStore);
+        if (cosClient == null) {
+            logger.warning("mergeRangeOperationOutcomes: Failed to get CosClient!");
+            return;
+        }
+
+        for (String splitWorkitem : splitWorkitems) {
+            List<String> keys = new ArrayList<>();
+            ListObjectsV2Result result = null;
+            do {
+                ListObjectsV2Request request = new ListObjectsV2Request().withBucketName(cosOperationOutcomesBucketName)
+                        .withPrefix(splitWorkitem + "_range").withMaxKeys(1000)
+                        .withContinuationToken(result == null ? null : result.getNextContinuationToken());
+                result = cosClient.listObjectsV2(request);
+                for (S3ObjectSummary objectSummary : result.getObjectSummaries()) {
+                    keys.add(objectSummary.getKey());
+                }
+            } while (result.isTruncated());
+
+            for (Map.Entry<String, List<String>> entry : groupRangeObjects(keys).entrySet()) {
+                BulkDataUtils.mergeObjects(cosClient, cosOperationOutcomesBucketName, entry.getValue(), entry.getKey(), true);
+            }
+        }
+    }
+
+    /**
+     * Groups the OperationOutcomes objects of the ranges by the object of the file they are merged into.
+     *
+     * @param keys the keys of the objects, which may include objects other than range objects
+     * @return the keys of the range objects, in range order, per key of the merged object
+     */
+    static Map<String, List<String>> groupRangeObjects(List<String> keys) {
+        Map<String, TreeMap<Integer, String>> rangeObjects = new HashMap<>();
+        for (String key : keys) {
+            Matcher matcher = RANGE_OPERATIONOUTCOMES_PATTERN.matcher(key);
+            if (matcher.matches()) {
+                rangeObjects.computeIfAbsent(matcher.group(1) + matcher.group(3), k -> new TreeMap<>())
+                        .put(Integer.parseInt(matcher.group(2)), key);
+            }
+        }
+
+        Map<String, List<String>> groupedObjects = new HashMap<>();
+        for (Map.Entry<String, TreeMap<Integer, String>> entry : rangeObjects.entrySet()) {
+            groupedObjects.put(entry.getKey(), new ArrayList<>(entry.getValue().values()));
+        }
+        return groupedObjects;
+    }
+
     @Override
     public void beforeJob() {
         currentExecutionStartTimeInMS = TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
@@ -27,7 +27,9 @@ public class ImportPartitionAnalyzer implements PartitionAnalyzer {
     @Inject
     JobContext jobContext;
 
-    private List<ImportCheckPointData> partitionSummaries = new ArrayList<>();
+    List<ImportCheckPointData> partitionSummaries = new ArrayList<>();
+    // Used for merging the partition summaries of the ranges of a split file into a single summary for the file.
+    private HashMap<String, ImportCheckPointData> rangedFileSummaries = new HashMap<>();
     // Used for generating in-fly performance measurement per each resource type.
     private HashMap<String, ImportCheckPointData> importedResourceTypeInFlySummaries = new HashMap<>();
 
@@ -47,7 +49,11 @@ public class ImportPartitionAnalyzer implements PartitionAnalyzer {
         ImportCheckPointData partitionSummaryForMetrics  = (ImportCheckPointData) data;
 
         if (partitionSummaryForMetrics.getNumOfToBeImported() == 0) {
-            partitionSummaries.add(partitionSummaryForMetrics);
+            if (partitionSummaryForMetrics.getNumOfRanges() > 1) {
+                addRangeSummary(partitionSummaryForMetrics);
+            } else {
+                partitionSummaries.add(partitionSummaryForMetrics);
+            }
             jobContext.setTransientUserData(partitionSummaries);
         }
 
@@ -82,4 +88,24 @@ public class ImportPartitionAnalyzer implements PartitionAnalyzer {
         }
 
     }
+
+    /**
+     * Adds the summary of a finished range to the summary of its file; the file size is counted once.
+     */
+    void addRangeSummary(ImportCheckPointData rangeSummary) {
+        String fileKey = rangeSummary.getImportPartitionResourceType() + ":" + rangeSummary.getImportPartitionWorkitem();
+        ImportCheckPointData fileSummary = rangedFileSummaries.get(fileKey);
+        if (fileSummary == null) {
+            rangedFileSummaries.put(fileKey, rangeSummary);
+            partitionSummaries.add(rangeSummary);
+        } else {
+            fileSummary.setNumOfImportedResources(fileSummary.getNumOfImportedResources() + rangeSummary.getNumOfImportedResources());
+            fileSummary.setNumOfImportFailures(fileSummary.getNumOfImportFailures() + rangeSummary.getNumOfImportFailures());
+            fileSummary.setNumOfProcessedResources(fileSummary.getNumOfProcessedResources() + rangeSummary.getNumOfProcessedResources());
+            fileSummary.setNumOfParseFailures(fileSummary.getNumOfParseFailures() + rangeSummary.getNumOfParseFailures());
+            fileSummary.setTotalReadMilliSeconds(fileSummary.getTotalReadMilliSeconds() + rangeSummary.getTotalReadMilliSeconds());
+            fileSummary.setTotalValidationMilliSeconds(fileSummary.getTotalValidationMilliSeconds() + rangeSummary.getTotalValidationMilliSeconds());
+            fileSummary.setTotalWriteMilliSeconds(fileSummary.getTotalWriteMilliSeconds() + rangeSummary.getTotalWriteMilliSeconds());
+        }
+    }
 }
@@ -160,8 +160,8 @@ public class ImportPartitionCollector implements PartitionCollector {
                 }
             }
 
-            // Clean up.
-            BulkDataUtils.cleanupTransientUserData(partitionSummaryData, false);
+            // Clean up; a range which ends before the end of the input leaves the rest of the input unread, so abort it.
+            BulkDataUtils.cleanupTransientUserData(partitionSummaryData, partitionSummaryData.getRangeEnd() > 0);
         }
 
         ImportCheckPointData partitionSummaryForMetrics = ImportCheckPointData.fromImportTransientUserData(partitionSummaryData);
@@ -157,11 +157,18 @@ public class ImportPartitionMapper implements PartitionMapper {
     class FhirDataSource {
         private String type;
         private String url;
+        // The size in bytes if the data source can be read by byte ranges, otherwise 0.
+        private long size;
 
         public FhirDataSource(String type, String url) {
+            this(type, url, 0);
+        }
+
+        public FhirDataSource(String type, String url, long size) {
             super();
             this.type = type;
             this.url = url;
+            this.size = size;
         }
 
         public String getType() {
@@ -180,9 +187,17 @@ public class ImportPartitionMapper implements PartitionMapper {
             this.url = url;
         }
 
+        public long getSize() {
+            return size;
+        }
+
+        public void setSize(long size) {
+            this.size = size;
+        }
+
         @Override
         public String toString() {
-            return "FhirDataSource [type=" + type + ", url=" + url + "]";
+            return "FhirDataSource [type=" + type + ", url=" + url + ", size=" + size + "]";
         }
     }
 
@@ -252,7 +267,7 @@ public class ImportPartitionMapper implements PartitionMapper {
                     logger.info("getFhirDataSourcesForObjectStore: ObjectStorge Object(" + objectSummary.getKey()
                             + ") - " + objectSummary.getSize() + " bytes.");
                     if (objectSummary.getSize() > 0) {
-                        fhirDataSources.add(new FhirDataSource(dsTypeInfo, objectSummary.getKey()));
+                        fhirDataSources.add(new FhirDataSource(dsTypeInfo, objectSummary.getKey(), objectSummary.getSize()));
                     }
                 }
             }
@@ -271,8 +286,12 @@ public class ImportPartitionMapper implements PartitionMapper {
 
             switch (type) {
             case HTTPS:
+                // Only split the file if the server supports range requests.
+                fhirDataSources.add(new FhirDataSource(dsTypeInfo, dsDataLocationInfo,
+                        BulkDataUtils.isHttpsRangeSupported(dsDataLocationInfo) ? BulkDataUtils.getHttpsFileSize(dsDataLocationInfo) : 0));
+                break;
             case FILE:
-                fhirDataSources.add(new FhirDataSource(dsTypeInfo, dsDataLocationInfo));
+                fhirDataSources.add(new FhirDataSource(dsTypeInfo, dsDataLocationInfo, BulkDataUtils.getLocalFileSize(dsDataLocationInfo)));
                 break;
             case AWSS3:
             case IBMCOS:
@@ -292,21 +311,47 @@ public class ImportPartitionMapper implements PartitionMapper {
 
         List<FhirDataSource> fhirDataSources =
                 getFhirDataSources(dataSourceArray, BulkImportDataSourceStorageType.from(dataSourceStorageType));
-        PartitionPlanImpl pp = new PartitionPlanImpl();
-        pp.setPartitions(fhirDataSources.size());
-        pp.setThreads(Math.min(Constants.IMPORT_MAX_PARTITIONPROCESSING_THREADNUMBER, fhirDataSources.size()));
-        Properties[] partitionProps = new Properties[fhirDataSources.size()];
 
-        int propCount = 0;
+        List<Properties> partitionProps = new ArrayList<>();
         for (FhirDataSource fhirDataSource : fhirDataSources) {
-            Properties p = new Properties();
-            p.setProperty(Constants.IMPORT_PARTITTION_WORKITEM, fhirDataSource.getUrl());
-            p.setProperty(Constants.PARTITION_RESOURCE_TYPE, fhirDataSource.getType());
-
-            partitionProps[propCount++] = p;
+            partitionProps.addAll(getPartitionProperties(fhirDataSource.getType(), fhirDataSource.getUrl(), fhirDataSource.getSize()));
         }
-        pp.setPartitionProperties(partitionProps);
+
+        PartitionPlanImpl pp = new PartitionPlanImpl();
+        pp.setPartitions(partitionProps.size());
+        pp.setThreads(Math.min(Constants.IMPORT_MAX_PARTITIONPROCESSING_THREADNUMBER, partitionProps.size()));
+        pp.setPartitionProperties(partitionProps.toArray(new Properties[partitionProps.size()]));
 
         return pp;
     }
+
+    /**
+     * Splits a large file into byte ranges, so that a single large file is also imported in parallel; the reader of
+     * each range aligns the range to the lines of the file.
+     *
+     * @param size the size of the file in bytes, or 0 if the file can't be read by byte ranges
+     * @return the partition properties of the ranges of the file, in range order
+     */
+    static List<Properties> getPartitionProperties(String type, String url, long size) {
+        int numOfRanges = (int) Math.max(1, Math.min(Constants.IMPORT_MAX_PARTITIONPROCESSING_THREADNUMBER,
+                size / Constants.IMPORT_MIN_RANGE_SIZE));
+        long rangeSize = (size + numOfRanges - 1) / numOfRanges;
+        if (numOfRanges > 1) {
+            logger.info("mapPartitions: Split " + url + " (" + size + " bytes) into " + numOfRanges + " ranges.");
+        }
+
+        List<Properties> partitionProps = new ArrayList<>();
+        for (int rangeIndex = 0; rangeIndex < numOfRanges; rangeIndex++) {
+            Properties p = new Properties();
+            p.setProperty(Constants.IMPORT_PARTITTION_WORKITEM, url);
+            p.setProperty(Constants.PARTITION_RESOURCE_TYPE, type);
+            p.setProperty(Constants.IMPORT_PARTITTION_RANGESTART, String.valueOf(rangeIndex * rangeSize));
+            // The last range is read to the end of the file.
+            p.setProperty(Constants.IMPORT_PARTITTION_RANGEEND, String.valueOf(rangeIndex == numOfRanges - 1 ? 0 : (rangeIndex + 1) * rangeSize));
+            p.setProperty(Constants.IMPORT_PARTITTION_RANGEINDEX, String.valueOf(rangeIndex));
+            p.setProperty(Constants.IMPORT_PARTITTION_NUMOFRANGES, String.valueOf(numOfRanges));
+            partitionProps.add(p);
+        }
+        return partitionProps;
+    }
 }
\ No newline at end of file
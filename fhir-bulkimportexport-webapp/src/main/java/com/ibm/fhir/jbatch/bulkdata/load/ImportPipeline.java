@@ -0,0 +1,300 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.jbatch.bulkdata.load;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.exception.FHIRException;
+import com.ibm.fhir.exception.FHIROperationException;
+import com.ibm.fhir.jbatch.bulkdata.common.BulkDataUtils;
+import com.ibm.fhir.jbatch.bulkdata.common.Constants;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.parser.exception.FHIRParserException;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.validation.exception.FHIRValidationException;
+
+/**
+ * The read, parse and validate stages of a bulk import partition.
+ * <p>
+ * A reader thread reads the NDJSON lines of the partition and hands each line to a pool of parser threads, which parse
+ * and optionally validate the resource. The results are queued in the order of the lines, so the chunk reader hands
+ * the resources to the writer in input order, and the queue is bounded so the read-ahead can't run away from the
+ * writer. The checkpoint only records the byte offset after the last line returned by {@link #next(int)} and processed
+ * by the writer, so lines which were read ahead are simply read again when the partition is restarted.
+ * <p>
+ * A partition may only process a byte range of a large input. The range is aligned to the lines of the input: the
+ * partition processes the lines which start within the range, so it skips the line which crosses the start of the
+ * range (processed by the partition of the previous range) and finishes the line which crosses the end of the range.
+ */
+class ImportPipeline implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(ImportPipeline.class.getName());
+    private static final AtomicInteger pipelineCount = new AtomicInteger();
+
+    // Marks the end of the input in the queue.
+    private static final Future<ParsedLine> END_OF_INPUT = CompletableFuture.completedFuture(null);
+
+    /**
+     * Reads the lines of the partition.
+     */
+    interface LineSource {
+        /**
+         * @param offset - the byte offset right after the last line read, where the input is (re)opened if needed.
+         * @return the next line, or null at the end of the input
+         * @throws Exception
+         */
+        String readLine(long offset) throws Exception;
+
+        /**
+         * @return the byte offset right after the last line read
+         */
+        long getOffset();
+    }
+
+    /**
+     * A line of the input after the parse and validate stages; exactly one of resource and failure is set.
+     */
+    static class ParsedLine {
+        private final int lineNumber;
+        private final long endOffset;
+        private final Resource resource;
+        private final Exception failure;
+
+        private ParsedLine(int lineNumber, long endOffset, Resource resource, Exception failure) {
+            this.lineNumber = lineNumber;
+            this.endOffset = endOffset;
+            this.resource = resource;
+            this.failure = failure;
+        }
+
+        /**
+         * @return the 1-based line number within the input
+         */
+        int getLineNumber() {
+            return lineNumber;
+        }
+
+        /**
+         * @return the byte offset right after the line
+         */
+        long getEndOffset() {
+            return endOffset;
+        }
+
+        Resource getResource() {
+            return resource;
+        }
+
+        /**
+         * @return the FHIRParserException, or the FHIRValidationException or FHIROperationException of a resource which
+         *         failed the validation
+         */
+        Exception getFailure() {
+            return failure;
+        }
+
+        boolean isParseFailure() {
+            return failure instanceof FHIRParserException;
+        }
+    }
+
+    private final LineSource source;
+    private final String dataSource;
+    private final boolean isValidationOn;
+    private final BlockingQueue<Future<ParsedLine>> queue;
+    private final ExecutorService parsers;
+    private final Thread reader;
+    private final AtomicLong validationNanos = new AtomicLong();
+    private volatile boolean running = true;
+    private boolean endOfInput = false;
+    private int numOfLinesRead;
+    private long offset;
+    private final long rangeStart;
+    private final long rangeEnd;
+
+    /**
+     * @param source - the source of the lines.
+     * @param dataSource - the name of the input, for logging.
+     * @param numOfProcessedLines - number of the already processed lines.
+     * @param processedOffset - the byte offset right after the last processed line, where the reading starts.
+     * @param rangeStart - the byte offset where the range of the partition starts.
+     * @param rangeEnd - the byte offset where the range of the partition ends, or 0 to read to the end of the input.
+     * @param numOfParsers - the number of parser threads.
+     * @param isValidationOn - if validate the FHIR resources.
+     * @param fhirTenant - the tenant to validate for.
+     * @param fhirDatastoreId - the data store to validate for.
+     */
+    ImportPipeline(LineSource source, String dataSource, int numOfProcessedLines, long processedOffset, long rangeStart,
+            long rangeEnd, int numOfParsers, boolean isValidationOn, String fhirTenant, String fhirDatastoreId) {
+        this.source = source;
+        this.dataSource = dataSource;
+        this.numOfLinesRead = numOfProcessedLines;
+        this.offset = processedOffset;
+        this.rangeStart = rangeStart;
+        this.rangeEnd = rangeEnd;
+        this.isValidationOn = isValidationOn;
+        // Enough to keep every parser busy while the writer works on the previous chunk.
+        this.queue = new ArrayBlockingQueue<>(2 * numOfParsers * Constants.IMPORT_NUMOFFHIRRESOURCES_PERREAD);
+
+        int id = pipelineCount.incrementAndGet();
+        AtomicInteger parserCount = new AtomicInteger();
+        this.parsers = Executors.newFixedThreadPool(numOfParsers, r -> {
+            Thread thread = new Thread(() -> {
+                try {
+                    // The validation may depend on the tenant configuration.
+                    FHIRRequestContext.set(new FHIRRequestContext(fhirTenant, fhirDatastoreId));
+                } catch (FHIRException e) {
+                    logger.log(Level.WARNING, "Unable to set the request context for tenant '" + fhirTenant + "'", e);
+                }
+                r.run();
+            }, "fhir-import-parser-" + id + "-" + parserCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.reader = new Thread(this::read, "fhir-import-reader-" + id);
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * Waits for the next lines of the input.
+     *
+     * @param maxLines - the maximum number of lines to return.
+     * @return the next lines in input order; less than maxLines only at the end of the input
+     * @throws Exception if the input can't be read
+     */
+    List<ParsedLine> next(int maxLines) throws Exception {
+        List<ParsedLine> parsedLines = new ArrayList<>(maxLines);
+        while (!endOfInput && parsedLines.size() < maxLines) {
+            ParsedLine parsedLine;
+            try {
+                parsedLine = queue.take().get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+            if (parsedLine == null) {
+                endOfInput = true;
+            } else {
+                parsedLines.add(parsedLine);
+            }
+        }
+        return parsedLines;
+    }
+
+    /**
+     * @return the time in milliseconds the parsers spent validating since the last call
+     */
+    long takeValidationMilliSeconds() {
+        long nanos = validationNanos.getAndSet(0);
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * @return true once {@link #next(int)} has reached the end of the input
+     */
+    boolean isEndOfInput() {
+        return endOfInput;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        reader.interrupt();
+        parsers.shutdownNow();
+        try {
+            reader.join(Constants.COS_REQUEST_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        queue.clear();
+    }
+
+    private void read() {
+        // Checkpoints taken before the offset was recorded only have the number of processed lines, so skip these.
+        int numOfLinesToSkip = offset == 0 ? numOfLinesRead : 0;
+        // Nothing of a range which starts within the input is processed yet, so start right before the range and skip
+        // the line which ends there; if the byte right before the range is a line break, that line is empty.
+        boolean isSkipPartialLine = rangeStart > 0 && offset <= rangeStart;
+        if (isSkipPartialLine) {
+            offset = rangeStart - 1;
+        }
+        try {
+            String line;
+            while (running && (rangeEnd == 0 || offset < rangeEnd) && (line = source.readLine(offset)) != null) {
+                offset = source.getOffset();
+                if (isSkipPartialLine) {
+                    isSkipPartialLine = false;
+                    continue;
+                }
+                if (numOfLinesToSkip > 0) {
+                    numOfLinesToSkip--;
+                    continue;
+                }
+                int lineNumber = ++numOfLinesRead;
+                long endOffset = offset;
+                String resLine = line;
+                queue.put(parsers.submit(() -> parse(lineNumber, endOffset, resLine)));
+            }
+            queue.put(END_OF_INPUT);
+        } catch (InterruptedException e) {
+            // The pipeline was closed.
+        } catch (Exception e) {
+            if (running) {
+                logger.warning("read: Error reading [" + dataSource + "] - " + e.getMessage());
+                CompletableFuture<ParsedLine> failure = new CompletableFuture<>();
+                failure.completeExceptionally(e);
+                try {
+                    queue.put(failure);
+                } catch (InterruptedException ie) {
+                    // The pipeline was closed.
+                }
+            }
+        }
+    }
+
+    private ParsedLine parse(int lineNumber, long endOffset, String line) {
+        Resource resource;
+        try {
+            resource = FHIRParser.parser(Format.JSON).parse(new StringReader(line));
+        } catch (FHIRParserException e) {
+            // Log and skip the invalid FHIR resource.
+            logger.log(Level.INFO, "parse: Failed to parse line " + lineNumber + " of [" + dataSource + "].", e);
+            return new ParsedLine(lineNumber, endOffset, null, e);
+        }
+
+        if (isValidationOn) {
+            long validationStartTime = System.nanoTime();
+            try {
+                BulkDataUtils.validateInput(resource);
+            } catch (FHIRValidationException | FHIROperationException e) {
+                logger.warning("Failed to validate '" + resource.getId() + "' due to error: " + e.getMessage());
+                return new ParsedLine(lineNumber, endOffset, null, e);
+            } finally {
+                validationNanos.addAndGet(System.nanoTime() - validationStartTime);
+            }
+        }
+        return new ParsedLine(lineNumber, endOffset, resource, null);
+    }
+}
@@ -6,10 +6,11 @@
 
 package com.ibm.fhir.jbatch.bulkdata.load;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 
+import com.ibm.fhir.jbatch.bulkdata.common.NDJSONLineReader;
+
 public class ImportTransientUserData extends ImportCheckPointData {
     private static final long serialVersionUID = -2642411992044844735L;
     // Used for import OperationOutcomes, Bulk data import API defines optional links to the OperationOutcomes for each import data source,
@@ -18,7 +19,13 @@ public class ImportTransientUserData extends ImportCheckPointData {
     private ByteArrayOutputStream bufferStreamForImport = new ByteArrayOutputStream();
 
     private InputStream inputStream = null;
-    private BufferedReader bufferReader = null;
+    private NDJSONLineReader lineReader = null;
+    // The byte offset right after the last line handed to the writer; it becomes the processed offset once the
+    // writer has processed the chunk.
+    private long readOffset = 0;
+    // The number of resources in the current chunk which failed the validation; like the parse failures, these are
+    // counted by the writer and then reset.
+    private int numOfValidationFailures = 0;
 
     protected ImportTransientUserData() {
         super();
@@ -36,6 +43,11 @@ public class ImportTransientUserData extends ImportCheckPointData {
         return (ImportTransientUserData)ImportTransientUserData.Builder.builder()
                 .importPartitionWorkitem(importCheckPointData.importPartitionWorkitem)
                 .numOfProcessedResources(importCheckPointData.numOfProcessedResources)
+                .processedOffset(importCheckPointData.processedOffset)
+                .rangeStart(importCheckPointData.rangeStart)
+                .rangeEnd(importCheckPointData.rangeEnd)
+                .rangeIndex(importCheckPointData.rangeIndex)
+                .numOfRanges(importCheckPointData.numOfRanges)
                 .importPartitionResourceType(importCheckPointData.importPartitionResourceType)
                 .numOfImportedResources(importCheckPointData.numOfImportedResources)
                 .numOfImportFailures(importCheckPointData.numOfImportFailures)
@@ -66,6 +78,11 @@ public class ImportTransientUserData extends ImportCheckPointData {
             ImportTransientUserData importTransientUserData = new ImportTransientUserData();
             importTransientUserData.importPartitionWorkitem = this.importPartitionWorkitem;
             importTransientUserData.numOfProcessedResources = this.numOfProcessedResources;
+            importTransientUserData.processedOffset = this.processedOffset;
+            importTransientUserData.rangeStart = this.rangeStart;
+            importTransientUserData.rangeEnd = this.rangeEnd;
+            importTransientUserData.rangeIndex = this.rangeIndex;
+            importTransientUserData.numOfRanges = this.numOfRanges;
             importTransientUserData.importPartitionResourceType = this.importPartitionResourceType;
             importTransientUserData.numOfImportedResources = this.numOfImportedResources;
             importTransientUserData.numOfImportFailures = this.numOfImportFailures;
@@ -95,12 +112,28 @@ public class ImportTransientUserData extends ImportCheckPointData {
         this.inputStream = inputStream;
     }
 
-    public BufferedReader getBufferReader() {
-        return bufferReader;
+    public NDJSONLineReader getLineReader() {
+        return lineReader;
+    }
+
+    public void setLineReader(NDJSONLineReader lineReader) {
+        this.lineReader = lineReader;
+    }
+
+    public long getReadOffset() {
+        return readOffset;
+    }
+
+    public void setReadOffset(long readOffset) {
+        this.readOffset = readOffset;
+    }
+
+    public int getNumOfValidationFailures() {
+        return numOfValidationFailures;
     }
 
-    public void setBufferReader(BufferedReader bufferReader) {
-        this.bufferReader = bufferReader;
+    public void setNumOfValidationFailures(int numOfValidationFailures) {
+        this.numOfValidationFailures = numOfValidationFailures;
     }
 
 }
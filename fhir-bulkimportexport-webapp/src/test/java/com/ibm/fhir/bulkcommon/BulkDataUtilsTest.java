@@ -7,14 +7,27 @@
 package com.ibm.fhir.bulkcommon;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
 import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import org.testng.annotations.Test;
 
+import com.ibm.fhir.core.FHIRMediaType;
 import com.ibm.fhir.jbatch.bulkdata.common.BulkDataUtils;
+import com.ibm.fhir.jbatch.bulkdata.common.Constants;
+import com.ibm.fhir.jbatch.bulkdata.export.common.TransientUserData;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.util.ModelSupport;
 
@@ -33,4 +46,77 @@ public class BulkDataUtilsTest {
         assertEquals("gt2018-07-01T00:00:00Z" ,searchParametersForMedicationRequest.get(1).get("date").get(0));
         assertEquals("lt2019-07-01T00:00:00Z" ,searchParametersForMedicationRequest.get(1).get("date").get(1));
     }
+
+    @Test
+    public void testCompressedExportBuffer() throws Exception {
+        assertTrue(BulkDataUtils.isCompressedExport(Constants.EXPORT_COMPRESSION_GZIP, FHIRMediaType.APPLICATION_NDJSON));
+        assertFalse(BulkDataUtils.isCompressedExport(Constants.EXPORT_COMPRESSION_GZIP, FHIRMediaType.APPLICATION_PARQUET));
+        assertFalse(BulkDataUtils.isCompressedExport(null, FHIRMediaType.APPLICATION_NDJSON));
+
+        TransientUserData chunkData = (TransientUserData) TransientUserData.Builder.builder().build();
+        chunkData.setCompressed(true);
+        StringBuilder lines = new StringBuilder();
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        for (int write = 0; write < 3; write++) {
+            for (int i = 0; i < 1000; i++) {
+                String line = "{\"resourceType\":\"Patient\",\"id\":\"" + write + "-" + i + "\"}";
+                lines.append(line).append("\r\n");
+                if (i % 2 == 0) {
+                    chunkData.getOutputStream().write(line.getBytes(StandardCharsets.UTF_8));
+                    chunkData.getOutputStream().write(Constants.NDJSON_LINESEPERATOR);
+                } else {
+                    chunkData.appendNdjsonLine(new ByteArrayInputStream(line.getBytes(StandardCharsets.UTF_8)));
+                }
+            }
+            // Each write is a gzip member of its own.
+            chunkData.finishCompression();
+            chunkData.getBufferStream().writeTo(file);
+            chunkData.getBufferStream().reset();
+        }
+        assertTrue(file.size() * 4 < lines.length());
+
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(file.toByteArray()))) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                decompressed.write(buffer, 0, n);
+            }
+        }
+        assertEquals(lines.toString(), new String(decompressed.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFileUpload() throws Exception {
+        Path tmpDir = Files.createTempDirectory("BulkDataUtilsTest");
+        try {
+            Path file = tmpDir.resolve("prefix").resolve("Patient_1.ndjson");
+            Path partFile = file.resolveSibling("Patient_1.ndjson.part");
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            data.write("{\"id\":\"1\"}\n".getBytes(StandardCharsets.UTF_8));
+            long fileSize = BulkDataUtils.appendToFile(partFile, file, 0, data);
+            assertEquals(data.size(), fileSize);
+
+            // A write after the last checkpoint is overwritten when the partition is restarted.
+            BulkDataUtils.appendToFile(partFile, file, fileSize, data);
+            data.reset();
+            data.write("{\"id\":\"2\"}\n".getBytes(StandardCharsets.UTF_8));
+            fileSize = BulkDataUtils.appendToFile(partFile, file, fileSize, data);
+            assertFalse(Files.exists(file));
+
+            BulkDataUtils.finishFileUpload(partFile, file);
+            assertFalse(Files.exists(partFile));
+            assertEquals("{\"id\":\"1\"}\n{\"id\":\"2\"}\n", new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+
+            // The upload is finished again when the partition is restarted before the next checkpoint.
+            BulkDataUtils.finishFileUpload(partFile, file);
+            assertEquals(fileSize, Files.size(file));
+        } finally {
+            for (File file : tmpDir.resolve("prefix").toFile().listFiles()) {
+                file.delete();
+            }
+            Files.delete(tmpDir.resolve("prefix"));
+            Files.delete(tmpDir);
+        }
+    }
 }
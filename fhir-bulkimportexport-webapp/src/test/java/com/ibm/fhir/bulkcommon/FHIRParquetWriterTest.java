@@ -0,0 +1,196 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkcommon;
+
+import static com.ibm.fhir.model.type.String.string;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.jbatch.bulkdata.export.common.FHIRParquetWriter;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.type.Boolean;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.Date;
+import com.ibm.fhir.model.type.DateTime;
+import com.ibm.fhir.model.type.Extension;
+import com.ibm.fhir.model.type.HumanName;
+import com.ibm.fhir.model.type.Id;
+import com.ibm.fhir.model.type.Instant;
+import com.ibm.fhir.model.type.Meta;
+import com.ibm.fhir.model.type.Narrative;
+import com.ibm.fhir.model.type.Xhtml;
+import com.ibm.fhir.model.type.code.AdministrativeGender;
+import com.ibm.fhir.model.type.code.NarrativeStatus;
+
+/**
+ * Only the file-system based path is tested by default;
+ * manually set the constants and enable testWriteCOSviaHMAC to test the write to Cloud Object Storage
+ */
+public class FHIRParquetWriterTest {
+    /**
+     * The S3 endpoint for regional buckets in us-south
+     */
+    private static final String ENDPOINT = "https://s3.us-south.cloud-object-storage.appdomain.cloud";
+
+    /**
+     * The name of the bucket to use for the test
+     */
+    private static final String BUCKET_NAME = "fhir-bulkimexport-connectathon";
+
+    /**
+     * Access Key for HMAC Authentication
+     */
+    private static final String ACCESS_KEY = "REPLACEME";
+    /**
+     * Secret Key for HMAC Authentication
+     */
+    private static final String SECRET_KEY = "REPLACEME";
+
+    @Test(enabled = true)
+    public void testWriteFile() throws Exception {
+        // Intentionally checking to see if this is Windows, and SKIPPING it.
+        if (System.getProperty("os.name").startsWith("Windows")) {
+            System.out.println("Skipping, as this is Windows");
+            return;
+        }
+        Path tmpDir = Files.createTempDirectory("FHIRParquetWriterTest");
+        try (FHIRParquetWriter parquetWriter = new FHIRParquetWriter()) {
+            Patient patient1 = buildPatient();
+            Patient patient2 = patient1.toBuilder()
+                    .id("patient2")
+                    // add an extension
+                    .extension(Extension.builder()
+                        .url("http://examples.com/my-cool-extension")
+                        .value(string("test"))
+                        .build())
+                    // change deceased[x] from a boolean to a datetime
+                    .deceased(DateTime.of("2020-01-01T12:00:00Z"))
+                    // a primitive with an extension but no value
+                    .gender(AdministrativeGender.builder()
+                        .extension(Extension.builder()
+                            .url("http://hl7.org/fhir/StructureDefinition/data-absent-reason")
+                            .value(Code.of("unknown"))
+                            .build())
+                        .build())
+                    .build();
+
+            String fileName = tmpDir.resolve("Patient_1.parquet").toString();
+            parquetWriter.writeParquet(Arrays.asList(patient1, patient2), fileName);
+            assertTrue(Files.exists(tmpDir.resolve("Patient_1.parquet")));
+
+            try (ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(),
+                    new org.apache.hadoop.fs.Path(fileName)).build()) {
+                Group record = reader.read();
+                assertEquals(record.getString("resourceType", 0), "Patient");
+                assertEquals(record.getString("id", 0), "9aac1d9c-ea5f-4513-af9c-897ab21dd11d");
+                assertEquals(record.getGroup("meta", 0).getString("lastUpdated", 0), "2019-01-01T12:00:00Z");
+                assertTrue(record.getBoolean("active", 0));
+                assertEquals(record.getInteger("multipleBirthInteger", 0), 2);
+                assertEquals(record.getString("birthDate", 0), "1970-01-01");
+                assertFalse(record.getBoolean("deceasedBoolean", 0));
+                assertEquals(record.getFieldRepetitionCount("deceasedDateTime"), 0);
+                assertEquals(record.getFieldRepetitionCount("extension"), 0);
+
+                Group name = record.getGroup("name", 0).getGroup("list", 0).getGroup("element", 0);
+                assertEquals(name.getString("id", 0), "someId");
+                assertEquals(name.getString("family", 0), "Doe");
+                Group given = name.getGroup("given", 0);
+                assertEquals(given.getFieldRepetitionCount("list"), 2);
+                assertEquals(given.getGroup("list", 0).getString("element", 0), "John");
+                assertEquals(given.getGroup("list", 1).getString("element", 0), "Jingle");
+                assertEquals(record.getGroup("text", 0).getString("status", 0), "generated");
+
+                record = reader.read();
+                assertEquals(record.getString("id", 0), "patient2");
+                assertEquals(record.getFieldRepetitionCount("deceasedBoolean"), 0);
+                assertEquals(record.getString("deceasedDateTime", 0), "2020-01-01T12:00:00Z");
+                assertEquals(record.getGroup("extension", 0).getGroup("list", 0).getString("element", 0),
+                    "{\"url\":\"http://examples.com/my-cool-extension\",\"valueString\":\"test\"}");
+                assertEquals(record.getFieldRepetitionCount("gender"), 0);
+                assertEquals(record.getString("_gender", 0),
+                    "{\"extension\":[{\"url\":\"http://hl7.org/fhir/StructureDefinition/data-absent-reason\",\"valueCode\":\"unknown\"}]}");
+
+                assertNull(reader.read());
+            }
+
+            // an existing file is replaced
+            parquetWriter.writeParquet(Collections.singletonList(patient2), fileName);
+            try (ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(),
+                    new org.apache.hadoop.fs.Path(fileName)).build()) {
+                assertEquals(reader.read().getString("id", 0), "patient2");
+                assertNull(reader.read());
+            }
+        } finally {
+            for (File file : tmpDir.toFile().listFiles()) {
+                file.delete();
+            }
+            Files.delete(tmpDir);
+        }
+    }
+
+    /**
+     * Enter valid values for ENDPOINT, BUCKET_NAME, ACCESS_KEY, and SECRET_KEY and manually enable this test
+     * to perform a write to IBM Cloud Object Storage
+     */
+    @Test(enabled = false)
+    public void testWriteCOSviaHMAC() throws Exception {
+        try (FHIRParquetWriter parquetWriter = new FHIRParquetWriter(false, ENDPOINT, ACCESS_KEY, SECRET_KEY)) {
+            Patient patient = buildPatient();
+
+            String itemName = "cos://" + BUCKET_NAME + ".fhir/Patient_2.parquet";
+            parquetWriter.writeParquet(Collections.singletonList(patient), itemName);
+        }
+    }
+
+    private static Patient buildPatient() {
+        java.lang.String div = "<div xmlns=\"http://www.w3.org/1999/xhtml\"><p><b>Generated Narrative</b></p></div>";
+
+        java.lang.String id = "9aac1d9c-ea5f-4513-af9c-897ab21dd11d";
+
+        Meta meta = Meta.builder().versionId(Id.of("1"))
+                .lastUpdated(Instant.of("2019-01-01T12:00:00Z"))
+                .build();
+
+        HumanName name = HumanName.builder()
+                .id("someId")
+                .given(string("John"))
+                .given(string("Jingle"))
+                .family(string("Doe"))
+                .build();
+
+        Narrative text = Narrative.builder()
+                .status(NarrativeStatus.GENERATED)
+                .div(Xhtml.xhtml(div))
+                .build();
+
+        Patient patient = Patient.builder()
+                .id(id)
+                .text(text)
+                .active(com.ibm.fhir.model.type.Boolean.TRUE)
+                .multipleBirth(com.ibm.fhir.model.type.Integer.of(2))
+                .meta(meta)
+                .name(name)
+                .birthDate(Date.of("1970-01-01"))
+                .deceased(Boolean.FALSE)
+                .build();
+
+        return patient;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkcommon;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.jbatch.bulkdata.common.NDJSONLineReader;
+
+public class NDJSONLineReaderTest {
+
+    @Test
+    public void testLinesAndOffsets() throws Exception {
+        // "é" is two bytes in UTF-8.
+        byte[] input = "{\"a\":\"é\"}\n{\"b\":1}\r\n\n{\"c\":2}".getBytes(StandardCharsets.UTF_8);
+        try (NDJSONLineReader reader = new NDJSONLineReader(new ByteArrayInputStream(input), 0)) {
+            assertEquals(reader.readLine(), "{\"a\":\"é\"}");
+            assertEquals(reader.getOffset(), 11);
+            assertEquals(reader.readLine(), "{\"b\":1}");
+            assertEquals(reader.getOffset(), 20);
+            assertEquals(reader.readLine(), "");
+            assertEquals(reader.getOffset(), 21);
+            // The last line is not terminated.
+            assertEquals(reader.readLine(), "{\"c\":2}");
+            assertEquals(reader.getOffset(), input.length);
+            assertNull(reader.readLine());
+            assertEquals(reader.getOffset(), input.length);
+        }
+    }
+
+    @Test
+    public void testResumeAtOffset() throws Exception {
+        byte[] input = "{\"a\":1}\n{\"b\":2}\n".getBytes(StandardCharsets.UTF_8);
+        try (NDJSONLineReader reader = new NDJSONLineReader(new ByteArrayInputStream(input, 8, input.length - 8), 8)) {
+            assertEquals(reader.readLine(), "{\"b\":2}");
+            assertEquals(reader.getOffset(), input.length);
+            assertNull(reader.readLine());
+        }
+    }
+
+    @Test
+    public void testLineLongerThanBuffer() throws Exception {
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            longLine.append((char) ('a' + i % 26));
+        }
+        byte[] input = (longLine + "\r\nshort\n").getBytes(StandardCharsets.UTF_8);
+        try (NDJSONLineReader reader = new NDJSONLineReader(new ByteArrayInputStream(input), 0)) {
+            assertEquals(reader.readLine(), longLine.toString());
+            assertEquals(reader.getOffset(), longLine.length() + 2);
+            assertEquals(reader.readLine(), "short");
+            assertEquals(reader.getOffset(), input.length);
+            assertNull(reader.readLine());
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.jbatch.bulkdata.export.common;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+public class CheckPointUserDataTest {
+
+    private static CheckPointUserData summary(String resourceTypeSummary) {
+        return CheckPointUserData.Builder.builder().resourceTypeSummary(resourceTypeSummary).build();
+    }
+
+    @Test
+    public void testGetResourceType() {
+        assertEquals(summary("Patient[1000,1000,200]").getResourceType(), "Patient");
+        assertEquals(summary("Observation[]").getResourceType(), "Observation");
+    }
+
+    @Test
+    public void testGetResourceCounts() {
+        assertEquals(summary("Patient[1000,1000,200]").getResourceCounts(), Arrays.asList("1000", "1000", "200"));
+        assertEquals(summary("Patient[5]").getResourceCounts(), Arrays.asList("5"));
+        assertTrue(summary("Observation[]").getResourceCounts().isEmpty());
+    }
+}
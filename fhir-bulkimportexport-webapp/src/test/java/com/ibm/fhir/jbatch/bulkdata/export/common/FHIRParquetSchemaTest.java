@@ -0,0 +1,82 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.jbatch.bulkdata.export.common;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.OriginalType;
+import org.apache.parquet.schema.Type;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.QuestionnaireResponse;
+
+public class FHIRParquetSchemaTest {
+
+    @Test
+    public void testGroups() {
+        MessageType messageType = FHIRParquetSchema.of(Observation.class).getMessageType();
+
+        // Observation.code.coding is expanded into columns
+        Type coding = listElement(messageType.getType("code").asGroupType().getType("coding"));
+        assertFalse(coding.isPrimitive());
+        assertTrue(coding.asGroupType().containsField("system"));
+
+        // Observation.component.code.coding is nested deeper than MAX_GROUP_DEPTH, so it is held as JSON
+        GroupType component = listElement(messageType.getType("component")).asGroupType();
+        Type componentCoding = listElement(component.getType("code").asGroupType().getType("coding"));
+        assertJson(componentCoding);
+    }
+
+    @Test
+    public void testRecursiveElement() {
+        // QuestionnaireResponse.item.item is the same type as QuestionnaireResponse.item
+        MessageType messageType = FHIRParquetSchema.of(QuestionnaireResponse.class).getMessageType();
+        GroupType item = listElement(messageType.getType("item")).asGroupType();
+        assertJson(listElement(item.getType("item")));
+    }
+
+    @Test
+    public void testCompanion() {
+        MessageType messageType = FHIRParquetSchema.of(Patient.class).getMessageType();
+
+        // The id and extensions of a primitive element are a single JSON column
+        assertEquals(messageType.getType("birthDate").getOriginalType(), OriginalType.UTF8);
+        assertJson(messageType.getType("_birthDate"));
+
+        // Repeating primitive elements have a list of companions (Patient.name.given)
+        GroupType name = listElement(messageType.getType("name")).asGroupType();
+        assertEquals(name.getType("_given").getOriginalType(), OriginalType.LIST);
+        assertJson(listElement(name.getType("_given")));
+    }
+
+    @Test
+    public void testColumnCount() {
+        // Without a depth limit, the Observation schema has well over a thousand columns
+        assertTrue(FHIRParquetSchema.of(Observation.class).getMessageType().getPaths().size() < 1000);
+    }
+
+    private static void assertJson(Type type) {
+        assertTrue(type.isPrimitive());
+        assertEquals(type.getOriginalType(), OriginalType.UTF8);
+    }
+
+    /**
+     * @return the element type of a list column, or the passed type if it isn't a list
+     */
+    private static Type listElement(Type type) {
+        if (type.getOriginalType() != OriginalType.LIST) {
+            return type;
+        }
+        return type.asGroupType().getType(FHIRParquetSchema.LIST).asGroupType().getType(FHIRParquetSchema.ELEMENT);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.jbatch.bulkdata.export.system;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import javax.batch.runtime.context.JobContext;
+import javax.batch.runtime.context.StepContext;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.jbatch.bulkdata.common.Constants;
+import com.ibm.fhir.jbatch.bulkdata.export.common.CheckPointUserData;
+
+/**
+ * Tests the merge of the summaries of the _lastUpdated ranges of a split resource type and the rename of the range files,
+ * including across a restart of the step.
+ */
+public class ExportPartitionAnalyzerTest {
+    private static final String PATH_PREFIX = "export1";
+
+    private Path exportDirectory;
+    // The transient user data of the job and the persistent user data of the step.
+    private Map<String, Object> userData;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        exportDirectory = Files.createTempDirectory("export");
+        Files.createDirectory(exportDirectory.resolve(PATH_PREFIX));
+        userData = new HashMap<>();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(exportDirectory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private ExportPartitionAnalyzer createAnalyzer() {
+        ExportPartitionAnalyzer analyzer = new ExportPartitionAnalyzer();
+        analyzer.jobContext = (JobContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { JobContext.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "setTransientUserData":
+                    userData.put("transient", args[0]);
+                    return null;
+                case "getTransientUserData":
+                    return userData.get("transient");
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        analyzer.stepContext = (StepContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { StepContext.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "setPersistentUserData":
+                    userData.put("persistent", args[0]);
+                    return null;
+                case "getPersistentUserData":
+                    return userData.get("persistent");
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        analyzer.exportStorageType = Constants.EXPORT_STORAGE_TYPE_FILE;
+        analyzer.exportDirectory = exportDirectory.toString();
+        analyzer.cosBucketPathPrefix = PATH_PREFIX;
+        return analyzer;
+    }
+
+    /**
+     * Writes the files of a range and returns the summary the range reports.
+     */
+    private CheckPointUserData finishRange(String resourceType, int rangeIndex, int numOfRanges, int... resourceCounts)
+            throws IOException {
+        List<String> counts = new ArrayList<>();
+        int total = 0;
+        for (int i = 0; i < resourceCounts.length; i++) {
+            Files.write(exportDirectory.resolve(PATH_PREFIX).resolve(resourceType + "_range" + rangeIndex + "_" + (i + 1) + ".ndjson"),
+                    (resourceType + rangeIndex + "_" + (i + 1)).getBytes(StandardCharsets.UTF_8));
+            counts.add(String.valueOf(resourceCounts[i]));
+            total += resourceCounts[i];
+        }
+        return CheckPointUserData.Builder.builder()
+                .resourceTypeSummary(resourceType + "[" + String.join(",", counts) + "]")
+                .totalResourcesNum(total)
+                .rangeIndex(rangeIndex)
+                .numOfRanges(numOfRanges)
+                .build();
+    }
+
+    private String readFile(String name) throws IOException {
+        return new String(Files.readAllBytes(exportDirectory.resolve(PATH_PREFIX).resolve(name)), StandardCharsets.UTF_8);
+    }
+
+    private boolean exists(String name) {
+        return Files.exists(exportDirectory.resolve(PATH_PREFIX).resolve(name));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<CheckPointUserData> getPartitionSummaries() {
+        return (List<CheckPointUserData>) userData.get("transient");
+    }
+
+    /**
+     * Simulates the restart of the step, which only keeps the persistent user data of the step.
+     */
+    private void restart() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(userData.get("persistent"));
+        }
+        userData.clear();
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            userData.put("persistent", (Serializable) in.readObject());
+        }
+    }
+
+    @Test
+    public void testRangesAreMergedAndRenamedInRangeOrder() throws Exception {
+        ExportPartitionAnalyzer analyzer = createAnalyzer();
+        analyzer.analyzeCollectorData(finishRange("Observation", 1, 3, 1000, 200));
+        analyzer.analyzeCollectorData(finishRange("Patient", 0, 1, 5));
+        analyzer.analyzeCollectorData(finishRange("Observation", 2, 3));
+        assertTrue(exists("Observation_range1_1.ndjson"));
+
+        CheckPointUserData firstRange = finishRange("Observation", 0, 3, 1000);
+        analyzer.analyzeCollectorData(firstRange);
+        // A range which reports twice is only counted once.
+        analyzer.analyzeCollectorData(firstRange);
+
+        List<CheckPointUserData> partitionSummaries = getPartitionSummaries();
+        assertEquals(partitionSummaries.size(), 2);
+        assertEquals(partitionSummaries.get(0).getResourceTypeSummary(), "Patient[5]");
+        assertEquals(partitionSummaries.get(1).getResourceTypeSummary(), "Observation[1000,1000,200]");
+        assertEquals(partitionSummaries.get(1).getTotalResourcesNum(), 2200);
+
+        assertEquals(readFile("Observation_1.ndjson"), "Observation0_1");
+        assertEquals(readFile("Observation_2.ndjson"), "Observation1_1");
+        assertEquals(readFile("Observation_3.ndjson"), "Observation1_2");
+        assertFalse(exists("Observation_range0_1.ndjson"));
+        assertFalse(exists("Observation_range1_1.ndjson"));
+        assertFalse(exists("Observation_range1_2.ndjson"));
+    }
+
+    @Test
+    public void testRangesFinishedBeforeRestartAreKept() throws Exception {
+        ExportPartitionAnalyzer analyzer = createAnalyzer();
+        analyzer.analyzeCollectorData(finishRange("Observation", 0, 2, 1000));
+        analyzer.analyzeCollectorData(finishRange("Patient", 0, 1, 5));
+
+        restart();
+        // Only the partition which didn't finish before the restart reports to the analyzer of the restarted step.
+        analyzer = createAnalyzer();
+        analyzer.analyzeCollectorData(finishRange("Observation", 1, 2, 300));
+
+        List<CheckPointUserData> partitionSummaries = getPartitionSummaries();
+        assertEquals(partitionSummaries.size(), 2);
+        assertEquals(partitionSummaries.get(0).getResourceTypeSummary(), "Patient[5]");
+        assertEquals(partitionSummaries.get(1).getResourceTypeSummary(), "Observation[1000,300]");
+        assertEquals(partitionSummaries.get(1).getTotalResourcesNum(), 1300);
+        assertEquals(readFile("Observation_1.ndjson"), "Observation0_1");
+        assertEquals(readFile("Observation_2.ndjson"), "Observation1_1");
+    }
+
+    @Test
+    public void testRenamedRangesAreNotRenamedAgainAfterRestart() throws Exception {
+        ExportPartitionAnalyzer analyzer = createAnalyzer();
+        analyzer.analyzeCollectorData(finishRange("Observation", 0, 2, 1000));
+        analyzer.analyzeCollectorData(finishRange("Observation", 1, 2, 300));
+        assertEquals(readFile("Observation_2.ndjson"), "Observation1_1");
+
+        restart();
+        analyzer = createAnalyzer();
+        analyzer.analyzeCollectorData(finishRange("Patient", 0, 1, 5));
+
+        assertEquals(getPartitionSummaries().size(), 2);
+        assertEquals(getPartitionSummaries().get(0).getResourceTypeSummary(), "Observation[1000,300]");
+        assertEquals(readFile("Observation_1.ndjson"), "Observation0_1");
+        assertEquals(readFile("Observation_2.ndjson"), "Observation1_1");
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.jbatch.bulkdata.export.system;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class SystemExportPartitionMapperTest {
+
+    @Test
+    public void testRangeBoundariesSplitTheSpanEvenly() {
+        Instant min = Instant.parse("2020-01-01T00:00:00Z");
+        Instant max = Instant.parse("2020-01-01T00:00:40Z");
+        List<Instant> boundaries = SystemExportPartitionMapper.getRangeBoundaries(min, max, 4);
+        assertEquals(boundaries, Arrays.asList(
+                Instant.parse("2020-01-01T00:00:10Z"),
+                Instant.parse("2020-01-01T00:00:20Z"),
+                Instant.parse("2020-01-01T00:00:30Z")));
+    }
+
+    @Test
+    public void testRangeBoundariesAreTruncatedToSeconds() {
+        Instant min = Instant.parse("2020-01-01T00:00:00.250Z");
+        Instant max = Instant.parse("2020-01-01T00:00:03.250Z");
+        List<Instant> boundaries = SystemExportPartitionMapper.getRangeBoundaries(min, max, 3);
+        assertEquals(boundaries, Arrays.asList(
+                Instant.parse("2020-01-01T00:00:01Z"),
+                Instant.parse("2020-01-01T00:00:02Z")));
+    }
+
+    @Test
+    public void testCollapsedRangeBoundariesAreDropped() {
+        // 10 ranges over 2.5 seconds only leave the whole seconds after the first resource as boundaries.
+        Instant min = Instant.parse("2020-01-01T00:00:00.500Z");
+        Instant max = Instant.parse("2020-01-01T00:00:03Z");
+        List<Instant> boundaries = SystemExportPartitionMapper.getRangeBoundaries(min, max, 10);
+        assertEquals(boundaries, Arrays.asList(
+                Instant.parse("2020-01-01T00:00:01Z"),
+                Instant.parse("2020-01-01T00:00:02Z")));
+    }
+
+    @Test
+    public void testNoRangeBoundariesWithinOneSecond() {
+        Instant min = Instant.parse("2020-01-01T00:00:00.100Z");
+        Instant max = Instant.parse("2020-01-01T00:00:00.900Z");
+        assertTrue(SystemExportPartitionMapper.getRangeBoundaries(min, max, 5).isEmpty());
+    }
+}
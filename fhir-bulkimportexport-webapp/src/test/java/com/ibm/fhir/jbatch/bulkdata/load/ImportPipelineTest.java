@@ -0,0 +1,203 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.jbatch.bulkdata.load;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.jbatch.bulkdata.common.NDJSONLineReader;
+import com.ibm.fhir.jbatch.bulkdata.load.ImportPipeline.LineSource;
+import com.ibm.fhir.jbatch.bulkdata.load.ImportPipeline.ParsedLine;
+
+public class ImportPipelineTest {
+
+    private static byte[] buildInput(int numOfLines) {
+        StringBuilder input = new StringBuilder();
+        for (int i = 1; i <= numOfLines; i++) {
+            if (i % 10 == 0) {
+                input.append("{\"resourceType\":\"Patient\",\"id\":\r\n");
+            } else {
+                input.append("{\"resourceType\":\"Patient\",\"id\":\"patient-" + i + "\"}\n");
+            }
+        }
+        return input.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A source which opens the input at the offset, like BulkDataUtils does.
+     */
+    private static class ByteArraySource implements LineSource {
+        private final byte[] input;
+        private NDJSONLineReader lineReader;
+        private long openedAt = -1;
+
+        private ByteArraySource(byte[] input) {
+            this.input = input;
+        }
+
+        @Override
+        public String readLine(long offset) throws Exception {
+            if (lineReader == null) {
+                openedAt = offset;
+                lineReader = new NDJSONLineReader(new ByteArrayInputStream(input, (int) offset, input.length - (int) offset), offset);
+            }
+            return lineReader.readLine();
+        }
+
+        @Override
+        public long getOffset() {
+            return lineReader.getOffset();
+        }
+    }
+
+    @Test
+    public void testLinesInInputOrder() throws Exception {
+        byte[] input = buildInput(95);
+        try (ImportPipeline pipeline = new ImportPipeline(new ByteArraySource(input), "test.ndjson", 0, 0, 0, 0, 4, false, "default", "default")) {
+            int lineNumber = 0;
+            long offset = 0;
+            List<ParsedLine> parsedLines;
+            while (!(parsedLines = pipeline.next(20)).isEmpty()) {
+                for (ParsedLine parsedLine : parsedLines) {
+                    lineNumber++;
+                    assertEquals(parsedLine.getLineNumber(), lineNumber);
+                    assertTrue(parsedLine.getEndOffset() > offset);
+                    offset = parsedLine.getEndOffset();
+                    if (lineNumber % 10 == 0) {
+                        assertNull(parsedLine.getResource());
+                        assertTrue(parsedLine.isParseFailure());
+                    } else {
+                        assertEquals(parsedLine.getResource().getId(), "patient-" + lineNumber);
+                        assertNull(parsedLine.getFailure());
+                    }
+                }
+                assertTrue(parsedLines.size() == 20 || pipeline.isEndOfInput());
+            }
+            assertEquals(lineNumber, 95);
+            assertEquals(offset, input.length);
+            assertTrue(pipeline.isEndOfInput());
+        }
+    }
+
+    @Test
+    public void testResumeAtOffset() throws Exception {
+        byte[] input = buildInput(45);
+        long offset;
+        try (ImportPipeline pipeline = new ImportPipeline(new ByteArraySource(input), "test.ndjson", 0, 0, 0, 0, 2, false, "default", "default")) {
+            offset = pipeline.next(20).get(19).getEndOffset();
+        }
+
+        ByteArraySource source = new ByteArraySource(input);
+        try (ImportPipeline pipeline = new ImportPipeline(source, "test.ndjson", 20, offset, 0, 0, 2, false, "default", "default")) {
+            List<ParsedLine> parsedLines = pipeline.next(20);
+            assertEquals(parsedLines.size(), 20);
+            assertEquals(parsedLines.get(0).getLineNumber(), 21);
+            assertEquals(parsedLines.get(0).getResource().getId(), "patient-21");
+            assertEquals(source.openedAt, offset);
+            assertEquals(pipeline.next(20).size(), 5);
+            assertTrue(pipeline.next(20).isEmpty());
+        }
+    }
+
+    @Test
+    public void testSkipProcessedLinesWithoutOffset() throws Exception {
+        byte[] input = buildInput(45);
+        try (ImportPipeline pipeline = new ImportPipeline(new ByteArraySource(input), "test.ndjson", 40, 0, 0, 0, 2, false, "default", "default")) {
+            List<ParsedLine> parsedLines = pipeline.next(20);
+            assertEquals(parsedLines.size(), 5);
+            assertEquals(parsedLines.get(0).getLineNumber(), 41);
+            assertEquals(parsedLines.get(0).getResource().getId(), "patient-41");
+            assertEquals(parsedLines.get(4).getEndOffset(), input.length);
+            assertTrue(pipeline.next(20).isEmpty());
+        }
+    }
+
+    @Test
+    public void testRanges() throws Exception {
+        byte[] input = buildInput(95);
+        // The boundaries fall into the middle of lines, right after a line break and right before a line break.
+        int lineLength = "{\"resourceType\":\"Patient\",\"id\":\"patient-1\"}\n".length();
+        long[] boundaries = { 0, 100, 4 * lineLength, 9 * lineLength - 1, 2000, input.length - 10 };
+        Set<Integer> lineNumbers = new HashSet<>();
+        for (int i = 0; i < boundaries.length; i++) {
+            long rangeStart = boundaries[i];
+            long rangeEnd = i == boundaries.length - 1 ? 0 : boundaries[i + 1];
+            try (ImportPipeline pipeline = new ImportPipeline(new ByteArraySource(input), "test.ndjson", 0, 0, rangeStart, rangeEnd, 2, false, "default", "default")) {
+                List<ParsedLine> parsedLines;
+                while (!(parsedLines = pipeline.next(20)).isEmpty()) {
+                    for (ParsedLine parsedLine : parsedLines) {
+                        if (parsedLine.getResource() != null) {
+                            String id = parsedLine.getResource().getId();
+                            assertTrue(lineNumbers.add(Integer.parseInt(id.substring("patient-".length()))), id);
+                        }
+                    }
+                }
+            }
+        }
+        // Every line is processed by exactly one range; every 10th line is invalid.
+        assertEquals(lineNumbers.size(), 95 - 9);
+    }
+
+    @Test
+    public void testResumeRange() throws Exception {
+        byte[] input = buildInput(95);
+        long offset;
+        try (ImportPipeline pipeline = new ImportPipeline(new ByteArraySource(input), "test.ndjson", 0, 0, 1000, 3000, 2, false, "default", "default")) {
+            List<ParsedLine> parsedLines = pipeline.next(5);
+            assertTrue(parsedLines.get(0).getEndOffset() > 1000);
+            offset = parsedLines.get(4).getEndOffset();
+        }
+
+        ByteArraySource source = new ByteArraySource(input);
+        try (ImportPipeline pipeline = new ImportPipeline(source, "test.ndjson", 5, offset, 1000, 3000, 2, false, "default", "default")) {
+            List<ParsedLine> parsedLines = pipeline.next(100);
+            assertEquals(source.openedAt, offset);
+            assertEquals(parsedLines.get(0).getLineNumber(), 6);
+            // The last line starts within the range.
+            long lastLineEnd = parsedLines.get(parsedLines.size() - 1).getEndOffset();
+            assertTrue(lastLineEnd >= 3000);
+            assertTrue(parsedLines.get(parsedLines.size() - 2).getEndOffset() < 3000);
+            assertTrue(pipeline.isEndOfInput());
+        }
+    }
+
+    @Test
+    public void testReadFailure() throws Exception {
+        LineSource failingSource = new ByteArraySource(buildInput(20)) {
+            @Override
+            public String readLine(long offset) throws Exception {
+                String line = super.readLine(offset);
+                if (line == null) {
+                    throw new IOException("Connection reset");
+                }
+                return line;
+            }
+        };
+        try (ImportPipeline pipeline = new ImportPipeline(failingSource, "test.ndjson", 0, 0, 0, 0, 2, false, "default", "default")) {
+            assertEquals(pipeline.next(20).size(), 20);
+            try {
+                pipeline.next(20);
+                fail();
+            } catch (IOException e) {
+                assertEquals(e.getMessage(), "Connection reset");
+            }
+            assertFalse(pipeline.isEndOfInput());
+        }
+    }
+}
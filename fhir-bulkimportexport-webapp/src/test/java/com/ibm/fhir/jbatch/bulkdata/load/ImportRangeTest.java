@@ -0,0 +1,134 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.jbatch.bulkdata.load;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.jbatch.bulkdata.common.Constants;
+
+/**
+ * Tests the split of a large file into byte ranges and the merge of the results of the ranges.
+ */
+public class ImportRangeTest {
+    private static final String URL = "test1.ndjson";
+
+    @Test
+    public void testUnknownSizeIsNotSplit() {
+        List<Properties> partitionProps = ImportPartitionMapper.getPartitionProperties("Patient", URL, 0);
+        assertEquals(partitionProps.size(), 1);
+        assertEquals(partitionProps.get(0).getProperty(Constants.IMPORT_PARTITTION_RANGESTART), "0");
+        assertEquals(partitionProps.get(0).getProperty(Constants.IMPORT_PARTITTION_RANGEEND), "0");
+        assertEquals(partitionProps.get(0).getProperty(Constants.IMPORT_PARTITTION_NUMOFRANGES), "1");
+    }
+
+    @Test
+    public void testSmallFileIsNotSplit() {
+        List<Properties> partitionProps = ImportPartitionMapper.getPartitionProperties("Patient", URL,
+                2 * Constants.IMPORT_MIN_RANGE_SIZE - 1);
+        assertEquals(partitionProps.size(), 1);
+        assertEquals(partitionProps.get(0).getProperty(Constants.IMPORT_PARTITTION_RANGEEND), "0");
+    }
+
+    @Test
+    public void testRangesCoverTheFile() {
+        long size = 3 * Constants.IMPORT_MIN_RANGE_SIZE + 2;
+        List<Properties> partitionProps = ImportPartitionMapper.getPartitionProperties("Patient", URL, size);
+        assertEquals(partitionProps.size(), 3);
+
+        long expectedStart = 0;
+        for (int i = 0; i < partitionProps.size(); i++) {
+            Properties p = partitionProps.get(i);
+            assertEquals(p.getProperty(Constants.IMPORT_PARTITTION_WORKITEM), URL);
+            assertEquals(p.getProperty(Constants.PARTITION_RESOURCE_TYPE), "Patient");
+            assertEquals(p.getProperty(Constants.IMPORT_PARTITTION_RANGEINDEX), String.valueOf(i));
+            assertEquals(p.getProperty(Constants.IMPORT_PARTITTION_NUMOFRANGES), "3");
+            assertEquals(Long.parseLong(p.getProperty(Constants.IMPORT_PARTITTION_RANGESTART)), expectedStart);
+            long end = Long.parseLong(p.getProperty(Constants.IMPORT_PARTITTION_RANGEEND));
+            if (i == partitionProps.size() - 1) {
+                // The last range is read to the end of the file.
+                assertEquals(end, 0);
+                assertTrue(expectedStart < size);
+            } else {
+                assertTrue(end > expectedStart);
+                expectedStart = end;
+            }
+        }
+    }
+
+    @Test
+    public void testNumOfRangesIsCapped() {
+        List<Properties> partitionProps = ImportPartitionMapper.getPartitionProperties("Patient", URL,
+                100 * Constants.IMPORT_MIN_RANGE_SIZE);
+        assertEquals(partitionProps.size(), Constants.IMPORT_MAX_PARTITIONPROCESSING_THREADNUMBER);
+        assertEquals(partitionProps.get(1).getProperty(Constants.IMPORT_PARTITTION_RANGESTART),
+                String.valueOf(10 * Constants.IMPORT_MIN_RANGE_SIZE));
+    }
+
+    private static ImportCheckPointData rangeSummary(String url, int rangeIndex, int imported, int failures) {
+        return ImportCheckPointData.Builder.builder()
+                .importPartitionResourceType("Patient")
+                .importPartitionWorkitem(url)
+                .rangeIndex(rangeIndex)
+                .numOfRanges(3)
+                .numOfImportedResources(imported)
+                .numOfImportFailures(failures)
+                .numOfProcessedResources(imported + failures)
+                .importFileSize(1000)
+                .totalReadMilliSeconds(10)
+                .build();
+    }
+
+    @Test
+    public void testRangeSummariesAreMergedPerFile() {
+        ImportPartitionAnalyzer analyzer = new ImportPartitionAnalyzer();
+        ImportCheckPointData first = rangeSummary(URL, 1, 5, 1);
+        analyzer.addRangeSummary(first);
+        analyzer.addRangeSummary(rangeSummary("test2.ndjson", 0, 7, 0));
+        analyzer.addRangeSummary(rangeSummary(URL, 0, 3, 0));
+        analyzer.addRangeSummary(rangeSummary(URL, 2, 2, 2));
+
+        assertEquals(analyzer.partitionSummaries.size(), 2);
+        ImportCheckPointData fileSummary = analyzer.partitionSummaries.get(0);
+        assertSame(fileSummary, first);
+        assertEquals(fileSummary.getNumOfImportedResources(), 10);
+        assertEquals(fileSummary.getNumOfImportFailures(), 3);
+        assertEquals(fileSummary.getNumOfProcessedResources(), 13);
+        assertEquals(fileSummary.getTotalReadMilliSeconds(), 30);
+        // The file size is counted once.
+        assertEquals(fileSummary.getImportFileSize(), 1000);
+        assertEquals(analyzer.partitionSummaries.get(1).getNumOfImportedResources(), 7);
+    }
+
+    @Test
+    public void testRangeObjectsAreGroupedInRangeOrder() {
+        Map<String, List<String>> groupedObjects = ImportJobListener.groupRangeObjects(Arrays.asList(
+                "test1.ndjson_range10_oo_success.ndjson",
+                "test1.ndjson_range2_oo_success.ndjson",
+                "test1.ndjson_range0_oo_errors.ndjson",
+                "test1.ndjson_range0_oo_success.ndjson",
+                "test1.ndjson_oo_success.ndjson"));
+
+        assertEquals(groupedObjects.size(), 2);
+        assertEquals(groupedObjects.get("test1.ndjson_oo_success.ndjson"), Arrays.asList(
+                "test1.ndjson_range0_oo_success.ndjson",
+                "test1.ndjson_range2_oo_success.ndjson",
+                "test1.ndjson_range10_oo_success.ndjson"));
+        assertEquals(groupedObjects.get("test1.ndjson_oo_errors.ndjson"), Arrays.asList(
+                "test1.ndjson_range0_oo_errors.ndjson"));
+        assertNull(groupedObjects.get("test1.ndjson_range0_oo_success.ndjson"));
+    }
+}
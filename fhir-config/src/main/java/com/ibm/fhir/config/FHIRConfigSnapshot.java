@@ -0,0 +1,223 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.config;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import com.ibm.fhir.core.HTTPHandlingPreference;
+
+/**
+ * An immutable, pre-compiled view of the configuration that is in effect for a single tenant.
+ * <p>
+ * The snapshot is built once from the tenant's PropertyGroup layered on top of the "default" tenant's
+ * PropertyGroup. Every property is stored in a flat map keyed by its full hierarchical name
+ * (e.g. "fhirServer/core/defaultHandling") with its value already converted to the appropriate java.lang.* type
+ * (and decoded, in the case of String values), so that a lookup is a single hash map read.
+ * In addition, a few properties that are consulted on every request are resolved into typed fields.
+ * <p>
+ * Snapshots are never modified after construction; when the underlying configuration is reloaded,
+ * a new snapshot is built and swapped in by {@link FHIRConfiguration#loadSnapshotForTenant(String)}.
+ */
+public final class FHIRConfigSnapshot {
+
+    private final String tenantId;
+
+    // The property groups from which this snapshot was compiled; used to detect a reload.
+    private final PropertyGroup tenantConfig;
+    private final PropertyGroup defaultConfig;
+
+    // Full hierarchical property name -> converted value.
+    private final Map<String, Object> properties;
+
+    // Pre-resolved "hot" properties.
+    private final String defaultHandling;
+    private final HTTPHandlingPreference defaultHandlingPreference;
+    private final boolean allowClientHandlingPref;
+    private final boolean defaultPrettyPrint;
+
+    /**
+     * @param tenantId
+     *            the tenant for which the snapshot is being compiled
+     * @param tenantConfig
+     *            the tenant's configuration or null if the tenant has no configuration of its own
+     * @param defaultConfig
+     *            the "default" tenant's configuration or null if it doesn't exist
+     * @throws Exception
+     */
+    public FHIRConfigSnapshot(String tenantId, PropertyGroup tenantConfig, PropertyGroup defaultConfig) throws Exception {
+        this.tenantId = tenantId;
+        this.tenantConfig = tenantConfig;
+        this.defaultConfig = defaultConfig;
+
+        Map<String, Object> map = new HashMap<>();
+        boolean isDefaultTenant = FHIRConfiguration.DEFAULT_TENANT_ID.equals(tenantId);
+
+        // Issue #639. Datasource properties are never inherited from the default config
+        // by other tenants, since that would break tenant isolation.
+        if (defaultConfig != null && defaultConfig != tenantConfig) {
+            flatten(null, defaultConfig.getJsonObj(), map, !isDefaultTenant);
+        }
+        if (tenantConfig != null) {
+            flatten(null, tenantConfig.getJsonObj(), map, false);
+        }
+        this.properties = Collections.unmodifiableMap(map);
+
+        this.defaultHandling = getTypedProperty(String.class, FHIRConfiguration.PROPERTY_DEFAULT_HANDLING, "strict");
+        this.defaultHandlingPreference = toHandlingPreference(defaultHandling);
+        this.allowClientHandlingPref = getTypedProperty(Boolean.class, FHIRConfiguration.PROPERTY_ALLOW_CLIENT_HANDLING_PREF, Boolean.TRUE);
+        this.defaultPrettyPrint = getTypedProperty(Boolean.class, FHIRConfiguration.PROPERTY_DEFAULT_PRETTY_PRINT, Boolean.FALSE);
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    /**
+     * @return true iff this snapshot was compiled from exactly the specified property groups
+     */
+    boolean isCompiledFrom(PropertyGroup tenantConfig, PropertyGroup defaultConfig) {
+        return this.tenantConfig == tenantConfig && this.defaultConfig == defaultConfig;
+    }
+
+    /**
+     * Returns the value of the specified property as an instance of Boolean, Integer, Double, String,
+     * PropertyGroup or List&lt;Object&gt;, or null if it wasn't found in either the tenant or default config.
+     *
+     * @param propertyName
+     *            the hierarchical name of the property to be retrieved (e.g. "level1/level2/prop1")
+     */
+    public Object getProperty(String propertyName) {
+        return properties.get(propertyName);
+    }
+
+    /**
+     * @return the server's default handling preference for this tenant (i.e. "fhirServer/core/defaultHandling")
+     * @throws IllegalArgumentException if the configured value is not a valid handling preference
+     */
+    public HTTPHandlingPreference getDefaultHandlingPreference() {
+        if (defaultHandlingPreference == null) {
+            // Re-run the conversion so that the caller gets the original exception.
+            return HTTPHandlingPreference.from(defaultHandling);
+        }
+        return defaultHandlingPreference;
+    }
+
+    /**
+     * @return the value of "fhirServer/core/allowClientHandlingPref" for this tenant
+     */
+    public boolean isAllowClientHandlingPref() {
+        return allowClientHandlingPref;
+    }
+
+    /**
+     * @return the value of "fhirServer/core/defaultPrettyPrint" for this tenant
+     */
+    public boolean isDefaultPrettyPrint() {
+        return defaultPrettyPrint;
+    }
+
+    /**
+     * Retrieves the specified property and converts it to the expected type, using the same conversion rules as
+     * {@link FHIRConfigHelper}.
+     *
+     * @param expectedDataType
+     *            the type to which the property value should be converted
+     * @param propertyName
+     *            the name of the property to retrieve
+     * @param defaultValue
+     *            the default value to return in the event that the property is not found
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getTypedProperty(Class<T> expectedDataType, String propertyName, T defaultValue) {
+        T result = null;
+
+        Object obj = properties.get(propertyName);
+        if (obj != null) {
+            // If the property was of the expected type, then just do the assignment.
+            // Otherwise, we'll try to do some simple conversions (e.g. String --> Boolean).
+            if (expectedDataType.isAssignableFrom(obj.getClass())) {
+                result = (T) obj;
+            } else {
+                try {
+                    if (obj instanceof String) {
+                        if (Boolean.class.equals(expectedDataType)) {
+                            result = (T) Boolean.valueOf((String) obj);
+                        } else if (Integer.class.equals(expectedDataType)) {
+                            result = (T) Integer.valueOf((String) obj);
+                        } else if (Double.class.equals(expectedDataType)) {
+                            result = (T) Double.valueOf((String) obj);
+                        } else {
+                            throw unexpectedType(expectedDataType, propertyName, obj);
+                        }
+                    } else if (obj instanceof Boolean && String.class.equals(expectedDataType)) {
+                        result = (T) ((Boolean) obj).toString();
+                    } else {
+                        throw unexpectedType(expectedDataType, propertyName, obj);
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException("Unexpected error converting property '" + propertyName + "' to native type.", e);
+                }
+            }
+        }
+
+        return (result != null ? result : defaultValue);
+    }
+
+    private static RuntimeException unexpectedType(Class<?> expectedDataType, String propertyName, Object obj) {
+        return new RuntimeException("Expected property " + propertyName + " to be of type " + expectedDataType.getName() + ", but was of type "
+                + obj.getClass().getName());
+    }
+
+    private static HTTPHandlingPreference toHandlingPreference(String value) {
+        try {
+            return HTTPHandlingPreference.from(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Adds an entry to the map for each property (at every level) contained in the specified JsonObject.
+     * JSON null values are skipped so that they behave the same as missing properties.
+     *
+     * @param prefix
+     *            the hierarchical name of the JsonObject or null for the root object
+     * @param jsonObj
+     *            the JsonObject to flatten
+     * @param map
+     *            the map to which the entries are added
+     * @param skipDatasources
+     *            true if datasource properties should be skipped
+     * @throws Exception
+     */
+    private static void flatten(String prefix, JsonObject jsonObj, Map<String, Object> map, boolean skipDatasources) throws Exception {
+        for (Map.Entry<String, JsonValue> entry : jsonObj.entrySet()) {
+            String name = (prefix == null ? entry.getKey() : prefix + PropertyGroup.PATH_ELEMENT_SEPARATOR + entry.getKey());
+            JsonValue value = entry.getValue();
+            if (value.getValueType() == JsonValue.ValueType.NULL
+                    || (skipDatasources && name.startsWith(FHIRConfiguration.PROPERTY_DATASOURCES))) {
+                continue;
+            }
+
+            Object converted = PropertyGroup.convertJsonValue(value);
+            if (converted instanceof List) {
+                converted = Collections.unmodifiableList((List<?>) converted);
+            }
+            map.put(name, converted);
+
+            if (value.getValueType() == JsonValue.ValueType.OBJECT) {
+                flatten(name, (JsonObject) value, map, skipDatasources);
+            }
+        }
+    }
+}
@@ -9,6 +9,8 @@ package com.ibm.fhir.config;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -64,10 +66,17 @@ public class FHIRConfiguration {
 
     // Notification config properties
     public static final String PROPERTY_NOTIFICATION_RESOURCE_TYPES = "fhirServer/notifications/common/includeResourceTypes";
+    public static final String PROPERTY_NOTIFICATION_ASYNC_ENABLED = "fhirServer/notifications/common/async/enabled";
+    public static final String PROPERTY_NOTIFICATION_ASYNC_QUEUE_CAPACITY = "fhirServer/notifications/common/async/queueCapacity";
+    public static final String PROPERTY_NOTIFICATION_ASYNC_BATCH_SIZE = "fhirServer/notifications/common/async/batchSize";
+    public static final String PROPERTY_NOTIFICATION_ASYNC_OVERFLOW_POLICY = "fhirServer/notifications/common/async/overflowPolicy";
+    public static final String PROPERTY_NOTIFICATION_ASYNC_SPILL_DIRECTORY = "fhirServer/notifications/common/async/spillDirectory";
     public static final String PROPERTY_WEBSOCKET_ENABLED = "fhirServer/notifications/websocket/enabled";
+    public static final String PROPERTY_WEBSOCKET_BATCH_SIZE = "fhirServer/notifications/websocket/batchSize";
     public static final String PROPERTY_KAFKA_ENABLED = "fhirServer/notifications/kafka/enabled";
     public static final String PROPERTY_KAFKA_TOPICNAME = "fhirServer/notifications/kafka/topicName";
     public static final String PROPERTY_KAFKA_CONNECTIONPROPS = "fhirServer/notifications/kafka/connectionProperties";
+    public static final String PROPERTY_KAFKA_BATCH_SIZE = "fhirServer/notifications/kafka/batchSize";
     public static final String PROPERTY_NATS_ENABLED = "fhirServer/notifications/nats/enabled";
     public static final String PROPERTY_NATS_CLUSTER = "fhirServer/notifications/nats/cluster";
     public static final String PROPERTY_NATS_CHANNEL = "fhirServer/notifications/nats/channel";
@@ -78,6 +87,7 @@ public class FHIRConfiguration {
     public static final String PROPERTY_NATS_TRUSTSTORE_PW = "fhirServer/notifications/nats/truststorePassword";
     public static final String PROPERTY_NATS_KEYSTORE = "fhirServer/notifications/nats/keystoreLocation";
     public static final String PROPERTY_NATS_KEYSTORE_PW = "fhirServer/notifications/nats/keystorePassword";
+    public static final String PROPERTY_NATS_BATCH_SIZE = "fhirServer/notifications/nats/batchSize";
 
     // Persistence layer properties
     public static final String PROPERTY_UPDATE_CREATE_ENABLED = "fhirServer/persistence/common/updateCreateEnabled";
@@ -88,9 +98,22 @@ public class FHIRConfiguration {
     public static final String PROPERTY_JDBC_ENABLE_CODE_SYSTEMS_CACHE = "fhirServer/persistence/jdbc/enableCodeSystemsCache";
     public static final String PROPERTY_JDBC_ENABLE_PARAMETER_NAMES_CACHE = "fhirServer/persistence/jdbc/enableParameterNamesCache";
     public static final String PROPERTY_JDBC_ENABLE_RESOURCE_TYPES_CACHE = "fhirServer/persistence/jdbc/enableResourceTypesCache";
+    public static final String PROPERTY_JDBC_SEARCH_CACHE_RESOURCE_TYPES = "fhirServer/persistence/jdbc/searchCache/resourceTypes";
+    public static final String PROPERTY_JDBC_SEARCH_CACHE_TTL_SECONDS = "fhirServer/persistence/jdbc/searchCache/ttlSeconds";
+    public static final String PROPERTY_JDBC_SEARCH_CACHE_MAX_SIZE_MB = "fhirServer/persistence/jdbc/searchCache/maxSizeMB";
 
     // fhir-search - Bounding area
     public static final String PROPERTY_SEARCH_BOUNDING_AREA_RADIUS_TYPE = "fhirServer/search/useBoundingRadius";
+    public static final String PROPERTY_SEARCH_GEOHASH_INDEX = "fhirServer/search/useGeohashIndex";
+
+    // fhir-search - compartment membership index
+    public static final String PROPERTY_SEARCH_COMPARTMENT_INDEX = "fhirServer/search/useCompartmentIndex";
+
+    // fhir-search - resolved reference index
+    public static final String PROPERTY_SEARCH_RESOURCE_REFS = "fhirServer/search/useResourceRefs";
+
+    // fhir-search - _include:iterate and _revinclude:iterate
+    public static final String PROPERTY_SEARCH_MAX_INCLUDE_ITERATIONS = "fhirServer/search/maxIncludeIterations";
 
     // bulkdata
     // JavaBatch Job id encryption key
@@ -139,6 +162,12 @@ public class FHIRConfiguration {
      */
     private TenantSpecificPropertyGroupCache configCache = new TenantSpecificPropertyGroupCache();
 
+    /**
+     * This is our in-memory cache of compiled configuration snapshots keyed by tenant-id.
+     * Each snapshot is replaced as a whole whenever the underlying PropertyGroup(s) are reloaded.
+     */
+    private final ConcurrentHashMap<String, FHIRConfigSnapshot> snapshotCache = new ConcurrentHashMap<>();
+
     /**
      * This method is used to configure an explicit top-level directory where FHIR Server configuration
      * information is expected to reside.
@@ -193,6 +222,51 @@ public class FHIRConfiguration {
         return configCache.getCachedObjectForTenant(tenantId);
     }
 
+    /**
+     * Returns the compiled configuration snapshot for the specified tenant id. The snapshot combines the tenant's
+     * configuration with the "default" configuration, so callers need not fall back to the default config themselves.
+     * If either configuration has been reloaded since the snapshot was compiled, a new snapshot is compiled and
+     * replaces the old one.
+     *
+     * @param tenantId
+     *            a shortname representing the tenant whose configuration snapshot will be returned
+     * @return the tenant's configuration snapshot; never null
+     */
+    public FHIRConfigSnapshot loadSnapshotForTenant(String tenantId) {
+        PropertyGroup tenantConfig = null;
+        PropertyGroup defaultConfig = null;
+
+        try {
+            tenantConfig = loadConfigurationForTenant(tenantId);
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Error loading configuration for tenant-id '" + tenantId + "': " + e.getMessage());
+        }
+
+        if (DEFAULT_TENANT_ID.equals(tenantId)) {
+            defaultConfig = tenantConfig;
+        } else {
+            try {
+                defaultConfig = loadConfiguration();
+            } catch (Exception e) {
+                log.log(Level.WARNING, "Error loading default configuration: " + e.getMessage());
+            }
+        }
+
+        FHIRConfigSnapshot snapshot = snapshotCache.get(tenantId);
+        if (snapshot == null || !snapshot.isCompiledFrom(tenantConfig, defaultConfig)) {
+            try {
+                snapshot = new FHIRConfigSnapshot(tenantId, tenantConfig, defaultConfig);
+            } catch (Exception e) {
+                throw new IllegalStateException("Unable to compile configuration snapshot for tenant-id '" + tenantId + "'", e);
+            }
+            snapshotCache.put(tenantId, snapshot);
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Compiled configuration snapshot for tenant-id '" + tenantId + "'");
+            }
+        }
+        return snapshot;
+    }
+
     /**
      * Clears the entire cache of configuration objects. This can be used perhaps during testing when you need to clear
      * and re-load the configuration.
@@ -200,6 +274,7 @@ public class FHIRConfiguration {
     public void clearConfiguration() {
         synchronized (configCache) {
             configCache.clearCache();
+            snapshotCache.clear();
         }
     }
 
@@ -194,7 +194,8 @@ public class FHIRConfigHelperTest {
         pw.println(jsonString);
         pw.close();
 
-        s = FHIRConfigHelper.getStringProperty("fhirServer/property1", null);
+        // The change is detected in the background, so give the file watcher a chance to see it.
+        s = waitForStringProperty("fhirServer/property1", "property1Value2");
         assertNotNull(s);
         assertEquals("property1Value2", s);
 
@@ -203,6 +204,15 @@ public class FHIRConfigHelperTest {
         assertEquals("property2Value2", s);
     }
 
+    private String waitForStringProperty(String propertyName, String expectedValue) throws Exception {
+        String s = FHIRConfigHelper.getStringProperty(propertyName, null);
+        for (int i = 0; i < 100 && !expectedValue.equals(s); i++) {
+            Thread.sleep(100);
+            s = FHIRConfigHelper.getStringProperty(propertyName, null);
+        }
+        return s;
+    }
+
     @Test
     public void testTenant4() throws Exception {
         // "tenant4" does not have a fhir-server-config.json in place, so we SHOULD
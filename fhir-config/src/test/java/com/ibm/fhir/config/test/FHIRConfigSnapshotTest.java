@@ -0,0 +1,87 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.config.test;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.AssertJUnit.assertEquals;
+
+import java.util.Arrays;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRConfigHelper;
+import com.ibm.fhir.config.FHIRConfigSnapshot;
+import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.config.PropertyGroup;
+import com.ibm.fhir.core.HTTPHandlingPreference;
+
+public class FHIRConfigSnapshotTest {
+
+    @BeforeClass
+    public void setup() {
+        FHIRConfiguration.setConfigHome("target/test-classes");
+    }
+
+    @BeforeMethod
+    @AfterMethod
+    public void clearThreadLocal() {
+        FHIRRequestContext.remove();
+    }
+
+    @Test
+    public void testTenantLayeredOnDefault() throws Exception {
+        FHIRConfigSnapshot snapshot = FHIRConfiguration.getInstance().loadSnapshotForTenant("tenant1");
+        assertEquals("tenant1", snapshot.getTenantId());
+        assertEquals("tenant1Value1", snapshot.getProperty("collection/groupA/stringProp1"));
+        assertEquals("defaultValue2", snapshot.getProperty("collection/groupA/stringProp2"));
+        assertEquals(Boolean.TRUE, snapshot.getProperty("collection/groupB/boolProp1"));
+        assertEquals(Arrays.asList("token3", "token4"), snapshot.getProperty("collection/groupB/stringList1"));
+        assertEquals(Integer.valueOf(12345), snapshot.getTypedProperty(Integer.class, "collection/groupC/intProp2", null));
+        assertTrue(snapshot.getProperty("collection/groupA") instanceof PropertyGroup);
+        assertNull(snapshot.getProperty("collection/groupA/notThere"));
+    }
+
+    @Test
+    public void testDatasourcesNotInherited() throws Exception {
+        FHIRConfigSnapshot snapshot = FHIRConfiguration.getInstance().loadSnapshotForTenant("tenant1");
+        assertNotNull(snapshot.getProperty(FHIRConfiguration.PROPERTY_DATASOURCES + "/not_default"));
+        assertNull(snapshot.getProperty(FHIRConfiguration.PROPERTY_DATASOURCES + "/default"));
+
+        snapshot = FHIRConfiguration.getInstance().loadSnapshotForTenant(FHIRConfiguration.DEFAULT_TENANT_ID);
+        assertNotNull(snapshot.getProperty(FHIRConfiguration.PROPERTY_DATASOURCES + "/default"));
+    }
+
+    @Test
+    public void testHotProperties() throws Exception {
+        FHIRRequestContext.set(new FHIRRequestContext("tenant2"));
+        FHIRConfigSnapshot snapshot = FHIRConfigHelper.getConfigSnapshot();
+        assertEquals(HTTPHandlingPreference.STRICT, snapshot.getDefaultHandlingPreference());
+        assertTrue(snapshot.isAllowClientHandlingPref());
+        assertFalse(snapshot.isDefaultPrettyPrint());
+    }
+
+    @Test
+    public void testSnapshotReusedUntilReload() throws Exception {
+        FHIRConfigSnapshot snapshot1 = FHIRConfiguration.getInstance().loadSnapshotForTenant("tenant2");
+        FHIRConfigSnapshot snapshot2 = FHIRConfiguration.getInstance().loadSnapshotForTenant("tenant2");
+        assertSame(snapshot1, snapshot2);
+
+        FHIRConfiguration.getInstance().clearConfiguration();
+        FHIRConfigSnapshot snapshot3 = FHIRConfiguration.getInstance().loadSnapshotForTenant("tenant2");
+        assertNotSame(snapshot1, snapshot3);
+        assertEquals(snapshot1.getProperty("collection/tenant"), snapshot3.getProperty("collection/tenant"));
+    }
+}
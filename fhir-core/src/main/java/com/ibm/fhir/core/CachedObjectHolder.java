@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2017,2019
+ * (C) Copyright IBM Corp. 2017,2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -10,8 +10,12 @@ import java.io.File;
 
 /**
  * CachedObjectHolder is a generic type which provides common behavior for a file-based object
- * stored within a cache.  
- * 
+ * stored within a cache.
+ * <p>
+ * When the holder is being watched by a {@link FileChangeWatcher}, {@link #isStale()} is a simple
+ * flag check and the watcher is responsible for calling {@link #markStale()} when the file changes.
+ * Otherwise, each call to {@link #isStale()} checks the file on disk.
+ *
  * @author padams
  */
 public class CachedObjectHolder<T> {
@@ -19,13 +23,16 @@ public class CachedObjectHolder<T> {
     private long lastModified;
     private T cachedObject;
 
+    private volatile boolean watched;
+    private volatile boolean stale;
+
     public CachedObjectHolder(String fileName, T cachedObject) {
         setFileName(fileName);
         File f = new File(fileName);
         setLastModified(f.lastModified());
         setCachedObject(cachedObject);
     }
-    
+
     public CachedObjectHolder(T cachedObject) {
         setCachedObject(cachedObject);
     }
@@ -54,16 +61,55 @@ public class CachedObjectHolder<T> {
         this.cachedObject = cachedObject;
     }
 
+    public boolean isWatched() {
+        return watched;
+    }
+
     /**
-     * @return true iff the file from which the cached object was initially derived has been 
-     * modified since the object was cached.
+     * @param watched true if a FileChangeWatcher has taken over responsibility for detecting changes to the file
+     */
+    public void setWatched(boolean watched) {
+        this.watched = watched;
+    }
+
+    /**
+     * Marks the cached object as stale so that it will be discarded and re-loaded on next access.
+     */
+    public void markStale() {
+        this.stale = true;
+    }
+
+    /**
+     * @return true iff the cached object has been marked stale or, if the holder is not being watched,
+     * the file from which the cached object was initially derived has been modified since the object was cached.
      */
     public boolean isStale() {
+        if (stale) {
+            return true;
+        }
+        if (!watched) {
+            return hasFileChanged();
+        }
+        return false;
+    }
+
+    /**
+     * Checks the file on disk.
+     * A holder whose file did not exist when it was created (lastModified == 0) is considered changed
+     * as soon as the file appears.
+     *
+     * @return true iff the file from which the cached object was initially derived has been
+     * created, modified or deleted since the object was cached.
+     */
+    public boolean hasFileChanged() {
         if (fileName != null) {
             File f = new File(fileName);
+            if (lastModified == 0L) {
+                return f.exists();
+            }
             return !f.exists() || f.lastModified() > getLastModified();
         }
-        
+
         return false;
     }
 }
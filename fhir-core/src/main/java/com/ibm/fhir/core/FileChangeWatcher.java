@@ -0,0 +1,292 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.core;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class detects changes to the files behind {@link CachedObjectHolder} instances in the background,
+ * so that checking whether a cached object is stale doesn't require a filesystem call on every access.
+ * <p>
+ * Files are watched with a {@link WatchService} on their parent directory. If a WatchService is not available,
+ * the parent directory doesn't exist, or the watcher is configured for polling (e.g. for network-mounted
+ * config volumes where the filesystem doesn't deliver change notifications), the files are instead checked by a
+ * background thread at a fixed interval.
+ * <p>
+ * Registration is one-shot: once a holder has been marked stale it is no longer tracked, because the owning cache
+ * will replace it with a newly-loaded holder (which will be registered in turn).
+ * <p>
+ * The behavior can be controlled with the following system properties:
+ * <ul>
+ * <li>{@value #PROPERTY_MODE}: "watch" (the default), "poll", or "off" (every access checks the file on disk)</li>
+ * <li>{@value #PROPERTY_POLL_INTERVAL}: the polling interval in milliseconds (default {@value #DEFAULT_POLL_INTERVAL})</li>
+ * </ul>
+ */
+public class FileChangeWatcher {
+    private static final Logger log = Logger.getLogger(FileChangeWatcher.class.getName());
+
+    public static final String PROPERTY_MODE = "com.ibm.fhir.core.fileChangeWatcher.mode";
+    public static final String PROPERTY_POLL_INTERVAL = "com.ibm.fhir.core.fileChangeWatcher.pollInterval";
+    public static final long DEFAULT_POLL_INTERVAL = 5000;
+
+    public enum Mode {
+        WATCH, POLL, OFF
+    }
+
+    private static volatile FileChangeWatcher instance;
+
+    private final Mode mode;
+    private final long pollInterval;
+
+    // Holders tracked through the WatchService, organized by parent directory and then by file name.
+    private final Map<Path, Map<Path, Set<CachedObjectHolder<?>>>> watchedDirs = new ConcurrentHashMap<>();
+
+    // Holders tracked through polling.
+    private final Set<CachedObjectHolder<?>> polledHolders = ConcurrentHashMap.newKeySet();
+
+    private WatchService watchService;
+    private ScheduledExecutorService poller;
+
+    /**
+     * @return the JVM-wide watcher, configured from system properties on first use
+     */
+    public static FileChangeWatcher getInstance() {
+        FileChangeWatcher result = instance;
+        if (result == null) {
+            synchronized (FileChangeWatcher.class) {
+                result = instance;
+                if (result == null) {
+                    result = new FileChangeWatcher(getModeProperty(), getPollIntervalProperty());
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    public FileChangeWatcher(Mode mode, long pollInterval) {
+        this.mode = mode;
+        this.pollInterval = pollInterval;
+
+        if (mode == Mode.WATCH) {
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+                Thread t = new Thread(this::processEvents, "fhir-file-change-watcher");
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException | UnsupportedOperationException e) {
+                log.log(Level.WARNING, "Unable to create a WatchService; falling back to polling for file changes", e);
+                watchService = null;
+            }
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Starts tracking the file of the specified holder. If the watcher is turned off, the holder is left alone
+     * and will continue to check the file on every access.
+     *
+     * @param holder
+     *            a holder created from a file name
+     */
+    public void register(CachedObjectHolder<?> holder) {
+        if (mode == Mode.OFF || holder.getFileName() == null) {
+            return;
+        }
+
+        Path file = Paths.get(holder.getFileName()).toAbsolutePath().normalize();
+        holder.setWatched(true);
+        if (!(watchService != null && watch(file, holder))) {
+            startPoller();
+            polledHolders.add(holder);
+        }
+
+        // Close the window between the object being loaded and the watch being set up.
+        if (holder.hasFileChanged()) {
+            stale(holder);
+        }
+    }
+
+    /**
+     * Stops tracking the specified holder.
+     */
+    public void unregister(CachedObjectHolder<?> holder) {
+        if (holder.getFileName() == null) {
+            return;
+        }
+        polledHolders.remove(holder);
+        Path file = Paths.get(holder.getFileName()).toAbsolutePath().normalize();
+        Map<Path, Set<CachedObjectHolder<?>>> files = watchedDirs.get(file.getParent());
+        if (files != null) {
+            Set<CachedObjectHolder<?>> holders = files.get(file.getFileName());
+            if (holders != null) {
+                holders.remove(holder);
+            }
+        }
+    }
+
+    /**
+     * @return true if the holder is now tracked by the WatchService
+     */
+    private boolean watch(Path file, CachedObjectHolder<?> holder) {
+        Path dir = file.getParent();
+        if (dir == null) {
+            return false;
+        }
+        synchronized (watchedDirs) {
+            Map<Path, Set<CachedObjectHolder<?>>> files = watchedDirs.get(dir);
+            if (files == null) {
+                try {
+                    dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                } catch (IOException e) {
+                    if (log.isLoggable(Level.FINE)) {
+                        log.fine("Unable to watch directory '" + dir + "', polling instead: " + e.getMessage());
+                    }
+                    return false;
+                }
+                files = new ConcurrentHashMap<>();
+                watchedDirs.put(dir, files);
+            }
+            files.computeIfAbsent(file.getFileName(), k -> ConcurrentHashMap.newKeySet()).add(holder);
+        }
+        return true;
+    }
+
+    private void processEvents() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable t) {
+                log.log(Level.WARNING, "File change watcher stopped unexpectedly", t);
+                return;
+            }
+
+            Path dir = (Path) key.watchable();
+            Map<Path, Set<CachedObjectHolder<?>>> files = watchedDirs.get(dir);
+            if (files != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    Object context = event.context();
+                    Set<CachedObjectHolder<?>> holders = (context instanceof Path) ? files.get(context) : null;
+                    if (event.kind() == OVERFLOW || holders == null) {
+                        // Either events were lost or some other entry in the directory changed. The latter covers
+                        // files that are replaced through a symlink swap of the directory contents (as is done for
+                        // Kubernetes ConfigMap volumes), so treat every watched file in the directory as changed.
+                        for (Set<CachedObjectHolder<?>> s : files.values()) {
+                            staleAll(s);
+                        }
+                    } else {
+                        staleAll(holders);
+                    }
+                }
+            }
+
+            if (!key.reset()) {
+                // The directory is no longer accessible; hand its holders over to the poller.
+                synchronized (watchedDirs) {
+                    Map<Path, Set<CachedObjectHolder<?>>> removed = watchedDirs.remove(dir);
+                    if (removed != null) {
+                        for (Set<CachedObjectHolder<?>> s : removed.values()) {
+                            staleAll(s);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void staleAll(Set<CachedObjectHolder<?>> holders) {
+        for (CachedObjectHolder<?> holder : holders) {
+            stale(holder);
+        }
+    }
+
+    private void stale(CachedObjectHolder<?> holder) {
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Detected change to file '" + holder.getFileName() + "'");
+        }
+        holder.markStale();
+        unregister(holder);
+    }
+
+    private void poll() {
+        try {
+            for (CachedObjectHolder<?> holder : polledHolders) {
+                if (holder.hasFileChanged()) {
+                    stale(holder);
+                }
+            }
+        } catch (Throwable t) {
+            log.log(Level.WARNING, "Error while polling for file changes", t);
+        }
+    }
+
+    private synchronized void startPoller() {
+        if (poller == null) {
+            poller = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "fhir-file-change-poller");
+                t.setDaemon(true);
+                return t;
+            });
+            poller.scheduleWithFixedDelay(this::poll, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static Mode getModeProperty() {
+        String value = System.getProperty(PROPERTY_MODE);
+        if (value != null && !value.isEmpty()) {
+            try {
+                return Mode.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                log.warning("Invalid value '" + value + "' for system property " + PROPERTY_MODE + "; using 'watch'");
+            }
+        }
+        return Mode.WATCH;
+    }
+
+    private static long getPollIntervalProperty() {
+        String value = System.getProperty(PROPERTY_POLL_INTERVAL);
+        if (value != null && !value.isEmpty()) {
+            try {
+                long interval = Long.parseLong(value.trim());
+                if (interval > 0) {
+                    return interval;
+                }
+                log.warning("Invalid value '" + value + "' for system property " + PROPERTY_POLL_INTERVAL
+                        + "; using " + DEFAULT_POLL_INTERVAL);
+            } catch (NumberFormatException e) {
+                log.warning("Invalid value '" + value + "' for system property " + PROPERTY_POLL_INTERVAL
+                        + "; using " + DEFAULT_POLL_INTERVAL);
+            }
+        }
+        return DEFAULT_POLL_INTERVAL;
+    }
+}
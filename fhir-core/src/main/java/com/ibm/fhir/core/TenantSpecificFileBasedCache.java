@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2017,2019
+ * (C) Copyright IBM Corp. 2017,2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -7,8 +7,8 @@
 package com.ibm.fhir.core;
 
 import java.io.File;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -16,19 +16,25 @@ import java.util.logging.Logger;
  * This class is a parameterized abstract base class to be used for situations where
  * we need to implement a tenant-specific cache of file-based objects.
  * Examples include: configuration parameters, structure definitions, search parameters, etc.
- * 
+ * <p>
+ * Changes to the underlying files are detected in the background by the {@link FileChangeWatcher},
+ * so a lookup of an up-to-date entry is just a map read. Tenants whose file doesn't exist are cached as well
+ * (as long as the tenant's directory exists), so that they don't hit the filesystem on every access either.
+ *
  * @author padams
  */
 public abstract class TenantSpecificFileBasedCache<T> {
     private static final Logger log = Logger.getLogger(TenantSpecificFileBasedCache.class.getName());
 
     private Map<String, CachedObjectHolder<T>> cache;
-    
+
     // cacheType is used only in trace messages.
     private String cacheType = "<unknown>";
-    
+
+    private FileChangeWatcher watcher = FileChangeWatcher.getInstance();
+
     public TenantSpecificFileBasedCache() {
-        cache = new HashMap<String, CachedObjectHolder<T>>();
+        cache = new ConcurrentHashMap<String, CachedObjectHolder<T>>();
     }
     
     public TenantSpecificFileBasedCache(String cacheType) {
@@ -42,6 +48,9 @@ public abstract class TenantSpecificFileBasedCache<T> {
      */
     public void clearCache() {
         synchronized(cache) {
+            for (CachedObjectHolder<T> holder : cache.values()) {
+                watcher.unregister(holder);
+            }
             cache.clear();
         }
     }
@@ -73,6 +82,7 @@ public abstract class TenantSpecificFileBasedCache<T> {
                     if (holder != null && holder.isStale()) {
                         log.fine("Cached " + this.cacheType + " for tenant-id '" + tenantId + "' is stale, discarding...");
                         cache.remove(tenantId);
+                        watcher.unregister(holder);
                         holder = null;
                     }
 
@@ -90,10 +100,21 @@ public abstract class TenantSpecificFileBasedCache<T> {
                         // If we were able to load the object from disk, then add it to the cache.
                         if (cachedObject != null) {
                             holder = new CachedObjectHolder<T>(fileName, cachedObject);
+                            watcher.register(holder);
                             cache.put(tenantId, holder);
                             log.fine("Loaded " + this.cacheType + " for tenant-id '" + tenantId + "' and added it to the cache.");
                         } else {
                             log.fine("Tenant-specific " + this.cacheType + " for tenant '" + tenantId + "' not found, skipping...");
+
+                            // Remember that the file doesn't exist (until it gets created), but only for tenants that
+                            // have a directory; otherwise arbitrary tenant ids could grow the cache without bound.
+                            File dir = f.getAbsoluteFile().getParentFile();
+                            if (watcher.getMode() != FileChangeWatcher.Mode.OFF && dir != null && dir.isDirectory()) {
+                                holder = new CachedObjectHolder<T>(fileName, null);
+                                holder.setLastModified(0L);
+                                watcher.register(holder);
+                                cache.put(tenantId, holder);
+                            }
                         }
                     }
                 }
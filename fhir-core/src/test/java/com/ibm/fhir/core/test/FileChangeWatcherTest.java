@@ -0,0 +1,118 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.core.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.core.CachedObjectHolder;
+import com.ibm.fhir.core.FileChangeWatcher;
+import com.ibm.fhir.core.TenantSpecificFileBasedCache;
+
+public class FileChangeWatcherTest {
+
+    /**
+     * A simple cache whose entries are the contents of "<tenant>/value.txt" files.
+     */
+    private static class StringCache extends TenantSpecificFileBasedCache<String> {
+        private final Path root;
+
+        StringCache(Path root) {
+            super("String");
+            this.root = root;
+        }
+
+        @Override
+        public String getCacheEntryFilename(String tenantId) {
+            return root.resolve(tenantId).resolve("value.txt").toString();
+        }
+
+        @Override
+        public String createCachedObject(File file) throws Exception {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testCacheReloadsOnChange() throws Exception {
+        Path root = Files.createTempDirectory("fcw");
+        Path tenantDir = Files.createDirectory(root.resolve("tenant1"));
+        Path file = tenantDir.resolve("value.txt");
+        StringCache cache = new StringCache(root);
+
+        // No file yet
+        assertNull(cache.getCachedObjectForTenant("tenant1"));
+
+        Files.write(file, "value1".getBytes(StandardCharsets.UTF_8));
+        assertEquals(waitFor(cache, "tenant1", "value1"), "value1");
+
+        Thread.sleep(1000);
+        Files.write(file, "value2".getBytes(StandardCharsets.UTF_8));
+        assertEquals(waitFor(cache, "tenant1", "value2"), "value2");
+
+        Files.delete(file);
+        assertNull(waitFor(cache, "tenant1", null));
+
+        // Tenants without a directory are not cached, but still resolve to null
+        assertNull(cache.getCachedObjectForTenant("tenant2"));
+    }
+
+    @Test
+    public void testPolling() throws Exception {
+        Path dir = Files.createTempDirectory("fcw");
+        Path file = dir.resolve("value.txt");
+        Files.write(file, "value1".getBytes(StandardCharsets.UTF_8));
+
+        FileChangeWatcher watcher = new FileChangeWatcher(FileChangeWatcher.Mode.POLL, 50);
+        CachedObjectHolder<String> holder = new CachedObjectHolder<>(file.toString(), "value1");
+        watcher.register(holder);
+        assertTrue(holder.isWatched());
+        assertFalse(holder.isStale());
+
+        // Make sure the new timestamp is different
+        file.toFile().setLastModified(holder.getLastModified() + 2000);
+        for (int i = 0; i < 100 && !holder.isStale(); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(holder.isStale());
+    }
+
+    @Test
+    public void testOff() throws Exception {
+        Path dir = Files.createTempDirectory("fcw");
+        Path file = dir.resolve("value.txt");
+        Files.write(file, "value1".getBytes(StandardCharsets.UTF_8));
+
+        FileChangeWatcher watcher = new FileChangeWatcher(FileChangeWatcher.Mode.OFF, 50);
+        CachedObjectHolder<String> holder = new CachedObjectHolder<>(file.toString(), "value1");
+        watcher.register(holder);
+        assertFalse(holder.isWatched());
+        assertFalse(holder.isStale());
+
+        // Unwatched holders check the file on each access
+        file.toFile().setLastModified(holder.getLastModified() + 2000);
+        assertTrue(holder.isStale());
+    }
+
+    private String waitFor(StringCache cache, String tenantId, String expected) throws Exception {
+        String value = cache.getCachedObjectForTenant(tenantId);
+        for (int i = 0; i < 100 && !(expected == null ? value == null : expected.equals(value)); i++) {
+            Thread.sleep(100);
+            value = cache.getCachedObjectForTenant(tenantId);
+        }
+        return value;
+    }
+}
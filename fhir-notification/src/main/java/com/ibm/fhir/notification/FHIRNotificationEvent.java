@@ -6,7 +6,9 @@
 
 package com.ibm.fhir.notification;
 
+import com.ibm.fhir.exception.FHIRException;
 import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.notification.util.FHIRNotificationUtil;
 
 public class FHIRNotificationEvent {
     private String lastUpdated = null;
@@ -15,6 +17,10 @@ public class FHIRNotificationEvent {
     private String resourceId = null;
     private Resource resource = null;
 
+    // The serialized forms of this event, shared by all subscribers; cleared by the setters
+    private byte[] json = null;
+    private byte[] jsonWithResource = null;
+
     public FHIRNotificationEvent() {
     }
 
@@ -24,6 +30,7 @@ public class FHIRNotificationEvent {
 
     public void setResourceId(String resourceId) {
         this.resourceId = resourceId;
+        clearSerializedForm();
     }
 
     public String getLastUpdated() {
@@ -32,6 +39,7 @@ public class FHIRNotificationEvent {
 
     public void setLastUpdated(String lastUpdated) {
         this.lastUpdated = lastUpdated;
+        clearSerializedForm();
     }
 
     public String getLocation() {
@@ -40,6 +48,7 @@ public class FHIRNotificationEvent {
 
     public void setLocation(String location) {
         this.location = location;
+        clearSerializedForm();
     }
 
     public String getOperationType() {
@@ -48,6 +57,7 @@ public class FHIRNotificationEvent {
 
     public void setOperationType(String operationType) {
         this.operationType = operationType;
+        clearSerializedForm();
     }
 
     @Override
@@ -68,5 +78,32 @@ public class FHIRNotificationEvent {
 
     public void setResource(Resource resource) {
         this.resource = resource;
+        clearSerializedForm();
+    }
+
+    /**
+     * Returns the UTF-8 encoded JSON form of this event, serializing it on first use so that the event is only
+     * serialized once no matter how many subscribers publish it.
+     *
+     * @param includeResource
+     *            whether the resource should be included in the serialized form
+     * @see FHIRNotificationUtil#toJsonBytes(FHIRNotificationEvent, boolean)
+     */
+    public synchronized byte[] getJsonBytes(boolean includeResource) throws FHIRException {
+        if (includeResource) {
+            if (jsonWithResource == null) {
+                jsonWithResource = FHIRNotificationUtil.toJsonBytes(this, true);
+            }
+            return jsonWithResource;
+        }
+        if (json == null) {
+            json = FHIRNotificationUtil.toJsonBytes(this, false);
+        }
+        return json;
+    }
+
+    private synchronized void clearSerializedForm() {
+        json = null;
+        jsonWithResource = null;
     }
 }
@@ -6,16 +6,24 @@
 
 package com.ibm.fhir.notification;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.config.PropertyGroup;
 import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.notification.dispatcher.NotificationDispatcher;
+import com.ibm.fhir.notification.dispatcher.NotificationDispatcherMXBean;
+import com.ibm.fhir.notification.dispatcher.OverflowPolicy;
 import com.ibm.fhir.notification.exception.FHIRNotificationException;
 import com.ibm.fhir.persistence.interceptor.FHIRPersistenceEvent;
 import com.ibm.fhir.persistence.interceptor.FHIRPersistenceInterceptor;
@@ -24,13 +32,31 @@ import com.ibm.fhir.persistence.interceptor.impl.FHIRPersistenceInterceptorMgr;
 
 /**
  * This class coordinates the activities of the FHIR Server notification service.
+ * <p>
+ * By default, events are published asynchronously: each subscriber is served by its own {@link NotificationDispatcher}
+ * so that a slow subscriber (e.g. a Kafka or NATS broker) doesn't add latency to the request that triggered the event.
+ * Setting {@code fhirServer/notifications/common/async/enabled} to false restores synchronous delivery on the
+ * request thread.
  */
 public class FHIRNotificationService implements FHIRPersistenceInterceptor {
     private static final Logger log = java.util.logging.Logger.getLogger(FHIRNotificationService.class.getName());
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+
     private List<FHIRNotificationSubscriber> subscribers = new CopyOnWriteArrayList<FHIRNotificationSubscriber>();
+    private Map<FHIRNotificationSubscriber, NotificationDispatcher> dispatchers = new ConcurrentHashMap<>();
     private static final FHIRNotificationService INSTANCE = new FHIRNotificationService();
     private Set<String> includedResourceTypes = Collections.synchronizedSortedSet(new TreeSet<String>());
 
+    // Asynchronous delivery settings
+    private boolean asyncEnabled = true;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int defaultBatchSize = DEFAULT_BATCH_SIZE;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private File spillDirectory = new File(System.getProperty("java.io.tmpdir"), "fhir-notification-spill");
+
     private FHIRNotificationService() {
         log.entering(this.getClass().getName(), "FHIRNotificationService");
         try {
@@ -38,6 +64,7 @@ public class FHIRNotificationService implements FHIRPersistenceInterceptor {
         // interceptor methods to trigger the 'publish' of the notification events.
         FHIRPersistenceInterceptorMgr.getInstance().addPrioritizedInterceptor(this);
         initNotificationResourceTypes();
+        initAsyncSettings();
         } catch (Throwable t) {
             throw new RuntimeException("Unexpected error during initialization.", t);
         }
@@ -57,18 +84,48 @@ public class FHIRNotificationService implements FHIRPersistenceInterceptor {
                 + (includedResourceTypes.isEmpty() ? "ALL" : "\n" + includedResourceTypes.toString()));
     }
 
+    private void initAsyncSettings() throws Exception {
+        PropertyGroup config = FHIRConfiguration.getInstance().loadConfiguration();
+        if (config == null) {
+            return;
+        }
+        asyncEnabled = config.getBooleanProperty(FHIRConfiguration.PROPERTY_NOTIFICATION_ASYNC_ENABLED, Boolean.TRUE);
+        queueCapacity = config.getIntProperty(FHIRConfiguration.PROPERTY_NOTIFICATION_ASYNC_QUEUE_CAPACITY, DEFAULT_QUEUE_CAPACITY);
+        defaultBatchSize = config.getIntProperty(FHIRConfiguration.PROPERTY_NOTIFICATION_ASYNC_BATCH_SIZE, DEFAULT_BATCH_SIZE);
+        overflowPolicy = OverflowPolicy.from(config.getStringProperty(FHIRConfiguration.PROPERTY_NOTIFICATION_ASYNC_OVERFLOW_POLICY,
+                OverflowPolicy.BLOCK.value()));
+        String spillDir = config.getStringProperty(FHIRConfiguration.PROPERTY_NOTIFICATION_ASYNC_SPILL_DIRECTORY, null);
+        if (spillDir != null) {
+            spillDirectory = new File(spillDir);
+        }
+
+        log.fine("Notification service async delivery: " + (asyncEnabled ? "enabled, queueCapacity=" + queueCapacity
+                + ", batchSize=" + defaultBatchSize + ", overflowPolicy=" + overflowPolicy.value() : "disabled"));
+    }
+
     public static FHIRNotificationService getInstance() {
         return INSTANCE;
     }
 
     /**
      * Method for broadcasting message to each subscriber.
+     * When asynchronous delivery is enabled, the event is only queued for each subscriber;
+     * a failure of one subscriber never affects delivery to the others.
+     * A subscriber that fails to publish an event is removed, as it is with synchronous delivery.
      *
      * @param event
      */
     public void publish(FHIRNotificationEvent event) {
         log.entering(this.getClass().getName(), "publish");
         for (FHIRNotificationSubscriber subscriber : subscribers) {
+            if (asyncEnabled) {
+                // The dispatcher is missing only while the subscriber is being removed
+                NotificationDispatcher dispatcher = dispatchers.get(subscriber);
+                if (dispatcher != null) {
+                    dispatcher.enqueue(event);
+                }
+                continue;
+            }
             try {
                 subscriber.notify(event);
             } catch (FHIRNotificationException e) {
@@ -80,15 +137,38 @@ public class FHIRNotificationService implements FHIRPersistenceInterceptor {
     }
 
     /**
-     * Method to subscribe the target notification implementation
+     * Method to subscribe the target notification implementation, using the default batch size
      *
      * @param subscriber
      */
     public void subscribe(FHIRNotificationSubscriber subscriber) {
+        subscribe(subscriber, defaultBatchSize);
+    }
+
+    /**
+     * Method to subscribe the target notification implementation
+     *
+     * @param subscriber
+     * @param batchSize
+     *            the maximum number of events passed to {@link FHIRNotificationSubscriber#notify(List)} at once
+     *            when events are published asynchronously; values less than 1 select the default batch size
+     */
+    public void subscribe(FHIRNotificationSubscriber subscriber, int batchSize) {
         log.entering(this.getClass().getName(), "subscribe");
         try {
-            if (!subscribers.contains(subscriber)) {
-                subscribers.add(subscriber);
+            synchronized (subscribers) {
+                if (!subscribers.contains(subscriber)) {
+                    if (asyncEnabled) {
+                        // Nothing would replay the spill file of a subscriber that doesn't outlive its client
+                        OverflowPolicy policy = overflowPolicy == OverflowPolicy.SPILL && !subscriber.isDurable()
+                                ? OverflowPolicy.DROP_OLDEST : overflowPolicy;
+                        NotificationDispatcher dispatcher = new NotificationDispatcher(subscriber, queueCapacity,
+                            batchSize > 0 ? batchSize : defaultBatchSize, policy, spillDirectory, this::removeFailedSubscriber);
+                        dispatcher.start();
+                        dispatchers.put(subscriber, dispatcher);
+                    }
+                    subscribers.add(subscriber);
+                }
             }
         } finally {
             log.exiting(this.getClass().getName(), "subscribe");
@@ -103,14 +183,56 @@ public class FHIRNotificationService implements FHIRPersistenceInterceptor {
     public void unsubscribe(FHIRNotificationSubscriber subscriber) {
         log.entering(this.getClass().getName(), "unsubscribe");
         try {
-            if (subscribers.contains(subscriber)) {
-                subscribers.remove(subscriber);
+            NotificationDispatcher dispatcher;
+            synchronized (subscribers) {
+                if (subscribers.contains(subscriber)) {
+                    subscribers.remove(subscriber);
+                }
+                dispatcher = dispatchers.remove(subscriber);
+            }
+            // Wait for the queued events outside of the lock, so that other subscribers aren't held up
+            if (dispatcher != null) {
+                dispatcher.shutdown(SHUTDOWN_TIMEOUT_MS);
             }
         } finally {
             log.exiting(this.getClass().getName(), "unsubscribe");
         }
     }
 
+    /**
+     * Removes the subscriber of a dispatcher that failed to publish a batch of events; called on the dispatcher thread.
+     */
+    private void removeFailedSubscriber(NotificationDispatcher dispatcher) {
+        FHIRNotificationSubscriber subscriber = dispatcher.getSubscriber();
+        synchronized (subscribers) {
+            subscribers.remove(subscriber);
+            dispatchers.remove(subscriber, dispatcher);
+        }
+        dispatcher.abort();
+        log.warning("Removed notification subscriber '" + subscriber.getName() + "' after it failed to publish events");
+    }
+
+    /**
+     * Stops all subscriber dispatchers, delivering (or spilling) any queued events first.
+     */
+    public void shutdown() {
+        log.entering(this.getClass().getName(), "shutdown");
+        try {
+            for (FHIRNotificationSubscriber subscriber : subscribers) {
+                unsubscribe(subscriber);
+            }
+        } finally {
+            log.exiting(this.getClass().getName(), "shutdown");
+        }
+    }
+
+    /**
+     * Returns the queue metrics of each subscriber's dispatcher; empty when asynchronous delivery is disabled.
+     */
+    public List<NotificationDispatcherMXBean> getDispatcherMetrics() {
+        return new ArrayList<>(dispatchers.values());
+    }
+
     /**
      * Check if this subscriber has subscribed to this service
      *
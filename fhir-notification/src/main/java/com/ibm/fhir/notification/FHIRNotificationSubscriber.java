@@ -1,11 +1,13 @@
 /*
- * (C) Copyright IBM Corp. 2016,2019
+ * (C) Copyright IBM Corp. 2016,2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
 
 package com.ibm.fhir.notification;
 
+import java.util.List;
+
 import com.ibm.fhir.notification.exception.FHIRNotificationException;
 
 public interface FHIRNotificationSubscriber {
@@ -15,4 +17,33 @@ public interface FHIRNotificationSubscriber {
      * @throws FHIRNotificationException
      */
     void notify(FHIRNotificationEvent event) throws FHIRNotificationException;
+
+    /**
+     * Notify subscriber of a batch of events, in the order they were published.
+     * The default implementation calls {@link #notify(FHIRNotificationEvent)} for each event;
+     * subscribers that can publish a batch more efficiently should override it.
+     * @param events
+     * @throws FHIRNotificationException
+     */
+    default void notify(List<FHIRNotificationEvent> events) throws FHIRNotificationException {
+        for (FHIRNotificationEvent event : events) {
+            notify(event);
+        }
+    }
+
+    /**
+     * @return a name that identifies this subscriber in log messages, metrics and spill file names
+     */
+    default String getName() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * @return true if events that could not be published before a restart should still be published to this
+     *         subscriber afterwards; subscribers that only live as long as a client connection should return false,
+     *         so that their events are never spilled to a file that nothing would replay
+     */
+    default boolean isDurable() {
+        return true;
+    }
 }
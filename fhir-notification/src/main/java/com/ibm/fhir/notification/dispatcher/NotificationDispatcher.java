@@ -0,0 +1,449 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.notification.dispatcher;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.ibm.fhir.notification.FHIRNotificationEvent;
+import com.ibm.fhir.notification.FHIRNotificationSubscriber;
+import com.ibm.fhir.notification.exception.FHIRNotificationException;
+import com.ibm.fhir.notification.util.FHIRNotificationUtil;
+
+/**
+ * This class decouples a single {@link FHIRNotificationSubscriber} from the threads that publish notification events.
+ * <p>
+ * Events are placed in a bounded ring buffer and delivered to the subscriber in batches by a dedicated dispatcher
+ * thread. When the buffer is full, the configured {@link OverflowPolicy} decides whether the publishing thread waits,
+ * the oldest event is discarded, or the event is appended to a local spill file. Spilled events are delivered (in
+ * order) once the buffer has drained. While events are being spilled, newer events are spilled too, so that the
+ * subscriber sees events in the order they were published.
+ * <p>
+ * When the subscriber fails to publish a batch, the optional failure listener is called on the dispatcher thread;
+ * it typically removes the subscriber and {@link #abort() aborts} the dispatcher.
+ */
+public class NotificationDispatcher implements NotificationDispatcherMXBean {
+    private static final Logger log = Logger.getLogger(NotificationDispatcher.class.getName());
+
+    private static final long POLL_TIMEOUT_MS = 500;
+
+    private final FHIRNotificationSubscriber subscriber;
+    private final String subscriberName;
+    private final BlockingQueue<FHIRNotificationEvent> queue;
+    private final int queueCapacity;
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final Consumer<NotificationDispatcher> failureListener;
+
+    // Spill file handling; all guarded by spillLock
+    private final Object spillLock = new Object();
+    private final File spillFile;
+    private final File replayFile;
+    private BufferedWriter spillWriter;
+    private volatile boolean spilling;
+
+    private final AtomicLong spillDepth = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean aborted = false;
+    private ObjectName objectName;
+
+    /**
+     * @param subscriber
+     *            the subscriber to which events are delivered
+     * @param queueCapacity
+     *            the maximum number of events held in memory
+     * @param batchSize
+     *            the maximum number of events handed to the subscriber at once
+     * @param overflowPolicy
+     *            what to do when the queue is full
+     * @param spillDirectory
+     *            the directory for the spill file; only used with {@link OverflowPolicy#SPILL}
+     */
+    public NotificationDispatcher(FHIRNotificationSubscriber subscriber, int queueCapacity, int batchSize,
+            OverflowPolicy overflowPolicy, File spillDirectory) {
+        this(subscriber, queueCapacity, batchSize, overflowPolicy, spillDirectory, null);
+    }
+
+    /**
+     * @param subscriber
+     *            the subscriber to which events are delivered
+     * @param queueCapacity
+     *            the maximum number of events held in memory
+     * @param batchSize
+     *            the maximum number of events handed to the subscriber at once
+     * @param overflowPolicy
+     *            what to do when the queue is full
+     * @param spillDirectory
+     *            the directory for the spill file; only used with {@link OverflowPolicy#SPILL}
+     * @param failureListener
+     *            called on the dispatcher thread when the subscriber fails to publish a batch; may be null
+     */
+    public NotificationDispatcher(FHIRNotificationSubscriber subscriber, int queueCapacity, int batchSize,
+            OverflowPolicy overflowPolicy, File spillDirectory, Consumer<NotificationDispatcher> failureListener) {
+        this.subscriber = subscriber;
+        this.failureListener = failureListener;
+        this.subscriberName = subscriber.getName();
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.queue = new ArrayBlockingQueue<>(this.queueCapacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.overflowPolicy = overflowPolicy;
+
+        if (overflowPolicy == OverflowPolicy.SPILL) {
+            String baseName = subscriberName.replaceAll("[^A-Za-z0-9._-]", "_");
+            this.spillFile = new File(spillDirectory, baseName + ".spill");
+            this.replayFile = new File(spillDirectory, baseName + ".replay");
+            recoverSpillFiles();
+        } else {
+            this.spillFile = null;
+            this.replayFile = null;
+        }
+
+        this.thread = new Thread(this::run, "fhir-notification-dispatcher-" + subscriberName);
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts the dispatcher thread and registers the queue metrics MBean.
+     */
+    public void start() {
+        thread.start();
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("com.ibm.fhir.notification:type=NotificationDispatcher,name=" + ObjectName.quote(subscriberName));
+            if (!mbs.isRegistered(objectName)) {
+                mbs.registerMBean(this, objectName);
+            } else {
+                objectName = null;
+            }
+        } catch (Exception e) {
+            log.log(Level.FINE, "Unable to register notification dispatcher metrics for '" + subscriberName + "'", e);
+            objectName = null;
+        }
+    }
+
+    /**
+     * Stops accepting new events, waits up to the specified time for the queued events to be delivered, and then
+     * stops the dispatcher thread. Events that could not be delivered in time remain in the spill file (if any).
+     */
+    public void shutdown(long timeoutMillis) {
+        running = false;
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join(timeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (thread.isAlive()) {
+                thread.interrupt();
+            }
+        }
+        if (!queue.isEmpty()) {
+            log.warning("Discarding " + queue.size() + " undelivered notification events for subscriber '" + subscriberName + "'");
+        }
+        release();
+    }
+
+    /**
+     * Stops the dispatcher without delivering the queued events and without waiting for the dispatcher thread.
+     * Events that are in the spill file remain there. This method may be called from the failure listener.
+     */
+    public void abort() {
+        aborted = true;
+        running = false;
+        int discarded = 0;
+        while (queue.poll() != null) {
+            discarded++;
+        }
+        if (discarded > 0) {
+            dropped.addAndGet(discarded);
+            log.warning("Discarding " + discarded + " undelivered notification events for subscriber '" + subscriberName + "'");
+        }
+        release();
+    }
+
+    /**
+     * Closes the spill file and unregisters the queue metrics MBean.
+     */
+    private void release() {
+        synchronized (spillLock) {
+            closeSpillWriter();
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception e) {
+                log.log(Level.FINE, "Unable to unregister notification dispatcher metrics for '" + subscriberName + "'", e);
+            }
+        }
+    }
+
+    public FHIRNotificationSubscriber getSubscriber() {
+        return subscriber;
+    }
+
+    /**
+     * Hands the event to the dispatcher, applying the overflow policy if the queue is full.
+     */
+    public void enqueue(FHIRNotificationEvent event) {
+        if (!running) {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        switch (overflowPolicy) {
+        case DROP_OLDEST:
+            while (!queue.offer(event)) {
+                if (queue.poll() != null) {
+                    dropped.incrementAndGet();
+                }
+            }
+            break;
+        case SPILL:
+            if (!spilling && queue.offer(event)) {
+                return;
+            }
+            synchronized (spillLock) {
+                if (!spilling && queue.offer(event)) {
+                    return;
+                }
+                spilling = true;
+                spill(event);
+            }
+            break;
+        case BLOCK:
+        default:
+            try {
+                queue.put(event);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropped.incrementAndGet();
+                log.warning("Interrupted while queueing notification event for subscriber '" + subscriberName + "': " + event);
+            }
+            break;
+        }
+    }
+
+    private void run() {
+        List<FHIRNotificationEvent> batch = new ArrayList<>(batchSize);
+        while (!aborted && (running || !queue.isEmpty())) {
+            try {
+                if (spilling && queue.isEmpty()) {
+                    replaySpill();
+                    continue;
+                }
+
+                FHIRNotificationEvent event = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (event == null) {
+                    continue;
+                }
+                batch.add(event);
+                queue.drainTo(batch, batchSize - 1);
+                deliver(batch);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable t) {
+                log.log(Level.SEVERE, "Unexpected error in notification dispatcher for subscriber '" + subscriberName + "'", t);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void deliver(List<FHIRNotificationEvent> batch) {
+        try {
+            subscriber.notify(batch);
+            delivered.addAndGet(batch.size());
+        } catch (FHIRNotificationException e) {
+            failed.addAndGet(batch.size());
+            log.log(Level.WARNING, "Subscriber '" + subscriberName + "' was unable to publish " + batch.size() + " notification event(s)", e);
+            if (failureListener != null) {
+                failureListener.accept(this);
+            }
+        } catch (Throwable t) {
+            failed.addAndGet(batch.size());
+            log.log(Level.WARNING, "Subscriber '" + subscriberName + "' was unable to publish " + batch.size() + " notification event(s)", t);
+        }
+    }
+
+    /**
+     * Appends the event to the spill file; the caller must hold spillLock.
+     */
+    private void spill(FHIRNotificationEvent event) {
+        try {
+            if (spillWriter == null) {
+                spillFile.getParentFile().mkdirs();
+                spillWriter = Files.newBufferedWriter(spillFile.toPath(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            spillWriter.write(FHIRNotificationUtil.toJsonString(event, true));
+            spillWriter.newLine();
+            spillWriter.flush();
+            spillDepth.incrementAndGet();
+            spilled.incrementAndGet();
+        } catch (Exception e) {
+            dropped.incrementAndGet();
+            log.log(Level.SEVERE, "Unable to spill notification event for subscriber '" + subscriberName + "': " + event, e);
+        }
+    }
+
+    /**
+     * Moves the current spill file aside so new events go back to the queue, then delivers its contents.
+     */
+    private void replaySpill() throws IOException {
+        synchronized (spillLock) {
+            closeSpillWriter();
+            boolean pending = spillFile.exists();
+            if (!replayFile.exists() && pending) {
+                Files.move(spillFile.toPath(), replayFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                pending = false;
+            }
+            // If a replay file was left behind by a previous run, keep spilling behind the existing spill file
+            // until both have been delivered.
+            spilling = pending;
+        }
+
+        if (!replayFile.exists()) {
+            return;
+        }
+
+        List<FHIRNotificationEvent> batch = new ArrayList<>(batchSize);
+        try (BufferedReader reader = Files.newBufferedReader(replayFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    batch.add(FHIRNotificationUtil.toNotificationEvent(line, true));
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    log.log(Level.SEVERE, "Unable to read spilled notification event for subscriber '" + subscriberName + "': " + line, e);
+                }
+                if (batch.size() == batchSize) {
+                    deliver(batch);
+                    spillDepth.addAndGet(-batch.size());
+                    batch.clear();
+                    if (aborted) {
+                        // Keep the replay file; its events are published again the next time the subscriber starts
+                        return;
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                deliver(batch);
+                spillDepth.addAndGet(-batch.size());
+                if (aborted) {
+                    return;
+                }
+            }
+        }
+        Files.delete(replayFile.toPath());
+        if (spillDepth.get() < 0) {
+            spillDepth.set(0);
+        }
+    }
+
+    /**
+     * Picks up spill files left behind by a previous run so that their events are delivered first.
+     */
+    private void recoverSpillFiles() {
+        long count = countLines(replayFile) + countLines(spillFile);
+        if (count > 0) {
+            log.info("Found " + count + " spilled notification events for subscriber '" + subscriberName + "'");
+            spillDepth.set(count);
+            spilling = true;
+        }
+    }
+
+    private static long countLines(File f) {
+        if (f == null || !f.exists()) {
+            return 0;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(f.toPath(), StandardCharsets.UTF_8)) {
+            return reader.lines().filter(l -> !l.isEmpty()).count();
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Unable to read spill file '" + f + "'", e);
+            return 0;
+        }
+    }
+
+    private void closeSpillWriter() {
+        if (spillWriter != null) {
+            try {
+                spillWriter.close();
+            } catch (IOException e) {
+                log.log(Level.WARNING, "Error closing spill file '" + spillFile + "'", e);
+            }
+            spillWriter = null;
+        }
+    }
+
+    @Override
+    public String getSubscriberName() {
+        return subscriberName;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    @Override
+    public long getSpillDepth() {
+        return spillDepth.get();
+    }
+
+    @Override
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public long getSpilledCount() {
+        return spilled.get();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.notification.dispatcher;
+
+/**
+ * Queue metrics of a {@link NotificationDispatcher}, registered with the platform MBeanServer under
+ * {@code com.ibm.fhir.notification:type=NotificationDispatcher,name=<subscriber>}.
+ */
+public interface NotificationDispatcherMXBean {
+    /**
+     * @return the name of the subscriber served by the dispatcher
+     */
+    String getSubscriberName();
+
+    /**
+     * @return the number of events currently waiting in the in-memory queue
+     */
+    int getQueueDepth();
+
+    /**
+     * @return the maximum number of events that the in-memory queue can hold
+     */
+    int getQueueCapacity();
+
+    /**
+     * @return the number of events currently waiting in the spill file
+     */
+    long getSpillDepth();
+
+    /**
+     * @return the number of events successfully handed to the subscriber
+     */
+    long getDeliveredCount();
+
+    /**
+     * @return the number of events for which the subscriber reported a failure
+     */
+    long getFailedCount();
+
+    /**
+     * @return the number of events discarded because the queue was full
+     */
+    long getDroppedCount();
+
+    /**
+     * @return the number of events written to the spill file because the queue was full
+     */
+    long getSpilledCount();
+}
@@ -0,0 +1,46 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.notification.dispatcher;
+
+/**
+ * An enumeration of the actions that a {@link NotificationDispatcher} can take when its queue is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * The publishing (request) thread waits until there is room in the queue
+     */
+    BLOCK("block"),
+
+    /**
+     * The oldest queued event is discarded to make room for the new one
+     */
+    DROP_OLDEST("dropOldest"),
+
+    /**
+     * Events are appended to a local spill file and delivered once the queue has drained
+     */
+    SPILL("spill");
+
+    private final String value;
+
+    OverflowPolicy(String value) {
+        this.value = value;
+    }
+
+    public java.lang.String value() {
+        return value;
+    }
+
+    public static OverflowPolicy from(String value) {
+        for (OverflowPolicy p : OverflowPolicy.values()) {
+            if (p.value.equals(value)) {
+                return p;
+            }
+        }
+        throw new IllegalArgumentException(value);
+    }
+}
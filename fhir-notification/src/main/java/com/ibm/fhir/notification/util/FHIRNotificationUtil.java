@@ -6,40 +6,71 @@
 
 package com.ibm.fhir.notification.util;
 
+import java.io.ByteArrayOutputStream;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 
 import javax.json.Json;
-import javax.json.JsonBuilderFactory;
 import javax.json.JsonException;
 import javax.json.JsonObject;
-import javax.json.JsonObjectBuilder;
 import javax.json.JsonReader;
 import javax.json.JsonReaderFactory;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
 
 import com.ibm.fhir.exception.FHIRException;
-import com.ibm.fhir.model.util.JsonSupport;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.generator.FHIRGenerator;
+import com.ibm.fhir.model.parser.FHIRJsonParser;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.parser.exception.FHIRParserException;
 import com.ibm.fhir.notification.FHIRNotificationEvent;
 
 public class FHIRNotificationUtil {
     private static final JsonReaderFactory JSON_READER_FACTORY = Json.createReaderFactory(null);
-    private static final JsonBuilderFactory JSON_BUILDER_FACTORY = Json.createBuilderFactory(null);
+    private static final JsonGeneratorFactory JSON_GENERATOR_FACTORY = Json.createGeneratorFactory(null);
     public static FHIRNotificationEvent toNotificationEvent(String jsonString) {
         try (JsonReader reader = JSON_READER_FACTORY.createReader(new StringReader(jsonString))) {
-            JsonObject jsonObject = reader.readObject();
-            FHIRNotificationEvent event = new FHIRNotificationEvent();
-            event.setOperationType(jsonObject.getString("operationType"));
-            event.setLocation(jsonObject.getString("location"));
-            event.setLastUpdated(jsonObject.getString("lastUpdated"));
-            event.setResourceId(jsonObject.getString("resourceId"));
-            return event;
+            return toNotificationEvent(reader.readObject());
         } catch (JsonException e) {
             System.out.println("Failed to parse json string: " + e.getLocalizedMessage());
             return null;
         }
     }
+
+    /**
+     * Deserializes a notification event from its JSON form.
+     * @param jsonString the serialized event, as written by {@link #toJsonBytes(FHIRNotificationEvent, boolean)}
+     * @param includeResource a flag that controls whether or not the "resource" member, if present, is parsed
+     * into the resource of the event
+     * @return the deserialized event
+     * @throws JsonException if the string isn't a valid JSON object
+     * @throws FHIRParserException if the resource can't be parsed
+     */
+    public static FHIRNotificationEvent toNotificationEvent(String jsonString, boolean includeResource) throws FHIRParserException {
+        try (JsonReader reader = JSON_READER_FACTORY.createReader(new StringReader(jsonString))) {
+            JsonObject jsonObject = reader.readObject();
+            FHIRNotificationEvent event = toNotificationEvent(jsonObject);
+            JsonObject resource = jsonObject.getJsonObject("resource");
+            if (includeResource && resource != null) {
+                event.setResource(FHIRParser.parser(Format.JSON).as(FHIRJsonParser.class).parse(resource));
+            }
+            return event;
+        }
+    }
+
+    private static FHIRNotificationEvent toNotificationEvent(JsonObject jsonObject) {
+        FHIRNotificationEvent event = new FHIRNotificationEvent();
+        event.setOperationType(jsonObject.getString("operationType"));
+        event.setLocation(jsonObject.getString("location"));
+        event.setLastUpdated(jsonObject.getString("lastUpdated"));
+        event.setResourceId(jsonObject.getString("resourceId"));
+        return event;
+    }
     
     /**
      * Serializes the notification event into a JSON string.
+     * The serialized form is cached in the event, so subsequent calls for the same event are cheap.
      * @param event the FHIRNotificationEvent structure to be serialized
      * @param includeResource a flag that controls whether or not the resource object within
      * the event structure should be included in the serialized message.
@@ -47,16 +78,48 @@ public class FHIRNotificationUtil {
      * @throws FHIRException 
      */
     public static String toJsonString(FHIRNotificationEvent event, boolean includeResource) throws FHIRException {
-        JsonObjectBuilder builder = JSON_BUILDER_FACTORY.createObjectBuilder();
-        builder.add("lastUpdated", event.getLastUpdated());
-        builder.add("location", event.getLocation());
-        builder.add("operationType", event.getOperationType());
-        builder.add("resourceId", event.getResourceId());
-        if (includeResource && event.getResource() != null) {
-            builder.add("resource", JsonSupport.toJsonObject(event.getResource()));
+        return new String(event.getJsonBytes(includeResource), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Serializes the notification event into UTF-8 encoded JSON.
+     * Subscribers should use {@link FHIRNotificationEvent#getJsonBytes(boolean)} instead, which caches the result.
+     * @param event the FHIRNotificationEvent structure to be serialized
+     * @param includeResource a flag that controls whether or not the resource object within
+     * the event structure should be included in the serialized message.
+     * @return the serialized message
+     * @throws FHIRException 
+     */
+    public static byte[] toJsonBytes(FHIRNotificationEvent event, boolean includeResource) throws FHIRException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(includeResource ? 4096 : 256);
+        try (JsonGenerator generator = JSON_GENERATOR_FACTORY.createGenerator(out, StandardCharsets.UTF_8)) {
+            generator.writeStartObject();
+            generator.write("lastUpdated", event.getLastUpdated());
+            generator.write("location", event.getLocation());
+            generator.write("operationType", event.getOperationType());
+            generator.write("resourceId", event.getResourceId());
+            generator.writeEnd();
+        }
+        if (!includeResource || event.getResource() == null) {
+            return out.toByteArray();
+        }
+
+        // Write the resource straight from the model rather than going through an intermediate JsonObject;
+        // the closing brace of the envelope is replaced by the "resource" member.
+        byte[] envelope = out.toByteArray();
+        int end = envelope.length - 1;
+        while (end > 0 && Character.isWhitespace(envelope[end])) {
+            end--;
+        }
+        if (end <= 0 || envelope[end] != '}') {
+            throw new FHIRException("Unexpected end of the serialized notification event: " + new String(envelope, StandardCharsets.UTF_8));
         }
-        JsonObject jsonObject = builder.build();
-        String jsonString = jsonObject.toString();
-        return jsonString;
+        out.reset();
+        out.write(envelope, 0, end);
+        byte[] member = ",\"resource\":".getBytes(StandardCharsets.UTF_8);
+        out.write(member, 0, member.length);
+        FHIRGenerator.generator(Format.JSON).generate(event.getResource(), out);
+        out.write('}');
+        return out.toByteArray();
     }
 }
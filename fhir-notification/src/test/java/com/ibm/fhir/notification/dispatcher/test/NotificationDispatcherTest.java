@@ -0,0 +1,223 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.notification.dispatcher.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.notification.FHIRNotificationEvent;
+import com.ibm.fhir.notification.FHIRNotificationSubscriber;
+import com.ibm.fhir.notification.dispatcher.NotificationDispatcher;
+import com.ibm.fhir.notification.dispatcher.OverflowPolicy;
+import com.ibm.fhir.notification.exception.FHIRNotificationException;
+
+public class NotificationDispatcherTest {
+    private static final long TIMEOUT_MS = 10000;
+
+    @Test
+    public void testBlock() throws Exception {
+        BlockingSubscriber subscriber = new BlockingSubscriber("block");
+        NotificationDispatcher dispatcher = new NotificationDispatcher(subscriber, 2, 1, OverflowPolicy.BLOCK, null);
+        dispatcher.start();
+
+        fillQueue(dispatcher, subscriber);
+
+        // The queue is full, so the publishing thread waits
+        Thread publisher = new Thread(() -> dispatcher.enqueue(event("4")));
+        publisher.start();
+        publisher.join(300);
+        assertTrue(publisher.isAlive());
+
+        subscriber.release();
+        publisher.join(TIMEOUT_MS);
+        assertFalse(publisher.isAlive());
+        dispatcher.shutdown(TIMEOUT_MS);
+
+        assertEquals(subscriber.getResourceIds(), Arrays.asList("1", "2", "3", "4"));
+        assertEquals(dispatcher.getDroppedCount(), 0);
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        BlockingSubscriber subscriber = new BlockingSubscriber("dropOldest");
+        NotificationDispatcher dispatcher = new NotificationDispatcher(subscriber, 2, 1, OverflowPolicy.DROP_OLDEST, null);
+        dispatcher.start();
+
+        fillQueue(dispatcher, subscriber);
+        dispatcher.enqueue(event("4"));
+        assertEquals(dispatcher.getDroppedCount(), 1);
+
+        subscriber.release();
+        dispatcher.shutdown(TIMEOUT_MS);
+
+        assertEquals(subscriber.getResourceIds(), Arrays.asList("1", "3", "4"));
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        File spillDir = Files.createTempDirectory("notification").toFile();
+        BlockingSubscriber subscriber = new BlockingSubscriber("spill");
+        NotificationDispatcher dispatcher = new NotificationDispatcher(subscriber, 2, 2, OverflowPolicy.SPILL, spillDir);
+        dispatcher.start();
+
+        fillQueue(dispatcher, subscriber);
+        dispatcher.enqueue(event("4"));
+        dispatcher.enqueue(event("5"));
+        assertEquals(dispatcher.getSpilledCount(), 2);
+        assertEquals(dispatcher.getSpillDepth(), 2);
+
+        // Spilled events are delivered after the queue has drained, ahead of newer events
+        subscriber.release();
+        dispatcher.enqueue(event("6"));
+        waitForDelivery(dispatcher, 6);
+        dispatcher.shutdown(TIMEOUT_MS);
+
+        assertEquals(subscriber.getResourceIds(), Arrays.asList("1", "2", "3", "4", "5", "6"));
+        assertEquals(dispatcher.getSpillDepth(), 0);
+        assertFalse(new File(spillDir, "spill.spill").exists());
+        assertFalse(new File(spillDir, "spill.replay").exists());
+    }
+
+    @Test
+    public void testReplayAfterRestart() throws Exception {
+        File spillDir = Files.createTempDirectory("notification").toFile();
+
+        // The dispatcher isn't started, so events beyond the queue capacity stay in the spill file
+        NotificationDispatcher dispatcher = new NotificationDispatcher(new BlockingSubscriber("replay"), 1, 10,
+            OverflowPolicy.SPILL, spillDir);
+        dispatcher.enqueue(event("1"));
+        dispatcher.enqueue(event("2"));
+        dispatcher.enqueue(event("3"));
+        dispatcher.shutdown(0);
+        assertTrue(new File(spillDir, "replay.spill").exists());
+
+        // A new dispatcher for the same subscriber publishes the spilled events first, in order
+        BlockingSubscriber subscriber = new BlockingSubscriber("replay");
+        subscriber.release();
+        dispatcher = new NotificationDispatcher(subscriber, 1, 10, OverflowPolicy.SPILL, spillDir);
+        assertEquals(dispatcher.getSpillDepth(), 2);
+        dispatcher.start();
+        dispatcher.enqueue(event("4"));
+        waitForDelivery(dispatcher, 3);
+        dispatcher.shutdown(TIMEOUT_MS);
+
+        assertEquals(subscriber.getResourceIds(), Arrays.asList("2", "3", "4"));
+        assertFalse(new File(spillDir, "replay.spill").exists());
+        assertFalse(new File(spillDir, "replay.replay").exists());
+    }
+
+    @Test
+    public void testFailureListener() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        FHIRNotificationSubscriber subscriber = new FHIRNotificationSubscriber() {
+            @Override
+            public void notify(FHIRNotificationEvent event) throws FHIRNotificationException {
+                attempts.incrementAndGet();
+                throw new FHIRNotificationException("unavailable");
+            }
+        };
+        CountDownLatch failed = new CountDownLatch(1);
+        NotificationDispatcher dispatcher = new NotificationDispatcher(subscriber, 10, 1, OverflowPolicy.BLOCK, null, d -> {
+            d.abort();
+            failed.countDown();
+        });
+        dispatcher.start();
+
+        dispatcher.enqueue(event("1"));
+        assertTrue(failed.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(dispatcher.getFailedCount(), 1);
+
+        // An aborted dispatcher doesn't deliver any more events
+        dispatcher.enqueue(event("2"));
+        dispatcher.shutdown(TIMEOUT_MS);
+        assertEquals(attempts.get(), 1);
+        assertEquals(dispatcher.getDroppedCount(), 1);
+    }
+
+    /**
+     * Publishes three events; the first is handed to the (blocked) subscriber and the other two fill the queue.
+     */
+    private static void fillQueue(NotificationDispatcher dispatcher, BlockingSubscriber subscriber) throws Exception {
+        dispatcher.enqueue(event("1"));
+        assertTrue(subscriber.awaitFirstDelivery());
+        dispatcher.enqueue(event("2"));
+        dispatcher.enqueue(event("3"));
+        assertEquals(dispatcher.getQueueDepth(), 2);
+    }
+
+    private static void waitForDelivery(NotificationDispatcher dispatcher, long count) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT_MS;
+        while (dispatcher.getDeliveredCount() < count && System.currentTimeMillis() < end) {
+            Thread.sleep(20);
+        }
+        assertEquals(dispatcher.getDeliveredCount(), count);
+    }
+
+    private static FHIRNotificationEvent event(String id) {
+        FHIRNotificationEvent event = new FHIRNotificationEvent();
+        event.setOperationType("create");
+        event.setLocation("Patient/" + id + "/_history/1");
+        event.setLastUpdated("2020-01-01T00:00:00Z");
+        event.setResourceId(id);
+        return event;
+    }
+
+    /**
+     * A subscriber that records the events it receives, and waits to be released before completing its first delivery.
+     */
+    private static class BlockingSubscriber implements FHIRNotificationSubscriber {
+        private final String name;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final List<FHIRNotificationEvent> events = new CopyOnWriteArrayList<>();
+
+        BlockingSubscriber(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void notify(FHIRNotificationEvent event) throws FHIRNotificationException {
+            started.countDown();
+            try {
+                released.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add(event);
+        }
+
+        boolean awaitFirstDelivery() throws InterruptedException {
+            return started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+
+        void release() {
+            released.countDown();
+        }
+
+        List<String> getResourceIds() {
+            return events.stream().map(FHIRNotificationEvent::getResourceId).collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.notification.util.test;
+
+import static com.ibm.fhir.model.type.String.string;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRJsonParser;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.type.HumanName;
+import com.ibm.fhir.notification.FHIRNotificationEvent;
+import com.ibm.fhir.notification.util.FHIRNotificationUtil;
+
+public class FHIRNotificationUtilTest {
+
+    @Test
+    public void testToJsonBytes() throws Exception {
+        FHIRNotificationEvent event = event(patient());
+
+        JsonObject json = parse(FHIRNotificationUtil.toJsonBytes(event, false));
+        assertEnvelope(json);
+        assertFalse(json.containsKey("resource"));
+    }
+
+    @Test
+    public void testToJsonBytesWithResource() throws Exception {
+        Patient patient = patient();
+        FHIRNotificationEvent event = event(patient);
+
+        JsonObject json = parse(FHIRNotificationUtil.toJsonBytes(event, true));
+        assertEnvelope(json);
+        Patient parsed = FHIRParser.parser(Format.JSON).as(FHIRJsonParser.class).parse(json.getJsonObject("resource"));
+        assertEquals(parsed, patient);
+    }
+
+    @Test
+    public void testToJsonBytesWithoutResource() throws Exception {
+        // Nothing is spliced in when the event has no resource
+        JsonObject json = parse(FHIRNotificationUtil.toJsonBytes(event(null), true));
+        assertEnvelope(json);
+        assertFalse(json.containsKey("resource"));
+    }
+
+    @Test
+    public void testJsonBytesCached() throws Exception {
+        FHIRNotificationEvent event = event(patient());
+        byte[] json = event.getJsonBytes(true);
+        assertSame(event.getJsonBytes(true), json);
+
+        // Changing the event clears its serialized forms
+        event.setOperationType("update");
+        JsonObject parsed = parse(event.getJsonBytes(true));
+        assertEquals(parsed.getString("operationType"), "update");
+        assertTrue(parsed.containsKey("resource"));
+    }
+
+    @Test
+    public void testToNotificationEvent() throws Exception {
+        FHIRNotificationEvent event = FHIRNotificationUtil.toNotificationEvent(
+            FHIRNotificationUtil.toJsonString(event(patient()), true));
+        assertNotNull(event);
+        assertEquals(event.getOperationType(), "create");
+        assertEquals(event.getLocation(), "Patient/1/_history/1");
+        assertEquals(event.getLastUpdated(), "2020-01-01T00:00:00Z");
+        assertEquals(event.getResourceId(), "1");
+    }
+
+    @Test
+    public void testToNotificationEventWithResource() throws Exception {
+        Patient patient = patient();
+        String json = FHIRNotificationUtil.toJsonString(event(patient), true);
+
+        FHIRNotificationEvent event = FHIRNotificationUtil.toNotificationEvent(json, true);
+        assertEquals(event.getOperationType(), "create");
+        assertEquals(event.getResourceId(), "1");
+        assertEquals(event.getResource(), patient);
+
+        assertNull(FHIRNotificationUtil.toNotificationEvent(json, false).getResource());
+    }
+
+    private static void assertEnvelope(JsonObject json) {
+        assertEquals(json.getString("operationType"), "create");
+        assertEquals(json.getString("location"), "Patient/1/_history/1");
+        assertEquals(json.getString("lastUpdated"), "2020-01-01T00:00:00Z");
+        assertEquals(json.getString("resourceId"), "1");
+    }
+
+    private static JsonObject parse(byte[] json) {
+        try (JsonReader reader = Json.createReader(new ByteArrayInputStream(json))) {
+            return reader.readObject();
+        }
+    }
+
+    private static Patient patient() {
+        return Patient.builder()
+                .id("1")
+                .name(HumanName.builder().family(string("Doe")).given(string("John")).build())
+                .build();
+    }
+
+    private static FHIRNotificationEvent event(Patient patient) {
+        FHIRNotificationEvent event = new FHIRNotificationEvent();
+        event.setOperationType("create");
+        event.setLocation("Patient/1/_history/1");
+        event.setLastUpdated("2020-01-01T00:00:00Z");
+        event.setResourceId("1");
+        event.setResource(patient);
+        return event;
+    }
+}
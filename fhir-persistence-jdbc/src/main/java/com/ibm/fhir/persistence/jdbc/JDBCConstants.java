@@ -25,6 +25,9 @@ public class JDBCConstants {
     // Constants for the IBM FHIR Server database schema
     public static final String STR_VALUE = "STR_VALUE";
     public static final String STR_VALUE_LCASE = "STR_VALUE_LCASE";
+    public static final String REF_LOGICAL_RESOURCE_ID = "REF_LOGICAL_RESOURCE_ID";
+    public static final String COMPARTMENT_TYPE_ID = "COMPARTMENT_TYPE_ID";
+    public static final String COMPARTMENT_LOGICAL_ID = "COMPARTMENT_LOGICAL_ID";
     public static final String TOKEN_VALUE = "TOKEN_VALUE";
     public static final String CODE_SYSTEM_ID = "CODE_SYSTEM_ID";
     public static final String CODE = "CODE";
@@ -36,6 +39,7 @@ public class JDBCConstants {
     public static final String DATE_END = "DATE_END";
     public static final String LATITUDE_VALUE = "LATITUDE_VALUE";
     public static final String LONGITUDE_VALUE = "LONGITUDE_VALUE";
+    public static final String GEOHASH_VALUE = "GEOHASH_VALUE";
 
     // Generic SQL query string constants
     public static final String DOT = ".";
@@ -116,7 +120,7 @@ public class JDBCConstants {
         supportedModifiersMap.put(Type.STRING, Arrays.asList(Modifier.EXACT, Modifier.CONTAINS, Modifier.MISSING));
         supportedModifiersMap.put(Type.REFERENCE, Arrays.asList(Modifier.TYPE, Modifier.MISSING));
         supportedModifiersMap.put(Type.URI, Arrays.asList(Modifier.BELOW, Modifier.ABOVE, Modifier.MISSING));
-        supportedModifiersMap.put(Type.TOKEN, Arrays.asList(Modifier.MISSING));
+        supportedModifiersMap.put(Type.TOKEN, Arrays.asList(Modifier.IN, Modifier.NOT_IN, Modifier.BELOW, Modifier.ABOVE, Modifier.MISSING));
         supportedModifiersMap.put(Type.NUMBER, Arrays.asList(Modifier.MISSING));
         supportedModifiersMap.put(Type.DATE, Arrays.asList(Modifier.MISSING));
         supportedModifiersMap.put(Type.QUANTITY, Arrays.asList(Modifier.MISSING));
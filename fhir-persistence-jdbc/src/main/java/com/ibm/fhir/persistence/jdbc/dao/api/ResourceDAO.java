@@ -9,6 +9,7 @@ package com.ibm.fhir.persistence.jdbc.dao.api;
 import java.sql.Timestamp;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
@@ -85,6 +86,17 @@ public interface ResourceDAO extends FHIRDbDAO {
      */
     List<Resource> search(SqlQueryData queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
 
+    /**
+     * Executes the search contained in the passed SqlQueryData, using it's encapsulated search string and bind variables,
+     * and passes each Resource DTO to the consumer as soon as its row has been read, so that the results are never
+     * held in memory all at once.
+     * @param queryData - Contains a search string and (optionally) bind variables.
+     * @param consumer - Receives the Resource DTOs in result set order.
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    void search(SqlQueryData queryData, Consumer<Resource> consumer) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
     /**
      * Executes the search contained in the passed SqlQueryData, using it's encapsulated search string and bind variables.
      * @param queryData - Contains a search string and (optionally) bind variables.
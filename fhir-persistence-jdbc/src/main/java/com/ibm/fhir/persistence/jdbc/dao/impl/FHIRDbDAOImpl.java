@@ -9,10 +9,12 @@ package com.ibm.fhir.persistence.jdbc.dao.impl;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -172,7 +174,7 @@ public class FHIRDbDAOImpl implements FHIRDbDAO {
 
     /**
      * Creates and executes a PreparedStatement using the passed parameters that returns a collection of FHIR Data
-     * Transfer Objects of type T.
+     * Transfer Objects of type T. The objects are read by {@link #runQuery(String, Consumer, Object...)}.
      *
      * @param sql        - The SQL template to execute.
      * @param searchArgs - An array of arguments to be substituted into the SQL template.
@@ -182,39 +184,52 @@ public class FHIRDbDAOImpl implements FHIRDbDAO {
      */
     protected List<Resource> runQuery(String sql, Object... searchArgs)
             throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
-        final String METHODNAME = "runQuery";
+        List<Resource> fhirObjects = new ArrayList<>();
+        runQuery(sql, fhirObjects::add, searchArgs);
+        return fhirObjects;
+    }
+
+    /**
+     * Creates and executes a PreparedStatement using the passed parameters and passes each resulting FHIR Data
+     * Transfer Object to the consumer as soon as it has been read. Exceptions thrown by the consumer are not wrapped.
+     *
+     * @param sql        - The SQL template to execute.
+     * @param consumer   - Receives the FHIR Data Transfer Objects in result set order.
+     * @param searchArgs - An array of arguments to be substituted into the SQL template.
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    protected void runQuery(String sql, Consumer<Resource> consumer, Object... searchArgs)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "runQuery(Consumer)";
         log.entering(CLASSNAME, METHODNAME);
 
-        List<Resource> fhirObjects = new ArrayList<>();
         PreparedStatement stmt = null;
         ResultSet resultSet = null;
         String errMsg;
         long dbCallStartTime;
         double dbCallDuration;
+        int rowCount = 0;
 
         try {
             stmt = connection.prepareStatement(sql);
-            // Inject arguments into the prepared stmt.
-            for (int i = 0; i < searchArgs.length; i++) {
-                if (searchArgs[i] instanceof Timestamp) {
-                    stmt.setTimestamp(i + 1, (Timestamp) searchArgs[i], JDBCConstants.UTC);
-                } else {
-                    stmt.setObject(i + 1, searchArgs[i]);
-                }
-            }
+            bindSearchArgs(stmt, searchArgs);
             dbCallStartTime = System.nanoTime();
             resultSet = stmt.executeQuery();
+            while (resultSet.next()) {
+                Resource dto = this.createDTO(resultSet);
+                if (dto != null) {
+                    consumer.accept(dto);
+                    rowCount++;
+                }
+            }
             dbCallDuration = (System.nanoTime() - dbCallStartTime) / 1e6;
-            // Transform the resultSet into a collection of Data Transfer Objects
-            fhirObjects = this.createDTOs(resultSet);
 
             if (log.isLoggable(Level.FINE)) {
-                log.fine("Successfully retrieved FHIR objects. SQL=" + sql + "  searchArgs="
+                log.fine("Successfully streamed " + rowCount + " FHIR objects. SQL=" + sql + "  searchArgs="
                         + Arrays.toString(searchArgs) + " executionTime=" + dbCallDuration + "ms");
             }
-        } catch (FHIRPersistenceException e) {
-            throw e;
-        } catch (Throwable e) {
+        } catch (SQLException e) {
             // avoid leaking SQL because the exception message might be returned to a client
             FHIRPersistenceDataAccessException fx =
                     new FHIRPersistenceDataAccessException("Failure retrieving FHIR objects");
@@ -224,8 +239,24 @@ public class FHIRDbDAOImpl implements FHIRDbDAO {
             this.cleanup(resultSet, stmt);
             log.exiting(CLASSNAME, METHODNAME);
         }
+    }
 
-        return fhirObjects;
+    /**
+     * Binds the passed arguments to the parameters of the PreparedStatement. Timestamps are bound in UTC, which is
+     * the time zone of all the timestamps stored by the schema.
+     *
+     * @param stmt       - The PreparedStatement of the SQL template.
+     * @param searchArgs - An array of arguments to be substituted into the SQL template.
+     * @throws SQLException
+     */
+    protected void bindSearchArgs(PreparedStatement stmt, Object... searchArgs) throws SQLException {
+        for (int i = 0; i < searchArgs.length; i++) {
+            if (searchArgs[i] instanceof Timestamp) {
+                stmt.setTimestamp(i + 1, (Timestamp) searchArgs[i], JDBCConstants.UTC);
+            } else {
+                stmt.setObject(i + 1, searchArgs[i]);
+            }
+        }
     }
 
     /**
@@ -253,14 +284,7 @@ public class FHIRDbDAOImpl implements FHIRDbDAO {
 
         try {
             stmt = connection.prepareStatement(sql);
-            // Inject arguments into the prepared stmt.
-            for (int i = 0; i < searchArgs.length; i++) {
-                if (searchArgs[i] instanceof Timestamp) {
-                    stmt.setTimestamp(i + 1, (Timestamp) searchArgs[i], JDBCConstants.UTC);
-                } else {
-                    stmt.setObject(i + 1, searchArgs[i]);
-                }
-            }
+            bindSearchArgs(stmt, searchArgs);
             dbCallStartTime = System.nanoTime();
             resultSet = stmt.executeQuery();
             dbCallDuration = (System.nanoTime() - dbCallStartTime) / 1e6;
@@ -374,14 +398,7 @@ public class FHIRDbDAOImpl implements FHIRDbDAO {
 
         try {
             stmt = connection.prepareStatement(sql);
-            // Inject arguments into the prepared stmt.
-            for (int i = 0; i < searchArgs.length; i++) {
-                if (searchArgs[i] instanceof Timestamp) {
-                    stmt.setTimestamp(i + 1, (Timestamp) searchArgs[i], JDBCConstants.UTC);
-                } else {
-                    stmt.setObject(i + 1, searchArgs[i]);
-                }
-            }
+            bindSearchArgs(stmt, searchArgs);
             dbCallStartTime = System.nanoTime();
             resultSet = stmt.executeQuery();
             dbCallDuration = (System.nanoTime() - dbCallStartTime) / 1e6;
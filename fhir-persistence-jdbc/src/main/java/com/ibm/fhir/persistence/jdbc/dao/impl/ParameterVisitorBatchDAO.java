@@ -16,11 +16,14 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import com.ibm.fhir.model.util.ModelSupport;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.jdbc.dao.api.ICodeSystemCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.IParameterNameCache;
@@ -31,10 +34,13 @@ import com.ibm.fhir.persistence.jdbc.dto.ExtractedParameterValueVisitor;
 import com.ibm.fhir.persistence.jdbc.dto.LocationParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.NumberParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.QuantityParmVal;
+import com.ibm.fhir.persistence.jdbc.dto.ReferenceParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.StringParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.TokenParmVal;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
 import com.ibm.fhir.schema.control.FhirSchemaConstants;
+import com.ibm.fhir.search.compartment.CompartmentUtil;
+import com.ibm.fhir.search.location.util.Geohash;
 
 /**
  * Batch insert into the parameter values tables. Avoids having to create one stored procedure
@@ -54,6 +60,9 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
     // FK to the logical resource for the parameters being added
     private final long logicalResourceId;
 
+    // the resource type of the logical resource, which prefixes the parameter table names
+    private final String tablePrefix;
+
     // Maintainers: remember to close all statements in AutoCloseable#close()
     private final String insertString;
     private final PreparedStatement strings;
@@ -83,6 +92,20 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
     private final PreparedStatement composites;
     private int compositesCount;
 
+    // References to [type]/[id], with the target LOGICAL_RESOURCE_ID resolved if it exists
+    private final PreparedStatement resourceRefs;
+    private int resourceRefCount;
+
+    // The targets of those references which don't exist yet, each recorded once to be resolved when it is created
+    private final PreparedStatement pendingRefs;
+    private int pendingRefCount;
+    private final Set<String> pendingTargets = new HashSet<>();
+
+    // The compartments the resource is a member of, each added once however many inclusion criteria refer to it
+    private final PreparedStatement compartments;
+    private int compartmentCount;
+    private final Set<String> compartmentMembership = new HashSet<>();
+
     // Searchable string attributes stored at the Resource (system) level
     private final PreparedStatement resourceStrings;
     private int resourceStringCount;
@@ -114,6 +137,7 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
 
         this.connection = c;
         this.logicalResourceId = logicalResourceId;
+        this.tablePrefix = tablePrefix;
         this.batchSize = batchSize;
         this.parameterNameCache = pnc;
         this.codeSystemCache = csc;
@@ -149,8 +173,8 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                 "INSERT INTO " + tablePrefix + "_quantity_values (parameter_name_id, code_system_id, code, quantity_value, quantity_value_low, quantity_value_high, logical_resource_id) VALUES (?,?,?,?,?,?,?)";
         quantities = c.prepareStatement(insertQuantity);
 
-        insertLocation = multitenant ? "INSERT INTO " + tablePrefix + "_latlng_values (mt_id, parameter_name_id, latitude_value, longitude_value, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?)"
-                : "INSERT INTO " + tablePrefix + "_latlng_values (parameter_name_id, latitude_value, longitude_value, logical_resource_id) VALUES (?,?,?,?)";
+        insertLocation = multitenant ? "INSERT INTO " + tablePrefix + "_latlng_values (mt_id, parameter_name_id, latitude_value, longitude_value, geohash_value, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?,?)"
+                : "INSERT INTO " + tablePrefix + "_latlng_values (parameter_name_id, latitude_value, longitude_value, geohash_value, logical_resource_id) VALUES (?,?,?,?,?)";
 
         String insertComposite = multitenant ?
                 "INSERT INTO " + tablePrefix + "_composites (mt_id, parameter_name_id, logical_resource_id, "
@@ -166,6 +190,40 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                 + ") VALUES (?,?,  ?,?,?,?,?,?,  ?,?,?,?,?,?,  ?,?,?,?,?,?)";
         composites = c.prepareStatement(insertComposite);
 
+        // The target of the reference is resolved with an outer join, so the row is written with a null
+        // ref_logical_resource_id if the target doesn't exist yet
+        String insertResourceRef = "INSERT INTO " + tablePrefix + "_resource_refs ("
+                + (multitenant ? "mt_id, " : "")
+                + "parameter_name_id, logical_resource_id, ref_resource_type_id, ref_logical_id, ref_logical_resource_id) "
+                + "SELECT " + (multitenant ? adminSchemaName + ".sv_tenant_id, " : "")
+                + "CAST(? AS INT), CAST(? AS BIGINT), rt.resource_type_id, CAST(? AS VARCHAR(" + FhirSchemaConstants.LOGICAL_ID_BYTES + ")), lr.logical_resource_id "
+                + "FROM resource_types rt LEFT OUTER JOIN logical_resources lr ON lr.resource_type_id = rt.resource_type_id AND lr.logical_id = ? "
+                + "WHERE rt.resource_type = ?";
+        resourceRefs = c.prepareStatement(insertResourceRef);
+
+        // Only written if the target doesn't exist, so the target tells which resource_refs tables to resolve when
+        // it is created. One row per resource type and target is enough, so the row isn't written again when another
+        // resource of the type, or a new version of the same resource, references the target.
+        String insertPendingRef = "INSERT INTO pending_resource_refs ("
+                + (multitenant ? "mt_id, " : "")
+                + "resource_type_id, ref_resource_type_id, ref_logical_id) "
+                + "SELECT " + (multitenant ? adminSchemaName + ".sv_tenant_id, " : "")
+                + "srt.resource_type_id, rt.resource_type_id, CAST(? AS VARCHAR(" + FhirSchemaConstants.LOGICAL_ID_BYTES + ")) "
+                + "FROM resource_types srt, resource_types rt "
+                + "WHERE srt.resource_type = ? AND rt.resource_type = ? "
+                + "AND NOT EXISTS (SELECT 1 FROM logical_resources lr WHERE lr.resource_type_id = rt.resource_type_id AND lr.logical_id = ?) "
+                + "AND NOT EXISTS (SELECT 1 FROM pending_resource_refs p WHERE p.ref_resource_type_id = rt.resource_type_id "
+                + "AND p.ref_logical_id = ? AND p.resource_type_id = srt.resource_type_id)";
+        pendingRefs = c.prepareStatement(insertPendingRef);
+
+        String insertCompartment = "INSERT INTO " + tablePrefix + "_compartments ("
+                + (multitenant ? "mt_id, " : "")
+                + "compartment_type_id, compartment_logical_id, logical_resource_id) "
+                + "SELECT " + (multitenant ? adminSchemaName + ".sv_tenant_id, " : "")
+                + "rt.resource_type_id, CAST(? AS VARCHAR(" + FhirSchemaConstants.LOGICAL_ID_BYTES + ")), CAST(? AS BIGINT) "
+                + "FROM resource_types rt WHERE rt.resource_type = ?";
+        compartments = c.prepareStatement(insertCompartment);
+
         // Resource level string attributes
         String insertResourceString = multitenant ?
                 "INSERT INTO resource_str_values (mt_id, parameter_name_id, str_value, str_value_lcase, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?)"
@@ -209,9 +267,89 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
 
     @Override
     public void visit(StringParmVal param) throws FHIRPersistenceException {
+        addStringValue(param, param.getValueString());
+    }
+
+    @Override
+    public void visit(ReferenceParmVal param) throws FHIRPersistenceException {
         String parameterName = param.getName();
         String value = param.getValueString();
 
+        // The value is searched as a string too, so it is stored in the str_values table as before
+        addStringValue(param, value);
+
+        // Only relative [type]/[id] and [type]/[id]/_history/[vid] references are resolved to a logical resource
+        String[] parts = value == null ? new String[0] : value.split("/");
+        if ((parts.length == 2 || parts.length == 4 && "_history".equals(parts[2]))
+                && ModelSupport.isResourceType(parts[0]) && !parts[1].isEmpty()
+                && parts[1].getBytes().length <= FhirSchemaConstants.LOGICAL_ID_BYTES) {
+            try {
+                int parameterNameId = getParameterNameId(parameterName);
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("resourceRef: " + parameterName + "[" + parameterNameId + "], " + parts[0] + "/" + parts[1]);
+                }
+
+                resourceRefs.setInt(1, parameterNameId);
+                resourceRefs.setLong(2, logicalResourceId);
+                resourceRefs.setString(3, parts[1]);
+                resourceRefs.setString(4, parts[1]);
+                resourceRefs.setString(5, parts[0]);
+                resourceRefs.addBatch();
+
+                if (++resourceRefCount == this.batchSize) {
+                    resourceRefs.executeBatch();
+                    resourceRefCount = 0;
+                }
+
+                if (pendingTargets.add(parts[0] + "/" + parts[1])) {
+                    pendingRefs.setString(1, parts[1]);
+                    pendingRefs.setString(2, tablePrefix);
+                    pendingRefs.setString(3, parts[0]);
+                    pendingRefs.setString(4, parts[1]);
+                    pendingRefs.setString(5, parts[1]);
+                    pendingRefs.addBatch();
+
+                    if (++pendingRefCount == this.batchSize) {
+                        pendingRefs.executeBatch();
+                        pendingRefCount = 0;
+                    }
+                }
+
+                // A reference to a compartment through one of its inclusion criteria makes the resource a member.
+                // Like the string search of the inclusion criteria, only unversioned references are considered.
+                if (parts.length == 2
+                        && CompartmentUtil.isCompartmentInclusionCriteria(parts[0], param.getResourceType(), parameterName)
+                        && compartmentMembership.add(parts[0] + "/" + parts[1])) {
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.fine("compartment: " + parts[0] + "/" + parts[1]);
+                    }
+
+                    compartments.setString(1, parts[1]);
+                    compartments.setLong(2, logicalResourceId);
+                    compartments.setString(3, parts[0]);
+                    compartments.addBatch();
+
+                    if (++compartmentCount == this.batchSize) {
+                        compartments.executeBatch();
+                        compartmentCount = 0;
+                    }
+                }
+            }
+            catch (SQLException x) {
+                throw new FHIRPersistenceDataAccessException(parameterName + "=" + value, x);
+            }
+        }
+    }
+
+    /**
+     * Add the string value of the parameter to the resource or the system level str_values table
+     * @param param
+     * @param value
+     * @throws FHIRPersistenceException
+     */
+    private void addStringValue(ExtractedParameterValue param, String value) throws FHIRPersistenceException {
+        String parameterName = param.getName();
+
         while (value != null && value.getBytes().length > FhirSchemaConstants.MAX_SEARCH_STRING_BYTES) {
             // keep chopping the string in half until its byte representation fits inside
             // the VARCHAR
@@ -496,7 +634,8 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
         insert.setInt(1, parameterNameId);
         insert.setDouble(2, lat);
         insert.setDouble(3, lng);
-        insert.setLong(4, logicalResourceId);
+        insert.setString(4, Geohash.encode(lat, lng, Geohash.MAX_PRECISION));
+        insert.setLong(5, logicalResourceId);
     }
 
     @Override
@@ -517,9 +656,10 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
             for (ExtractedParameterValue val : component) {
                 // TODO figure out how to use the visitor here and still get back the generated id
                 // THE ORDER OF THESE IF STATEMENTS MUST MATCH THE ORDER OF THE INSERT FIELDS
-                if (val instanceof StringParmVal) {
+                if (val instanceof StringParmVal || val instanceof ReferenceParmVal) {
+                    String value = val instanceof StringParmVal ? ((StringParmVal) val).getValueString() : ((ReferenceParmVal) val).getValueString();
                     try (PreparedStatement insert = connection.prepareStatement(insertString, Statement.RETURN_GENERATED_KEYS)) {
-                        setStringParms(insert, parameterNameId, ((StringParmVal) val).getValueString());
+                        setStringParms(insert, parameterNameId, value);
                         insert.executeUpdate();
                         // closing the insert statement also closes the resultset
                         ResultSet rs = insert.getGeneratedKeys();
@@ -655,6 +795,21 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                 compositesCount = 0;
             }
 
+            if (resourceRefCount > 0) {
+                resourceRefs.executeBatch();
+                resourceRefCount = 0;
+            }
+
+            if (pendingRefCount > 0) {
+                pendingRefs.executeBatch();
+                pendingRefCount = 0;
+            }
+
+            if (compartmentCount > 0) {
+                compartments.executeBatch();
+                compartmentCount = 0;
+            }
+
             if (resourceStringCount > 0) {
                 resourceStrings.executeBatch();
                 resourceStringCount = 0;
@@ -687,6 +842,9 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
         closeStatement(tokens);
         closeStatement(tokenComp);
         closeStatement(quantities);
+        closeStatement(resourceRefs);
+        closeStatement(pendingRefs);
+        closeStatement(compartments);
         closeStatement(resourceStrings);
         closeStatement(resourceDates);
         closeStatement(resourceTokens);
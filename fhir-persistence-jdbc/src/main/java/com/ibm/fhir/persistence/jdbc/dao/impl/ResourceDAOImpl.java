@@ -26,6 +26,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -205,7 +206,7 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
         try {
             resource.setData(resultSet.getBytes("DATA"));
             resource.setId(resultSet.getLong("RESOURCE_ID"));
-            resource.setLastUpdated(resultSet.getTimestamp("LAST_UPDATED"));
+            resource.setLastUpdated(resultSet.getTimestamp("LAST_UPDATED", UTC));
             resource.setLogicalId(resultSet.getString("LOGICAL_ID"));
             resource.setVersionId(resultSet.getInt("VERSION_ID"));
             resource.setDeleted(resultSet.getString("IS_DELETED").equals("Y") ? true : false);
@@ -294,6 +295,18 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
         return resources;
     }
 
+    @Override
+    public void search(SqlQueryData queryData, Consumer<Resource> consumer) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "search(SqlQueryData, Consumer)";
+        log.entering(CLASSNAME, METHODNAME);
+
+        try {
+            this.runQuery(queryData.getQueryString(), consumer, queryData.getBindVariables().toArray());
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
     @Override
     public int searchCount(SqlQueryData queryData)     throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
         final String METHODNAME = "searchCount(SqlQueryData)";
@@ -391,6 +404,61 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
         return parameterNameId;
     }
 
+    /**
+     * Resolves the references to a newly created logical resource which were written to the RESOURCE_REFS tables
+     * before it existed. The PENDING_RESOURCE_REFS table tells which resource types hold such references, so only
+     * their RESOURCE_REFS tables are updated, and the pending rows are then deleted.
+     * @param connection
+     * @param resourceTypeId the resource type id of the new logical resource
+     * @param logicalId the logical id of the new logical resource
+     * @param logicalResourceId the LOGICAL_RESOURCE_ID of the new logical resource
+     * @return int - the number of references resolved.
+     * @throws SQLException
+     */
+    protected int resolvePendingReferences(Connection connection, int resourceTypeId, String logicalId, long logicalResourceId)
+            throws SQLException {
+        final String SELECT_PENDING = "SELECT DISTINCT RT.RESOURCE_TYPE FROM PENDING_RESOURCE_REFS P"
+                + " JOIN RESOURCE_TYPES RT ON RT.RESOURCE_TYPE_ID = P.RESOURCE_TYPE_ID"
+                + " WHERE P.REF_RESOURCE_TYPE_ID = ? AND P.REF_LOGICAL_ID = ?";
+        final String DELETE_PENDING = "DELETE FROM PENDING_RESOURCE_REFS WHERE REF_RESOURCE_TYPE_ID = ? AND REF_LOGICAL_ID = ?";
+
+        List<String> resourceTypes = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(SELECT_PENDING)) {
+            stmt.setInt(1, resourceTypeId);
+            stmt.setString(2, logicalId);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                resourceTypes.add(rs.getString(1));
+            }
+        }
+        if (resourceTypes.isEmpty()) {
+            return 0;
+        }
+
+        int resolved = 0;
+        for (String resourceType : resourceTypes) {
+            final String UPDATE_REFS = "UPDATE " + resourceType + "_RESOURCE_REFS SET REF_LOGICAL_RESOURCE_ID = ?"
+                    + " WHERE REF_RESOURCE_TYPE_ID = ? AND REF_LOGICAL_RESOURCE_ID IS NULL AND REF_LOGICAL_ID = ?";
+            try (PreparedStatement stmt = connection.prepareStatement(UPDATE_REFS)) {
+                stmt.setLong(1, logicalResourceId);
+                stmt.setInt(2, resourceTypeId);
+                stmt.setString(3, logicalId);
+                resolved += stmt.executeUpdate();
+            }
+        }
+
+        try (PreparedStatement stmt = connection.prepareStatement(DELETE_PENDING)) {
+            stmt.setInt(1, resourceTypeId);
+            stmt.setString(2, logicalId);
+            stmt.executeUpdate();
+        }
+
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Resolved pending references: resourceTypes=" + resourceTypes + " resolved=" + resolved);
+        }
+        return resolved;
+    }
+
     @Override
     public List<Long> searchForIds(SqlQueryData queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
         final String METHODNAME = "searchForIds";
@@ -405,15 +473,7 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
 
         try {
             stmt = connection.prepareStatement(queryData.getQueryString());
-            // Inject arguments into the prepared stmt.
-            for (int i = 0; i < queryData.getBindVariables().size(); i++) {
-                Object object = queryData.getBindVariables().get(i);
-                if (object instanceof Timestamp) {
-                    stmt.setTimestamp(i+1, (Timestamp) object, JDBCConstants.UTC);
-                } else {
-                    stmt.setObject(i+1, object);
-                }
-            }
+            bindSearchArgs(stmt, queryData.getBindVariables().toArray());
             dbCallStartTime = System.nanoTime();
             resultSet = stmt.executeQuery();
             dbCallDuration = (System.nanoTime()-dbCallStartTime)/1e6;
@@ -535,7 +595,11 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
                     }
                 }
             }
-            
+
+            // The first version creates the logical resource, which resolves the references written before it existed
+            if (resource.getVersionId() == 1) {
+                resolvePendingReferences(connection, resourceTypeId, resource.getLogicalId(), resource.getId());
+            }
 
             if (log.isLoggable(Level.FINE)) {
                 latestTime = System.nanoTime();
@@ -366,6 +366,8 @@ public class DerbyResourceDAO extends ResourceDAOImpl {
                 deleteFromParameterTable(conn, tablePrefix + "_latlng_values", v_logical_resource_id);
                 deleteFromParameterTable(conn, tablePrefix + "_token_values", v_logical_resource_id);
                 deleteFromParameterTable(conn, tablePrefix + "_quantity_values", v_logical_resource_id);
+                deleteFromParameterTable(conn, tablePrefix + "_resource_refs", v_logical_resource_id);
+                deleteFromParameterTable(conn, tablePrefix + "_compartments", v_logical_resource_id);
             }
         }
 
@@ -434,6 +436,11 @@ public class DerbyResourceDAO extends ResourceDAOImpl {
                 }
             }
         }
+
+        // A new logical resource resolves the references which were written before it existed
+        if (v_new_resource) {
+            resolvePendingReferences(conn, v_resource_type_id, p_logical_id, v_logical_resource_id);
+        }
         logger.exiting(CLASSNAME, METHODNAME);
         return v_resource_id;
     }
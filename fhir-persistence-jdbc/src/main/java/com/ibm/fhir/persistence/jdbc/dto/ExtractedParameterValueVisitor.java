@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019
+ * (C) Copyright IBM Corp. 2019, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -21,7 +21,7 @@ public interface ExtractedParameterValueVisitor {
     /**
      * Process a reference parameter value
      */
-//    void visit(ReferenceParameter stringParameter) throws FHIRPersistenceException;
+    void visit(ReferenceParmVal referenceParameter) throws FHIRPersistenceException;
 
     /**
      * Process a uri parameter value
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2017,2019
+ * (C) Copyright IBM Corp. 2017,2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -9,6 +9,10 @@ package com.ibm.fhir.persistence.jdbc.dto;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.search.SearchConstants.Type;
 
+/**
+ * This class defines the Data Transfer Object representing a reference search parameter value. The value is
+ * stored in the X_STR_VALUES tables and, when it is a [type]/[id] reference, in the X_RESOURCE_REFS tables.
+ */
 public class ReferenceParmVal implements ExtractedParameterValue {
     
     private String resourceType;
@@ -55,7 +59,7 @@ public class ReferenceParmVal implements ExtractedParameterValue {
      * We know our type, so we can call the correct method on the visitor
      */
     public void accept(ExtractedParameterValueVisitor visitor) throws FHIRPersistenceException {
-//        visitor.visit(this);
+        visitor.visit(this);
     }
 
     /**
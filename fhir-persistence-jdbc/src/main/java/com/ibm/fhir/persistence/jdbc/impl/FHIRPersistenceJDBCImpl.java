@@ -17,6 +17,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Timestamp;
@@ -32,6 +33,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -80,6 +82,7 @@ import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
 import com.ibm.fhir.persistence.FHIRPersistence;
 import com.ibm.fhir.persistence.FHIRPersistenceTransaction;
 import com.ibm.fhir.persistence.MultiResourceResult;
+import com.ibm.fhir.persistence.ResourcePayloadConsumer;
 import com.ibm.fhir.persistence.SingleResourceResult;
 import com.ibm.fhir.persistence.context.FHIRHistoryContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
@@ -113,11 +116,13 @@ import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBConnectException
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceFKVException;
 import com.ibm.fhir.persistence.jdbc.util.CodeSystemsCache;
+import com.ibm.fhir.persistence.jdbc.util.InclusionResolver;
 import com.ibm.fhir.persistence.jdbc.util.JDBCParameterBuildingVisitor;
 import com.ibm.fhir.persistence.jdbc.util.JDBCQueryBuilder;
 import com.ibm.fhir.persistence.jdbc.util.LogicalIdentityProvider;
 import com.ibm.fhir.persistence.jdbc.util.ParameterNamesCache;
 import com.ibm.fhir.persistence.jdbc.util.ResourceTypesCache;
+import com.ibm.fhir.persistence.jdbc.util.SearchResultCache;
 import com.ibm.fhir.persistence.jdbc.util.SqlQueryData;
 import com.ibm.fhir.persistence.jdbc.util.TimestampPrefixedUUID;
 import com.ibm.fhir.persistence.util.FHIRPersistenceUtil;
@@ -146,6 +151,9 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
     // The following are filtered as they are handled specifically by the persistence layer:
     private static final List<String> SPECIAL_HANDLING = Arrays.asList("_id", "_lastUpdated");
 
+    // The default number of times _include:iterate and _revinclude:iterate are applied to included resources
+    private static final int DEFAULT_MAX_INCLUDE_ITERATIONS = 3;
+
     private final TransactionSynchronizationRegistry trxSynchRegistry;
     private List<OperationOutcome.Issue> supplementalIssues = new ArrayList<>();
 
@@ -535,8 +543,8 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         MultiResourceResult.Builder<Resource> resultBuilder = new MultiResourceResult.Builder<>();
         FHIRSearchContext searchContext = context.getSearchContext();
         JDBCQueryBuilder queryBuilder;
-        List<Long> sortedIdList;
-        List<com.ibm.fhir.persistence.jdbc.dto.Resource> unsortedResultsList;
+        List<com.ibm.fhir.persistence.jdbc.dto.Resource> resultsList;
+        List<Long> pageIds = new ArrayList<>();
         int searchResultCount = 0;
         SqlQueryData countQuery;
         SqlQueryData query;
@@ -548,6 +556,35 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             checkModifiers(searchContext, isSystemLevelSearch(resourceType));
             queryBuilder = new JDBCQueryBuilder(parameterDao, resourceDao, connectionStrategy.getQueryHints());
 
+            if (searchContext.isKeysetPaging()) {
+                // Keyset paging skips the count; the caller is done when a page comes back short
+                query = queryBuilder.buildQuery(resourceType, searchContext);
+                if (query != null && searchContext.getPageSize() > 0) {
+                    resultsList = resourceDao.search(query);
+                    if (!resultsList.isEmpty()) {
+                        com.ibm.fhir.persistence.jdbc.dto.Resource last = resultsList.get(resultsList.size() - 1);
+                        searchContext.setKeyset(last.getLastUpdated().toInstant(), last.getId());
+                    }
+                    resources = this.convertResourceDTOList(resultsList, resourceType, searchContext.getElementsParameters());
+                }
+                return resultBuilder
+                        .success(true)
+                        .resource(resources)
+                        .build();
+            }
+
+            // The generation is read before searching, so a result invalidated while searching isn't cached
+            String cacheKey = isSystemLevelSearch(resourceType) ? null
+                    : SearchResultCache.getCacheKey(resourceType.getSimpleName(), searchContext);
+            long cacheGeneration = 0;
+            if (cacheKey != null) {
+                SearchResultCache.Entry cachedResult = SearchResultCache.get(cacheKey);
+                if (cachedResult != null) {
+                    return searchCachedResult(resourceDao, context, resourceType, cachedResult);
+                }
+                cacheGeneration = SearchResultCache.getGeneration(resourceType.getSimpleName());
+            }
+
             countQuery = queryBuilder.buildCountQuery(resourceType, searchContext);
             if (countQuery != null) {
                 searchResultCount = resourceDao.searchCount(countQuery);
@@ -572,47 +609,26 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
                         && searchContext.getPageSize() > 0) {
                     query = queryBuilder.buildQuery(resourceType, searchContext);
 
-                    List<String> elements = searchContext.getElementsParameters();
-
-                    //Only consider _summary if _elements parameter is empty
-                    if (elements == null && searchContext.hasSummaryParameter()) {
-                        Set<String> summaryElements = null;
-                        SummaryValueSet summary = searchContext.getSummaryParameter();
-
-                        switch (summary) {
-                        case TRUE:
-                            summaryElements = JsonSupport.getSummaryElementNames(resourceType);
-                            break;
-                        case TEXT:
-                            summaryElements = SearchUtil.getSummaryTextElementNames(resourceType);
-                            break;
-                        case DATA:
-                            summaryElements = JsonSupport.getSummaryDataElementNames(resourceType);
-                            break;
-                        default:
-                            break;
-                        }
+                    List<String> elements = getElements(searchContext, resourceType);
 
-                        if (summaryElements != null) {
-                            elements = new ArrayList<>();
-                            elements.addAll(summaryElements);
-                        }
+                    // Sorted queries return the page already in sort order, so sorted and unsorted
+                    // searches read the resource data the same way
+                    resultsList = resourceDao.search(query);
+                    resources = this.convertResourceDTOList(resultsList, resourceType, elements);
+                    for (com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO : resultsList) {
+                        pageIds.add(resourceDTO.getId());
                     }
 
-                    if (searchContext.hasSortParameters()) {
-                        // Sorting results of a system-level search is limited, and has a different logic path
-                        // than other sorted searches.
-                        if (resourceType.equals(Resource.class)) {
-                           resources = this.convertResourceDTOList(resourceDao.search(query), resourceType, elements);
-                        } else {
-                            sortedIdList = resourceDao.searchForIds(query);
-                            resources = this.buildSortedFhirResources(resourceDao, context, resourceType, sortedIdList, elements);
-                        }
-                    } else {
-                        unsortedResultsList = resourceDao.search(query);
-                        resources = this.convertResourceDTOList(unsortedResultsList, resourceType, elements);
+                    if (searchContext.hasIncludeParameters() || searchContext.hasRevIncludeParameters()) {
+                        resources = new ArrayList<>(resources);
+                        resources.addAll(this.convertResourceDTOList(
+                                getIncludedResources(parameterDao, resourceDao, resourceType, resources, searchContext), resourceType, elements));
                     }
                 }
+
+                if (cacheKey != null) {
+                    SearchResultCache.put(cacheKey, resourceType.getSimpleName(), cacheGeneration, searchResultCount, pageIds);
+                }
             }
 
             return resultBuilder
@@ -630,6 +646,168 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         }
     }
 
+    /**
+     * Builds the search result from a result of the {@link SearchResultCache}, reading the resources of the page by id.
+     */
+    private MultiResourceResult<Resource> searchCachedResult(ResourceDAO resourceDao, FHIRPersistenceContext context,
+            Class<? extends Resource> resourceType, SearchResultCache.Entry cachedResult) throws Exception {
+        MultiResourceResult.Builder<Resource> resultBuilder = new MultiResourceResult.Builder<>();
+        FHIRSearchContext searchContext = context.getSearchContext();
+        List<Resource> resources = Collections.emptyList();
+
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("cached searchResultCount = " + cachedResult.getCount());
+        }
+        searchContext.setTotalCount(cachedResult.getCount());
+
+        List<OperationOutcome.Issue> issues = validatePagingContext(searchContext);
+        if (!issues.isEmpty()) {
+            resultBuilder.outcome(OperationOutcome.builder()
+                .issue(issues)
+                .build());
+            if (!searchContext.isLenient()) {
+                return resultBuilder.success(false).build();
+            }
+        }
+
+        if (!cachedResult.getIds().isEmpty()) {
+            resources = this.buildSortedFhirResources(resourceDao, context, resourceType, cachedResult.getIds(),
+                    getElements(searchContext, resourceType));
+        }
+
+        return resultBuilder
+                .success(true)
+                .resource(resources)
+                .build();
+    }
+
+    /**
+     * Returns the elements to include in the resources of a search result, as selected by the _elements parameter or,
+     * if that is empty, by the _summary parameter.
+     */
+    private List<String> getElements(FHIRSearchContext searchContext, Class<? extends Resource> resourceType) {
+        List<String> elements = searchContext.getElementsParameters();
+
+        //Only consider _summary if _elements parameter is empty
+        if (elements == null && searchContext.hasSummaryParameter()) {
+            Set<String> summaryElements = null;
+            SummaryValueSet summary = searchContext.getSummaryParameter();
+
+            switch (summary) {
+            case TRUE:
+                summaryElements = JsonSupport.getSummaryElementNames(resourceType);
+                break;
+            case TEXT:
+                summaryElements = SearchUtil.getSummaryTextElementNames(resourceType);
+                break;
+            case DATA:
+                summaryElements = JsonSupport.getSummaryDataElementNames(resourceType);
+                break;
+            default:
+                break;
+            }
+
+            if (summaryElements != null) {
+                elements = new ArrayList<>();
+                elements.addAll(summaryElements);
+            }
+        }
+        return elements;
+    }
+
+    /**
+     * Reads the resources included by a page of search results through the _include and _revinclude parameters.
+     */
+    private List<com.ibm.fhir.persistence.jdbc.dto.Resource> getIncludedResources(ParameterDAO parameterDao, ResourceDAO resourceDao,
+            Class<? extends Resource> resourceType, List<Resource> page, FHIRSearchContext searchContext) throws Exception {
+        List<String> logicalIds = new ArrayList<>();
+        for (Resource resource : page) {
+            logicalIds.add(resource.getId());
+        }
+        int maxIterations = FHIRConfigHelper.getIntProperty(FHIRConfiguration.PROPERTY_SEARCH_MAX_INCLUDE_ITERATIONS,
+                DEFAULT_MAX_INCLUDE_ITERATIONS);
+        InclusionResolver resolver = new InclusionResolver(parameterDao, resourceDao);
+        return resolver.resolve(resourceType.getSimpleName(), logicalIds, searchContext.getIncludeParameters(),
+                searchContext.getRevIncludeParameters(), maxIterations);
+    }
+
+    @Override
+    public int searchPayloads(FHIRPersistenceContext context, Class<? extends Resource> resourceType, ResourcePayloadConsumer consumer)
+            throws FHIRPersistenceException {
+        final String METHODNAME = "searchPayloads";
+        log.entering(CLASSNAME, METHODNAME);
+
+        FHIRSearchContext searchContext = context.getSearchContext();
+        if (!searchContext.isKeysetPaging() || isSystemLevelSearch(resourceType)
+                || searchContext.hasIncludeParameters() || searchContext.hasRevIncludeParameters()
+                || searchContext.hasElementsParameters() || searchContext.hasSummaryParameter()) {
+            throw new FHIRPersistenceNotSupportedException("Payload search requires keyset paging of a single resource type "
+                    + "without _include, _revinclude, _elements or _summary");
+        }
+
+        try (Connection connection = openConnection()) {
+            ResourceDAO resourceDao = makeResourceDAO(connection);
+            ParameterDAO parameterDao = makeParameterDAO(connection);
+
+            checkModifiers(searchContext, false);
+            JDBCQueryBuilder queryBuilder = new JDBCQueryBuilder(parameterDao, resourceDao, connectionStrategy.getQueryHints());
+            SqlQueryData query = queryBuilder.buildQuery(resourceType, searchContext);
+            if (query == null || searchContext.getPageSize() <= 0) {
+                return 0;
+            }
+
+            // Stream the rows, handing each decompressed payload to the consumer without parsing it
+            PayloadHandler handler = new PayloadHandler(consumer);
+            resourceDao.search(query, handler);
+            if (handler.last != null) {
+                searchContext.setKeyset(handler.last.getLastUpdated().toInstant(), handler.last.getId());
+            }
+            return handler.count;
+        } catch (FHIRPersistenceException e) {
+            throw e;
+        } catch (UncheckedIOException e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Error while passing resource payloads to the consumer.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        } catch (Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while performing a search operation.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
+    /**
+     * Decompresses the DATA of each Resource DTO and passes it to a ResourcePayloadConsumer,
+     * keeping track of the number of resources and the last one seen.
+     */
+    private static class PayloadHandler implements Consumer<com.ibm.fhir.persistence.jdbc.dto.Resource> {
+        private final ResourcePayloadConsumer consumer;
+        private com.ibm.fhir.persistence.jdbc.dto.Resource last;
+        private int count;
+
+        PayloadHandler(ResourcePayloadConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void accept(com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO) {
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(resourceDTO.getData()))) {
+                consumer.accept(resourceDTO.getLogicalId(), in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            last = resourceDTO;
+            count++;
+        }
+    }
+
+    @Override
+    public boolean isPayloadSearchSupported() {
+        return true;
+    }
+
     /**
      * @return true if this instance represents a FHIR system level search
      */
@@ -650,15 +828,17 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
                             + "for whole-system search [code=" + param.getCode() + "]");
                 }
             } else {
-                if (param.getChain().getLast().getModifier() == Modifier.MISSING) {
-                    // modifiers on the last parameter in the chain are not yet supported
-                    throw buildNotSupportedException("Modifier '" + Modifier.MISSING.value() + "' is not yet supported "
+                Modifier lastModifier = param.getChain().getLast().getModifier();
+                if (lastModifier == Modifier.MISSING || lastModifier == Modifier.NOT_IN) {
+                    // these modifiers on the last parameter in the chain are not yet supported
+                    throw buildNotSupportedException("Modifier '" + lastModifier.value() + "' is not yet supported "
                             + "for chained parameters [code=" + param.getCode() + "]");
                 }
             }
 
             do {
-                if (param.getModifier() != null &&
+                // :not on a reverse chained (_has) parameter excludes the resources referred to by a matching resource
+                if (param.getModifier() != null && !(param.isReverseChained() && param.getModifier() == Modifier.NOT) &&
                         !JDBCConstants.supportedModifiersMap.get(param.getType()).contains(param.getModifier())) {
                     throw buildNotSupportedException("Found unsupported modifier '" + param.getModifier() + "'"
                             + " for search parameter '" + param.getCode() + "' of type " + param.getType());
@@ -133,6 +133,11 @@ public class PostgreSqlResourceDAO extends ResourceDAOImpl {
                 }
             }
 
+            // The first version creates the logical resource, which resolves the references written before it existed
+            if (resource.getVersionId() == 1) {
+                resolvePendingReferences(connection, resourceTypeId, resource.getLogicalId(), resource.getId());
+            }
+
             if (logger.isLoggable(Level.FINE)) {
                 logger.fine("Successfully inserted Resource. id=" + resource.getId() + " executionTime=" + dbCallDuration + "ms");
             }
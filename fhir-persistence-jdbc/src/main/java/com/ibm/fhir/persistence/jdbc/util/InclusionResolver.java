@@ -0,0 +1,356 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.AND;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.COMMA;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.LEFT_PAREN;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.RIGHT_PAREN;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
+import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDAO;
+import com.ibm.fhir.persistence.jdbc.dto.Resource;
+import com.ibm.fhir.search.parameters.InclusionParameter;
+
+/**
+ * Resolves the _include and _revinclude search result parameters for a page of search results.
+ * <br>
+ * The page is fetched first; the resources it includes are then read with keyed queries which bind the logical ids
+ * of the page (or the references to them) instead of repeating the search:
+ * <ol>
+ * <li>for _include, one query per join resource type and search parameter reads the reference values of the page,
+ * followed by one query per target resource type which reads the referenced resources by LOGICAL_ID;
+ * <li>for _revinclude, one query per join resource type and target resource type reads the resources which reference
+ * the page, matching the reference values in the STR_VALUES table of the join resource type, or joining its
+ * RESOURCE_REFS table on the LOGICAL_RESOURCE_ID of the page when fhirServer/search/useResourceRefs is enabled.
+ * </ol>
+ * Parameters with the :iterate modifier are applied again to the resources included by the previous iteration,
+ * up to the passed maximum number of iterations. A resource is only ever returned once, and never if it is already
+ * in the page.
+ */
+public class InclusionResolver {
+    private static final String CLASSNAME = InclusionResolver.class.getName();
+    private static final Logger log = java.util.logging.Logger.getLogger(CLASSNAME);
+
+    // The maximum number of values bound to a single IN list
+    private static final int MAX_IN_LIST_SIZE = 1000;
+
+    private static final String SELECT_ROOT =
+            "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID ";
+    private static final String WHERE_CLAUSE_ROOT = "WHERE R.IS_DELETED <> 'Y'";
+
+    private final ParameterDAO parameterDao;
+    private final ResourceDAO resourceDao;
+
+    public InclusionResolver(ParameterDAO parameterDao, ResourceDAO resourceDao) {
+        this.parameterDao = parameterDao;
+        this.resourceDao  = resourceDao;
+    }
+
+    /**
+     * Reads the resources included by a page of search results.
+     *
+     * @param resourceType         - The type of the resources in the page.
+     * @param logicalIds           - The logical ids of the resources in the page.
+     * @param includeParameters    - The _include parameters of the search.
+     * @param revIncludeParameters - The _revinclude parameters of the search.
+     * @param maxIterations        - The number of times the :iterate parameters are applied to included resources.
+     * @return the included resources, in the order they were found, with their resource type set
+     * @throws Exception
+     */
+    public List<Resource> resolve(String resourceType, Collection<String> logicalIds, List<InclusionParameter> includeParameters,
+            List<InclusionParameter> revIncludeParameters, int maxIterations) throws Exception {
+        final String METHODNAME = "resolve";
+        log.entering(CLASSNAME, METHODNAME);
+
+        List<Resource> included = new ArrayList<>();
+
+        // "Type/id" of every resource in the page or included so far
+        Set<String> found = new HashSet<>();
+        Map<String, List<String>> sources = new LinkedHashMap<>();
+        for (String logicalId : logicalIds) {
+            found.add(resourceType + "/" + logicalId);
+            sources.computeIfAbsent(resourceType, k -> new ArrayList<>()).add(logicalId);
+        }
+
+        for (int iteration = 0; iteration <= maxIterations && !sources.isEmpty(); iteration++) {
+            List<Resource> newlyIncluded = new ArrayList<>();
+            boolean iterateOnly = iteration > 0;
+            processIncludeParameters(sources, includeParameters, iterateOnly, found, newlyIncluded);
+            processRevIncludeParameters(sources, revIncludeParameters, iterateOnly, found, newlyIncluded);
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Iteration " + iteration + " included " + newlyIncluded.size() + " resources");
+            }
+
+            // The resources included by this iteration are the sources of the next one
+            included.addAll(newlyIncluded);
+            sources = new LinkedHashMap<>();
+            for (Resource resource : newlyIncluded) {
+                sources.computeIfAbsent(resource.getResourceType(), k -> new ArrayList<>()).add(resource.getLogicalId());
+            }
+        }
+
+        log.exiting(CLASSNAME, METHODNAME);
+        return included;
+    }
+
+    private void processIncludeParameters(Map<String, List<String>> sources, List<InclusionParameter> includeParameters,
+            boolean iterateOnly, Set<String> found, List<Resource> newlyIncluded) throws Exception {
+
+        // The target types of each search parameter, by join resource type
+        Map<String, Map<String, Set<String>>> targetTypes = new LinkedHashMap<>();
+        for (InclusionParameter includeParm : includeParameters) {
+            if ((includeParm.isIterate() || !iterateOnly) && sources.containsKey(includeParm.getJoinResourceType())) {
+                targetTypes.computeIfAbsent(includeParm.getJoinResourceType(), k -> new LinkedHashMap<>())
+                        .computeIfAbsent(includeParm.getSearchParameter(), k -> new HashSet<>())
+                        .add(includeParm.getSearchParameterTargetType());
+            }
+        }
+
+        // The logical ids of the referenced resources which are not already found, by target type
+        Map<String, Set<String>> targets = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, Set<String>>> joinEntry : targetTypes.entrySet()) {
+            String joinResourceType = joinEntry.getKey();
+            for (Map.Entry<String, Set<String>> parmEntry : joinEntry.getValue().entrySet()) {
+                Integer parameterNameId = getParameterNameId(parmEntry.getKey());
+                if (parameterNameId == null) {
+                    continue;
+                }
+                for (List<String> logicalIds : partition(sources.get(joinResourceType))) {
+                    for (String reference : resourceDao.searchStringValues(buildReferenceQuery(joinResourceType, parameterNameId, logicalIds))) {
+                        int index = reference == null ? -1 : reference.indexOf('/');
+                        if (index > 0 && reference.indexOf('/', index + 1) < 0 && !found.contains(reference)
+                                && parmEntry.getValue().contains(reference.substring(0, index))) {
+                            targets.computeIfAbsent(reference.substring(0, index), k -> new LinkedHashSet<>())
+                                    .add(reference.substring(index + 1));
+                        }
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<String, Set<String>> targetEntry : targets.entrySet()) {
+            for (List<String> logicalIds : partition(targetEntry.getValue())) {
+                addNewlyIncluded(targetEntry.getKey(), resourceDao.search(buildTargetQuery(targetEntry.getKey(), logicalIds)),
+                        found, newlyIncluded);
+            }
+        }
+    }
+
+    private void processRevIncludeParameters(Map<String, List<String>> sources, List<InclusionParameter> revIncludeParameters,
+            boolean iterateOnly, Set<String> found, List<Resource> newlyIncluded) throws Exception {
+
+        // The ids of the search parameters which reference the sources, by target type, by join resource type
+        Map<String, Map<String, Set<Integer>>> parameterNameIds = new LinkedHashMap<>();
+        for (InclusionParameter revIncludeParm : revIncludeParameters) {
+            String targetType = revIncludeParm.getSearchParameterTargetType();
+            if ((revIncludeParm.isIterate() || !iterateOnly) && sources.containsKey(targetType)) {
+                Integer parameterNameId = getParameterNameId(revIncludeParm.getSearchParameter());
+                if (parameterNameId == null) {
+                    continue;
+                }
+                parameterNameIds.computeIfAbsent(revIncludeParm.getJoinResourceType(), k -> new LinkedHashMap<>())
+                        .computeIfAbsent(targetType, k -> new LinkedHashSet<>())
+                        .add(parameterNameId);
+            }
+        }
+
+        boolean useResourceRefs = QuerySegmentAggregator.isResourceRefsSearch();
+        for (Map.Entry<String, Map<String, Set<Integer>>> joinEntry : parameterNameIds.entrySet()) {
+            String joinResourceType = joinEntry.getKey();
+            for (Map.Entry<String, Set<Integer>> targetEntry : joinEntry.getValue().entrySet()) {
+                for (List<String> logicalIds : partition(sources.get(targetEntry.getKey()))) {
+                    SqlQueryData query = useResourceRefs
+                            ? buildRevIncludeRefsQuery(joinResourceType, targetEntry.getValue(), targetEntry.getKey(), logicalIds)
+                            : buildRevIncludeQuery(joinResourceType, targetEntry.getValue(), targetEntry.getKey(), logicalIds);
+                    addNewlyIncluded(joinResourceType, resourceDao.search(query), found, newlyIncluded);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the query for the reference values of a search parameter of the passed resources:
+     *
+     * <pre>
+     * SELECT P1.STR_VALUE FROM Observation_STR_VALUES P1
+     *   JOIN Observation_LOGICAL_RESOURCES LR ON LR.LOGICAL_RESOURCE_ID = P1.LOGICAL_RESOURCE_ID
+     *  WHERE P1.PARAMETER_NAME_ID = ? AND LR.LOGICAL_ID IN (?, ?)
+     * </pre>
+     */
+    private SqlQueryData buildReferenceQuery(String joinResourceType, Integer parameterNameId, List<String> logicalIds) {
+        StringBuilder queryString = new StringBuilder();
+        queryString.append("SELECT P1.STR_VALUE FROM ").append(joinResourceType).append("_STR_VALUES P1 ");
+        queryString.append("JOIN ").append(joinResourceType)
+                .append("_LOGICAL_RESOURCES LR ON LR.LOGICAL_RESOURCE_ID = P1.LOGICAL_RESOURCE_ID ");
+        queryString.append("WHERE P1.PARAMETER_NAME_ID = ?").append(AND).append("LR.LOGICAL_ID IN ");
+        appendBindMarkers(queryString, logicalIds.size());
+
+        List<Object> bindVariables = new ArrayList<>();
+        bindVariables.add(parameterNameId);
+        bindVariables.addAll(logicalIds);
+        return new SqlQueryData(queryString.toString(), bindVariables);
+    }
+
+    /**
+     * Builds the query for the current versions of the passed resources:
+     *
+     * <pre>
+     * SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID
+     *   FROM Patient_RESOURCES R
+     *   JOIN Patient_LOGICAL_RESOURCES LR ON R.LOGICAL_RESOURCE_ID=LR.LOGICAL_RESOURCE_ID AND R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID
+     *  WHERE R.IS_DELETED <> 'Y' AND LR.LOGICAL_ID IN (?, ?)
+     * </pre>
+     */
+    private SqlQueryData buildTargetQuery(String targetType, List<String> logicalIds) {
+        StringBuilder queryString = new StringBuilder();
+        queryString.append(SELECT_ROOT);
+        appendFromClause(queryString, targetType);
+        queryString.append(WHERE_CLAUSE_ROOT).append(AND).append("LR.LOGICAL_ID IN ");
+        appendBindMarkers(queryString, logicalIds.size());
+        return new SqlQueryData(queryString.toString(), new ArrayList<>(logicalIds));
+    }
+
+    /**
+     * Builds the query for the current versions of the resources which reference any of the passed resources with
+     * any of the passed search parameters:
+     *
+     * <pre>
+     * SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID
+     *   FROM Observation_RESOURCES R
+     *   JOIN Observation_LOGICAL_RESOURCES LR ON R.LOGICAL_RESOURCE_ID=LR.LOGICAL_RESOURCE_ID AND R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID
+     *  WHERE R.IS_DELETED <> 'Y' AND LR.LOGICAL_RESOURCE_ID IN
+     *        (SELECT P1.LOGICAL_RESOURCE_ID FROM Observation_STR_VALUES P1
+     *          WHERE P1.PARAMETER_NAME_ID IN (?, ?) AND P1.STR_VALUE IN (?, ?))
+     * </pre>
+     */
+    private SqlQueryData buildRevIncludeQuery(String joinResourceType, Set<Integer> parameterNameIds, String targetType,
+            List<String> logicalIds) {
+        StringBuilder queryString = new StringBuilder();
+        queryString.append(SELECT_ROOT);
+        appendFromClause(queryString, joinResourceType);
+        queryString.append(WHERE_CLAUSE_ROOT).append(AND).append("LR.LOGICAL_RESOURCE_ID IN ");
+        queryString.append("(SELECT P1.LOGICAL_RESOURCE_ID FROM ").append(joinResourceType).append("_STR_VALUES P1 ");
+        queryString.append("WHERE P1.PARAMETER_NAME_ID IN ");
+        appendBindMarkers(queryString, parameterNameIds.size());
+        queryString.append(AND).append("P1.STR_VALUE IN ");
+        appendBindMarkers(queryString, logicalIds.size());
+        queryString.append(RIGHT_PAREN);
+
+        List<Object> bindVariables = new ArrayList<>(parameterNameIds);
+        for (String logicalId : logicalIds) {
+            bindVariables.add(targetType + "/" + logicalId);
+        }
+        return new SqlQueryData(queryString.toString(), bindVariables);
+    }
+
+    /**
+     * Builds the query for the current versions of the resources which reference any of the passed resources with
+     * any of the passed search parameters, through the resolved ids of the RESOURCE_REFS table:
+     *
+     * <pre>
+     * SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID
+     *   FROM Observation_RESOURCES R
+     *   JOIN Observation_LOGICAL_RESOURCES LR ON R.LOGICAL_RESOURCE_ID=LR.LOGICAL_RESOURCE_ID AND R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID
+     *  WHERE R.IS_DELETED <> 'Y' AND LR.LOGICAL_RESOURCE_ID IN
+     *        (SELECT RR.LOGICAL_RESOURCE_ID FROM Observation_RESOURCE_REFS RR
+     *           JOIN Patient_LOGICAL_RESOURCES TLR ON TLR.LOGICAL_RESOURCE_ID = RR.REF_LOGICAL_RESOURCE_ID
+     *          WHERE RR.PARAMETER_NAME_ID IN (?, ?) AND TLR.LOGICAL_ID IN (?, ?))
+     * </pre>
+     */
+    private SqlQueryData buildRevIncludeRefsQuery(String joinResourceType, Set<Integer> parameterNameIds, String targetType,
+            List<String> logicalIds) {
+        StringBuilder queryString = new StringBuilder();
+        queryString.append(SELECT_ROOT);
+        appendFromClause(queryString, joinResourceType);
+        queryString.append(WHERE_CLAUSE_ROOT).append(AND).append("LR.LOGICAL_RESOURCE_ID IN ");
+        queryString.append("(SELECT RR.LOGICAL_RESOURCE_ID FROM ").append(joinResourceType).append("_RESOURCE_REFS RR ");
+        queryString.append("JOIN ").append(targetType)
+                .append("_LOGICAL_RESOURCES TLR ON TLR.LOGICAL_RESOURCE_ID = RR.REF_LOGICAL_RESOURCE_ID ");
+        queryString.append("WHERE RR.PARAMETER_NAME_ID IN ");
+        appendBindMarkers(queryString, parameterNameIds.size());
+        queryString.append(AND).append("TLR.LOGICAL_ID IN ");
+        appendBindMarkers(queryString, logicalIds.size());
+        queryString.append(RIGHT_PAREN);
+
+        List<Object> bindVariables = new ArrayList<>(parameterNameIds);
+        bindVariables.addAll(logicalIds);
+        return new SqlQueryData(queryString.toString(), bindVariables);
+    }
+
+    private void appendFromClause(StringBuilder queryString, String resourceType) {
+        queryString.append("FROM ").append(resourceType).append("_RESOURCES R JOIN ").append(resourceType)
+                .append("_LOGICAL_RESOURCES LR ON R.LOGICAL_RESOURCE_ID=LR.LOGICAL_RESOURCE_ID AND R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID ");
+    }
+
+    private void appendBindMarkers(StringBuilder queryString, int count) {
+        queryString.append(LEFT_PAREN);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                queryString.append(COMMA);
+            }
+            queryString.append("?");
+        }
+        queryString.append(RIGHT_PAREN);
+    }
+
+    private void addNewlyIncluded(String resourceType, List<Resource> resources, Set<String> found, List<Resource> newlyIncluded) {
+        for (Resource resource : resources) {
+            if (found.add(resourceType + "/" + resource.getLogicalId())) {
+                resource.setResourceType(resourceType);
+                newlyIncluded.add(resource);
+            }
+        }
+    }
+
+    private static List<List<String>> partition(Collection<String> values) {
+        List<List<String>> partitions = new ArrayList<>();
+        List<String> partition = new ArrayList<>();
+        for (String value : values) {
+            partition.add(value);
+            if (partition.size() == MAX_IN_LIST_SIZE) {
+                partitions.add(partition);
+                partition = new ArrayList<>();
+            }
+        }
+        if (!partition.isEmpty()) {
+            partitions.add(partition);
+        }
+        return partitions;
+    }
+
+    /**
+     * Returns the integer id that corresponds to the passed search parameter name, or null if no resource has
+     * a value for the search parameter yet.
+     *
+     * @param searchParameterName
+     * @return Integer
+     * @throws FHIRPersistenceException
+     */
+    private Integer getParameterNameId(String searchParameterName) throws FHIRPersistenceException {
+        Integer parameterNameId = ParameterNamesCache.getParameterNameId(searchParameterName);
+        if (parameterNameId == null) {
+            parameterNameId = this.parameterDao.readParameterNameId(searchParameterName);
+            if (parameterNameId != null) {
+                this.parameterDao.addParameterNamesCacheCandidate(searchParameterName, parameterNameId);
+            }
+        }
+        return parameterNameId;
+    }
+}
@@ -52,6 +52,7 @@ import com.ibm.fhir.persistence.jdbc.dto.ExtractedParameterValue;
 import com.ibm.fhir.persistence.jdbc.dto.LocationParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.NumberParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.QuantityParmVal;
+import com.ibm.fhir.persistence.jdbc.dto.ReferenceParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.StringParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.TokenParmVal;
 import com.ibm.fhir.persistence.jdbc.util.type.NumberParmBehaviorUtil;
@@ -587,7 +588,7 @@ public class JDBCParameterBuildingVisitor extends DefaultVisitor {
             throw invalidComboException(searchParamType, reference);
         }
         if (reference.getReference() != null) {
-            StringParmVal p = new StringParmVal();
+            ReferenceParmVal p = new ReferenceParmVal();
             p.setName(searchParamCode);
             p.setValueString(reference.getReference().getValue());
             result.add(p);
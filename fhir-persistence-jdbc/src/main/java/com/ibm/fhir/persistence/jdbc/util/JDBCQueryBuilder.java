@@ -10,6 +10,8 @@ import static com.ibm.fhir.persistence.jdbc.JDBCConstants.AND;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.BIND_VAR;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.CODE_SYSTEM_ID;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.COMMA;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.COMPARTMENT_LOGICAL_ID;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.COMPARTMENT_TYPE_ID;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.DOT;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.EQ;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.ESCAPE_EXPR;
@@ -28,6 +30,7 @@ import static com.ibm.fhir.persistence.jdbc.JDBCConstants.ON;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.OR;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.PARAMETER_TABLE_ALIAS;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.PERCENT_WILDCARD;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.REF_LOGICAL_RESOURCE_ID;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.RIGHT_PAREN;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.STR_VALUE;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.STR_VALUE_LCASE;
@@ -40,9 +43,11 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -112,6 +117,13 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
     // Hints to use for certain queries
     private final QueryHints queryHints;
 
+    // The search context and aggregator of the last query built. A builder is created per search, which builds
+    // the count query and then the page query from the same search context; keeping the processed query segments
+    // means the search parameters are processed (and their ids read) only once per search.
+    private Class<?> lastResourceType;
+    private FHIRSearchContext lastSearchContext;
+    private QuerySegmentAggregator lastHelper;
+
     public JDBCQueryBuilder(ParameterDAO parameterDao, ResourceDAO resourceDao, QueryHints queryHints) {
         this.parameterDao = parameterDao;
         this.resourceDao  = resourceDao;
@@ -183,6 +195,20 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         log.entering(CLASSNAME, METHODNAME,
                 new Object[] { resourceType.getSimpleName(), searchContext.getSearchParameters() });
 
+        int pageSize = searchContext.getPageSize();
+        int offset = (searchContext.getPageNumber() - 1) * pageSize;
+
+        // Keyset aggregators hold the keyset of the previous page, so they are never reused.
+        if (searchContext == this.lastSearchContext && resourceType.equals(this.lastResourceType)
+                && !searchContext.isKeysetPaging()) {
+            if (this.lastHelper != null) {
+                // The page number may have been corrected after the count
+                this.lastHelper.setPaging(offset, pageSize);
+            }
+            log.exiting(CLASSNAME, METHODNAME);
+            return this.lastHelper;
+        }
+
         SqlQueryData querySegment;
         int nearParameterIndex;
         List<QueryParameter> searchParameters = searchContext.getSearchParameters();
@@ -203,8 +229,6 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
 
         });
 
-        int pageSize = searchContext.getPageSize();
-        int offset = (searchContext.getPageNumber() - 1) * pageSize;
         QuerySegmentAggregator helper;
         boolean isValidQuery = true;
 
@@ -239,6 +263,9 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         if (!isValidQuery) {
             helper = null;
         }
+        this.lastResourceType = resourceType;
+        this.lastSearchContext = searchContext;
+        this.lastHelper = helper;
         log.exiting(CLASSNAME, METHODNAME);
         return helper;
 
@@ -344,8 +371,10 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
                     databaseQueryParm = this.processStringParm(queryParm, tableAlias);
                     break;
                 case REFERENCE:
-                    if (queryParm.isChained()) {
-                        databaseQueryParm = this.processChainedReferenceParm(queryParm);
+                    if (queryParm.isReverseChained()) {
+                        databaseQueryParm = this.processReverseChainedParm(resourceType, queryParm);
+                    } else if (queryParm.isChained()) {
+                        databaseQueryParm = this.processChainedReferenceParm(queryParm, true);
                     } else if (queryParm.isInclusionCriteria()) {
                         databaseQueryParm = this.processInclusionCriteria(queryParm);
                     } else {
@@ -586,6 +615,8 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
      *                     CP2.PARAMETER_NAME_ID = 5 AND CP2.STR_VALUE = 'Monella')))
      * TMP0 ON TMP0.LOGICAL_RESOURCE_ID = R.LOGICAL_RESOURCE_ID;
      * </pre>
+     * When fhirServer/search/useResourceRefs is enabled, the links of the chain join the RESOURCE_REFS tables
+     * instead, and select CLRx.LOGICAL_RESOURCE_ID to match the REF_LOGICAL_RESOURCE_ID of the referencing resources.
      *
      * @see https://www.hl7.org/fhir/search.html#reference (section 2.1.1.4.13)
      * @param queryParm
@@ -596,6 +627,20 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
      */
     @Override
     protected SqlQueryData processChainedReferenceParm(QueryParameter queryParm) throws Exception {
+        return processChainedReferenceParm(queryParm, true);
+    }
+
+    /**
+     * @param queryParm
+     *                  - A Parameter representing a chained query.
+     * @param chainedParm
+     *                  - true if the px placeholder table is the one of a chained parameter, which is the RESOURCE_REFS
+     *                  table of the resource type when fhirServer/search/useResourceRefs is enabled; false if it is
+     *                  the STR_VALUES table, as for chained inclusion criteria.
+     * @return SqlQueryData - The query segment for a chained parameter reference search.
+     * @throws Exception
+     */
+    private SqlQueryData processChainedReferenceParm(QueryParameter queryParm, boolean chainedParm) throws Exception {
         final String METHODNAME = "processChainedReferenceParm";
         log.entering(CLASSNAME, METHODNAME, queryParm.toString());
 
@@ -611,11 +656,16 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         StringBuilder whereClauseSegment = new StringBuilder();
         List<Object> bindVariables = new ArrayList<>();
         SqlQueryData queryData;
+        boolean useResourceRefs = QuerySegmentAggregator.isResourceRefsSearch();
+        boolean refsTable = chainedParm && useResourceRefs;
 
         currentParm = queryParm;
         while (currentParm != null) {
             QueryParameter nextParameter = currentParm.getNextParameter();
             if (nextParameter != null) {
+                // The links which join a RESOURCE_REFS table select the LOGICAL_RESOURCE_ID of the referenced resources
+                boolean selectRefIds = refsTable || useResourceRefs && refParmIndex > 0;
+
                 if (refParmIndex == 0) {
                     // Must build this first piece using px placeholder table alias, which will be replaced with a
                     // generated value in the buildQuery() method.
@@ -623,10 +673,10 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
                     this.populateNameIdSubSegment(whereClauseSegment, currentParm.getCode(), PARAMETER_TABLE_ALIAS);
                     whereClauseSegment.append(AND);
                     whereClauseSegment.append(LEFT_PAREN);
-                    whereClauseSegment.append(PARAMETER_TABLE_ALIAS + DOT).append(STR_VALUE).append(IN);
+                    whereClauseSegment.append(PARAMETER_TABLE_ALIAS + DOT).append(refsTable ? REF_LOGICAL_RESOURCE_ID : STR_VALUE).append(IN);
                 } else {
                     // Build this piece: CP1.PARAMETER_NAME_ID = x AND CP1.STR_VALUE IN
-                    appendMidChainParm(whereClauseSegment, currentParm, chainedParmVar);
+                    appendMidChainParm(whereClauseSegment, currentParm, chainedParmVar, useResourceRefs);
                 }
 
                 refParmIndex++;
@@ -642,14 +692,14 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
                 // is halted.
                 if (currentParm.getModifierResourceTypeName().equals("*")) {
                     this.processWildcardChainedRefParm(currentParm, chainedResourceVar, chainedLogicalResourceVar,
-                            chainedParmVar, whereClauseSegment, bindVariables);
+                            chainedParmVar, selectRefIds, whereClauseSegment, bindVariables);
                     break;
                 }
                 resourceTypeName = currentParm.getModifierResourceTypeName();
                 // Build this piece: (SELECT 'resource-type-name' || '/' || CLRx.LOGICAL_ID ...
                 whereClauseSegment.append(LEFT_PAREN);
                 appendInnerSelect(whereClauseSegment, currentParm, resourceTypeName,
-                        chainedResourceVar, chainedLogicalResourceVar, chainedParmVar);
+                        chainedResourceVar, chainedLogicalResourceVar, chainedParmVar, selectRefIds);
             } else {
                 // This logic processes the LAST parameter in the chain.
                 // Build this piece: CPx.PARAMETER_NAME_ID = x AND CPx.STR_VALUE = ?
@@ -688,6 +738,83 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         return queryData;
     }
 
+    /**
+     * Builds the query segment of a reverse chained (_has) parameter, which matches the resources referenced by
+     * another resource type through a reference parameter, where the referencing resources match the last parameter
+     * of the chain. The segment is an EXISTS subquery over the reference values of the referencing type, so a
+     * resource referenced by many matching resources is still selected only once. The :not modifier on the
+     * reverse chained parameter turns it into a NOT EXISTS subquery, which selects the resources that no matching
+     * resource refers to.
+     *
+     * <pre>
+     * EXISTS (SELECT 1 FROM Observation_STR_VALUES HR
+     *          WHERE (HR.PARAMETER_NAME_ID=x AND HR.STR_VALUE = 'Patient/' || pX.LOGICAL_ID
+     *            AND HR.LOGICAL_RESOURCE_ID IN (SELECT CLR1.LOGICAL_RESOURCE_ID
+     *                FROM Observation_RESOURCES CR1, Observation_LOGICAL_RESOURCES CLR1, Observation_TOKEN_VALUES CP1
+     *               WHERE CR1.RESOURCE_ID = CLR1.CURRENT_RESOURCE_ID AND CR1.IS_DELETED <> 'Y'
+     *                 AND CP1.LOGICAL_RESOURCE_ID = CR1.LOGICAL_RESOURCE_ID AND CP1.PARAMETER_NAME_ID=y AND ...)))
+     * </pre>
+     *
+     * When fhirServer/search/useResourceRefs is enabled, the subquery reads Observation_RESOURCE_REFS instead and
+     * matches HR.REF_LOGICAL_RESOURCE_ID = pX.LOGICAL_RESOURCE_ID.
+     *
+     * @param resourceType
+     *                  - The type of the resources being searched.
+     * @param queryParm
+     *                  - A Parameter representing a reverse chained query.
+     * @return SqlQueryData - The query segment for a reverse chained parameter search.
+     * @throws Exception
+     */
+    private SqlQueryData processReverseChainedParm(Class<?> resourceType, QueryParameter queryParm) throws Exception {
+        final String METHODNAME = "processReverseChainedParm";
+        log.entering(CLASSNAME, METHODNAME, queryParm.toString());
+
+        final String refsTableAlias = "HR";
+        final String chainedParmVar = "CP1";
+        final boolean useResourceRefs = QuerySegmentAggregator.isResourceRefsSearch();
+        String referencingType = queryParm.getModifierResourceTypeName();
+        StringBuilder whereClauseSegment = new StringBuilder();
+
+        // Build this piece: [NOT] EXISTS (SELECT 1 FROM Observation_STR_VALUES HR WHERE
+        if (Modifier.NOT.equals(queryParm.getModifier())) {
+            whereClauseSegment.append(NOT);
+        }
+        whereClauseSegment.append(EXISTS).append(LEFT_PAREN)
+                .append("SELECT 1").append(FROM).append(referencingType)
+                .append(useResourceRefs ? "_RESOURCE_REFS " : "_STR_VALUES ").append(refsTableAlias)
+                .append(WHERE);
+        // HR.PARAMETER_NAME_ID=x AND HR.STR_VALUE = 'Patient/' || pX.LOGICAL_ID AND HR.LOGICAL_RESOURCE_ID IN
+        this.populateNameIdSubSegment(whereClauseSegment, queryParm.getCode(), refsTableAlias);
+        whereClauseSegment.append(AND).append(refsTableAlias).append(DOT);
+        if (useResourceRefs) {
+            whereClauseSegment.append(REF_LOGICAL_RESOURCE_ID).append(" = ")
+                    .append(PARAMETER_TABLE_ALIAS).append(DOT).append("LOGICAL_RESOURCE_ID");
+        } else {
+            whereClauseSegment.append(STR_VALUE).append(" = ")
+                    .append("'").append(resourceType.getSimpleName()).append("/'").append(" || ")
+                    .append(PARAMETER_TABLE_ALIAS).append(DOT).append("LOGICAL_ID");
+        }
+        whereClauseSegment.append(AND).append(refsTableAlias).append(DOT).append("LOGICAL_RESOURCE_ID").append(IN);
+
+        // (SELECT CLR1.LOGICAL_RESOURCE_ID FROM ... WHERE ... <last parameter of the chain>)
+        whereClauseSegment.append(LEFT_PAREN);
+        appendInnerSelect(whereClauseSegment, queryParm, referencingType, "CR1", "CLR1", chainedParmVar, true);
+
+        QueryParameter lastParm = queryParm.getNextParameter();
+        SqlQueryData sqlQueryData;
+        if (!"_id".equals(lastParm.getCode())) {
+            sqlQueryData = buildQueryParm(ModelSupport.getResourceType(referencingType), lastParm, chainedParmVar);
+        } else {
+            sqlQueryData = buildChainedIdClause(lastParm, chainedParmVar);
+        }
+        whereClauseSegment.append(sqlQueryData.getQueryString())
+                .append(RIGHT_PAREN).append(RIGHT_PAREN).append(RIGHT_PAREN);
+
+        SqlQueryData queryData = new SqlQueryData(whereClauseSegment.toString(), sqlQueryData.getBindVariables());
+        log.exiting(CLASSNAME, METHODNAME, whereClauseSegment.toString());
+        return queryData;
+    }
+
     /*
      * Builds the specific handling for exact matches on _id.
      * The procedure here is SIMILAR to that of QuerySegmentAggregator.processFromClauseForId
@@ -717,8 +844,8 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         return new SqlQueryData(whereClauseSegment.toString(), bindVariables);
     }
 
-    private void appendMidChainParm(StringBuilder whereClauseSegment, QueryParameter currentParm, String chainedParmVar)
-            throws FHIRPersistenceDBConnectException, FHIRPersistenceDataAccessException, FHIRPersistenceException {
+    private void appendMidChainParm(StringBuilder whereClauseSegment, QueryParameter currentParm, String chainedParmVar,
+            boolean useResourceRefs) throws FHIRPersistenceDBConnectException, FHIRPersistenceDataAccessException, FHIRPersistenceException {
         Integer parameterNameId = ParameterNamesCache.getParameterNameId(currentParm.getCode());
         if (parameterNameId == null) {
             parameterNameId = this.parameterDao.readParameterNameId(currentParm.getCode());
@@ -728,19 +855,25 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         }
         whereClauseSegment.append(chainedParmVar).append(DOT).append("PARAMETER_NAME_ID").append(EQ)
                 .append(parameterNameId)
-                .append(AND).append(chainedParmVar).append(DOT).append(STR_VALUE).append(IN);
+                .append(AND).append(chainedParmVar).append(DOT).append(useResourceRefs ? REF_LOGICAL_RESOURCE_ID : STR_VALUE).append(IN);
     }
 
     private void appendInnerSelect(StringBuilder whereClauseSegment, QueryParameter currentParm,
-            String resourceTypeName, String chainedResourceVar, String chainedLogicalResourceVar, String chainedParmVar) {
+            String resourceTypeName, String chainedResourceVar, String chainedLogicalResourceVar, String chainedParmVar,
+            boolean selectRefIds) {
         String chainedResourceTableAlias = chainedResourceVar + ".";
         String chainedLogicalResourceTableAlias = chainedLogicalResourceVar + ".";
         String chainedParmTableAlias = chainedParmVar + ".";
 
-        // Build this piece: SELECT 'resource-type-name' || '/' || CLRx.LOGICAL_ID
-        whereClauseSegment.append("SELECT ").append("'" + resourceTypeName
-                + "'").append(" || ").append("'/'").append(" || ").append(chainedLogicalResourceTableAlias)
-                .append("LOGICAL_ID");
+        if (selectRefIds) {
+            // Build this piece: SELECT CLRx.LOGICAL_RESOURCE_ID
+            whereClauseSegment.append("SELECT ").append(chainedLogicalResourceTableAlias).append("LOGICAL_RESOURCE_ID");
+        } else {
+            // Build this piece: SELECT 'resource-type-name' || '/' || CLRx.LOGICAL_ID
+            whereClauseSegment.append("SELECT ").append("'" + resourceTypeName
+                    + "'").append(" || ").append("'/'").append(" || ").append(chainedLogicalResourceTableAlias)
+                    .append("LOGICAL_ID");
+        }
 
         QueryParameter nextParameter = currentParm.getNextParameter();
 
@@ -798,7 +931,7 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
      * @throws Exception
      */
     private void processWildcardChainedRefParm(QueryParameter currentParm, String chainedResourceVar,
-            String chainedLogicalResourceVar, String chainedParmVar,
+            String chainedLogicalResourceVar, String chainedParmVar, boolean selectRefIds,
             StringBuilder whereClauseSegment, List<Object> bindVariables) throws Exception {
         final String METHODNAME = "processWildcardChainedRefParm";
         log.entering(CLASSNAME, METHODNAME, currentParm.toString());
@@ -831,7 +964,7 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
             }
 
             appendInnerSelect(whereClauseSegment, currentParm, resourceTypeName, chainedResourceVar,
-                    chainedLogicalResourceVar, chainedParmVar);
+                    chainedLogicalResourceVar, chainedParmVar, selectRefIds);
 
             // This logic processes the LAST parameter in the chain.
             // Build this piece: CPx.PARAMETER_NAME_ID = x AND CPx.STR_VALUE = ?
@@ -918,10 +1051,15 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         final String METHODNAME = "processInclusionCriteria";
         log.entering(CLASSNAME, METHODNAME, queryParm.toString());
 
+        if (QuerySegmentAggregator.isCompartmentIndexSearch(queryParm)) {
+            SqlQueryData queryData = processCompartmentMembership(queryParm);
+            log.exiting(CLASSNAME, METHODNAME, queryData.getQueryString());
+            return queryData;
+        }
+
         StringBuilder whereClauseSegment = new StringBuilder();
         String operator = EQ;
         QueryParameter currentParm;
-        String currentParmValue;
         List<Object> bindVariables = new ArrayList<>();
         SqlQueryData queryData;
         SqlQueryData chainedIncQueryData;
@@ -940,16 +1078,25 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
                 bindVariables.addAll(chainedIncQueryData.getBindVariables());
                 whereClauseSegment.append(RIGHT_PAREN);
             } else {
-                currentParmValue = currentParm.getValues().get(0).getValueString();
                 // Build this piece:
                 // (pX.PARAMETER_NAME_ID = x AND
                 this.populateNameIdSubSegment(whereClauseSegment, currentParm.getCode(), PARAMETER_TABLE_ALIAS);
                 whereClauseSegment.append(AND);
-                // Build this piece: pX.str_value = search-attribute-value
-                whereClauseSegment.append(PARAMETER_TABLE_ALIAS + DOT).append(STR_VALUE).append(operator)
-                        .append(BIND_VAR);
+                whereClauseSegment.append(PARAMETER_TABLE_ALIAS + DOT).append(STR_VALUE);
+                if (currentParm.getValues().size() == 1) {
+                    // Build this piece: pX.str_value = search-attribute-value
+                    whereClauseSegment.append(operator).append(BIND_VAR);
+                } else {
+                    // A search over several compartments, e.g, a page of patients of a bulk export.
+                    // Build this piece: pX.str_value IN (search-attribute-value, ...)
+                    whereClauseSegment.append(IN).append(LEFT_PAREN);
+                    whereClauseSegment.append(String.join(COMMA, Collections.nCopies(currentParm.getValues().size(), BIND_VAR)));
+                    whereClauseSegment.append(RIGHT_PAREN);
+                }
                 whereClauseSegment.append(RIGHT_PAREN);
-                bindVariables.add(currentParmValue);
+                for (QueryParameterValue value : currentParm.getValues()) {
+                    bindVariables.add(value.getValueString());
+                }
             }
 
             currentParm = currentParm.getNextParameter();
@@ -964,6 +1111,59 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         return queryData;
     }
 
+    /**
+     * Builds the segment of a compartment search which is served by the compartment membership table. Every
+     * inclusion criterion shares the same values, so a single match on the compartment replaces the OR of the
+     * criteria:
+     *
+     * <pre>
+     *    (pX.COMPARTMENT_TYPE_ID=1 AND pX.COMPARTMENT_LOGICAL_ID = ?)
+     * </pre>
+     *
+     * @param queryParm the root parameter of the inclusion criteria chain
+     * @return
+     * @throws Exception
+     */
+    private SqlQueryData processCompartmentMembership(QueryParameter queryParm) throws Exception {
+        final String METHODNAME = "processCompartmentMembership";
+        log.entering(CLASSNAME, METHODNAME, queryParm.toString());
+
+        if (queryParm.getValues() == null || queryParm.getValues().isEmpty()) {
+            throw new FHIRPersistenceException("No parameter values found when processing the compartment membership.");
+        }
+
+        // The values are [compartment]/[id] references
+        String compartmentName = null;
+        List<Object> bindVariables = new ArrayList<>();
+        for (QueryParameterValue value : queryParm.getValues()) {
+            String[] parts = value.getValueString().split("/", 2);
+            compartmentName = parts[0];
+            bindVariables.add(parts.length > 1 ? parts[1] : "");
+        }
+
+        Integer compartmentTypeId = ResourceTypesCache.getResourceTypeId(compartmentName);
+        if (compartmentTypeId == null) {
+            compartmentTypeId = resourceDao.readAllResourceTypeNames().get(compartmentName);
+        }
+
+        StringBuilder whereClauseSegment = new StringBuilder();
+        whereClauseSegment.append(LEFT_PAREN)
+                .append(PARAMETER_TABLE_ALIAS + DOT).append(COMPARTMENT_TYPE_ID).append("=").append(nullCheck(compartmentTypeId))
+                .append(AND)
+                .append(PARAMETER_TABLE_ALIAS + DOT).append(COMPARTMENT_LOGICAL_ID);
+        if (bindVariables.size() == 1) {
+            whereClauseSegment.append(EQ).append(BIND_VAR);
+        } else {
+            whereClauseSegment.append(IN).append(LEFT_PAREN)
+                    .append(String.join(COMMA, Collections.nCopies(bindVariables.size(), BIND_VAR)))
+                    .append(RIGHT_PAREN);
+        }
+        whereClauseSegment.append(RIGHT_PAREN);
+
+        log.exiting(CLASSNAME, METHODNAME, whereClauseSegment.toString());
+        return new SqlQueryData(whereClauseSegment.toString(), bindVariables);
+    }
+
     @Override
     protected SqlQueryData processDateParm(Class<?> resourceType, QueryParameter queryParm) throws Exception {
         return processDateParm(resourceType, queryParm, PARAMETER_TABLE_ALIAS);
@@ -998,12 +1198,17 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         final String METHODNAME = "processTokenParm";
         log.entering(CLASSNAME, METHODNAME, queryParm.toString());
 
+        if (TokenModifierUtil.isExpandedModifier(queryParm.getModifier())) {
+            SqlQueryData queryData = this.processExpandedTokenParm(queryParm, tableAlias);
+            log.exiting(CLASSNAME, METHODNAME);
+            return queryData;
+        }
+
         StringBuilder whereClauseSegment = new StringBuilder();
         String operator = this.getOperator(queryParm, EQ);
         boolean parmValueProcessed = false;
         SqlQueryData queryData;
         List<Object> bindVariables = new ArrayList<>();
-        Integer codeSystemId;
 
         String code = queryParm.getCode();
         if (!QuerySegmentAggregator.ID.equals(code)) {
@@ -1032,15 +1237,8 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
                     }
                     whereClauseSegment.append(tableAlias + DOT).append(CODE_SYSTEM_ID).append(operator)
                             .append(BIND_VAR);
-                    codeSystemId = CodeSystemsCache.getCodeSystemId(value.getValueSystem());
-                    if (codeSystemId == null) {
-                        codeSystemId = this.parameterDao.readCodeSystemId(value.getValueSystem());
-                        if (codeSystemId != null) {
-                            this.parameterDao.addCodeSystemsCacheCandidate(value.getValueSystem(), codeSystemId);
-                        }
-                    }
                     // must be able to handle nulls
-                    bindVariables.add(codeSystemId);
+                    bindVariables.add(this.getCodeSystemId(value.getValueSystem()));
                 }
                 whereClauseSegment.append(RIGHT_PAREN);
                 parmValueProcessed = true;
@@ -1054,6 +1252,91 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         return queryData;
     }
 
+    /**
+     * Creates a query segment for a token parameter with the :in, :not-in, :below or :above modifier, which matches
+     * the codes of the expansion of the parameter values, by code system:
+     * <pre>
+     * (P1.PARAMETER_NAME_ID = x AND ((P1.CODE_SYSTEM_ID = ? AND P1.TOKEN_VALUE IN (?, ?)) OR
+     *     (P1.CODE_SYSTEM_ID = ? AND P1.TOKEN_VALUE = ?)))
+     * </pre>
+     * The segment of :not-in matches the codes of the value set as well; the QuerySegmentAggregator negates it.
+     *
+     * @param queryParm  - The query parameter
+     * @param tableAlias - An alias for the table to query
+     * @return SqlQueryData - An object containing query segment
+     * @throws FHIRPersistenceException if the values can't be expanded
+     */
+    private SqlQueryData processExpandedTokenParm(QueryParameter queryParm, String tableAlias)
+            throws FHIRPersistenceException {
+        final String METHODNAME = "processExpandedTokenParm";
+        log.entering(CLASSNAME, METHODNAME, queryParm.toString());
+
+        StringBuilder whereClauseSegment = new StringBuilder();
+        List<Object> bindVariables = new ArrayList<>();
+
+        // Build this piece of the segment:
+        // (P1.PARAMETER_NAME_ID = x AND
+        this.populateNameIdSubSegment(whereClauseSegment, queryParm.getCode(), tableAlias);
+
+        whereClauseSegment.append(AND).append(LEFT_PAREN);
+        boolean systemProcessed = false;
+        Map<String, Set<String>> expansion = TokenModifierUtil.expand(queryParm.getModifier(), queryParm.getValues());
+        for (Map.Entry<String, Set<String>> entry : expansion.entrySet()) {
+            Integer codeSystemId = this.getCodeSystemId(entry.getKey());
+            if (codeSystemId == null) {
+                // No resource has a code of this code system.
+                continue;
+            }
+
+            // If multiple code systems are present, we need to OR them together.
+            if (systemProcessed) {
+                whereClauseSegment.append(OR);
+            }
+            whereClauseSegment.append(LEFT_PAREN);
+            whereClauseSegment.append(tableAlias + DOT).append(CODE_SYSTEM_ID).append(EQ).append(BIND_VAR);
+            bindVariables.add(codeSystemId);
+            whereClauseSegment.append(AND).append(tableAlias + DOT).append(TOKEN_VALUE);
+            Set<String> codes = entry.getValue();
+            if (codes.size() == 1) {
+                whereClauseSegment.append(EQ).append(BIND_VAR);
+            } else {
+                whereClauseSegment.append(IN).append(LEFT_PAREN)
+                        .append(String.join(COMMA, Collections.nCopies(codes.size(), BIND_VAR)))
+                        .append(RIGHT_PAREN);
+            }
+            for (String code : codes) {
+                bindVariables.add(SqlParameterEncoder.encode(code));
+            }
+            whereClauseSegment.append(RIGHT_PAREN);
+            systemProcessed = true;
+        }
+        if (!systemProcessed) {
+            // The expansion is empty, or none of its codes is stored, so nothing matches.
+            whereClauseSegment.append("1 = 0");
+        }
+        whereClauseSegment.append(RIGHT_PAREN).append(RIGHT_PAREN);
+
+        SqlQueryData queryData = new SqlQueryData(whereClauseSegment.toString(), bindVariables);
+        log.exiting(CLASSNAME, METHODNAME);
+        return queryData;
+    }
+
+    /**
+     * @param system - A code system name
+     * @return the id of the code system, or null if the code system isn't stored
+     * @throws FHIRPersistenceException
+     */
+    private Integer getCodeSystemId(String system) throws FHIRPersistenceException {
+        Integer codeSystemId = CodeSystemsCache.getCodeSystemId(system);
+        if (codeSystemId == null) {
+            codeSystemId = this.parameterDao.readCodeSystemId(system);
+            if (codeSystemId != null) {
+                this.parameterDao.addCodeSystemsCacheCandidate(system, codeSystemId);
+            }
+        }
+        return codeSystemId;
+    }
+
     @Override
     protected SqlQueryData processNumberParm(Class<?> resourceType, QueryParameter queryParm)
             throws FHIRPersistenceException {
@@ -1279,7 +1562,7 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         // Transform the passed query parm into a chained parameter representation.
         rootParameter = SearchUtil.parseChainedInclusionCriteria(queryParm);
         // Call method to process the Parameter built by this method as a chained parameter.
-        queryData     = this.processChainedReferenceParm(rootParameter);
+        queryData     = this.processChainedReferenceParm(rootParameter, false);
 
         log.exiting(CLASSNAME, METHODNAME);
         return queryData;
@@ -0,0 +1,140 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.FROM;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.JOIN;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.LEFT_PAREN;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.ON;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.RIGHT_PAREN;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.persistence.exception.FHIRPersistenceNotSupportedException;
+import com.ibm.fhir.persistence.jdbc.connection.QueryHints;
+import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
+import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDAO;
+
+/**
+ * This class assists the JDBCQueryBuilder. It extends the
+ * QuerySegmentAggregator to build a FHIR Resource query that pages
+ * through the results by (LAST_UPDATED, RESOURCE_ID) keyset instead of
+ * by offset. Each page starts immediately after the keyset of the last
+ * resource of the previous page, so the cost of reading a page does not
+ * grow with the number of pages already read.
+ */
+public class KeysetQuerySegmentAggregator extends QuerySegmentAggregator {
+    private static final String CLASSNAME = KeysetQuerySegmentAggregator.class.getName();
+    private static final Logger log = java.util.logging.Logger.getLogger(CLASSNAME);
+
+    public static final String KEYSET_CLAUSE =
+            " AND (R.LAST_UPDATED > ? OR (R.LAST_UPDATED = ? AND R.RESOURCE_ID > ?))";
+    public static final String KEYSET_ORDERING = " ORDER BY R.LAST_UPDATED ASC, R.RESOURCE_ID ASC ";
+
+    private final Instant lastUpdated;
+    private final Long resourceId;
+
+    /**
+     * Constructs a new KeysetQuerySegmentAggregator
+     *
+     * @param resourceType - The type of FHIR Resource to be searched for.
+     * @param pageSize     - The max number of requested search results.
+     * @param lastUpdated  - The lastUpdated value of the last resource of the previous page, or null for the first page.
+     * @param resourceId   - The resource id of the last resource of the previous page, or null for the first page.
+     */
+    protected KeysetQuerySegmentAggregator(Class<?> resourceType, int pageSize, ParameterDAO parameterDao,
+            ResourceDAO resourceDao, Instant lastUpdated, Long resourceId, QueryHints queryHints) {
+        super(resourceType, 0, pageSize, parameterDao, resourceDao, queryHints);
+        this.lastUpdated = lastUpdated;
+        this.resourceId = resourceId;
+    }
+
+    /**
+     * Builds a complete SQL Query based upon the encapsulated query segments and
+     * bind variables. When there are no query segments, the resources table is
+     * filtered directly:
+     *
+     * <pre>
+     *   SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID
+     *     FROM Observation_LOGICAL_RESOURCES LR
+     *     JOIN Observation_RESOURCES R
+     *       ON R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID
+     *      AND R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID
+     *      AND R.IS_DELETED <> 'Y'
+     *      AND (R.LAST_UPDATED > ? OR (R.LAST_UPDATED = ? AND R.RESOURCE_ID > ?))
+     * ORDER BY R.LAST_UPDATED ASC, R.RESOURCE_ID ASC
+     *   OFFSET 0 ROWS FETCH NEXT 1000 ROWS ONLY
+     * </pre>
+     *
+     * Otherwise, the distinct set of matching logical resources is computed first,
+     * as in {@link QuerySegmentAggregator#buildQuery()}, and the keyset predicate
+     * is applied to the join with the resources table.
+     * The keyset predicate is omitted for the first page.
+     *
+     * @return SqlQueryData - contains the complete SQL query string and any
+     *         associated bind variables.
+     * @throws Exception
+     */
+    @Override
+    protected SqlQueryData buildQuery() throws Exception {
+        final String METHODNAME = "buildQuery";
+        log.entering(CLASSNAME, METHODNAME);
+
+        if (this.isSystemLevelSearch()) {
+            throw new FHIRPersistenceNotSupportedException("Keyset paging is not supported for system-level search");
+        }
+
+        final String simpleName = resourceType.getSimpleName();
+        StringBuilder queryString = new StringBuilder();
+        queryString.append(NEW_SELECT_ROOT);
+
+        if (this.querySegments.isEmpty()) {
+            buildFromClause(queryString, simpleName);
+        } else {
+            queryString.append(FROM);
+            queryString.append(simpleName.toUpperCase() + "_RESOURCES R");
+            queryString.append(JOIN).append(LEFT_PAREN);
+            queryString.append(SELECT_DISTINCT_ROOT);
+            buildFromClause(queryString, simpleName);
+            buildWhereClause(queryString, null);
+            queryString.append(RIGHT_PAREN).append(" AS LR ");
+            queryString.append(ON);
+            queryString.append("     R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID ");
+            queryString.append(" AND R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID ");
+            queryString.append(" AND R.IS_DELETED <> 'Y'");
+        }
+
+        // An important step here is to add _id, _lastUpdated, and then values table bind variables
+        List<Object> allBindVariables = new ArrayList<>();
+        allBindVariables.addAll(idsObjects);
+        allBindVariables.addAll(lastUpdatedObjects);
+        for (SqlQueryData querySegment : this.querySegments) {
+            allBindVariables.addAll(querySegment.getBindVariables());
+        }
+
+        // The keyset predicate comes last, so its bind variables come last
+        if (lastUpdated != null && resourceId != null) {
+            Timestamp ts = Timestamp.from(lastUpdated);
+            queryString.append(KEYSET_CLAUSE);
+            allBindVariables.add(ts);
+            allBindVariables.add(ts);
+            allBindVariables.add(resourceId);
+        }
+
+        queryString.append(KEYSET_ORDERING);
+        this.addPaginationClauses(queryString);
+        addOptimizerHint(queryString);
+
+        SqlQueryData queryData = new SqlQueryData(queryString.toString(), allBindVariables);
+        log.exiting(CLASSNAME, METHODNAME, queryData);
+        return queryData;
+    }
+}
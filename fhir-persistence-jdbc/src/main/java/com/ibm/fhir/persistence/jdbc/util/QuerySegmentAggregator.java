@@ -6,15 +6,19 @@
 
 package com.ibm.fhir.persistence.jdbc.util;
 
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.AND;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.COMBINED_RESULTS;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.DEFAULT_ORDERING;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.EXISTS;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.FROM;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.JOIN;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.LEFT_PAREN;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.NOT;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.ON;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.PARAMETER_TABLE_ALIAS;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.RIGHT_PAREN;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.UNION;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.WHERE;
 import static com.ibm.fhir.persistence.jdbc.util.type.LastUpdatedParmBehaviorUtil.LAST_UPDATED;
 
 import java.util.ArrayList;
@@ -25,6 +29,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
 
+import com.ibm.fhir.config.FHIRConfigHelper;
+import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.database.utils.common.DataDefinitionUtil;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.persistence.jdbc.JDBCConstants;
@@ -121,6 +127,17 @@ public class QuerySegmentAggregator {
         this.resourceTypes = resourceTypes;
     }
 
+    /**
+     * Moves the aggregator to another page of the same search.
+     *
+     * @param offset   - The beginning index of the first search result.
+     * @param pageSize - The max number of requested search results.
+     */
+    protected void setPaging(int offset, int pageSize) {
+        this.offset   = offset;
+        this.pageSize = pageSize;
+    }
+
     /**
      * Adds a query segment, which is a where clause segment corresponding to the
      * passed query Parameter and its encapsulated search values.
@@ -553,6 +570,27 @@ public class QuerySegmentAggregator {
                 if (Modifier.MISSING.equals(param.getModifier())) {
                     whereClauseSegment = querySegment.getQueryString().replaceAll(PARAMETER_TABLE_ALIAS + "\\.", "");
                     whereClause.append(whereClauseSegment);
+                } else if (Modifier.NOT_IN.equals(param.getModifier())) {
+                    // Anti-join the parameter table, so resources without any code of the value set match
+                    //   JOIN Observation_LOGICAL_RESOURCES AS param0
+                    //     ON param0.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID
+                    //    AND NOT EXISTS (SELECT 1 FROM Observation_TOKEN_VALUES AS param0_v
+                    //                     WHERE param0_v.PARAMETER_NAME_ID=1191 AND ...
+                    //                       AND param0_v.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID)
+
+                    final String paramTableAlias = "param" + i;
+                    final String valuesTableAlias = paramTableAlias + "_v";
+                    final String filter = querySegment.getQueryString().replaceAll(PARAMETER_TABLE_ALIAS + "\\.", valuesTableAlias + ".");
+
+                    whereClause.append(JOIN);
+                    whereClause.append(overrideType + "_LOGICAL_RESOURCES");
+                    whereClause.append(" AS " + paramTableAlias);
+                    whereClause.append(ON);
+                    whereClause.append(paramTableAlias + ".LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID");
+                    whereClause.append(AND).append(NOT).append(EXISTS);
+                    whereClause.append("(SELECT 1 FROM " + tableName(overrideType, param) + "AS " + valuesTableAlias);
+                    whereClause.append(WHERE).append(filter);
+                    whereClause.append(" AND " + valuesTableAlias + ".LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID)");
                 } else {
                     if (!Type.COMPOSITE.equals(param.getType())) {
                         // Join a standard parameter table
@@ -612,6 +650,21 @@ public class QuerySegmentAggregator {
 
     public static String tableName(String resourceType, QueryParameter param) {
         StringBuilder name = new StringBuilder(resourceType);
+        if (Type.REFERENCE.equals(param.getType()) && param.isChained() && isResourceRefsSearch()) {
+            // The links of a chain join on the resolved ids of the referenced resources
+            name.append("_RESOURCE_REFS ");
+            return name.toString();
+        }
+        if (param.isReverseChained()) {
+            // Reverse chained parameters filter the logical resources of the searched type with an EXISTS subquery
+            name.append("_LOGICAL_RESOURCES ");
+            return name.toString();
+        }
+        if (isCompartmentIndexSearch(param)) {
+            // The inclusion criteria of a compartment join on the compartment membership
+            name.append("_COMPARTMENTS ");
+            return name.toString();
+        }
         switch (param.getType()) {
         case URI:
         case REFERENCE:
@@ -630,6 +683,33 @@ public class QuerySegmentAggregator {
         return name.toString();
     }
 
+    /**
+     * @return true if chained and reverse chained reference parameters join the RESOURCE_REFS tables on the resolved
+     *         ids of the referenced resources because fhirServer/search/useResourceRefs is enabled
+     */
+    public static boolean isResourceRefsSearch() {
+        return FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_SEARCH_RESOURCE_REFS, Boolean.FALSE);
+    }
+
+    /**
+     * @param param
+     * @return true if the parameter holds the inclusion criteria of a compartment search, and the search is
+     *         served by the compartment membership table because fhirServer/search/useCompartmentIndex is enabled
+     */
+    public static boolean isCompartmentIndexSearch(QueryParameter param) {
+        if (!param.isInclusionCriteria()
+                || !FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_SEARCH_COMPARTMENT_INDEX, Boolean.FALSE)) {
+            return false;
+        }
+        // Chained inclusion criteria aren't part of the membership
+        for (QueryParameter criteria = param; criteria != null; criteria = criteria.getNextParameter()) {
+            if (criteria.getCode().contains(".")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public static String abbr(QueryParameter param) {
         switch (param.getType()) {
         case URI:
@@ -32,9 +32,9 @@ public class QuerySegmentAggregatorFactory {
         
         QuerySegmentAggregator qsa;
         
-        if (searchContext.hasIncludeParameters() || searchContext.hasRevIncludeParameters()) {
-            qsa = new InclusionQuerySegmentAggregator(resourceType, offset, pageSize, parameterDao, resourceDao, 
-                                                      searchContext.getIncludeParameters(), searchContext.getRevIncludeParameters(), queryHints);
+        if (searchContext.isKeysetPaging()) {
+            qsa = new KeysetQuerySegmentAggregator(resourceType, pageSize, parameterDao, resourceDao,
+                                                   searchContext.getKeysetLastUpdated(), searchContext.getKeysetResourceId(), queryHints);
         }
         else if (searchContext.hasSortParameters()) {
             qsa = new SortedQuerySegmentAggregator(resourceType, offset, pageSize, parameterDao, resourceDao, searchContext.getSortParameters(), queryHints);
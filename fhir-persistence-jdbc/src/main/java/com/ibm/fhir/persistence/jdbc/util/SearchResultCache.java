@@ -0,0 +1,336 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.config.FHIRConfigHelper;
+import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.search.SummaryValueSet;
+import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.parameters.QueryParameter;
+import com.ibm.fhir.search.parameters.QueryParameterValue;
+import com.ibm.fhir.search.parameters.SortParameter;
+
+/**
+ * This class provides a static cache for the results of searches of the resource types configured with
+ * fhirServer/persistence/jdbc/searchCache/resourceTypes.
+ * <br>
+ * An entry holds the total count and the resource ids of the requested page, and is keyed by the current
+ * tenant-datastore plus a normalized form of the search context. Entries expire after the configured TTL, the least
+ * recently used entries are evicted when the estimated size exceeds the configured budget, and the entries of a
+ * resource type are removed by {@link #invalidate(String)} when a resource of that type is created, updated, patched
+ * or deleted (see {@link SearchResultCacheInterceptor}).
+ */
+public class SearchResultCache {
+    private static final String CLASSNAME = SearchResultCache.class.getName();
+    private static final Logger log = Logger.getLogger(CLASSNAME);
+
+    public static final int DEFAULT_TTL_SECONDS = 60;
+    public static final int DEFAULT_MAX_SIZE_MB = 10;
+
+    // Rough estimates of the heap used by an entry and by each resource id it holds
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+    private static final int ID_BYTES = 24;
+
+    private static final String SEPARATOR = "|";
+
+    /**
+     * The cached entries in access order, so the eldest entry is the least recently used one.
+     * Guarded by the class monitor, as are generations and size.
+     */
+    private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The number of invalidations per tenant-datastore and resource type.
+     */
+    private static final Map<String, Long> generations = new HashMap<>();
+
+    private static long size = 0;
+
+    private SearchResultCache() {
+        // No Operation
+    }
+
+    /**
+     * A cached search result.
+     */
+    public static class Entry {
+        private final String tenantResourceType;
+        private final int count;
+        private final List<Long> ids;
+        private final long expiry;
+        private final long size;
+
+        private Entry(String tenantResourceType, int count, List<Long> ids, long expiry, long size) {
+            this.tenantResourceType = tenantResourceType;
+            this.count = count;
+            this.ids = ids;
+            this.expiry = expiry;
+            this.size = size;
+        }
+
+        /**
+         * @return the total number of resources matching the search
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return the ids of the resources of the requested page, in the order they are returned
+         */
+        public List<Long> getIds() {
+            return ids;
+        }
+    }
+
+    /**
+     * Returns the key of the search result in the cache, or null if the result of the search can't be cached.
+     * Searches with keyset paging, _include or _revinclude are not cached, nor are chained and reverse chained (_has)
+     * searches, whose result also depends on resources of other types, or searches of resource types which aren't configured for the current
+     * tenant.
+     *
+     * @param resourceType
+     * @param searchContext
+     * @return
+     */
+    public static String getCacheKey(String resourceType, FHIRSearchContext searchContext) {
+        List<String> resourceTypes = FHIRConfigHelper.getStringListProperty(FHIRConfiguration.PROPERTY_JDBC_SEARCH_CACHE_RESOURCE_TYPES);
+        if (resourceTypes == null || !resourceTypes.contains(resourceType)
+                || searchContext.isKeysetPaging()
+                || searchContext.hasIncludeParameters()
+                || searchContext.hasRevIncludeParameters()) {
+            return null;
+        }
+        for (QueryParameter parameter : searchContext.getSearchParameters()) {
+            if (parameter.isChained() || parameter.isReverseChained()) {
+                return null;
+            }
+        }
+        return buildCacheKey(getCacheNameForTenantResourceType(resourceType), searchContext);
+    }
+
+    /**
+     * Builds the key of the search result from the search context. The search parameters are sorted, so searches
+     * which only differ in the order of their parameters share the same key. The _elements and _summary parameters
+     * don't change the matching resources, so only _summary=count is part of the key.
+     *
+     * @param tenantResourceType the tenant-datastore and resource type of the search
+     * @param searchContext
+     * @return
+     */
+    public static String buildCacheKey(String tenantResourceType, FHIRSearchContext searchContext) {
+        List<String> parameters = new ArrayList<>();
+        for (QueryParameter parameter : searchContext.getSearchParameters()) {
+            StringBuilder builder = new StringBuilder();
+            appendParameter(builder, parameter);
+            parameters.add(builder.toString());
+        }
+        Collections.sort(parameters);
+
+        StringBuilder key = new StringBuilder(tenantResourceType);
+        for (String parameter : parameters) {
+            key.append(SEPARATOR).append(parameter);
+        }
+        key.append(SEPARATOR).append("_sort=");
+        for (SortParameter sortParameter : searchContext.getSortParameters()) {
+            key.append(sortParameter.getCode()).append(':').append(sortParameter.getDirection().value()).append(',');
+        }
+        key.append(SEPARATOR).append("_count=").append(searchContext.getPageSize())
+           .append(SEPARATOR).append("_page=").append(searchContext.getPageNumber());
+        if (SummaryValueSet.COUNT.equals(searchContext.getSummaryParameter())) {
+            key.append(SEPARATOR).append("_summary=count");
+        }
+        return key.toString();
+    }
+
+    private static void appendParameter(StringBuilder builder, QueryParameter parameter) {
+        builder.append(parameter.getCode());
+        if (parameter.getModifier() != null) {
+            builder.append(':').append(parameter.getModifier().value());
+        }
+        if (parameter.getModifierResourceTypeName() != null) {
+            builder.append(':').append(parameter.getModifierResourceTypeName());
+        }
+        if (parameter.isInclusionCriteria()) {
+            builder.append(":inclusion");
+        }
+        builder.append('=');
+        for (QueryParameterValue value : parameter.getValues()) {
+            builder.append('(')
+                   .append(value.getPrefix() != null ? value.getPrefix().value() : "").append(',')
+                   .append(value.getValueString()).append(',')
+                   .append(value.getValueNumber() != null ? value.getValueNumber().toPlainString() : null).append(',')
+                   .append(value.getValueSystem()).append(',')
+                   .append(value.getValueCode()).append(',')
+                   .append(value.getValueDateLowerBound()).append(',')
+                   .append(value.getValueDateUpperBound());
+            for (QueryParameter component : value.getComponent()) {
+                builder.append(',');
+                appendParameter(builder, component);
+            }
+            builder.append(')');
+        }
+        if (parameter.getNextParameter() != null) {
+            builder.append('.');
+            appendParameter(builder, parameter.getNextParameter());
+        }
+    }
+
+    /**
+     * Returns the number of invalidations of the resource type for the current tenant-datastore. The generation must
+     * be read before the search is performed and passed to {@link #put(String, String, long, int, List)}, so the result
+     * of a search which overlaps with an invalidation isn't cached.
+     *
+     * @param resourceType
+     * @return
+     */
+    public static synchronized long getGeneration(String resourceType) {
+        Long generation = generations.get(getCacheNameForTenantResourceType(resourceType));
+        return generation != null ? generation : 0;
+    }
+
+    /**
+     * Returns the cached result for the key, or null if there is none or it has expired.
+     *
+     * @param cacheKey
+     * @return
+     */
+    public static synchronized Entry get(String cacheKey) {
+        Entry entry = entries.get(cacheKey);
+        if (entry != null && entry.expiry < System.currentTimeMillis()) {
+            remove(cacheKey);
+            entry = null;
+        }
+        return entry;
+    }
+
+    /**
+     * Adds the result of a search to the cache, unless the resource type was invalidated since the generation was read.
+     *
+     * @param cacheKey
+     * @param resourceType
+     * @param generation the generation of the resource type read before the search was performed
+     * @param count the total number of resources matching the search
+     * @param ids the ids of the resources of the requested page
+     */
+    public static void put(String cacheKey, String resourceType, long generation, int count, List<Long> ids) {
+        long ttl = FHIRConfigHelper.getIntProperty(FHIRConfiguration.PROPERTY_JDBC_SEARCH_CACHE_TTL_SECONDS,
+                DEFAULT_TTL_SECONDS) * 1000L;
+        long maxSize = FHIRConfigHelper.getIntProperty(FHIRConfiguration.PROPERTY_JDBC_SEARCH_CACHE_MAX_SIZE_MB,
+                DEFAULT_MAX_SIZE_MB) * 1024L * 1024L;
+        String tenantResourceType = getCacheNameForTenantResourceType(resourceType);
+        long entrySize = ENTRY_OVERHEAD_BYTES + 2L * cacheKey.length() + (long) ID_BYTES * ids.size();
+        if (entrySize > maxSize) {
+            return;
+        }
+
+        synchronized (SearchResultCache.class) {
+            Long current = generations.get(tenantResourceType);
+            if (generation != (current != null ? current : 0)) {
+                log.fine("put() - Skipped result invalidated while searching, key=" + cacheKey);
+                return;
+            }
+
+            remove(cacheKey);
+            entries.put(cacheKey, new Entry(tenantResourceType, count, Collections.unmodifiableList(new ArrayList<>(ids)),
+                    System.currentTimeMillis() + ttl, entrySize));
+            size += entrySize;
+
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (size > maxSize && iterator.hasNext()) {
+                size -= iterator.next().size;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes the cached results of the resource type for the current tenant-datastore.
+     *
+     * @param resourceType the resource type, or null to remove the cached results of all resource types
+     */
+    public static synchronized void invalidate(String resourceType) {
+        if (resourceType == null) {
+            for (String type : getResourceTypes()) {
+                invalidate(type);
+            }
+            return;
+        }
+
+        invalidateTenantResourceType(getCacheNameForTenantResourceType(resourceType));
+    }
+
+    /**
+     * Removes the cached results of a resource type of a tenant-datastore.
+     *
+     * @param tenantResourceType the tenant-datastore and resource type, as returned by
+     *                           {@link #getCacheNameForTenantResourceType(String)}
+     */
+    public static synchronized void invalidateTenantResourceType(String tenantResourceType) {
+        Long generation = generations.get(tenantResourceType);
+        generations.put(tenantResourceType, generation != null ? generation + 1 : 1);
+
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.tenantResourceType.equals(tenantResourceType)) {
+                size -= entry.size;
+                iterator.remove();
+            }
+        }
+        log.fine("invalidate() - Removed cached search results for " + tenantResourceType);
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public static synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    private static List<String> getResourceTypes() {
+        String prefix = ResourceTypesCache.getCacheNameForTenantDatastore() + SEPARATOR;
+        List<String> resourceTypes = new ArrayList<>();
+        for (String tenantResourceType : generations.keySet()) {
+            if (tenantResourceType.startsWith(prefix)) {
+                resourceTypes.add(tenantResourceType.substring(prefix.length()));
+            }
+        }
+        for (Entry entry : entries.values()) {
+            if (entry.tenantResourceType.startsWith(prefix)) {
+                resourceTypes.add(entry.tenantResourceType.substring(prefix.length()));
+            }
+        }
+        return resourceTypes;
+    }
+
+    private static void remove(String cacheKey) {
+        Entry entry = entries.remove(cacheKey);
+        if (entry != null) {
+            size -= entry.size;
+        }
+    }
+
+    /**
+     * Returns a String containing a combination of the current tenantId, datastoreId and the resource type.
+     * @param resourceType
+     * @return
+     */
+    public static String getCacheNameForTenantResourceType(String resourceType) {
+        return ResourceTypesCache.getCacheNameForTenantDatastore() + SEPARATOR + resourceType;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.naming.InitialContext;
+import javax.transaction.Status;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import com.ibm.fhir.persistence.interceptor.FHIRPersistenceEvent;
+import com.ibm.fhir.persistence.interceptor.FHIRPersistenceInterceptor;
+import com.ibm.fhir.persistence.interceptor.FHIRPersistenceInterceptorException;
+import com.ibm.fhir.persistence.jdbc.impl.FHIRPersistenceJDBCImpl;
+
+/**
+ * This persistence interceptor removes the cached search results of a resource type from the {@link SearchResultCache}
+ * after a resource of that type is created, updated, patched or deleted.
+ * <br>
+ * The 'after' events are fired before the transaction commits, so the cached results are removed again by a
+ * {@link SearchResultCacheInvalidator} once the transaction completes.
+ */
+public class SearchResultCacheInterceptor implements FHIRPersistenceInterceptor {
+    private static final Logger log = Logger.getLogger(SearchResultCacheInterceptor.class.getName());
+
+    // Looked up on first use, and left null when running outside of a container
+    private TransactionSynchronizationRegistry trxSynchRegistry;
+    private boolean trxSynchRegistryLookedUp = false;
+
+    @Override
+    public void afterCreate(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
+        invalidate(event.getFhirResourceType());
+    }
+
+    @Override
+    public void afterUpdate(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
+        invalidate(event.getFhirResourceType());
+    }
+
+    @Override
+    public void afterPatch(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
+        invalidate(event.getFhirResourceType());
+    }
+
+    @Override
+    public void afterDelete(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
+        invalidate(event.getFhirResourceType());
+    }
+
+    private void invalidate(String resourceType) throws FHIRPersistenceInterceptorException {
+        SearchResultCache.invalidate(resourceType);
+
+        TransactionSynchronizationRegistry registry = getTrxSynchRegistry();
+        if (resourceType != null && registry != null && registry.getTransactionStatus() == Status.STATUS_ACTIVE) {
+            try {
+                registry.registerInterposedSynchronization(
+                        new SearchResultCacheInvalidator(SearchResultCache.getCacheNameForTenantResourceType(resourceType)));
+            } catch (Throwable e) {
+                throw new FHIRPersistenceInterceptorException("Failure registering SearchResultCacheInvalidator", e);
+            }
+        }
+    }
+
+    private synchronized TransactionSynchronizationRegistry getTrxSynchRegistry() {
+        if (!trxSynchRegistryLookedUp) {
+            trxSynchRegistryLookedUp = true;
+            try {
+                trxSynchRegistry = (TransactionSynchronizationRegistry) new InitialContext()
+                        .lookup(FHIRPersistenceJDBCImpl.TRX_SYNCH_REG_JNDI_NAME);
+            } catch (Throwable e) {
+                log.log(Level.FINE, "TransactionSynchronizationRegistry is not available; cached search results "
+                        + "are removed before the transaction commits only", e);
+            }
+        }
+        return trxSynchRegistry;
+    }
+}
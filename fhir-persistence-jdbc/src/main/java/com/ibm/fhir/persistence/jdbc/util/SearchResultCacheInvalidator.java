@@ -0,0 +1,49 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import java.util.logging.Logger;
+
+import javax.transaction.Synchronization;
+
+/**
+ * This transaction synchronization removes the cached search results of a resource type from the
+ * {@link SearchResultCache} once the transaction which wrote a resource of that type completes. A search which runs
+ * between the write and the commit still reads the previous data, so the results it cached are removed again.
+ */
+public class SearchResultCacheInvalidator implements Synchronization {
+    private static final String CLASSNAME = SearchResultCacheInvalidator.class.getName();
+    private static final Logger log = Logger.getLogger(CLASSNAME);
+
+    private final String tenantResourceType;
+
+    /**
+     * @param tenantResourceType the tenant-datastore and resource type, as returned by
+     *                           {@link SearchResultCache#getCacheNameForTenantResourceType(String)}
+     */
+    public SearchResultCacheInvalidator(String tenantResourceType) {
+        this.tenantResourceType = tenantResourceType;
+    }
+
+    @Override
+    public void beforeCompletion() {
+    }
+
+    /**
+     * Removes the cached results whether the transaction committed or not, as the results cached while it was active
+     * may have been read from either version of the data.
+     */
+    @Override
+    public void afterCompletion(int completionStatus) {
+        final String METHODNAME = "afterCompletion";
+        log.entering(CLASSNAME, METHODNAME);
+
+        SearchResultCache.invalidateTenantResourceType(tenantResourceType);
+
+        log.exiting(CLASSNAME, METHODNAME);
+    }
+}
@@ -9,11 +9,12 @@ package com.ibm.fhir.persistence.jdbc.util;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.AND;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.ASCENDING;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.CODE_SYSTEM_ID;
-import static com.ibm.fhir.persistence.jdbc.JDBCConstants.COMMA;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.COMMA_CHAR;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.DATE_START;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.DESCENDING;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.DOT_CHAR;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.FROM;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.JOIN;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.LEFT_PAREN;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.MAX;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.MIN;
@@ -50,6 +51,8 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
 
     public static final String GROUP_BY = " GROUP BY R.RESOURCE_ID ";
     private static final String SORT_PARAMETER_ALIAS = "S";
+    private static final String SORT_KEY_ALIAS = "SORT_";
+    private static final String SORT_KEYS_ALIAS = "SK";
 
     private List<SortParameter> sortParameters;
 
@@ -73,20 +76,24 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
      * bind variables. This query
      * contains the necessary clauses to support sorted search results.
      * <p>
+     * The page of sorted Resource ids and their sort keys is computed first, and the
+     * Resource data is then joined to that page, so the rows come back in sort order
+     * without having to re-read and reorder them by id.
      * A simple example query produced by this method:
      * 
      * <pre>
-     * SELECT R.RESOURCE_ID,MIN(S1.STR_VALUE) FROM Patient_RESOURCES R 
-     *   JOIN Patient_LOGICAL_RESOURCES LR ON R.LOGICAL_RESOURCE_ID=LR.LOGICAL_RESOURCE_ID
-     *   JOIN Patient_TOKEN_VALUES P1 ON P1.RESOURCE_ID=R.RESOURCE_ID  
-     *   LEFT OUTER JOIN Patient_STR_VALUES S1 ON (S1.PARAMETER_NAME_ID=50 AND S1.RESOURCE_ID = R.RESOURCE_ID)
-     *   WHERE R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID AND 
-     *         R.IS_DELETED <> 'Y' AND 
-     *         P1.RESOURCE_ID = R.RESOURCE_ID AND 
-     *         (P1.PARAMETER_NAME_ID=196 AND ((P1.TOKEN_VALUE = false))) 
-     * GROUP BY R.RESOURCE_ID  
-     * ORDER BY MIN(S1.STR_VALUE) asc NULLS LAST 
-     * OFFSET 0 ROWS FETCH NEXT 100 ROWS ONLY;
+     * SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID
+     *   FROM PATIENT_RESOURCES R
+     *   JOIN PATIENT_LOGICAL_RESOURCES LR ON R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID
+     *   JOIN (
+     *     SELECT R.RESOURCE_ID,MIN(S1.STR_VALUE) AS SORT_1_1,MAX(R.LAST_UPDATED) AS SORT_2_1 FROM Patient_LOGICAL_RESOURCES LR
+     *       JOIN Patient_RESOURCES R ON R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID AND R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID AND R.IS_DELETED <> 'Y'
+     *       JOIN Patient_TOKEN_VALUES AS param0 ON param0.PARAMETER_NAME_ID=196 AND param0.TOKEN_VALUE = ? AND LR.LOGICAL_RESOURCE_ID = param0.LOGICAL_RESOURCE_ID
+     *       LEFT OUTER JOIN Patient_STR_VALUES S1 ON (S1.PARAMETER_NAME_ID=50 AND S1.LOGICAL_RESOURCE_ID = R.LOGICAL_RESOURCE_ID)
+     *     GROUP BY R.RESOURCE_ID
+     *     ORDER BY MIN(S1.STR_VALUE) ASC NULLS LAST,MAX(R.LAST_UPDATED) DESC NULLS LAST,R.RESOURCE_ID
+     *     OFFSET 0 ROWS FETCH NEXT 100 ROWS ONLY) AS SK ON SK.RESOURCE_ID = R.RESOURCE_ID
+     * ORDER BY SK.SORT_1_1 ASC NULLS LAST,SK.SORT_2_1 DESC NULLS LAST,R.RESOURCE_ID
      * </pre>
      * 
      * @return SqlQueryData - contains the complete SQL query string and any
@@ -116,12 +123,23 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
             this.addPaginationClauses(sysLvlQueryString);
             queryData = new SqlQueryData(sysLvlQueryString.toString(), queryData.getBindVariables());
         } else {
+            String simpleName = resourceType.getSimpleName();
             StringBuilder sqlSortQuery = new StringBuilder();
+
+            // Select the Resource data, joined to the page of sorted Resource ids computed below
+            sqlSortQuery.append(NEW_SELECT_ROOT);
+            sqlSortQuery.append(FROM);
+            sqlSortQuery.append(simpleName.toUpperCase()).append("_RESOURCES R");
+            sqlSortQuery.append(JOIN);
+            sqlSortQuery.append(simpleName.toUpperCase()).append("_LOGICAL_RESOURCES LR");
+            sqlSortQuery.append(ON).append("R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID");
+            sqlSortQuery.append(JOIN).append(LEFT_PAREN);
+
             // Build SELECT clause
             sqlSortQuery.append(this.buildSelectClause());
 
             // Build FROM clause
-            buildFromClause(sqlSortQuery, resourceType.getSimpleName());
+            buildFromClause(sqlSortQuery, simpleName);
 
             // Gather up all bind variables from the query segments
             // An important step here is to add _id and _lastUpdated
@@ -143,11 +161,17 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
             sqlSortQuery.append(GROUP_BY);
 
             // Build ORDER BY clause
-            sqlSortQuery.append(this.buildOrderByClause());
+            sqlSortQuery.append(this.buildOrderByClause(false));
 
             // Add in clauses to support pagination
             this.addPaginationClauses(sqlSortQuery);
 
+            sqlSortQuery.append(RIGHT_PAREN).append(" AS ").append(SORT_KEYS_ALIAS);
+            sqlSortQuery.append(ON).append(SORT_KEYS_ALIAS).append(".RESOURCE_ID = R.RESOURCE_ID");
+
+            // The page is returned in the order of its sort keys
+            sqlSortQuery.append(this.buildOrderByClause(true));
+
             addOptimizerHint(sqlSortQuery);
 
             queryData = new SqlQueryData(sqlSortQuery.toString(), allBindVariables);
@@ -158,11 +182,11 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
     }
 
     /**
-     * Builds the SELECT clause necessary to return sorted Resource ids.
+     * Builds the SELECT clause necessary to return sorted Resource ids and their sort keys.
      * For example:
      * 
      * <pre>
-     * SELECT R.RESOURCE_ID,MIN(S1.STR_VALUE) FROM
+     * SELECT R.RESOURCE_ID,MIN(S1.STR_VALUE) AS SORT_1_1
      * </pre>
      * 
      * @throws FHIRPersistenceException
@@ -176,8 +200,13 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
 
         // Build MIN and/or MAX clauses
         for (int i = 0; i < this.sortParameters.size(); i++) {
-            selectBuffer.append(COMMA_CHAR);
-            selectBuffer.append(this.buildAggregateExpression(this.sortParameters.get(i), i + 1, false));
+            SortParameter sortParm = this.sortParameters.get(i);
+            List<String> sortKeyColumns = this.getSortKeyColumns(sortParm, i + 1);
+            for (int j = 0; j < sortKeyColumns.size(); j++) {
+                selectBuffer.append(COMMA_CHAR);
+                selectBuffer.append(this.buildAggregateExpression(sortParm, sortKeyColumns.get(j)));
+                selectBuffer.append(" AS ").append(getSortKeyAlias(i + 1, j + 1));
+            }
         }
         selectBuffer.append(SPACE);
 
@@ -186,59 +215,83 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
     }
 
     /**
-     * Builds the required MIN or MAX aggregate expressions for the passed sort
-     * parameter.
+     * Builds the MIN or MAX aggregate expression of a sort key column of the passed
+     * sort parameter.
      * 
-     * @param sortParm           A valid sort parameter.
-     * @param sortParmIndex      An integer representing the position of the sort
-     *                           parameter in a collection of sort parameters.
-     * @param useInOrderByClause A flag indicating whether or not the returned
-     *                           aggregate expression is to be used in an ORDER BY
-     *                           clause.
+     * @param sortParm      A valid sort parameter.
+     * @param sortKeyColumn A qualified sort key column of the sort parameter.
      * @return
-     * @throws FHIRPersistenceException
      */
-    private String buildAggregateExpression(SortParameter sortParm, int sortParmIndex, boolean useInOrderByClause)
-            throws FHIRPersistenceException {
-        final String METHODNAME = "buildAggregateExpression";
-        log.entering(CLASSNAME, METHODNAME);
-
+    private String buildAggregateExpression(SortParameter sortParm, String sortKeyColumn) {
         StringBuilder expression = new StringBuilder();
-        List<String> valueAttributeNames;
+        if (Sort.Direction.INCREASING.equals(sortParm.getDirection())) {
+            expression.append(MIN);
+        } else {
+            expression.append(MAX);
+        }
+        expression.append(LEFT_PAREN).append(sortKeyColumn).append(RIGHT_PAREN);
+        return expression.toString();
+    }
 
-        valueAttributeNames = this.getValueAttributeNames(sortParm);
-        boolean nameProcessed = false;
-        for (String attributeName : valueAttributeNames) {
-            if (nameProcessed) {
-                expression.append(COMMA);
-            }
-            if (Sort.Direction.INCREASING.equals(sortParm.getDirection())) {
-                expression.append(MIN);
+    /**
+     * Appends the sort direction of the passed sort parameter to an ORDER BY expression.
+     */
+    private void appendDirection(StringBuilder orderByBuffer, SortParameter sortParm) {
+        orderByBuffer.append(SPACE);
+        // Choose the DIRECTION
+        switch (sortParm.getDirection()) {
+        case INCREASING:
+            orderByBuffer.append(ASCENDING);
+            break;
+        default:
+            orderByBuffer.append(DESCENDING);
+            break;
+        }
+        orderByBuffer.append(" NULLS LAST");
+    }
+
+    /**
+     * Returns the alias of a sort key in the page of sorted Resource ids.
+     * 
+     * @param sortParmIndex The position of the sort parameter in the collection of sort parameters.
+     * @param keyIndex      The position of the sort key among the keys of the sort parameter.
+     */
+    private static String getSortKeyAlias(int sortParmIndex, int keyIndex) {
+        return SORT_KEY_ALIAS + sortParmIndex + "_" + keyIndex;
+    }
+
+    /**
+     * Returns the qualified columns holding the sort keys of the passed sort parameter.
+     * _id and _lastUpdated aren't stored as parameter values; they're sorted on the
+     * LOGICAL_ID and LAST_UPDATED columns of the resource tables directly. Other
+     * parameters are sorted on the value columns of their joined parameter table.
+     * 
+     * @param sortParm      A valid sort parameter.
+     * @param sortParmIndex The position of the sort parameter in the collection of sort parameters.
+     * @throws FHIRPersistenceException
+     */
+    private List<String> getSortKeyColumns(SortParameter sortParm, int sortParmIndex) throws FHIRPersistenceException {
+        List<String> sortKeyColumns = new ArrayList<>();
+        if (isResourceColumnSort(sortParm)) {
+            if (ID.equals(sortParm.getCode())) {
+                sortKeyColumns.add("LR.LOGICAL_ID");
             } else {
-                expression.append(MAX);
+                sortKeyColumns.add("R." + LastUpdatedParmBehaviorUtil.LAST_UPDATED_COLUMN_NAME);
             }
-            expression.append(LEFT_PAREN);
-            expression.append(SORT_PARAMETER_ALIAS).append(sortParmIndex).append(DOT_CHAR);
-            expression.append(attributeName);
-            expression.append(RIGHT_PAREN);
-            if (useInOrderByClause) {
-                expression.append(SPACE);
-                // Choose the DIRECTION
-                switch (sortParm.getDirection()) {
-                case INCREASING:
-                    expression.append(ASCENDING);
-                    break;
-                default:
-                    expression.append(DESCENDING);
-                    break;
-                }
-                expression.append(" NULLS LAST");
+        } else {
+            for (String attributeName : this.getValueAttributeNames(sortParm)) {
+                sortKeyColumns.add(SORT_PARAMETER_ALIAS + sortParmIndex + DOT_CHAR + attributeName);
             }
-            nameProcessed = true;
         }
+        return sortKeyColumns;
+    }
 
-        log.exiting(CLASSNAME, METHODNAME);
-        return expression.toString();
+    /**
+     * Returns true if the passed sort parameter is sorted on a column of the resource tables
+     * rather than on a joined parameter table.
+     */
+    private static boolean isResourceColumnSort(SortParameter sortParm) {
+        return ID.equals(sortParm.getCode()) || LastUpdatedParmBehaviorUtil.LAST_UPDATED.equals(sortParm.getCode());
     }
 
     /**
@@ -302,6 +355,10 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
         // Build the LEFT OUTER JOINs needed to access the required sort parameters.
         int sortParmIndex = 1;
         for (SortParameter sortParm : this.sortParameters) {
+            if (isResourceColumnSort(sortParm)) {
+                sortParmIndex++;
+                continue;
+            }
             sortParameterNameId = ParameterNamesCache.getParameterNameId(sortParm.getCode());
             if (sortParameterNameId == null) {
                 // Only read...don't try and create the parameter name if it doesn't exist
@@ -376,15 +433,24 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
 
     /**
      * Builds the ORDER BY clause necessary to return sorted Resource ids.
+     * The Resource id breaks ties, so that the pages of a search don't overlap.
      * For example:
      * 
      * <pre>
-     * ORDER BY MIN(S1.STR_VALUE) asc NULLS LAST,MAX(S2.CODE_SYSTEM_ID) desc NULLS LAST, MAX(S2.TOKEN_VALUE) desc NULLS LAST
+     * ORDER BY MIN(S1.STR_VALUE) ASC NULLS LAST,MAX(S2.CODE_SYSTEM_ID) DESC NULLS LAST,MAX(S2.TOKEN_VALUE) DESC NULLS LAST,R.RESOURCE_ID
      * </pre>
      * 
+     * or, when ordering the page of sorted Resource ids by their selected sort keys:
+     * 
+     * <pre>
+     * ORDER BY SK.SORT_1_1 ASC NULLS LAST,SK.SORT_2_1 DESC NULLS LAST,SK.SORT_2_2 DESC NULLS LAST,R.RESOURCE_ID
+     * </pre>
+     * 
+     * @param useSortKeyAliases A flag indicating whether the selected sort keys, rather than
+     *                          their aggregate expressions, are ordered on.
      * @throws FHIRPersistenceException
      */
-    private String buildOrderByClause() throws FHIRPersistenceException {
+    private String buildOrderByClause(boolean useSortKeyAliases) throws FHIRPersistenceException {
         final String METHODNAME = "buildOrderByClause";
         log.entering(CLASSNAME, METHODNAME);
 
@@ -393,11 +459,19 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
 
         // Build MIN and/or MAX clauses
         for (int i = 0; i < this.sortParameters.size(); i++) {
-            if (i > 0) {
+            SortParameter sortParm = this.sortParameters.get(i);
+            List<String> sortKeyColumns = this.getSortKeyColumns(sortParm, i + 1);
+            for (int j = 0; j < sortKeyColumns.size(); j++) {
+                if (useSortKeyAliases) {
+                    orderByBuffer.append(SORT_KEYS_ALIAS).append(DOT_CHAR).append(getSortKeyAlias(i + 1, j + 1));
+                } else {
+                    orderByBuffer.append(this.buildAggregateExpression(sortParm, sortKeyColumns.get(j)));
+                }
+                this.appendDirection(orderByBuffer, sortParm);
                 orderByBuffer.append(COMMA_CHAR);
             }
-            orderByBuffer.append(this.buildAggregateExpression(this.sortParameters.get(i), i + 1, true));
         }
+        orderByBuffer.append("R.RESOURCE_ID");
 
         log.exiting(CLASSNAME, METHODNAME);
         return orderByBuffer.toString();
@@ -0,0 +1,210 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.model.resource.CodeSystem;
+import com.ibm.fhir.model.resource.CodeSystem.Concept;
+import com.ibm.fhir.model.resource.ValueSet;
+import com.ibm.fhir.model.resource.ValueSet.Expansion.Contains;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.Coding;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.code.CodeSystemHierarchyMeaning;
+import com.ibm.fhir.model.type.code.IssueType;
+import com.ibm.fhir.model.util.FHIRUtil;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceNotSupportedException;
+import com.ibm.fhir.search.SearchConstants.Modifier;
+import com.ibm.fhir.search.parameters.QueryParameterValue;
+import com.ibm.fhir.term.service.FHIRTermService;
+import com.ibm.fhir.term.util.CodeSystemSupport;
+import com.ibm.fhir.term.util.ValueSetSupport;
+
+/**
+ * Modifiers: token:in, token:not-in, token:below and token:above
+ * <br>
+ * Expands the values of the search parameter into the codes they match, by code system: the codes of the value set
+ * for :in and :not-in, and the codes subsumed by (:below) or subsuming (:above) the code within its code system.
+ * The expansions are taken from the FHIRTermService and cached per value set version or code system version.
+ * <br>
+ * <a href="https://www.hl7.org/fhir/search.html#token">FHIR Specification: Search token</a>
+ */
+public class TokenModifierUtil {
+    private static final Logger log = Logger.getLogger(TokenModifierUtil.class.getName());
+
+    /**
+     * The maximum number of codes of an expansion; all the codes are bound to the query.
+     */
+    public static final int MAX_EXPANSION_SIZE = 1000;
+
+    // The value sets and code systems come from the registry, so only the number of cached codes needs a limit.
+    private static final int MAX_CACHED_EXPANSIONS = 1000;
+    private static final Map<String, Map<String, Set<String>>> expansionCache = new ConcurrentHashMap<>();
+
+    private TokenModifierUtil() {
+        // No Operation
+    }
+
+    /**
+     * @param modifier
+     * @return true if the values of a token search parameter with the modifier are expanded into codes
+     */
+    public static boolean isExpandedModifier(Modifier modifier) {
+        return Modifier.IN.equals(modifier) || Modifier.NOT_IN.equals(modifier)
+                || Modifier.BELOW.equals(modifier) || Modifier.ABOVE.equals(modifier);
+    }
+
+    /**
+     * Expands the values of a token search parameter with the :in, :not-in, :below or :above modifier.
+     *
+     * @param modifier
+     * @param values
+     * @return the codes matched by any of the values, by code system, in a stable order
+     * @throws FHIRPersistenceException if a value can't be expanded
+     */
+    public static Map<String, Set<String>> expand(Modifier modifier, List<QueryParameterValue> values)
+            throws FHIRPersistenceException {
+        Map<String, Set<String>> codes = new TreeMap<>();
+        int numOfCodes = 0;
+        for (QueryParameterValue value : values) {
+            Map<String, Set<String>> expansion;
+            switch (modifier) {
+            case IN:
+            case NOT_IN:
+                expansion = expandValueSet(getValueSetUrl(value));
+                break;
+            case BELOW:
+            case ABOVE:
+                expansion = expandCode(modifier, value.getValueSystem(), value.getValueCode());
+                break;
+            default:
+                throw new FHIRPersistenceNotSupportedException("Modifier '" + modifier.value() + "' is not expanded");
+            }
+
+            for (Map.Entry<String, Set<String>> entry : expansion.entrySet()) {
+                Set<String> systemCodes = codes.computeIfAbsent(entry.getKey(), k -> new TreeSet<>());
+                numOfCodes -= systemCodes.size();
+                systemCodes.addAll(entry.getValue());
+                numOfCodes += systemCodes.size();
+            }
+            if (numOfCodes > MAX_EXPANSION_SIZE) {
+                throw new FHIRPersistenceNotSupportedException("The expansion of modifier '" + modifier.value()
+                        + "' has more than " + MAX_EXPANSION_SIZE + " codes");
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * The token parser splits a canonical url with a version into the system and the code.
+     */
+    private static String getValueSetUrl(QueryParameterValue value) {
+        if (value.getValueSystem() != null && !value.getValueSystem().isEmpty()) {
+            return value.getValueSystem() + "|" + value.getValueCode();
+        }
+        return value.getValueCode();
+    }
+
+    private static Map<String, Set<String>> expandValueSet(String url) throws FHIRPersistenceException {
+        ValueSet valueSet = ValueSetSupport.getValueSet(url);
+        if (valueSet == null || valueSet.getUrl() == null) {
+            String msg = "ValueSet '" + url + "' not found";
+            throw new FHIRPersistenceException(msg).withIssue(FHIRUtil.buildOperationOutcomeIssue(msg, IssueType.INVALID));
+        }
+
+        String key = "ValueSet|" + valueSet.getUrl().getValue() + "|" + getVersion(valueSet.getVersion());
+        Map<String, Set<String>> expansion = expansionCache.get(key);
+        if (expansion == null) {
+            FHIRTermService termService = FHIRTermService.getInstance();
+            if (!ValueSetSupport.isExpanded(valueSet) && !termService.isExpandable(valueSet)) {
+                throw new FHIRPersistenceNotSupportedException("ValueSet '" + url + "' can't be expanded");
+            }
+
+            expansion = new TreeMap<>();
+            for (Contains contains : ValueSetSupport.getContains(termService.expand(valueSet).getExpansion())) {
+                // Abstract entries which only group the codes have no code.
+                if (contains.getSystem() != null && contains.getCode() != null) {
+                    expansion.computeIfAbsent(contains.getSystem().getValue(), k -> new TreeSet<>())
+                            .add(contains.getCode().getValue());
+                }
+            }
+            expansion = cache(key, expansion);
+        }
+        return expansion;
+    }
+
+    private static Map<String, Set<String>> expandCode(Modifier modifier, String system, String code)
+            throws FHIRPersistenceException {
+        if (system == null || system.isEmpty() || code == null) {
+            String msg = "Modifier '" + modifier.value() + "' requires a value of the form [system]|[code]";
+            throw new FHIRPersistenceException(msg).withIssue(FHIRUtil.buildOperationOutcomeIssue(msg, IssueType.INVALID));
+        }
+
+        CodeSystem codeSystem = CodeSystemSupport.getCodeSystem(system);
+        if (codeSystem == null || !CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning())) {
+            throw new FHIRPersistenceNotSupportedException("Modifier '" + modifier.value()
+                    + "' requires a known code system with an is-a hierarchy [system=" + system + "]");
+        }
+
+        String key = modifier.value() + "|" + system + "|" + getVersion(codeSystem.getVersion()) + "|" + code;
+        Map<String, Set<String>> expansion = expansionCache.get(key);
+        if (expansion == null) {
+            Set<String> codes = new TreeSet<>();
+            if (Modifier.BELOW.equals(modifier)) {
+                Coding coding = Coding.builder().system(Uri.of(system)).code(Code.of(code)).build();
+                for (Concept concept : FHIRTermService.getInstance().closure(coding)) {
+                    codes.add(concept.getCode().getValue());
+                }
+            } else {
+                addAncestors(codeSystem.getConcept(), code, codes);
+            }
+            expansion = cache(key, codes.isEmpty() ? Collections.emptyMap() : Collections.singletonMap(system, codes));
+        }
+        return expansion;
+    }
+
+    /**
+     * Adds the code and the codes of its ancestors to the codes.
+     *
+     * @return true if the code was found within the concepts
+     */
+    private static boolean addAncestors(List<Concept> concepts, String code, Set<String> codes) {
+        for (Concept concept : concepts) {
+            String conceptCode = concept.getCode().getValue();
+            if (conceptCode.equals(code) || addAncestors(concept.getConcept(), code, codes)) {
+                codes.add(conceptCode);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String getVersion(com.ibm.fhir.model.type.String version) {
+        return version != null ? version.getValue() : "";
+    }
+
+    private static Map<String, Set<String>> cache(String key, Map<String, Set<String>> expansion) {
+        Map<String, Set<String>> result = Collections.unmodifiableMap(expansion);
+        if (expansionCache.size() < MAX_CACHED_EXPANSIONS) {
+            expansionCache.put(key, result);
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Cached the expansion of " + key);
+            }
+        }
+        return result;
+    }
+}
@@ -9,6 +9,7 @@ package com.ibm.fhir.persistence.jdbc.util.type;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.AND;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.BIND_VAR;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.DOT;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.GEOHASH_VALUE;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.GTE;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.LATITUDE_VALUE;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.LEFT_PAREN;
@@ -20,22 +21,42 @@ import static com.ibm.fhir.persistence.jdbc.JDBCConstants.RIGHT_PAREN;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.SPACE;
 
 import java.util.List;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import com.ibm.fhir.config.FHIRConfigHelper;
+import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.search.exception.FHIRSearchException;
+import com.ibm.fhir.search.location.NearLocationHandler;
 import com.ibm.fhir.search.location.bounding.Bounding;
 import com.ibm.fhir.search.location.bounding.BoundingBox;
 import com.ibm.fhir.search.location.bounding.BoundingMissing;
 import com.ibm.fhir.search.location.bounding.BoundingRadius;
 import com.ibm.fhir.search.location.bounding.BoundingType;
+import com.ibm.fhir.search.location.util.Geohash;
 
 /**
  * Location Behavior Util generates SQL and loads the variables into bind
  * variables.
+ * <br>
+ * When fhirServer/search/useGeohashIndex is enabled, each bounding area is first narrowed to the geohash cells
+ * covering it, which the GEOHASH_VALUE index serves with one range per cell. The latitude and longitude predicates
+ * still apply the exact bounds to the positions within those cells.
  */
 public class LocationParmBehaviorUtil {
+    private static final Logger log = Logger.getLogger(LocationParmBehaviorUtil.class.getName());
+
+    private final boolean useGeohash;
 
     public LocationParmBehaviorUtil() {
-        // No Operation
+        this(FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_SEARCH_GEOHASH_INDEX, Boolean.FALSE));
+    }
+
+    /**
+     * @param useGeohash whether to narrow the bounding areas by the geohash cells covering them
+     */
+    public LocationParmBehaviorUtil(boolean useGeohash) {
+        this.useGeohash = useGeohash;
     }
 
     /**
@@ -78,6 +99,10 @@ public class LocationParmBehaviorUtil {
                 first = false;
             }
 
+            if (useGeohash) {
+                buildQueryForGeohashCover(whereClauseSegment, bindVariables, area, paramTableAlias);
+            }
+
             // Switch between the various types of bounding and queries.
             switch (area.getType()) {
             case RADIUS:
@@ -101,6 +126,65 @@ public class LocationParmBehaviorUtil {
         }
     }
 
+    /**
+     * build the query for the geohash cells covering the bounding area, followed by an AND.
+     * Adjacent cells are merged into a single range.
+     * 
+     * @param whereClauseSegment
+     * @param bindVariables
+     * @param area
+     * @param paramTableAlias
+     */
+    public void buildQueryForGeohashCover(StringBuilder whereClauseSegment, List<Object> bindVariables,
+            Bounding area, String paramTableAlias) {
+        List<String> cover;
+        try {
+            cover = new NearLocationHandler().createGeohashCover(area);
+        } catch (FHIRSearchException e) {
+            // The bounding area was created from the same values, so the cover is simply skipped.
+            log.fine("Unable to compute the geohash cover of " + area + ": " + e.getMessage());
+            return;
+        }
+
+        if (cover.isEmpty()) {
+            // The area needs too many cells, so only the latitude and longitude predicates are used.
+            return;
+        }
+
+        whereClauseSegment.append(LEFT_PAREN);
+        String low = null;
+        String high = null;
+        for (String cell : cover) {
+            if (low != null && cell.equals(Geohash.next(high))) {
+                high = cell;
+                continue;
+            }
+            if (low != null) {
+                appendGeohashRange(whereClauseSegment, bindVariables, low, high, paramTableAlias);
+                whereClauseSegment.append(OR);
+            }
+            low = cell;
+            high = cell;
+        }
+        appendGeohashRange(whereClauseSegment, bindVariables, low, high, paramTableAlias);
+        whereClauseSegment.append(RIGHT_PAREN).append(AND);
+    }
+
+    private void appendGeohashRange(StringBuilder whereClauseSegment, List<Object> bindVariables, String low,
+            String high, String paramTableAlias) {
+        // GEOHASH >= low AND GEOHASH <= the greatest geohash starting with high
+        whereClauseSegment
+                .append(LEFT_PAREN)
+                .append(paramTableAlias).append(DOT).append(GEOHASH_VALUE).append(GTE)
+                .append(BIND_VAR)
+                .append(AND)
+                .append(paramTableAlias).append(DOT).append(GEOHASH_VALUE).append(LTE)
+                .append(BIND_VAR)
+                .append(RIGHT_PAREN);
+        bindVariables.add(low);
+        bindVariables.add(Geohash.upperBound(high));
+    }
+
     public void buildQueryForBoundingMissing(String populateNameIdSubSegment, StringBuilder whereClauseSegment,
             BoundingMissing missingArea) {
         // No Operation - the main logic is contained in the process Missing parameter
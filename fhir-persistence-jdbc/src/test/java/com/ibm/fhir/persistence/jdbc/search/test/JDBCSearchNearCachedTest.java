@@ -0,0 +1,76 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.search.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.model.resource.Location;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.persistence.MultiResourceResult;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
+import com.ibm.fhir.persistence.jdbc.util.SearchResultCache;
+import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.util.SearchUtil;
+
+/**
+ * Runs the positional searches of {@link JDBCSearchNearTest} with the search result cache enabled for Location,
+ * and checks that repeating each search returns the cached result.
+ */
+public class JDBCSearchNearCachedTest extends JDBCSearchNearTest {
+
+    @Override
+    @BeforeClass
+    public void startup() throws Exception {
+        super.startup();
+        // The 'searchcache' tenant caches the search results of Location
+        FHIRRequestContext.get().setTenantId("searchcache");
+    }
+
+    @Override
+    @AfterClass
+    public void teardown() throws Exception {
+        SearchResultCache.clear();
+        super.teardown();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void resetTenant() throws Exception {
+        FHIRRequestContext.get().setTenantId("default");
+    }
+
+    @Override
+    public MultiResourceResult<Resource> runQueryTest(Map<String, List<String>> queryParms) throws Exception {
+        MultiResourceResult<Resource> result = super.runQueryTest(queryParms);
+
+        FHIRSearchContext ctx = SearchUtil.parseQueryParameters(Location.class, queryParms, true);
+        String cacheKey = SearchResultCache.getCacheKey("Location", ctx);
+        assertNotNull(cacheKey);
+        if (result.isSuccess()) {
+            assertNotNull(SearchResultCache.get(cacheKey));
+        }
+
+        FHIRPersistenceContext persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(null, ctx);
+        MultiResourceResult<Resource> cachedResult = persistence.search(persistenceContext, Location.class);
+        assertEquals(ids(cachedResult), ids(result));
+        return cachedResult;
+    }
+
+    private static List<String> ids(MultiResourceResult<Resource> result) {
+        return result.getResource() == null ? null
+                : result.getResource().stream().map(Resource::getId).collect(Collectors.toList());
+    }
+}
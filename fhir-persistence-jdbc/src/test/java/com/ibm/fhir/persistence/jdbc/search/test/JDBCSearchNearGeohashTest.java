@@ -0,0 +1,32 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.search.test;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+
+/**
+ * Runs the positional searches of {@link JDBCSearchNearTest} with fhirServer/search/useGeohashIndex enabled,
+ * so the bounding areas are narrowed to the geohash cells covering them.
+ */
+public class JDBCSearchNearGeohashTest extends JDBCSearchNearTest {
+
+    @Override
+    @BeforeClass
+    public void startup() throws Exception {
+        super.startup();
+        // The 'geohash' tenant enables the geohash index
+        FHIRRequestContext.get().setTenantId("geohash");
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void resetTenant() throws Exception {
+        FHIRRequestContext.get().setTenantId("default");
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.resource.Resource;
+
+/**
+ * Runs the compartment searches of {@link JDBCCompartmentTest} with fhirServer/search/useCompartmentIndex enabled,
+ * so the compartment searches join the compartment membership table.
+ */
+public class JDBCCompartmentIndexTest extends JDBCCompartmentTest {
+
+    public JDBCCompartmentIndexTest() throws Exception {
+        super();
+    }
+
+    @BeforeClass(alwaysRun = true)
+    public void setTenant() throws Exception {
+        // The 'compartmentindex' tenant enables the compartment membership index
+        FHIRRequestContext.get().setTenantId("compartmentindex");
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void resetTenant() throws Exception {
+        FHIRRequestContext.get().setTenantId("default");
+    }
+
+    @Test
+    public void testPatientCompartmentMembership() throws Exception {
+        // The patient is both the subject and a performer, but the observation is a member of its compartment once
+        List<Resource> results = runQueryTest("Patient", savedPatient.getId(), Observation.class, null, null);
+        assertTrue(results.stream().anyMatch(r -> savedObservation.getId().equals(r.getId())));
+        assertEquals(results.stream().filter(r -> savedObservation.getId().equals(r.getId())).count(), 1);
+    }
+
+    @Test
+    public void testCompartmentNotMember() throws Exception {
+        List<Resource> results = runQueryTest("Patient", "not-a-member", Observation.class, "_id", savedObservation.getId());
+        assertEquals(results.size(), 0);
+    }
+}
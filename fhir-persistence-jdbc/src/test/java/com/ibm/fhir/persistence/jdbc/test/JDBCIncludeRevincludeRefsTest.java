@@ -0,0 +1,137 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test;
+
+import static com.ibm.fhir.model.type.String.string;
+import static org.testng.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.model.resource.Encounter;
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.model.type.Reference;
+
+/**
+ * Runs the _revinclude searches of {@link JDBCIncludeRevincludeTest} with fhirServer/search/useResourceRefs enabled,
+ * so _revinclude and chained parameters join the RESOURCE_REFS tables on the resolved ids of the referenced resources.
+ */
+public class JDBCIncludeRevincludeRefsTest extends JDBCIncludeRevincludeTest {
+
+    public JDBCIncludeRevincludeRefsTest() throws Exception {
+        super();
+    }
+
+    @BeforeClass(alwaysRun = true)
+    public void setTenant() throws Exception {
+        // The 'resourcerefs' tenant enables the RESOURCE_REFS queries
+        FHIRRequestContext.get().setTenantId("resourcerefs");
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void resetTenant() throws Exception {
+        FHIRRequestContext.get().setTenantId("default");
+    }
+
+    /**
+     * This test creates an Observation which references a Patient that doesn't exist yet, and then creates that
+     * Patient with an update. The reference is resolved when the Patient is created, so a chained search finds it.
+     * @throws Exception
+     */
+    @Test
+    public void testChainedReferenceCreatedBeforeTarget() throws Exception {
+        Observation observation = TestUtil.readExampleResource("json/ibm/minimal/Observation-1.json");
+        Patient patient = TestUtil.readExampleResource("json/ibm/minimal/Patient-1.json");
+        String patientId = UUID.randomUUID().toString();
+
+        observation = observation.toBuilder().subject(reference("Patient/" + patientId)).build();
+        observation = persistence.create(getDefaultPersistenceContext(), observation).getResource();
+        assertEquals(runQueryTest(Observation.class, "patient:Patient._id", patientId).size(), 0);
+
+        patient = patient.toBuilder().id(patientId).build();
+        persistence.update(getDefaultPersistenceContext(), patientId, patient);
+
+        List<Resource> results = runQueryTest(Observation.class, "patient:Patient._id", patientId);
+        assertEquals(results.size(), 1);
+        assertEquals(results.get(0).getId(), observation.getId());
+    }
+
+    /**
+     * This test chains an Observation to a Patient through an Encounter, where both references are written before
+     * their target exists.
+     * @throws Exception
+     */
+    @Test
+    public void testChainedReferenceTwoLinks() throws Exception {
+        Observation observation = TestUtil.readExampleResource("json/ibm/minimal/Observation-1.json");
+        Encounter encounter = TestUtil.readExampleResource("json/ibm/minimal/Encounter-1.json");
+        Patient patient = TestUtil.readExampleResource("json/ibm/minimal/Patient-1.json");
+        String encounterId = UUID.randomUUID().toString();
+        String patientId = UUID.randomUUID().toString();
+
+        observation = observation.toBuilder().encounter(reference("Encounter/" + encounterId)).build();
+        observation = persistence.create(getDefaultPersistenceContext(), observation).getResource();
+        encounter = encounter.toBuilder().id(encounterId).subject(reference("Patient/" + patientId)).build();
+        persistence.update(getDefaultPersistenceContext(), encounterId, encounter);
+        patient = patient.toBuilder().id(patientId).build();
+        persistence.update(getDefaultPersistenceContext(), patientId, patient);
+
+        List<Resource> results = runQueryTest(Observation.class, "encounter:Encounter.patient:Patient._id", patientId);
+        assertEquals(results.size(), 1);
+        assertEquals(results.get(0).getId(), observation.getId());
+    }
+
+    /**
+     * This test references a Patient that doesn't exist yet from two versions of an Observation and from another
+     * Observation. Only one PENDING_RESOURCE_REFS row is written for them, and it is deleted when the Patient is
+     * created.
+     * @throws Exception
+     */
+    @Test
+    public void testPendingReferenceWrittenOnce() throws Exception {
+        Observation observation = TestUtil.readExampleResource("json/ibm/minimal/Observation-1.json");
+        Patient patient = TestUtil.readExampleResource("json/ibm/minimal/Patient-1.json");
+        String patientId = UUID.randomUUID().toString();
+
+        observation = observation.toBuilder().subject(reference("Patient/" + patientId)).build();
+        Observation savedObservation = persistence.create(getDefaultPersistenceContext(), observation).getResource();
+        persistence.update(getDefaultPersistenceContext(), savedObservation.getId(), savedObservation);
+        persistence.create(getDefaultPersistenceContext(), observation);
+        assertEquals(countPendingReferences(patientId), 1);
+
+        patient = patient.toBuilder().id(patientId).build();
+        persistence.update(getDefaultPersistenceContext(), patientId, patient);
+        assertEquals(countPendingReferences(patientId), 0);
+    }
+
+    private int countPendingReferences(String logicalId) throws SQLException {
+        final String sql = "SELECT COUNT(*) FROM " + testProps.getProperty("schemaName", "FHIRDATA")
+                + ".PENDING_RESOURCE_REFS WHERE REF_LOGICAL_ID = ?";
+        try (Connection c = connectionPool.getConnection(); PreparedStatement stmt = c.prepareStatement(sql)) {
+            stmt.setString(1, logicalId);
+            ResultSet rs = stmt.executeQuery();
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private Reference reference(String reference) {
+        return Reference.builder().reference(string(reference)).build();
+    }
+}
@@ -17,10 +17,10 @@ import com.ibm.fhir.persistence.jdbc.test.util.DerbyInitializer;
 import com.ibm.fhir.persistence.test.common.AbstractIncludeRevincludeTest;
 
 public class JDBCIncludeRevincludeTest extends AbstractIncludeRevincludeTest {
-    private Properties testProps;
+    protected Properties testProps;
 
     // The connection pool wrapping the Derby test database
-    private PoolConnectionProvider connectionPool;
+    protected PoolConnectionProvider connectionPool;
 
     public JDBCIncludeRevincludeTest() throws Exception {
         this.testProps = TestUtil.readTestProperties("test.jdbc.properties");
@@ -6,19 +6,50 @@
 
 package com.ibm.fhir.persistence.jdbc.test;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TimeZone;
 import java.util.logging.Logger;
 
+import org.testng.annotations.Test;
+
 import com.ibm.fhir.database.utils.api.IConnectionProvider;
 import com.ibm.fhir.database.utils.derby.DerbyMaster;
+import com.ibm.fhir.database.utils.model.DbType;
 import com.ibm.fhir.database.utils.pool.PoolConnectionProvider;
+import com.ibm.fhir.model.resource.Basic;
+import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.Coding;
+import com.ibm.fhir.model.type.Meta;
 import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.MultiResourceResult;
+import com.ibm.fhir.persistence.jdbc.JDBCConstants;
+import com.ibm.fhir.persistence.jdbc.connection.FHIRDbFlavorImpl;
+import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
+import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDAO;
 import com.ibm.fhir.persistence.jdbc.impl.FHIRPersistenceJDBCImpl;
 import com.ibm.fhir.persistence.jdbc.test.util.DerbyInitializer;
+import com.ibm.fhir.persistence.jdbc.util.JDBCQueryBuilder;
+import com.ibm.fhir.persistence.jdbc.util.SqlQueryData;
 import com.ibm.fhir.persistence.test.common.AbstractPagingTest;
+import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.util.SearchUtil;
 
 
 public class JDBCPagingTest extends AbstractPagingTest {
@@ -69,4 +100,148 @@ public class JDBCPagingTest extends AbstractPagingTest {
             logger.severe("dumpLockInfo - connection failure: " + x.getMessage());
         }
     }
+
+    /**
+     * A ParameterDAO for building queries against Derby which counts the ids it is asked to read
+     * and doesn't find any of them.
+     */
+    private ParameterDAO countingParameterDao(Map<String, Integer> calls) {
+        return (ParameterDAO) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ParameterDAO.class },
+            (proxy, method, args) -> {
+                calls.merge(method.getName(), 1, Integer::sum);
+                return "isDb2Database".equals(method.getName()) ? false : null;
+            });
+    }
+
+    private ResourceDAO derbyResourceDao() {
+        return (ResourceDAO) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ResourceDAO.class },
+            (proxy, method, args) -> {
+                if ("getFlavor".equals(method.getName())) {
+                    return new FHIRDbFlavorImpl(DbType.DERBY, false);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+    }
+
+    @Test
+    public void testCorrectedPageNumber() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_sort", Collections.singletonList("integer"));
+        queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+        queryParameters.put("_page", Collections.singletonList("3"));
+        List<Resource> lastPage = runQueryTest(Basic.class, queryParameters, 1);
+        assertEquals(lastPage.size(), 1);
+
+        // The page number is corrected to the last page after the count, and the page query returns that page
+        queryParameters.put("_page", Collections.singletonList("4"));
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        searchContext.setLenient(true);
+        MultiResourceResult<Resource> result = runQueryTest(searchContext, Basic.class, queryParameters, 1);
+        assertTrue(result.isSuccess());
+        assertEquals(searchContext.getPageNumber(), 3);
+        assertEquals(result.getResource().size(), 1);
+        assertEquals(result.getResource().get(0).getId(), lastPage.get(0).getId());
+    }
+
+    @Test
+    public void testReusedQueryUsesCorrectedPageNumber() throws Exception {
+        // The code system isn't stored, so it is read each time the search parameter is processed
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_tag", Collections.singletonList("http://example.org/paging-reuse|pagingTest"));
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        searchContext.setPageSize(1);
+        searchContext.setPageNumber(4);
+
+        Map<String, Integer> calls = new HashMap<>();
+        JDBCQueryBuilder queryBuilder = new JDBCQueryBuilder(countingParameterDao(calls), derbyResourceDao(), null);
+        assertTrue(queryBuilder.buildCountQuery(Basic.class, searchContext) != null);
+        assertEquals(calls.get("readCodeSystemId"), Integer.valueOf(1));
+
+        // The page query reuses the query segments of the count query, moved to the corrected page
+        searchContext.setPageNumber(3);
+        SqlQueryData query = queryBuilder.buildQuery(Basic.class, searchContext);
+        assertTrue(query.getQueryString().contains(" OFFSET 2 ROWS FETCH NEXT 1 ROWS ONLY"), query.getQueryString());
+
+        searchContext.setPageNumber(1);
+        query = queryBuilder.buildQuery(Basic.class, searchContext);
+        assertTrue(query.getQueryString().contains(" OFFSET 0 ROWS FETCH NEXT 1 ROWS ONLY"), query.getQueryString());
+        assertEquals(calls.get("readCodeSystemId"), Integer.valueOf(1));
+    }
+
+    /**
+     * LAST_UPDATED holds UTC. On a server in America/New_York, 2020-03-08T02:30 falls in the local DST gap, so a
+     * keyset read in the default time zone would move an hour ahead and skip the resource updated at 03:00.
+     */
+    @Test
+    public void testKeysetPagingNonUtcTimeZone() throws Exception {
+        // a distinct tag per run, so that the resources created by previous runs are not paged through too
+        String tag = "pagingDstTest-" + System.currentTimeMillis();
+        Basic resource = TestUtil.readExampleResource("json/ibm/minimal/Basic-1.json");
+        Basic.Builder builder = resource.toBuilder().meta(Meta.builder()
+                .tag(Coding.builder().code(Code.of(tag)).build())
+                .build());
+        String[] lastUpdated = { "2020-03-08T01:00:00Z", "2020-03-08T02:30:00Z", "2020-03-08T03:00:00Z" };
+        List<String> expected = new ArrayList<>();
+        for (String value : lastUpdated) {
+            Basic saved = persistence.create(getDefaultPersistenceContext(), builder.build()).getResource();
+            setLastUpdated(saved.getId(), Instant.parse(value));
+            expected.add(saved.getId());
+        }
+
+        TimeZone defaultTimeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+        try {
+            Map<String, List<String>> queryParameters = new HashMap<>();
+            queryParameters.put("_tag", Collections.singletonList(tag));
+            FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+            searchContext.setKeysetPaging(true);
+            searchContext.setPageSize(1);
+
+            List<String> ids = new ArrayList<>();
+            List<Resource> results;
+            do {
+                results = persistence.search(getPersistenceContextForSearch(searchContext), Basic.class).getResource();
+                results.forEach(r -> ids.add(r.getId()));
+            } while (!results.isEmpty());
+            assertEquals(ids, expected);
+        } finally {
+            TimeZone.setDefault(defaultTimeZone);
+        }
+    }
+
+    private void setLastUpdated(String logicalId, Instant lastUpdated) throws SQLException {
+        final String sql = "UPDATE " + testProps.getProperty("schemaName", "FHIRDATA") + ".Basic_RESOURCES SET LAST_UPDATED = ?"
+                + " WHERE RESOURCE_ID = (SELECT CURRENT_RESOURCE_ID FROM " + testProps.getProperty("schemaName", "FHIRDATA")
+                + ".Basic_LOGICAL_RESOURCES WHERE LOGICAL_ID = ?)";
+        try (Connection c = connectionPool.getConnection(); PreparedStatement stmt = c.prepareStatement(sql)) {
+            stmt.setTimestamp(1, Timestamp.from(lastUpdated), JDBCConstants.UTC);
+            stmt.setString(2, logicalId);
+            assertEquals(stmt.executeUpdate(), 1);
+        }
+    }
+
+    @Test
+    public void testKeysetQueryIsRebuilt() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_tag", Collections.singletonList("http://example.org/paging-reuse|pagingTest"));
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        searchContext.setKeysetPaging(true);
+        searchContext.setPageSize(1);
+
+        Map<String, Integer> calls = new HashMap<>();
+        JDBCQueryBuilder queryBuilder = new JDBCQueryBuilder(countingParameterDao(calls), derbyResourceDao(), null);
+        SqlQueryData firstPage = queryBuilder.buildQuery(Basic.class, searchContext);
+        int numOfBindVariables = firstPage.getBindVariables().size();
+
+        // The query of the next page is built again, starting after the keyset of the previous page
+        Instant lastUpdated = Instant.parse("2020-01-01T00:00:00Z");
+        searchContext.setKeyset(lastUpdated, 42L);
+        SqlQueryData nextPage = queryBuilder.buildQuery(Basic.class, searchContext);
+        assertEquals(calls.get("readCodeSystemId"), Integer.valueOf(2));
+        assertFalse(nextPage.getQueryString().equals(firstPage.getQueryString()));
+        List<? extends Object> bindVariables = nextPage.getBindVariables();
+        assertEquals(bindVariables.size(), numOfBindVariables + 3);
+        assertEquals(bindVariables.get(numOfBindVariables), Timestamp.from(lastUpdated));
+        assertEquals(bindVariables.get(numOfBindVariables + 2), 42L);
+    }
 }
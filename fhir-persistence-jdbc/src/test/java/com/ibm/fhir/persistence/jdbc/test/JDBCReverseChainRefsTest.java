@@ -0,0 +1,34 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+
+/**
+ * Runs the reverse chained searches of {@link JDBCReverseChainTest} with fhirServer/search/useResourceRefs enabled,
+ * so the _has parameters join the RESOURCE_REFS tables on the resolved ids of the referenced resources.
+ */
+public class JDBCReverseChainRefsTest extends JDBCReverseChainTest {
+
+    public JDBCReverseChainRefsTest() throws Exception {
+        super();
+    }
+
+    @BeforeClass(alwaysRun = true)
+    public void setTenant() throws Exception {
+        // The 'resourcerefs' tenant enables the RESOURCE_REFS queries
+        FHIRRequestContext.get().setTenantId("resourcerefs");
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void resetTenant() throws Exception {
+        FHIRRequestContext.get().setTenantId("default");
+    }
+}
@@ -7,9 +7,11 @@
 package com.ibm.fhir.persistence.jdbc.test.util;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -26,6 +28,7 @@ import com.ibm.fhir.search.location.bounding.Bounding;
 import com.ibm.fhir.search.location.bounding.BoundingBox;
 import com.ibm.fhir.search.location.bounding.BoundingMissing;
 import com.ibm.fhir.search.location.bounding.BoundingRadius;
+import com.ibm.fhir.search.location.util.Geohash;
 
 public class LocationParmBehaviorUtilTest {
     private static final Logger log = java.util.logging.Logger.getLogger(LocationParmBehaviorUtilTest.class.getName());
@@ -242,4 +245,62 @@ public class LocationParmBehaviorUtilTest {
         BoundingMissing boundingMissing = new BoundingMissing();
         runTestBoundingMissing(expectedSql, boundingMissing);
     }
+
+    @Test
+    public void testBoundingGeohashCover() throws FHIRPersistenceException {
+        BoundingBox boundingBox =
+                BoundingBox.builder().maxLatitude(42.7).minLatitude(42.5).maxLongitude(-5.5).minLongitude(-5.7)
+                        .build();
+
+        StringBuilder actualWhereClauseSegment = new StringBuilder();
+        List<Object> actualBindVariables = new ArrayList<>();
+        LocationParmBehaviorUtil util = new LocationParmBehaviorUtil(true);
+        util.buildQueryForGeohashCover(actualWhereClauseSegment, actualBindVariables, boundingBox,
+                JDBCConstants.PARAMETER_TABLE_ALIAS);
+
+        if (log.isLoggable(LOG_LEVEL)) {
+            log.info("whereClauseSegment -> " + actualWhereClauseSegment.toString());
+            log.info("bind variables -> " + actualBindVariables);
+        }
+        String range = "(pX.GEOHASH_VALUE >= ? AND pX.GEOHASH_VALUE <= ?)";
+        int numOfRanges = actualBindVariables.size() / 2;
+        assertTrue(numOfRanges > 0 && numOfRanges <= Geohash.DEFAULT_MAX_CELLS);
+        assertEquals(actualWhereClauseSegment.toString(),
+                "(" + String.join(" OR ", Collections.nCopies(numOfRanges, range)) + ") AND ");
+
+        // every position within the box is within one of the ranges
+        for (double lat = 42.5; lat <= 42.7; lat += 0.05) {
+            for (double lon = -5.7; lon <= -5.5; lon += 0.05) {
+                String hash = Geohash.encode(lat, lon, Geohash.MAX_PRECISION);
+                boolean found = false;
+                for (int i = 0; i < actualBindVariables.size(); i += 2) {
+                    found |= hash.compareTo((String) actualBindVariables.get(i)) >= 0
+                            && hash.compareTo((String) actualBindVariables.get(i + 1)) <= 0;
+                }
+                assertTrue(found, hash);
+            }
+        }
+    }
+
+    @Test
+    public void testBoundingGeohashCoverTooLarge() throws FHIRPersistenceException {
+        BoundingBox boundingBox =
+                BoundingBox.builder().maxLatitude(90.0).minLatitude(-90.0).maxLongitude(180.0).minLongitude(-180.0)
+                        .build();
+        List<Object> expectedBindVariables = new ArrayList<>();
+        expectedBindVariables.add(new Double(-90.0));
+        expectedBindVariables.add(new Double(90.0));
+        expectedBindVariables.add(new Double(-180.0));
+        expectedBindVariables.add(new Double(180.0));
+
+        // the area needs too many cells, so only the latitude and longitude predicates are used
+        StringBuilder actualWhereClauseSegment = new StringBuilder();
+        List<Object> actualBindVariables = new ArrayList<>();
+        LocationParmBehaviorUtil util = new LocationParmBehaviorUtil(true);
+        util.buildLocationSearchQuery("(P1.PARAMETER_NAME_ID = x AND", actualWhereClauseSegment,
+                actualBindVariables, Arrays.asList(boundingBox), JDBCConstants.PARAMETER_TABLE_ALIAS);
+        assertEquals(actualWhereClauseSegment.toString(),
+                "(P1.PARAMETER_NAME_ID = x AND AND  (pX.LATITUDE_VALUE >= ? AND pX.LATITUDE_VALUE <= ? AND pX.LONGITUDE_VALUE >= ? AND pX.LONGITUDE_VALUE <= ?))");
+        assertEquals(actualBindVariables, expectedBindVariables);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,152 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.transaction.Status;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.persistence.interceptor.FHIRPersistenceEvent;
+import com.ibm.fhir.persistence.jdbc.util.SearchResultCache;
+import com.ibm.fhir.persistence.jdbc.util.SearchResultCacheInterceptor;
+import com.ibm.fhir.persistence.jdbc.util.SearchResultCacheInvalidator;
+import com.ibm.fhir.search.SearchConstants.Type;
+import com.ibm.fhir.search.context.impl.FHIRSearchContextImpl;
+import com.ibm.fhir.search.parameters.QueryParameter;
+import com.ibm.fhir.search.parameters.QueryParameterValue;
+
+/**
+ * Tests the SearchResultCache
+ */
+public class SearchResultCacheTest {
+
+    @AfterMethod
+    public void clear() {
+        SearchResultCache.clear();
+    }
+
+    @Test
+    public void testCacheKeyParameterOrder() {
+        FHIRSearchContextImpl context1 = new FHIRSearchContextImpl();
+        context1.setSearchParameters(Arrays.asList(stringParameter("name", "a"), stringParameter("address", "b")));
+        FHIRSearchContextImpl context2 = new FHIRSearchContextImpl();
+        context2.setSearchParameters(Arrays.asList(stringParameter("address", "b"), stringParameter("name", "a")));
+
+        assertEquals(SearchResultCache.buildCacheKey("default~default|Patient", context1),
+                SearchResultCache.buildCacheKey("default~default|Patient", context2));
+    }
+
+    @Test
+    public void testCacheKeyDateBounds() {
+        // 2019 and 2019-01-01 share the lower bound, but not the upper bound
+        QueryParameterValue year = new QueryParameterValue();
+        year.setValueDateLowerBound(Instant.parse("2019-01-01T00:00:00Z"));
+        year.setValueDateUpperBound(Instant.parse("2019-12-31T23:59:59.999999Z"));
+        QueryParameterValue day = new QueryParameterValue();
+        day.setValueDateLowerBound(Instant.parse("2019-01-01T00:00:00Z"));
+        day.setValueDateUpperBound(Instant.parse("2019-01-01T23:59:59.999999Z"));
+
+        FHIRSearchContextImpl context1 = new FHIRSearchContextImpl();
+        context1.setSearchParameters(Collections.singletonList(
+                new QueryParameter(Type.DATE, "birthdate", null, null, Collections.singletonList(year))));
+        FHIRSearchContextImpl context2 = new FHIRSearchContextImpl();
+        context2.setSearchParameters(Collections.singletonList(
+                new QueryParameter(Type.DATE, "birthdate", null, null, Collections.singletonList(day))));
+
+        assertNotEquals(SearchResultCache.buildCacheKey("default~default|Patient", context1),
+                SearchResultCache.buildCacheKey("default~default|Patient", context2));
+    }
+
+    @Test
+    public void testCacheKeyPage() {
+        FHIRSearchContextImpl context1 = new FHIRSearchContextImpl();
+        FHIRSearchContextImpl context2 = new FHIRSearchContextImpl();
+        context2.setPageNumber(2);
+
+        assertNotEquals(SearchResultCache.buildCacheKey("default~default|Patient", context1),
+                SearchResultCache.buildCacheKey("default~default|Patient", context2));
+    }
+
+    @Test
+    public void testPutGet() {
+        String key = "default~default|Practitioner|active=true";
+        long generation = SearchResultCache.getGeneration("Practitioner");
+        SearchResultCache.put(key, "Practitioner", generation, 3, Arrays.asList(1L, 2L, 3L));
+
+        SearchResultCache.Entry entry = SearchResultCache.get(key);
+        assertNotNull(entry);
+        assertEquals(entry.getCount(), 3);
+        assertEquals(entry.getIds(), Arrays.asList(1L, 2L, 3L));
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        String practitionerKey = "default~default|Practitioner|active=true";
+        String organizationKey = "default~default|Organization|type=prov";
+        SearchResultCache.put(practitionerKey, "Practitioner", SearchResultCache.getGeneration("Practitioner"), 1,
+                Arrays.asList(1L));
+        SearchResultCache.put(organizationKey, "Organization", SearchResultCache.getGeneration("Organization"), 1,
+                Arrays.asList(2L));
+
+        new SearchResultCacheInterceptor().afterUpdate(event("Practitioner"));
+        assertNull(SearchResultCache.get(practitionerKey));
+        assertNotNull(SearchResultCache.get(organizationKey));
+
+        new SearchResultCacheInterceptor().afterDelete(event("Organization"));
+        assertNull(SearchResultCache.get(organizationKey));
+    }
+
+    @Test
+    public void testInvalidatedWhileSearching() throws Exception {
+        String key = "default~default|Practitioner|active=true";
+        long generation = SearchResultCache.getGeneration("Practitioner");
+
+        new SearchResultCacheInterceptor().afterCreate(event("Practitioner"));
+        SearchResultCache.put(key, "Practitioner", generation, 1, Arrays.asList(1L));
+        assertNull(SearchResultCache.get(key));
+    }
+
+    @Test
+    public void testInvalidatedAfterCompletion() throws Exception {
+        // A search which runs between the write and the commit caches the results read before the commit
+        String key = "default~default|Practitioner|active=true";
+        new SearchResultCacheInterceptor().afterUpdate(event("Practitioner"));
+        SearchResultCache.put(key, "Practitioner", SearchResultCache.getGeneration("Practitioner"), 1,
+                Arrays.asList(1L));
+        assertNotNull(SearchResultCache.get(key));
+
+        new SearchResultCacheInvalidator(SearchResultCache.getCacheNameForTenantResourceType("Practitioner"))
+                .afterCompletion(Status.STATUS_COMMITTED);
+        assertNull(SearchResultCache.get(key));
+    }
+
+    private static QueryParameter stringParameter(String code, String value) {
+        QueryParameterValue parameterValue = new QueryParameterValue();
+        parameterValue.setValueString(value);
+        List<QueryParameterValue> values = Collections.singletonList(parameterValue);
+        return new QueryParameter(Type.STRING, code, null, null, values);
+    }
+
+    private static FHIRPersistenceEvent event(String resourceType) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(FHIRPersistenceEvent.PROPNAME_RESOURCE_TYPE, resourceType);
+        return new FHIRPersistenceEvent(null, properties);
+    }
+}
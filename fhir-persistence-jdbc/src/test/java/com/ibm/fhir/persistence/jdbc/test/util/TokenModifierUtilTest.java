@@ -0,0 +1,92 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceNotSupportedException;
+import com.ibm.fhir.persistence.jdbc.util.TokenModifierUtil;
+import com.ibm.fhir.search.SearchConstants.Modifier;
+import com.ibm.fhir.search.parameters.QueryParameterValue;
+
+public class TokenModifierUtilTest {
+    private static final String ENTITY_STATUS = "http://terminology.hl7.org/CodeSystem/v3-EntityStatus";
+
+    private static QueryParameterValue value(String system, String code) {
+        QueryParameterValue value = new QueryParameterValue();
+        value.setValueSystem(system);
+        value.setValueCode(code);
+        return value;
+    }
+
+    private static Set<String> codes(String... codes) {
+        return new TreeSet<>(Arrays.asList(codes));
+    }
+
+    @Test
+    public void testIn() throws Exception {
+        Map<String, Set<String>> expansion = TokenModifierUtil.expand(Modifier.IN,
+                Collections.singletonList(value(null, "http://hl7.org/fhir/ValueSet/administrative-gender")));
+        assertEquals(expansion.size(), 1);
+        assertEquals(expansion.get("http://hl7.org/fhir/administrative-gender"), codes("male", "female", "other", "unknown"));
+
+        // The token parser splits the version off the canonical url
+        expansion = TokenModifierUtil.expand(Modifier.NOT_IN,
+                Collections.singletonList(value("http://hl7.org/fhir/ValueSet/administrative-gender", "4.0.1")));
+        assertEquals(expansion.get("http://hl7.org/fhir/administrative-gender").size(), 4);
+    }
+
+    @Test
+    public void testBelow() throws Exception {
+        Map<String, Set<String>> expansion = TokenModifierUtil.expand(Modifier.BELOW,
+                Collections.singletonList(value(ENTITY_STATUS, "normal")));
+        assertEquals(expansion, Collections.singletonMap(ENTITY_STATUS, codes("normal", "active", "inactive", "terminated")));
+
+        expansion = TokenModifierUtil.expand(Modifier.BELOW, Collections.singletonList(value(ENTITY_STATUS, "active")));
+        assertEquals(expansion, Collections.singletonMap(ENTITY_STATUS, codes("active")));
+    }
+
+    @Test
+    public void testAbove() throws Exception {
+        List<QueryParameterValue> values = Arrays.asList(value(ENTITY_STATUS, "terminated"), value(ENTITY_STATUS, "nullified"));
+        Map<String, Set<String>> expansion = TokenModifierUtil.expand(Modifier.ABOVE, values);
+        assertEquals(expansion, Collections.singletonMap(ENTITY_STATUS, codes("terminated", "normal", "nullified")));
+    }
+
+    @Test
+    public void testUnknownCode() throws Exception {
+        Map<String, Set<String>> expansion = TokenModifierUtil.expand(Modifier.BELOW,
+                Collections.singletonList(value(ENTITY_STATUS, "unknown-code")));
+        assertTrue(expansion.isEmpty());
+    }
+
+    @Test(expectedExceptions = FHIRPersistenceException.class)
+    public void testUnknownValueSet() throws Exception {
+        TokenModifierUtil.expand(Modifier.IN, Collections.singletonList(value(null, "http://example.org/ValueSet/unknown")));
+    }
+
+    @Test(expectedExceptions = FHIRPersistenceException.class)
+    public void testBelowWithoutSystem() throws Exception {
+        TokenModifierUtil.expand(Modifier.BELOW, Collections.singletonList(value(null, "normal")));
+    }
+
+    @Test(expectedExceptions = FHIRPersistenceNotSupportedException.class)
+    public void testBelowUnknownCodeSystem() throws Exception {
+        TokenModifierUtil.expand(Modifier.BELOW, Collections.singletonList(value("http://example.org/codesystem", "code")));
+    }
+}
@@ -9,6 +9,8 @@ package com.ibm.fhir.schema.control;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.CODE;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.CODE_SYSTEMS;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.CODE_SYSTEM_ID;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.COMPARTMENT_LOGICAL_ID;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.COMPARTMENT_TYPE_ID;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.CURRENT_ALLERGIES_LIST;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.CURRENT_DRUG_ALLERGIES_LIST;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.CURRENT_MEDICATIONS_LIST;
@@ -19,6 +21,8 @@ import static com.ibm.fhir.schema.control.FhirSchemaConstants.DATE_END;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.DATE_START;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.DATE_VALUE_DROPPED_COLUMN;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.FK;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.GEOHASH_VALUE;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.GEOHASH_VALUE_BYTES;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.IDX;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.IS_DELETED;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.ITEM_LOGICAL_ID;
@@ -45,6 +49,9 @@ import static com.ibm.fhir.schema.control.FhirSchemaConstants.QUANTITY_VALUE;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.QUANTITY_VALUE_HIGH;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.QUANTITY_VALUE_LOW;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_ID;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.REF_LOGICAL_ID;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.REF_LOGICAL_RESOURCE_ID;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.REF_RESOURCE_TYPE_ID;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_TYPES;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_TYPE_ID;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.STR_VALUE;
@@ -144,6 +151,8 @@ public class FhirResourceTableGroup {
      * <li>patient_number_values
      * <li>patient_latlng_values
      * <li>patient_quantity_values
+     * <li>patient_resource_refs
+     * <li>patient_compartments
      * </ul>
      * @param resourceTypeName
      */
@@ -163,6 +172,8 @@ public class FhirResourceTableGroup {
         addLatLngValues(group, tablePrefix);
         addQuantityValues(group, tablePrefix);
         addComposites(group, tablePrefix);
+        addResourceRefs(group, tablePrefix);
+        addCompartments(group, tablePrefix);
 
         // group all the tables under one object so that we can perform everything within one
         // transaction. This helps to eliminate deadlocks when adding the FK constraints due to
@@ -525,12 +536,14 @@ CREATE TABLE device_latlng_values  (
   parameter_name_id   INT NOT NULL,
   latitude_value      DOUBLE,
   longitude_value     DOUBLE,
-  resource_id         BIGINT NOT NULL
+  resource_id         BIGINT NOT NULL,
+  geohash_value       VARCHAR(12 OCTETS)
 )
 CREATE INDEX idx_device_latlng_values_pnnlv ON device_latlng_values(parameter_name_id, latitude_value, resource_id);
 CREATE INDEX idx_device_latlng_values_pnnhv ON device_latlng_values(parameter_name_id, longitude_value, resource_id);
 CREATE INDEX idx_device_latlng_values_rplat ON device_latlng_values(resource_id, parameter_name_id, latitude_value);
 CREATE INDEX idx_device_latlng_values_rplng ON device_latlng_values(resource_id, parameter_name_id, longitude_value);
+CREATE INDEX idx_device_latlng_values_pghr  ON device_latlng_values(parameter_name_id, geohash_value, resource_id);
 ALTER TABLE device_latlng_values ADD CONSTRAINT fk_device_latlng_values_pn FOREIGN KEY (parameter_name_id) REFERENCES parameter_names;
 ALTER TABLE device_latlng_values ADD CONSTRAINT fk_device_latlng_values_r  FOREIGN KEY (resource_id)       REFERENCES device_resources;
      * </pre>
@@ -542,6 +555,7 @@ ALTER TABLE device_latlng_values ADD CONSTRAINT fk_device_latlng_values_r  FOREI
         final String logicalResourcesTable = prefix + _LOGICAL_RESOURCES;
 
         Table tbl = Table.builder(schemaName, tableName)
+                .setVersion(FhirSchemaVersion.V0007.vid())
                 .addTag(FhirSchemaTags.RESOURCE_TYPE, prefix)
                 .setTenantColumnName(MT_ID)
                 .addBigIntColumn(             ROW_ID,      false)
@@ -549,6 +563,7 @@ ALTER TABLE device_latlng_values ADD CONSTRAINT fk_device_latlng_values_r  FOREI
                 .addDoubleColumn(     LATITUDE_VALUE,       true)
                 .addDoubleColumn(    LONGITUDE_VALUE,       true)
                 .addBigIntColumn(LOGICAL_RESOURCE_ID,      false)
+                .addVarcharColumn(     GEOHASH_VALUE, GEOHASH_VALUE_BYTES, true)
                 .addIndex(IDX + tableName + "_PNNLV", PARAMETER_NAME_ID, LATITUDE_VALUE, LOGICAL_RESOURCE_ID)
                 .addIndex(IDX + tableName + "_PNNHV", PARAMETER_NAME_ID, LONGITUDE_VALUE, LOGICAL_RESOURCE_ID)
                 .addIndex(IDX + tableName + "_RPLAT", LOGICAL_RESOURCE_ID, PARAMETER_NAME_ID, LATITUDE_VALUE)
@@ -560,6 +575,18 @@ ALTER TABLE device_latlng_values ADD CONSTRAINT fk_device_latlng_values_r  FOREI
                 .setTablespace(fhirTablespace)
                 .addPrivileges(resourceTablePrivileges)
                 .enableAccessControl(this.sessionVariable)
+                .addMigration(priorVersion -> {
+                    List<IDatabaseStatement> statements = new ArrayList<>();
+                    if (priorVersion < FhirSchemaVersion.V0007.vid()) {
+                        List<ColumnBase> columns = new ColumnDefBuilder()
+                                .addVarcharColumn(GEOHASH_VALUE, GEOHASH_VALUE_BYTES, true)
+                                .buildColumns();
+                        for (ColumnBase column : columns) {
+                            statements.add(new AddColumn(schemaName, tableName, column));
+                        }
+                    }
+                    return statements;
+                })
                 .build(model)
                 ;
 
@@ -570,6 +597,21 @@ ALTER TABLE device_latlng_values ADD CONSTRAINT fk_device_latlng_values_r  FOREI
         AlterTableIdentityCache alterTable = new AlterTableIdentityCache(schemaName, tableName, ROW_ID, FhirSchemaConstants.FHIR_IDENTITY_SEQUENCE_CACHE, FhirSchemaVersion.V0004.vid());
         alterTable.addDependency(tbl); // Depends on the CREATE TABLE, which obviously must be executed first
         group.add(alterTable);
+
+        // Near searches are narrowed to the geohash cells covering the bounding area, one index range per cell
+        CreateIndex idxGeohash = CreateIndex.builder()
+                .setTenantColumnName(MT_ID)
+                .setSchemaName(schemaName)
+                .setTableName(tableName)
+                .setIndexName(IDX + tableName + "_PGHR")
+                .setUnique(false)
+                .setVersion(FhirSchemaVersion.V0007.vid())
+                .addColumn(PARAMETER_NAME_ID)
+                .addColumn(GEOHASH_VALUE)
+                .addColumn(LOGICAL_RESOURCE_ID)
+                .build();
+        idxGeohash.addDependency(tbl); // dependency to the table on which the index applies
+        group.add(idxGeohash);
     }
 
     /**
@@ -740,6 +782,104 @@ ALTER TABLE device_composites ADD CONSTRAINT fk_device_composites_r  FOREIGN KEY
         model.addTable(composites);
     }
 
+    /**
+     * Add the RESOURCE_REFS table for the given resource name prefix. Each reference search parameter
+     * value of the form [type]/[id] is stored here in addition to the STR_VALUES table, together with
+     * the LOGICAL_RESOURCE_ID of its target. The target id is resolved when the parameter is written
+     * or, if the target doesn't exist yet, when the target is created (see PENDING_RESOURCE_REFS). This
+     * lets chained searches and _revinclude join on integers instead of on the string values.
+     * <pre>
+CREATE TABLE device_resource_refs (
+  parameter_name_id           INT NOT NULL,
+  logical_resource_id      BIGINT NOT NULL,
+  ref_resource_type_id        INT NOT NULL,
+  ref_logical_id          VARCHAR(255 OCTETS) NOT NULL,
+  ref_logical_resource_id  BIGINT
+)
+;
+
+CREATE INDEX idx_device_resource_refs_prl ON device_resource_refs(parameter_name_id, ref_logical_resource_id, logical_resource_id);
+CREATE INDEX idx_device_resource_refs_rpr ON device_resource_refs(logical_resource_id, parameter_name_id, ref_logical_resource_id);
+CREATE INDEX idx_device_resource_refs_tlr ON device_resource_refs(ref_resource_type_id, ref_logical_resource_id, ref_logical_id);
+     * </pre>
+     * @param group
+     * @param prefix
+     */
+    public void addResourceRefs(List<IDatabaseObject> group, String prefix) {
+        final int lib = LOGICAL_ID_BYTES;
+        final String tableName = prefix + "_RESOURCE_REFS";
+        final String logicalResourcesTable = prefix + _LOGICAL_RESOURCES;
+
+        Table tbl = Table.builder(schemaName, tableName)
+                .setVersion(FhirSchemaVersion.V0006.vid())
+                .addTag(FhirSchemaTags.RESOURCE_TYPE, prefix)
+                .setTenantColumnName(MT_ID)
+                .addIntColumn(         PARAMETER_NAME_ID,      false)
+                .addBigIntColumn(    LOGICAL_RESOURCE_ID,      false)
+                .addIntColumn(      REF_RESOURCE_TYPE_ID,      false)
+                .addVarcharColumn(        REF_LOGICAL_ID, lib, false)
+                .addBigIntColumn(REF_LOGICAL_RESOURCE_ID,       true)
+                .addIndex(IDX + tableName + "_PRL", PARAMETER_NAME_ID, REF_LOGICAL_RESOURCE_ID, LOGICAL_RESOURCE_ID)
+                .addIndex(IDX + tableName + "_RPR", LOGICAL_RESOURCE_ID, PARAMETER_NAME_ID, REF_LOGICAL_RESOURCE_ID)
+                .addIndex(IDX + tableName + "_TLR", REF_RESOURCE_TYPE_ID, REF_LOGICAL_RESOURCE_ID, REF_LOGICAL_ID)
+                .addForeignKeyConstraint(FK + tableName + "_PNID", schemaName, PARAMETER_NAMES, PARAMETER_NAME_ID)
+                .addForeignKeyConstraint(FK + tableName + "_RID", schemaName, logicalResourcesTable, LOGICAL_RESOURCE_ID)
+                .addForeignKeyConstraint(FK + tableName + "_RTID", schemaName, RESOURCE_TYPES, REF_RESOURCE_TYPE_ID)
+                .setTablespace(fhirTablespace)
+                .addPrivileges(resourceTablePrivileges)
+                .enableAccessControl(this.sessionVariable)
+                .build(model)
+                ;
+
+        group.add(tbl);
+        model.addTable(tbl);
+    }
+
+    /**
+     * Add the COMPARTMENTS table for the given resource name prefix. A row is written for each compartment
+     * the resource is a member of, that is, for each [compartment]/[id] referenced through one of the
+     * inclusion criteria of the resource type in the compartment definition. A compartment search then
+     * joins this table once instead of matching each inclusion criterion in the STR_VALUES table.
+     * <pre>
+CREATE TABLE device_compartments (
+  compartment_type_id         INT NOT NULL,
+  compartment_logical_id  VARCHAR(255 OCTETS) NOT NULL,
+  logical_resource_id      BIGINT NOT NULL
+)
+;
+
+CREATE INDEX idx_device_compartments_tlr ON device_compartments(compartment_type_id, compartment_logical_id, logical_resource_id);
+CREATE INDEX idx_device_compartments_rtl ON device_compartments(logical_resource_id, compartment_type_id, compartment_logical_id);
+     * </pre>
+     * @param group
+     * @param prefix
+     */
+    public void addCompartments(List<IDatabaseObject> group, String prefix) {
+        final int lib = LOGICAL_ID_BYTES;
+        final String tableName = prefix + "_COMPARTMENTS";
+        final String logicalResourcesTable = prefix + _LOGICAL_RESOURCES;
+
+        Table tbl = Table.builder(schemaName, tableName)
+                .setVersion(FhirSchemaVersion.V0008.vid())
+                .addTag(FhirSchemaTags.RESOURCE_TYPE, prefix)
+                .setTenantColumnName(MT_ID)
+                .addIntColumn(       COMPARTMENT_TYPE_ID,      false)
+                .addVarcharColumn(COMPARTMENT_LOGICAL_ID, lib, false)
+                .addBigIntColumn(    LOGICAL_RESOURCE_ID,      false)
+                .addIndex(IDX + tableName + "_TLR", COMPARTMENT_TYPE_ID, COMPARTMENT_LOGICAL_ID, LOGICAL_RESOURCE_ID)
+                .addIndex(IDX + tableName + "_RTL", LOGICAL_RESOURCE_ID, COMPARTMENT_TYPE_ID, COMPARTMENT_LOGICAL_ID)
+                .addForeignKeyConstraint(FK + tableName + "_RID", schemaName, logicalResourcesTable, LOGICAL_RESOURCE_ID)
+                .addForeignKeyConstraint(FK + tableName + "_CTID", schemaName, RESOURCE_TYPES, COMPARTMENT_TYPE_ID)
+                .setTablespace(fhirTablespace)
+                .addPrivileges(resourceTablePrivileges)
+                .enableAccessControl(this.sessionVariable)
+                .build(model)
+                ;
+
+        group.add(tbl);
+        model.addTable(tbl);
+    }
+
     /**
      * Special case for LIST resources where we attach a child table to its LIST_LOGICAL_RESOURCES
      * to support usage of the list items in search queries. The FK to LIST_LOGICAL_RESOURCES is
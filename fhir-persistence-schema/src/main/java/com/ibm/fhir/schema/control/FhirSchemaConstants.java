@@ -18,6 +18,7 @@ public class FhirSchemaConstants {
     public static final int MAX_SEARCH_STRING_BYTES = 1024;
     public static final int MAX_TOKEN_VALUE_BYTES = 1024;
     public static final int LOGICAL_ID_BYTES = 255;
+    public static final int GEOHASH_VALUE_BYTES = 12;
 
     // Default tablespace
     public static final String FHIR_TS = "FHIR_TS";
@@ -54,6 +55,9 @@ public class FhirSchemaConstants {
     // R4 Logical Resource Date values for things like lastUpdated
     public static final String DATE_VALUES = "DATE_VALUES";
 
+    // References written to the RESOURCE_REFS tables before their target resource existed
+    public static final String PENDING_RESOURCE_REFS = "PENDING_RESOURCE_REFS";
+
     // R4 Special extension to LIST_LOGICAL_RESOURCES to support list items
     public static final String LIST_LOGICAL_RESOURCES = "LIST_LOGICAL_RESOURCES";
     public static final String LIST_LOGICAL_RESOURCE_ITEMS = "LIST_LOGICAL_RESOURCE_ITEMS";
@@ -81,6 +85,11 @@ public class FhirSchemaConstants {
     public static final String CODE_SYSTEM_ID = "CODE_SYSTEM_ID";
     public static final String CODE_SYSTEM_NAME = "CODE_SYSTEM_NAME";
     public static final String TOKEN_VALUE = "TOKEN_VALUE";
+    public static final String REF_RESOURCE_TYPE_ID = "REF_RESOURCE_TYPE_ID";
+    public static final String REF_LOGICAL_ID = "REF_LOGICAL_ID";
+    public static final String REF_LOGICAL_RESOURCE_ID = "REF_LOGICAL_RESOURCE_ID";
+    public static final String COMPARTMENT_TYPE_ID = "COMPARTMENT_TYPE_ID";
+    public static final String COMPARTMENT_LOGICAL_ID = "COMPARTMENT_LOGICAL_ID";
 
     public static final String RESOURCE_TYPES = "RESOURCE_TYPES";
     public static final String RESOURCE_TYPE = "RESOURCE_TYPE";
@@ -94,6 +103,7 @@ public class FhirSchemaConstants {
     public static final String NUMBER_VALUE_HIGH = "NUMBER_VALUE_HIGH";
     public static final String LATITUDE_VALUE = "LATITUDE_VALUE";
     public static final String LONGITUDE_VALUE = "LONGITUDE_VALUE";
+    public static final String GEOHASH_VALUE = "GEOHASH_VALUE";
 
     public static final String QUANTITY_VALUE = "QUANTITY_VALUE";
     public static final String QUANTITY_VALUE_LOW = "QUANTITY_VALUE_LOW";
@@ -27,6 +27,9 @@ import static com.ibm.fhir.schema.control.FhirSchemaConstants.MT_ID;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.PARAMETER_NAME;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.PARAMETER_NAMES;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.PARAMETER_NAME_ID;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.PENDING_RESOURCE_REFS;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.REF_LOGICAL_ID;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.REF_RESOURCE_TYPE_ID;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_TYPE;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_TYPES;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_TYPE_ID;
@@ -337,6 +340,7 @@ public class FhirSchemaGenerator {
         Table globalTokenValues = addResourceTokenValues(model); // for system-level _tag and _security parameters
         Table globalStrValues = addResourceStrValues(model); // for system-level _profile parameters
         Table globalDateValues = addResourceDateValues(model); // for system-level date parameters
+        addPendingResourceRefs(model); // for references written before their target
 
         // The three "global" tables aren't true dependencies, but this was the easiest way to force sequential processing
         // and avoid a pesky deadlock issue we were hitting while adding foreign key constraints on the global tables
@@ -383,7 +387,7 @@ public class FhirSchemaGenerator {
 
         pd = model.addProcedure(this.schemaName,
                 ADD_ANY_RESOURCE,
-                FhirSchemaVersion.V0001.vid(),
+                FhirSchemaVersion.V0008.vid(),
                 () -> SchemaGeneratorUtil.readTemplate(adminSchemaName, schemaName, ROOT_DIR + ADD_ANY_RESOURCE.toLowerCase() + ".sql", null),
                 Arrays.asList(fhirSequence, resourceTypesTable, allTablesComplete),
                 procedurePrivileges);
@@ -420,7 +424,7 @@ public class FhirSchemaGenerator {
 
         fd = model.addFunction(this.schemaName,
                 ADD_ANY_RESOURCE,
-                FhirSchemaVersion.V0001.vid(),
+                FhirSchemaVersion.V0008.vid(),
                 () -> SchemaGeneratorUtil.readTemplate(adminSchemaName, schemaName, ROOT_DIR + ADD_ANY_RESOURCE.toLowerCase()
                         + ".sql", null),
                 Arrays.asList(fhirSequence, resourceTypesTable, allTablesComplete), procedurePrivileges);
@@ -457,6 +461,37 @@ public class FhirSchemaGenerator {
         pdm.addObject(tbl);
     }
 
+    /**
+     * Add the system-wide PENDING_RESOURCE_REFS table. A row is written with a reference in the
+     * <RESOURCE_TYPE>_RESOURCE_REFS table when the referenced resource doesn't exist yet, and it
+     * tells which of those tables to resolve, and then the row is deleted, when the referenced
+     * resource is created. Only one row is written for each referencing resource type and target.
+     * @param pdm
+     */
+    public void addPendingResourceRefs(PhysicalDataModel pdm) {
+        final String tableName = PENDING_RESOURCE_REFS;
+        final int lib = LOGICAL_ID_BYTES;
+
+        Table tbl = Table.builder(schemaName, tableName)
+                .setVersion(FhirSchemaVersion.V0009.vid())
+                .setTenantColumnName(MT_ID)
+                .addIntColumn(         RESOURCE_TYPE_ID,      false)
+                .addIntColumn(     REF_RESOURCE_TYPE_ID,      false)
+                .addVarcharColumn(       REF_LOGICAL_ID, lib, false)
+                .addIndex(IDX + tableName + "_TLR", REF_RESOURCE_TYPE_ID, REF_LOGICAL_ID, RESOURCE_TYPE_ID)
+                .addForeignKeyConstraint(FK + tableName + "_RTID", schemaName, RESOURCE_TYPES, RESOURCE_TYPE_ID)
+                .addForeignKeyConstraint(FK + tableName + "_REFRTID", schemaName, RESOURCE_TYPES, REF_RESOURCE_TYPE_ID)
+                .setTablespace(fhirTablespace)
+                .addPrivileges(resourceTablePrivileges)
+                .enableAccessControl(this.sessionVariable)
+                .build(pdm);
+
+        tbl.addTag(SCHEMA_GROUP_TAG, FHIRDATA_GROUP);
+        this.procedureDependencies.add(tbl);
+        pdm.addTable(tbl);
+        pdm.addObject(tbl);
+    }
+
     /**
      * Add the system-wide TOKEN_VALUES table which is used for
      * _tag and _security search properties in R4
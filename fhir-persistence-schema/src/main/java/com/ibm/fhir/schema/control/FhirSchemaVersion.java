@@ -20,6 +20,10 @@ public enum FhirSchemaVersion {
     ,V0003(3, "issue-1263 fhir_ref_sequence start with 20000")
     ,V0004(4, "row_id sequence cache 20 to 1000")
     ,V0005(5, "issue-1331 add index for resource.last_updated")
+    ,V0006(6, "resource_refs tables for reference search parameters")
+    ,V0007(7, "geohash_value column for latlng_values")
+    ,V0008(8, "compartments tables for compartment membership")
+    ,V0009(9, "pending_resource_refs table for references written before their target")
     ;
     
     // The version number recorded in the VERSION_HISTORY
@@ -160,6 +160,10 @@ BEGIN
       EXECUTE stmt USING v_logical_resource_id;
       PREPARE stmt FROM 'DELETE FROM ' || v_schema_name || '.' || p_resource_type || '_quantity_values WHERE logical_resource_id = ?';
       EXECUTE stmt USING v_logical_resource_id;
+      PREPARE stmt FROM 'DELETE FROM ' || v_schema_name || '.' || p_resource_type || '_resource_refs   WHERE logical_resource_id = ?';
+      EXECUTE stmt USING v_logical_resource_id;
+      PREPARE stmt FROM 'DELETE FROM ' || v_schema_name || '.' || p_resource_type || '_compartments    WHERE logical_resource_id = ?';
+      EXECUTE stmt USING v_logical_resource_id;
     END IF;
 
   END IF;
@@ -141,6 +141,10 @@ BEGIN
         USING v_logical_resource_id;
       EXECUTE 'DELETE FROM ' || v_schema_name || '.' || p_resource_type || '_quantity_values WHERE logical_resource_id = $1'
         USING v_logical_resource_id;
+      EXECUTE 'DELETE FROM ' || v_schema_name || '.' || p_resource_type || '_resource_refs   WHERE logical_resource_id = $1'
+        USING v_logical_resource_id;
+      EXECUTE 'DELETE FROM ' || v_schema_name || '.' || p_resource_type || '_compartments    WHERE logical_resource_id = $1'
+        USING v_logical_resource_id;
     END IF;
 
   END IF;
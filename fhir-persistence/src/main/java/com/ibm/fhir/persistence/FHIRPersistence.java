@@ -106,6 +106,29 @@ public interface FHIRPersistence {
      */
     MultiResourceResult<Resource> search(FHIRPersistenceContext context, Class<? extends Resource> resourceType) throws FHIRPersistenceException;
 
+    /**
+     * Performs a search and passes the stored JSON of each matching resource to the consumer without parsing it.
+     * This is intended for bulk reads, so the search context must use keyset paging and may not request
+     * _include, _revinclude, _elements or _summary.
+     *
+     * @param context the FHIRPersistenceContext instance associated with the current request
+     * @param resourceType the resource type which is the target of the search
+     * @param consumer receives the logical id and JSON of each resource in the current page, in order
+     * @return the number of resources passed to the consumer
+     * @throws FHIRPersistenceException
+     */
+    default int searchPayloads(FHIRPersistenceContext context, Class<? extends Resource> resourceType, ResourcePayloadConsumer consumer)
+            throws FHIRPersistenceException {
+        throw new FHIRPersistenceNotSupportedException("The 'searchPayloads' operation is not supported by this persistence implementation");
+    }
+
+    /**
+     * Returns true iff the persistence layer implementation supports the "searchPayloads" operation.
+     */
+    default boolean isPayloadSearchSupported() {
+        return false;
+    }
+
     /**
      * Returns true iff the persistence layer implementation supports transactions.
      */
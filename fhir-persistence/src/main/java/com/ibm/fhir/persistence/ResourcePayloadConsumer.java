@@ -0,0 +1,25 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Receives the stored representation of each resource matched by
+ * {@link FHIRPersistence#searchPayloads(com.ibm.fhir.persistence.context.FHIRPersistenceContext, Class, ResourcePayloadConsumer)}.
+ */
+@FunctionalInterface
+public interface ResourcePayloadConsumer {
+
+    /**
+     * @param logicalId the logical id of the resource
+     * @param payload the resource as compact (single-line) FHIR JSON; only valid for the duration of this call
+     * @throws IOException
+     */
+    void accept(String logicalId, InputStream payload) throws IOException;
+}
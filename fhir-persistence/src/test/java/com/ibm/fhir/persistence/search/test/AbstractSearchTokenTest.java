@@ -178,6 +178,15 @@ public abstract class AbstractSearchTokenTest extends AbstractPLSearchTest {
         assertSearchDoesntReturnSavedResource("missing-CodeableConcept:missing", "false");
     }
 
+    @Test
+    public void testSearchToken_CodeableConcept_in() throws Exception {
+        assertSearchDoesntReturnSavedResource("CodeableConcept:in", "http://hl7.org/fhir/ValueSet/administrative-gender");
+        assertSearchReturnsSavedResource("CodeableConcept:not-in", "http://hl7.org/fhir/ValueSet/administrative-gender");
+
+        // A resource without the element isn't in any value set
+        assertSearchReturnsSavedResource("missing-CodeableConcept:not-in", "http://hl7.org/fhir/ValueSet/administrative-gender");
+    }
+
     @Test
     public void testSearchToken_Coding() throws Exception {
         assertSearchReturnsSavedResource("Coding", "code");
@@ -33,12 +33,12 @@ import com.ibm.fhir.model.util.FHIRUtil;
  * There will be a subclass in each persistence project.
  */
 public abstract class AbstractCompartmentTest extends AbstractPersistenceTest {
-    Patient savedPatient;
-    Device savedDevice;
-    Encounter savedEncounter;
-    Practitioner savedPractitioner;
-    RelatedPerson savedRelatedPerson;
-    Observation savedObservation;
+    protected Patient savedPatient;
+    protected Device savedDevice;
+    protected Encounter savedEncounter;
+    protected Practitioner savedPractitioner;
+    protected RelatedPerson savedRelatedPerson;
+    protected Observation savedObservation;
     
     /**
      * Builds and saves an Observation with the following references:
@@ -18,6 +18,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
@@ -495,6 +496,131 @@ public abstract class AbstractIncludeRevincludeTest extends AbstractPersistenceT
         }
     }
 
+    /**
+     * This test queries an Observation and requests the inclusion of the referenced Patient, and then iterates
+     * to include the managing organization of the included Patient.
+     * @throws Exception
+     */
+    @Test
+    public void testIncludeIterate() throws Exception {
+        Map<String, List<String>> queryParms = new HashMap<String, List<String>>();
+        queryParms.put("_id", Collections.singletonList(savedObservation5.getId()));
+        queryParms.put("_include", Collections.singletonList("Observation:patient"));
+        queryParms.put("_include:iterate", Collections.singletonList("Patient:organization"));
+        List<Resource> resources = runQueryTest(Observation.class, queryParms);
+        assertNotNull(resources);
+        assertEquals(3, resources.size());
+        for (Resource resource : resources) {
+            if (resource instanceof Observation) {
+                assertEquals(savedObservation5.getId(), resource.getId());
+            }
+            else if (resource instanceof Patient) {
+                assertEquals(savedPatient3.getId(), resource.getId());
+            }
+            else if (resource instanceof Organization) {
+                assertEquals(savedOrg1.getId(), resource.getId());
+            }
+            else {
+                fail("Unexpected resource type returned.");
+            }
+        }
+    }
+
+    /**
+     * This test queries an Organization and requests the reverse inclusion of the Patients it manages, and then
+     * iterates to reverse include the Observations of those Patients.
+     * @throws Exception
+     */
+    @Test
+    public void testRevIncludeIterate() throws Exception {
+        Map<String, List<String>> queryParms = new HashMap<String, List<String>>();
+        queryParms.put("_id", Collections.singletonList(savedOrg1.getId()));
+        queryParms.put("_revinclude", Collections.singletonList("Patient:organization"));
+        queryParms.put("_revinclude:iterate", Collections.singletonList("Observation:patient"));
+        List<Resource> resources = runQueryTest(Organization.class, queryParms);
+        assertNotNull(resources);
+        assertEquals(3, resources.size());
+        for (Resource resource : resources) {
+            if (resource instanceof Organization) {
+                assertEquals(savedOrg1.getId(), resource.getId());
+            }
+            else if (resource instanceof Patient) {
+                assertEquals(savedPatient3.getId(), resource.getId());
+            }
+            else if (resource instanceof Observation) {
+                assertEquals(savedObservation5.getId(), resource.getId());
+            }
+            else {
+                fail("Unexpected resource type returned.");
+            }
+        }
+    }
+
+    /**
+     * This test queries a Patient and requests the reverse inclusion of Observations, and then iterates to include
+     * the Patients referenced by those Observations. The only such Patient is the matched Patient, which must not be
+     * returned twice.
+     * @throws Exception
+     */
+    @Test
+    public void testIterateSkipsFoundResources() throws Exception {
+        Map<String, List<String>> queryParms = new HashMap<String, List<String>>();
+        queryParms.put("_id", Collections.singletonList(savedPatient1.getId()));
+        queryParms.put("_revinclude", Collections.singletonList("Observation:patient"));
+        queryParms.put("_include:iterate", Collections.singletonList("Observation:patient"));
+        List<Resource> resources = runQueryTest(Patient.class, queryParms);
+        assertNotNull(resources);
+        assertEquals(3, resources.size());
+        for (Resource resource : resources) {
+            if (resource instanceof Observation) {
+                assertTrue(savedObservation2.getId().equals(resource.getId()) ||
+                           savedObservation3.getId().equals(resource.getId()));
+            }
+            else if (resource instanceof Patient) {
+                assertEquals(savedPatient1.getId(), resource.getId());
+            }
+            else {
+                fail("Unexpected resource type returned.");
+            }
+        }
+    }
+
+    /**
+     * This test creates an Observation which references a Patient that doesn't exist yet, and then creates that
+     * Patient with an update. It queries the Patient and requests the reverse inclusion of its Observations, which
+     * must find the reference written before its target.
+     * @throws Exception
+     */
+    @Test
+    public void testRevIncludeReferenceCreatedBeforeTarget() throws Exception {
+        Observation observation = TestUtil.readExampleResource("json/ibm/minimal/Observation-1.json");
+        Patient patient = TestUtil.readExampleResource("json/ibm/minimal/Patient-1.json");
+        String patientId = UUID.randomUUID().toString();
+
+        observation = observation.toBuilder().subject(reference("Patient/" + patientId)).build();
+        observation = persistence.create(getDefaultPersistenceContext(), observation).getResource();
+        patient = patient.toBuilder().id(patientId).build();
+        patient = persistence.update(getDefaultPersistenceContext(), patientId, patient).getResource();
+
+        Map<String, List<String>> queryParms = new HashMap<String, List<String>>();
+        queryParms.put("_id", Collections.singletonList(patientId));
+        queryParms.put("_revinclude", Collections.singletonList("Observation:patient"));
+        List<Resource> resources = runQueryTest(Patient.class, queryParms);
+        assertNotNull(resources);
+        assertEquals(2, resources.size());
+        for (Resource resource : resources) {
+            if (resource instanceof Patient) {
+                assertEquals(patientId, resource.getId());
+            }
+            else if (resource instanceof Observation) {
+                assertEquals(observation.getId(), resource.getId());
+            }
+            else {
+                fail("Unexpected resource type returned.");
+            }
+        }
+    }
+
     private void checkIncludeAndRevIncludeResources(List<Resource> resources, int numOfPatients) {
         HashSet<String> foundPatientOrgIds = new HashSet<String>();
         HashSet<String> foundPatientIds = new HashSet<String>();
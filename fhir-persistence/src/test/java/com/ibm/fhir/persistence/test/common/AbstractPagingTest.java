@@ -12,16 +12,22 @@ import static org.testng.Assert.assertTrue;
 import static org.testng.AssertJUnit.assertNotNull;
 import static com.ibm.fhir.model.test.TestUtil.isResourceInResponse;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.parser.exception.FHIRParserException;
 import com.ibm.fhir.model.resource.Basic;
 import com.ibm.fhir.model.resource.OperationOutcome;
 import com.ibm.fhir.model.resource.Resource;
@@ -120,6 +126,75 @@ public abstract class AbstractPagingTest extends AbstractPersistenceTest {
         assertTrue(isResourceInResponse(resource3, results));
     }
     
+    @Test
+    public void testKeysetPaging() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        searchContext.setKeysetPaging(true);
+        searchContext.setPageSize(1);
+
+        // the resources are returned in lastUpdated order, one page at a time
+        Basic[] expected = {resource1, resource2, resource3};
+        for (Basic resource : expected) {
+            List<Resource> results = persistence.search(getPersistenceContextForSearch(searchContext), Basic.class).getResource();
+            assertEquals(results.size(), 1, "expected number of results");
+            assertEquals(results.get(0).getId(), resource.getId());
+            assertNotNull(searchContext.getKeysetLastUpdated());
+            assertNotNull(searchContext.getKeysetResourceId());
+        }
+        List<Resource> results = persistence.search(getPersistenceContextForSearch(searchContext), Basic.class).getResource();
+        assertTrue(results.isEmpty());
+    }
+
+    @Test
+    public void testKeysetPagingWithoutParameters() throws Exception {
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Basic.class, Collections.emptyMap());
+        searchContext.setKeysetPaging(true);
+        searchContext.setPageSize(2);
+
+        // every current resource is returned exactly once, whatever the page size
+        Set<String> ids = new HashSet<>();
+        List<Resource> results;
+        do {
+            results = persistence.search(getPersistenceContextForSearch(searchContext), Basic.class).getResource();
+            for (Resource resource : results) {
+                assertTrue(ids.add(resource.getId()), "duplicate resource " + resource.getId());
+            }
+        } while (results.size() == 2);
+        assertTrue(ids.contains(resource1.getId()));
+        assertTrue(ids.contains(resource2.getId()));
+        assertTrue(ids.contains(resource3.getId()));
+    }
+
+    @Test
+    public void testPayloadPaging() throws Exception {
+        if (!persistence.isPayloadSearchSupported()) {
+            return;
+        }
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Basic.class, Collections.emptyMap());
+        searchContext.setKeysetPaging(true);
+        searchContext.setPageSize(2);
+
+        // each payload is the stored JSON of the current version of the resource
+        Set<String> ids = new HashSet<>();
+        int count;
+        do {
+            count = persistence.searchPayloads(getPersistenceContextForSearch(searchContext), Basic.class, (logicalId, payload) -> {
+                try {
+                    Resource resource = FHIRParser.parser(Format.JSON).parse(payload);
+                    assertEquals(resource.getId(), logicalId);
+                } catch (FHIRParserException e) {
+                    throw new IOException(e);
+                }
+                assertTrue(ids.add(logicalId), "duplicate resource " + logicalId);
+            });
+        } while (count == 2);
+        assertTrue(ids.contains(resource1.getId()));
+        assertTrue(ids.contains(resource2.getId()));
+        assertTrue(ids.contains(resource3.getId()));
+    }
+
     // history results should be sorted with oldest versions last
     @Test
     public void testHistoryPaging() throws Exception {
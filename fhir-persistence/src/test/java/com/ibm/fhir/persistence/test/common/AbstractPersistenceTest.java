@@ -154,7 +154,10 @@ public abstract class AbstractPersistenceTest {
             expectedCount++;
             if (!SearchUtil.isSearchResultParameter(key) && !SearchUtil.isGeneralParameter(key)) {
                 String paramName = key;
-                if (SearchUtil.isChainedParameter(key)) {
+                if (SearchUtil.isReverseChainedParameter(key)) {
+                    // verify the reference param of the referencing type is there, e.g. patient in _has:Observation:patient:code
+                    paramName = key.split(":")[2];
+                } else if (SearchUtil.isChainedParameter(key)) {
                     // ignore the chained part and just verify the reference param is there
                     paramName = key.split("\\.")[0];
                 }
@@ -0,0 +1,260 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.test.common;
+
+import static com.ibm.fhir.model.type.String.string;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Device;
+import com.ibm.fhir.model.resource.Encounter;
+import com.ibm.fhir.model.resource.Group;
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.resource.Observation.Component;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.CodeableConcept;
+import com.ibm.fhir.model.type.Coding;
+import com.ibm.fhir.model.type.Date;
+import com.ibm.fhir.model.type.Reference;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.code.AdministrativeGender;
+import com.ibm.fhir.search.group.GroupSearchCompilerFactory;
+
+/**
+ *  This class tests the persistence layer support for reverse chained (_has) search parameters.
+ *  @see https://www.hl7.org/fhir/R4/search.html#has
+ */
+public abstract class AbstractReverseChainTest extends AbstractPersistenceTest {
+    private static Patient savedPatient1;
+    private static Patient savedPatient2;
+    private static Patient savedPatient3;
+    private static Observation savedObservation1;
+    private static Observation savedObservation2;
+    private static Observation savedObservation3;
+    private static Encounter savedEncounter1;
+    private static Device savedDevice1;
+
+    /**
+     * Loads up and saves a few patients and the resources referring to them
+     */
+    @BeforeClass
+    public void createResources() throws Exception {
+        Encounter encounter = TestUtil.readExampleResource("json/ibm/minimal/Encounter-1.json");
+        Observation observation = TestUtil.readExampleResource("json/ibm/minimal/Observation-1.json");
+        Patient patient = TestUtil.readExampleResource("json/ibm/minimal/Patient-1.json");
+        Device device = TestUtil.readExampleResource("json/ibm/minimal/Device-1.json");
+
+        savedEncounter1 = persistence.create(getDefaultPersistenceContext(), encounter).getResource();
+
+        // a Patient referred to by two Observations of the same Encounter
+        savedPatient1 = persistence.create(getDefaultPersistenceContext(), patient).getResource();
+        savedObservation1 = observation.toBuilder()
+                                       .subject(reference("Patient/" + savedPatient1.getId()))
+                                       .encounter(reference("Encounter/" + savedEncounter1.getId()))
+                                       .build();
+        savedObservation1 = persistence.create(getDefaultPersistenceContext(), savedObservation1).getResource();
+        savedObservation2 = observation.toBuilder()
+                                       .subject(reference("Patient/" + savedPatient1.getId()))
+                                       .encounter(reference("Encounter/" + savedEncounter1.getId()))
+                                       .build();
+        savedObservation2 = persistence.create(getDefaultPersistenceContext(), savedObservation2).getResource();
+
+        // a Patient referred to by an Observation without an Encounter and by a Device
+        savedPatient2 = persistence.create(getDefaultPersistenceContext(), patient).getResource();
+        savedObservation3 = observation.toBuilder().subject(reference("Patient/" + savedPatient2.getId())).build();
+        savedObservation3 = persistence.create(getDefaultPersistenceContext(), savedObservation3).getResource();
+        savedDevice1 = device.toBuilder()
+                             .patient(reference("Patient/" + savedPatient2.getId()))
+                             .manufacturer(string("Reverse Chain Manufacturer"))
+                             .build();
+        savedDevice1 = persistence.create(getDefaultPersistenceContext(), savedDevice1).getResource();
+
+        // a Patient that no other resource refers to
+        savedPatient3 = persistence.create(getDefaultPersistenceContext(), patient).getResource();
+    }
+
+    @AfterClass
+    public void deleteResources() throws Exception {
+        Resource[] resources = {savedPatient1, savedPatient2, savedPatient3,
+                savedObservation1, savedObservation2, savedObservation3, savedEncounter1, savedDevice1};
+
+        if (persistence.isDeleteSupported()) {
+            if (persistence.isTransactional()) {
+                persistence.getTransaction().begin();
+            }
+
+            try {
+                for (Resource resource : resources) {
+                    persistence.delete(getDefaultPersistenceContext(), resource.getClass(), resource.getId());
+                }
+            } catch (Throwable t) {
+                if (persistence.isTransactional()) {
+                    persistence.getTransaction().setRollbackOnly();
+                }
+                throw t;
+            } finally {
+                if (persistence.isTransactional()) {
+                    persistence.getTransaction().end();
+                }
+            }
+        }
+    }
+
+    /**
+     * This test queries the Patients referred to by an Observation of an Encounter. The Patient referred to by
+     * two such Observations is returned once.
+     * @throws Exception
+     */
+    @Test
+    public void testReverseChainedReference() throws Exception {
+        Map<String, List<String>> queryParms = patientQueryParms();
+        queryParms.put("_has:Observation:patient:encounter",
+                Collections.singletonList("Encounter/" + savedEncounter1.getId()));
+        List<Resource> resources = runQueryTest(Patient.class, queryParms);
+        assertNotNull(resources);
+        assertEquals(1, resources.size());
+        assertEquals(savedPatient1.getId(), resources.get(0).getId());
+    }
+
+    /**
+     * This test queries the Patients referred to by a given Observation.
+     * @throws Exception
+     */
+    @Test
+    public void testReverseChainedId() throws Exception {
+        Map<String, List<String>> queryParms = patientQueryParms();
+        queryParms.put("_has:Observation:patient:_id", Collections.singletonList(savedObservation3.getId()));
+        List<Resource> resources = runQueryTest(Patient.class, queryParms);
+        assertNotNull(resources);
+        assertEquals(1, resources.size());
+        assertEquals(savedPatient2.getId(), resources.get(0).getId());
+    }
+
+    /**
+     * This test queries the Patients referred to by a Device of a manufacturer.
+     * @throws Exception
+     */
+    @Test
+    public void testReverseChainedString() throws Exception {
+        Map<String, List<String>> queryParms = patientQueryParms();
+        queryParms.put("_has:Device:patient:manufacturer", Collections.singletonList("Reverse Chain Manufacturer"));
+        List<Resource> resources = runQueryTest(Patient.class, queryParms);
+        assertNotNull(resources);
+        assertEquals(1, resources.size());
+        assertEquals(savedPatient2.getId(), resources.get(0).getId());
+    }
+
+    /**
+     * This test combines two reverse chained parameters, which must both be satisfied.
+     * @throws Exception
+     */
+    @Test
+    public void testMultipleReverseChained() throws Exception {
+        Map<String, List<String>> queryParms = patientQueryParms();
+        queryParms.put("_has:Observation:patient:_id",
+                Arrays.asList(savedObservation1.getId() + "," + savedObservation3.getId()));
+        queryParms.put("_has:Device:patient:manufacturer", Collections.singletonList("Reverse Chain Manufacturer"));
+        List<Resource> resources = runQueryTest(Patient.class, queryParms);
+        assertNotNull(resources);
+        assertEquals(1, resources.size());
+        assertEquals(savedPatient2.getId(), resources.get(0).getId());
+    }
+
+    /**
+     * This test queries the Patients referred to by an Observation of an unknown Encounter.
+     * @throws Exception
+     */
+    @Test
+    public void testReverseChainedNoMatch() throws Exception {
+        Map<String, List<String>> queryParms = patientQueryParms();
+        queryParms.put("_has:Observation:patient:encounter", Collections.singletonList("Encounter/unknown"));
+        List<Resource> resources = runQueryTest(Patient.class, queryParms);
+        assertNotNull(resources);
+        assertTrue(resources.isEmpty());
+    }
+
+    /**
+     * This test runs the Patient search compiled from a Group of females aged 13 to 56 which excludes the pregnant
+     * patients. The pregnancy status characteristic compiles to _has:Observation:patient:component-value-concept:not,
+     * so a patient is excluded only when one of their Observations records the excluded value.
+     * @throws Exception
+     */
+    @Test
+    public void testGroupSearchExcludedCharacteristic() throws Exception {
+        Group group = TestUtil.readExampleResource("json/ibm/bulk-data/group/age-range-with-gender-and-exclude-group.json");
+        Patient patient = TestUtil.readExampleResource("json/ibm/minimal/Patient-1.json");
+        Observation observation = TestUtil.readExampleResource("json/ibm/minimal/Observation-1.json");
+        patient = patient.toBuilder()
+                .gender(AdministrativeGender.FEMALE)
+                .birthDate(Date.of(ZonedDateTime.now().minusYears(30).getYear() + "-06-15"))
+                .build();
+
+        Patient pregnantPatient = persistence.create(getDefaultPersistenceContext(), patient).getResource();
+        Patient notPregnantPatient = persistence.create(getDefaultPersistenceContext(), patient).getResource();
+        Patient patientWithoutObservation = persistence.create(getDefaultPersistenceContext(), patient).getResource();
+        persistence.create(getDefaultPersistenceContext(),
+                pregnancyStatus(observation, pregnantPatient, "LA15173-0"));
+        persistence.create(getDefaultPersistenceContext(),
+                pregnancyStatus(observation, notPregnantPatient, "LA26683-5"));
+
+        Map<String, List<String>> queryParms = new HashMap<>(GroupSearchCompilerFactory.getInstance().groupToSearch(group, "Patient"));
+        queryParms.put("_id", Collections.singletonList(pregnantPatient.getId() + "," + notPregnantPatient.getId()
+                + "," + patientWithoutObservation.getId()));
+        Set<String> ids = runQueryTest(Patient.class, queryParms).stream()
+                .map(Resource::getId).collect(Collectors.toSet());
+        assertEquals(new HashSet<>(Arrays.asList(notPregnantPatient.getId(), patientWithoutObservation.getId())), ids);
+    }
+
+    /**
+     * Restricts the search to the patients of this test, as other tests share the database
+     */
+    private Map<String, List<String>> patientQueryParms() {
+        Set<String> ids = Arrays.asList(savedPatient1, savedPatient2, savedPatient3).stream()
+                .map(Resource::getId).collect(Collectors.toSet());
+        Map<String, List<String>> queryParms = new HashMap<String, List<String>>();
+        queryParms.put("_id", Collections.singletonList(String.join(",", ids)));
+        return queryParms;
+    }
+
+    private Observation pregnancyStatus(Observation observation, Patient patient, String value) {
+        return observation.toBuilder()
+                .subject(reference("Patient/" + patient.getId()))
+                .component(Component.builder()
+                    .code(concept("http://loinc.org", "82810-3"))
+                    .value(concept("http://loinc.org", value))
+                    .build())
+                .build();
+    }
+
+    private CodeableConcept concept(String system, String code) {
+        return CodeableConcept.builder()
+                .coding(Coding.builder().system(Uri.of(system)).code(Code.of(code)).build())
+                .build();
+    }
+
+    private Reference reference(String reference) {
+        return Reference.builder().reference(string(reference)).build();
+    }
+}
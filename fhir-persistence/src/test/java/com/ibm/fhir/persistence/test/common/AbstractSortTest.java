@@ -200,6 +200,30 @@ public abstract class AbstractSortTest extends AbstractPersistenceTest {
         assertSecondarySort(results);
     }
     
+    @Test
+    public void testLastUpdatedSort() throws Exception {
+        List<Resource> results;
+        
+        results = runQueryTest(Basic.class, "_sort", "_lastUpdated", 100);
+        assertAscendingOrder(results);
+        
+        results = runQueryTest(Basic.class, "_sort", "-_lastUpdated", 100);
+        assertDescendingOrder(results);
+    }
+    
+    @Test
+    public void testMultiSortMixedDirections() throws Exception {
+        List<Resource> results;
+        
+        results = runQueryTest(Basic.class, "_sort", "-integer,_tag", 100);
+        assertDescendingOrder(results);
+        assertSecondarySort(results);
+        
+        results = runQueryTest(Basic.class, "_sort", "-date,_lastUpdated", 100);
+        assertDescendingOrder(results);
+        assertSecondarySort(results);
+    }
+    
     private void assertAscendingOrder(List<Resource> results) {
         assertTrue(results.indexOf(resource1a) < results.indexOf(resource2a));
         assertTrue(results.indexOf(resource2a) < results.indexOf(resource3a));
@@ -208,7 +232,6 @@ public abstract class AbstractSortTest extends AbstractPersistenceTest {
         assertTrue(results.indexOf(resource2b) < results.indexOf(resource3b));
     }
     
-    @SuppressWarnings("unused")
     private void assertDescendingOrder(List<Resource> results) {
         assertTrue(results.indexOf(resource3a) < results.indexOf(resource2a));
         assertTrue(results.indexOf(resource2a) < results.indexOf(resource1a));
@@ -153,7 +153,7 @@ public class FHIRProvider implements MessageBodyReader<Resource>, MessageBodyWri
         }
 
         // Config evaluation (default false)
-        return FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_DEFAULT_PRETTY_PRINT, false);
+        return FHIRConfigHelper.getConfigSnapshot().isDefaultPrettyPrint();
     }
 
     @Override
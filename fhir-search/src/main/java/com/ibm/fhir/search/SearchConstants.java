@@ -72,6 +72,9 @@ public class SearchConstants {
     // _revinclude
     public static final String REVINCLUDE = "_revinclude";
 
+    // :iterate modifier of _include and _revinclude
+    public static final String ITERATE = "iterate";
+
     // _page
     public static final String PAGE = "_page";
 
@@ -87,6 +90,9 @@ public class SearchConstants {
     // _type
     public static final String RESOURCE_TYPE = "_type";
 
+    // _has
+    public static final String HAS = "_has";
+
     // set as unmodifiable
     public static final List<String> SEARCH_RESULT_PARAMETER_NAMES =
             Collections.unmodifiableList(Arrays.asList(SORT, COUNT, PAGE, INCLUDE, REVINCLUDE, ELEMENTS, SUMMARY));
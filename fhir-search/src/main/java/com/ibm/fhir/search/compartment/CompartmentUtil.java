@@ -186,6 +186,21 @@ public class CompartmentUtil {
         return compartmentMap.get(compartment).getParametersByResourceTypeInCompartment(resourceType);
     }
 
+    /**
+     * checks whether a reference from a resource of the given type through the given search parameter makes the
+     * resource a member of the compartment.
+     *
+     * @param compartment
+     * @param resourceType
+     * @param parameterCode
+     * @return true if the search parameter is one of the inclusion criteria of the resource type in the compartment
+     */
+    public static boolean isCompartmentInclusionCriteria(final String compartment, final String resourceType, final String parameterCode) {
+        CompartmentCache compartmentCache = compartmentMap.get(compartment);
+        return compartmentCache != null
+                && compartmentCache.getParametersByResourceTypeInCompartment(resourceType).contains(parameterCode);
+    }
+
     /**
      * checks that the compartment is valid, and throws and exception if, not
      *
@@ -6,6 +6,7 @@
 
 package com.ibm.fhir.search.context;
 
+import java.time.Instant;
 import java.util.List;
 
 import com.ibm.fhir.core.context.FHIRPagingContext;
@@ -83,4 +84,37 @@ public interface FHIRSearchContext extends FHIRPagingContext {
      * Set the value of the summary parameter.
      */
     void setSummaryParameter(SummaryValueSet summary);
+
+    /**
+     * @return true if the search should page by (lastUpdated, resourceId) keyset rather than by page number
+     */
+    boolean isKeysetPaging();
+
+    /**
+     * Request keyset paging. When enabled, results are ordered by lastUpdated and then by resource id, each page
+     * starts immediately after the keyset of the previous page, the page number is ignored, and no total count is
+     * computed. After each search, the persistence layer stores the keyset of the last resource returned so that
+     * the same context can be used to fetch the next page.
+     */
+    void setKeysetPaging(boolean keysetPaging);
+
+    /**
+     * @return the lastUpdated value of the last resource read, or null to start from the beginning
+     */
+    Instant getKeysetLastUpdated();
+
+    /**
+     * @return the resource id of the last resource read, or null to start from the beginning
+     */
+    Long getKeysetResourceId();
+
+    /**
+     * Set the keyset after which the next page of a keyset search will start.
+     *
+     * @param lastUpdated
+     *            the lastUpdated value of the last resource read, or null to start from the beginning
+     * @param resourceId
+     *            the resource id of the last resource read, or null to start from the beginning
+     */
+    void setKeyset(Instant lastUpdated, Long resourceId);
 }
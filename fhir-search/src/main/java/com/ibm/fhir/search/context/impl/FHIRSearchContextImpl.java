@@ -6,6 +6,7 @@
 
 package com.ibm.fhir.search.context.impl;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -25,6 +26,9 @@ public class FHIRSearchContextImpl extends FHIRPagingContextImpl implements FHIR
     private List<InclusionParameter> revIncludeParameters = new ArrayList<>();
     private List<String> elementsParameters = null;
     private SummaryValueSet summaryParameter = null; 
+    private boolean keysetPaging = false;
+    private Instant keysetLastUpdated = null;
+    private Long keysetResourceId = null;
 
     public FHIRSearchContextImpl() {
         searchParameters = new ArrayList<>();
@@ -134,4 +138,30 @@ public class FHIRSearchContextImpl extends FHIRPagingContextImpl implements FHIR
         this.searchResourceTypes = searchResourceTypes;
 
     }
+
+    @Override
+    public boolean isKeysetPaging() {
+        return this.keysetPaging;
+    }
+
+    @Override
+    public void setKeysetPaging(boolean keysetPaging) {
+        this.keysetPaging = keysetPaging;
+    }
+
+    @Override
+    public Instant getKeysetLastUpdated() {
+        return this.keysetLastUpdated;
+    }
+
+    @Override
+    public Long getKeysetResourceId() {
+        return this.keysetResourceId;
+    }
+
+    @Override
+    public void setKeyset(Instant lastUpdated, Long resourceId) {
+        this.keysetLastUpdated = lastUpdated;
+        this.keysetResourceId = resourceId;
+    }
 }
@@ -17,7 +17,9 @@ import com.ibm.fhir.model.resource.Group;
 public interface GroupSearchCompiler {
 
     /**
-     * translates the given group to a search query
+     * translates the given group to a search query. The characteristics which are about other resource types than the
+     * target, such as the Observations of a Patient, are added as reverse chained (_has) parameters, so the members of
+     * the group are selected by a single search of the target resource type.
      * @param group the dynamic group
      * @param target the resource type for the search query
      * @return
@@ -13,12 +13,19 @@ import com.ibm.fhir.model.type.CodeableConcept;
 
 /**
  * PregnancyStatus Characteristic Processor processes into a Query Parameter. Pregnancy status is mapped to the
- * SearchParameter code gender using token modifiers.
+ * SearchParameter code component-value-concept of the Observation using token modifiers. For the target Patient, the
+ * parameter is reverse chained through the patient of the Observation (_has), so the Patient search selects the
+ * patients with a matching Observation in the same query. An excluded characteristic adds the :not modifier, which
+ * selects the patients without a matching Observation.
  */
 public class PregnancyStatusCharacteristicProcessor implements CharacteristicProcessor {
+    private static final String COMPONENT_VALUE_CONCEPT = "component-value-concept";
+    private static final String HAS_OBSERVATION_PATIENT = "_has:Observation:patient:";
+
     @Override
     public void process(Characteristic characteristic, String target, MultivaluedMap<String, String> queryParams) {
-        if ("Observation".equals(target) && "http://loinc.org".equals(characteristic.getCode().getCoding().get(0).getSystem().getValue())
+        if (("Observation".equals(target) || "Patient".equals(target))
+                && "http://loinc.org".equals(characteristic.getCode().getCoding().get(0).getSystem().getValue())
                 && "82810-3".equals(characteristic.getCode().getCoding().get(0).getCode().getValue())) {
 
             boolean exclude = characteristic.getExclude().getValue();
@@ -28,7 +35,11 @@ public class PregnancyStatusCharacteristicProcessor implements CharacteristicPro
             }
 
             // Refer to Search Parameters https://www.hl7.org/fhir/observation.html
-            queryParams.add("component-value-concept" + modifier,
+            String code = COMPONENT_VALUE_CONCEPT + modifier;
+            if ("Patient".equals(target)) {
+                code = HAS_OBSERVATION_PATIENT + code;
+            }
+            queryParams.add(code,
                 characteristic.getValue()
                     .as(CodeableConcept.class).getCoding().get(0).getCode().getValue());
         }
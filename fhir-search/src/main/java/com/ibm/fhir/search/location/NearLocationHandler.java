@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019
+ * (C) Copyright IBM Corp. 2019, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -24,6 +24,7 @@ import com.ibm.fhir.search.location.bounding.BoundingBox;
 import com.ibm.fhir.search.location.bounding.BoundingMissing;
 import com.ibm.fhir.search.location.bounding.BoundingRadius;
 import com.ibm.fhir.search.location.uom.UOMManager;
+import com.ibm.fhir.search.location.util.Geohash;
 import com.ibm.fhir.search.parameters.QueryParameter;
 import com.ibm.fhir.search.parameters.QueryParameterValue;
 
@@ -289,6 +290,37 @@ public class NearLocationHandler {
         }
     }
 
+    /**
+     * computes the geohash cells covering the bounding area. The cells cover the bounding box of a bounding radius,
+     * so the positions within the cells still need to be checked against the bounding area.
+     * 
+     * @param area
+     * @return the geohashes of the cells, or an empty list if the area needs more than
+     *         {@link Geohash#DEFAULT_MAX_CELLS} cells
+     * @throws FHIRSearchException
+     */
+    public List<String> createGeohashCover(Bounding area) throws FHIRSearchException {
+        BoundingBox boundingBox;
+        switch (area.getType()) {
+        case BOX:
+            boundingBox = (BoundingBox) area;
+            break;
+        case RADIUS:
+            BoundingRadius radius = (BoundingRadius) area;
+            boundingBox = createBoundingBox(radius.getLatitude(), radius.getLongitude(), radius.getRadius(), DEFAULT_UNIT);
+            break;
+        default:
+            return new ArrayList<>();
+        }
+
+        List<String> cover = Geohash.cover(boundingBox.getMinLatitude(), boundingBox.getMaxLatitude(),
+                boundingBox.getMinLongitude(), boundingBox.getMaxLongitude(), Geohash.DEFAULT_MAX_CELLS);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("geohash cover: " + cover);
+        }
+        return cover;
+    }
+
     /**
      * overrides the bounding functionality.
      * 
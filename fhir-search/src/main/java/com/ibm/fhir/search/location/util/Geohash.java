@@ -0,0 +1,164 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.search.location.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * <a href="https://en.wikipedia.org/wiki/Geohash">Geohash</a> encoding of positions, and the cover of a bounding box
+ * by geohash cells.
+ * <br>
+ * A geohash interleaves the bits of the longitude and the latitude, so the positions within a cell share the prefix of
+ * the cell. Searching for the prefixes of the cells covering an area therefore needs a single index range per cell,
+ * where a bounding box on the latitude and longitude columns can only use one of the two columns of an index.
+ */
+public class Geohash {
+
+    /**
+     * The precision of the stored geohash values, about 3.7cm x 1.9cm.
+     */
+    public static final int MAX_PRECISION = 12;
+
+    /**
+     * The default maximum number of cells of a cover.
+     */
+    public static final int DEFAULT_MAX_CELLS = 16;
+
+    // The geohash alphabet, in ascending order
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    private Geohash() {
+        // No Operation
+    }
+
+    /**
+     * encodes the position at the given precision.
+     *
+     * @param latitude
+     * @param longitude
+     * @param precision the number of characters, between 1 and {@link #MAX_PRECISION}
+     * @return the geohash of the cell containing the position
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        if (precision < 1 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Invalid geohash precision: " + precision);
+        }
+
+        double minLat = -90.0;
+        double maxLat = 90.0;
+        double minLon = -180.0;
+        double maxLon = 180.0;
+
+        StringBuilder hash = new StringBuilder(precision);
+        boolean even = true;
+        int bit = 0;
+        int ch = 0;
+        while (hash.length() < precision) {
+            // Even bits split the longitude, odd bits split the latitude.
+            if (even) {
+                double mid = (minLon + maxLon) / 2;
+                if (longitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLon = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLat = mid;
+                }
+            }
+            even = !even;
+
+            if (++bit == 5) {
+                hash.append(BASE32.charAt(ch));
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /**
+     * computes the cells covering the bounding box, using the finest precision with at most maxCells cells.
+     *
+     * @param minLatitude
+     * @param maxLatitude
+     * @param minLongitude
+     * @param maxLongitude
+     * @param maxCells
+     * @return the geohashes of the cells in ascending order, or an empty list if even the precision 1 needs more than
+     *         maxCells cells
+     */
+    public static List<String> cover(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude,
+            int maxCells) {
+        for (int precision = MAX_PRECISION; precision > 0; precision--) {
+            int lonBits = (5 * precision + 1) / 2;
+            int latBits = 5 * precision / 2;
+            double lonSize = 360.0 / (1L << lonBits);
+            double latSize = 180.0 / (1L << latBits);
+
+            long minLonCell = cell(minLongitude + 180.0, lonSize, lonBits);
+            long maxLonCell = cell(maxLongitude + 180.0, lonSize, lonBits);
+            long minLatCell = cell(minLatitude + 90.0, latSize, latBits);
+            long maxLatCell = cell(maxLatitude + 90.0, latSize, latBits);
+
+            if ((maxLonCell - minLonCell + 1) * (maxLatCell - minLatCell + 1) <= maxCells) {
+                TreeSet<String> cells = new TreeSet<>();
+                for (long lat = minLatCell; lat <= maxLatCell; lat++) {
+                    for (long lon = minLonCell; lon <= maxLonCell; lon++) {
+                        // The center of the cell is encoded, so rounding doesn't slip into the neighbouring cell.
+                        cells.add(encode(-90.0 + (lat + 0.5) * latSize, -180.0 + (lon + 0.5) * lonSize, precision));
+                    }
+                }
+                return new ArrayList<>(cells);
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * @param hash
+     * @return the geohash following the given geohash of the same precision, or null for the last one
+     */
+    public static String next(String hash) {
+        char[] chars = hash.toCharArray();
+        for (int i = chars.length - 1; i >= 0; i--) {
+            int index = BASE32.indexOf(chars[i]);
+            if (index < BASE32.length() - 1) {
+                chars[i] = BASE32.charAt(index + 1);
+                return new String(chars);
+            }
+            chars[i] = BASE32.charAt(0);
+        }
+        return null;
+    }
+
+    /**
+     * @param prefix
+     * @return the greatest geohash of {@link #MAX_PRECISION} starting with the prefix
+     */
+    public static String upperBound(String prefix) {
+        StringBuilder bound = new StringBuilder(MAX_PRECISION).append(prefix);
+        while (bound.length() < MAX_PRECISION) {
+            bound.append(BASE32.charAt(BASE32.length() - 1));
+        }
+        return bound.toString();
+    }
+
+    private static long cell(double offset, double size, int bits) {
+        return Math.min(Math.max((long) Math.floor(offset / size), 0), (1L << bits) - 1);
+    }
+}
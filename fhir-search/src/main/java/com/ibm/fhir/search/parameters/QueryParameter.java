@@ -30,6 +30,7 @@ public class QueryParameter {
     private List<QueryParameterValue> values = null;
     private QueryParameter nextParameter = null;
     private boolean isInclusionCriteria = false;
+    private boolean isReverseChained = false;
 
     public QueryParameter(Type type, String code, Modifier modifier, String modifierResourceTypeName) {
         this.type = type;
@@ -44,6 +45,21 @@ public class QueryParameter {
         this.isInclusionCriteria = isInclusionCriteria;
     }
 
+    /**
+     * @param type
+     * @param code the reference parameter of the referencing resource type
+     * @param modifier
+     * @param modifierResourceTypeName the referencing resource type
+     * @param isInclusionCriteria
+     * @param isReverseChained true if this parameter is the root of a reverse chain (_has), whose next parameter is
+     *                         evaluated against the resources which refer to the searched resource
+     */
+    public QueryParameter(Type type, String code, Modifier modifier, String modifierResourceTypeName, boolean isInclusionCriteria,
+            boolean isReverseChained) {
+        this(type, code, modifier, modifierResourceTypeName, isInclusionCriteria);
+        this.isReverseChained = isReverseChained;
+    }
+
     public QueryParameter(Type type, String code, Modifier modifier, String modifierResourceTypeName, List<QueryParameterValue> parmValues) {
         this(type, code, modifier, modifierResourceTypeName);
         this.values = parmValues;
@@ -70,7 +86,7 @@ public class QueryParameter {
     }
 
     public boolean isChained() {
-        return this.nextParameter != null && !this.isInclusionCriteria;
+        return this.nextParameter != null && !this.isInclusionCriteria && !this.isReverseChained;
     }
 
     @Override
@@ -111,6 +127,10 @@ public class QueryParameter {
         buffer.append(inclusionCriteria);
         buffer.append(NL);
 
+        buffer.append("reverseChained: ");
+        buffer.append(isReverseChained);
+        buffer.append(NL);
+
         List<QueryParameterValue> values = getValues();
         for (QueryParameterValue value : values) {
             Prefix prefix = value.getPrefix();
@@ -176,4 +196,8 @@ public class QueryParameter {
     public boolean isInclusionCriteria() {
         return isInclusionCriteria;
     }
+
+    public boolean isReverseChained() {
+        return isReverseChained;
+    }
 }
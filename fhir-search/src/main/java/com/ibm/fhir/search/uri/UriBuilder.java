@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019
+ * (C) Copyright IBM Corp. 2019, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -148,6 +148,10 @@ public class UriBuilder {
         for (InclusionParameter param : context.getIncludeParameters()) {
             queryString.append(SearchConstants.AND_CHAR);
             queryString.append(SearchConstants.INCLUDE);
+            if (param.isIterate()) {
+                queryString.append(SearchConstants.COLON_DELIMITER);
+                queryString.append(SearchConstants.ITERATE);
+            }
             queryString.append(SearchConstants.EQUALS_CHAR);
             appendInclusionParamValue(param);
         }
@@ -166,6 +170,10 @@ public class UriBuilder {
         for (InclusionParameter param : context.getRevIncludeParameters()) {
             queryString.append(SearchConstants.AND_CHAR);
             queryString.append(SearchConstants.REVINCLUDE);
+            if (param.isIterate()) {
+                queryString.append(SearchConstants.COLON_DELIMITER);
+                queryString.append(SearchConstants.ITERATE);
+            }
             queryString.append(SearchConstants.EQUALS_CHAR);
             appendInclusionParamValue(param);
         }
@@ -84,6 +84,12 @@ public class SearchUtil {
     private static final String MODIFIER_NOT_ALLOWED_WITH_CHAINED_EXCEPTION = "Modifier: '%s' not allowed on chained parameter";
     private static final String TYPE_NOT_ALLOWED_WITH_CHAINED_PARAMETER_EXCEPTION =
             "Type: '%s' not allowed on chained parameter";
+    private static final String INVALID_REVERSE_CHAINED_PARAMETER_EXCEPTION =
+            "Reverse chained parameter '%s' must have the form _has:[type]:[reference]:[parameter]";
+    private static final String REFERENCE_NOT_ALLOWED_FOR_REVERSE_CHAINED_PARAMETER_EXCEPTION =
+            "Search parameter '%s' of resource type '%s' is not a reference to resource type '%s'";
+    private static final String MODIFIER_NOT_ALLOWED_WITH_REVERSE_CHAINED_EXCEPTION =
+            "Modifier: '%s' not allowed on reverse chained parameter";
     private static final String SEARCH_PARAMETER_MODIFIER_NAME =
             "Search parameter: '%s' must have resource type name modifier";
     private static final String INVALID_TARGET_TYPE_EXCEPTION = "Invalid target type for the Inclusion Parameter.";
@@ -510,11 +516,11 @@ public class SearchUtil {
      * If inclusion keyword is ' _include' and a target resource type is specified, search parameter must contain
      * a matching type.
      * <p>
-     * If inclusion keyword is '_revinclude', search parameter must have a target resource type matching the resource
-     * type being searched.
+     * If inclusion keyword is '_revinclude', search parameter must have a target resource type matching the specified
+     * target resource type, or else the resource type being searched.
      * 
      * @param resourceType
-     *            the resource type being searched for
+     *            the resource type being searched for, or null if the inclusion is iterated
      * @param joinResourceType
      *            the resource type for which inclusion search parameters will be returned
      * @param searchParameterTargetType
@@ -533,7 +539,9 @@ public class SearchUtil {
             if (SearchParamType.REFERENCE.equals(searchParameter.getType()) &&
                     ((SearchConstants.INCLUDE.equals(inclusionKeyword)
                             && (searchParameterTargetType == null || isValidTargetType(searchParameterTargetType, searchParameter))) ||
-                    (SearchConstants.REVINCLUDE.equals(inclusionKeyword) && isValidTargetType(resourceType, searchParameter)))) {
+                    (SearchConstants.REVINCLUDE.equals(inclusionKeyword)
+                            && (searchParameterTargetType == null && resourceType == null
+                                || isValidTargetType(searchParameterTargetType != null ? searchParameterTargetType : resourceType, searchParameter))))) {
                 // Valid search parameter of type reference - add to map
                 inclusionSearchParameters.put(searchParameter.getCode().getValue(), searchParameter);
             } else if (inclusionSearchParameters.containsKey(searchParameter.getCode().getValue())) {
@@ -640,9 +648,7 @@ public class SearchUtil {
 
         // Make sure _sort is not present with _include and/or _revinclude.
         // TODO: do we really need to forbid this?
-        if (queryParameters.containsKey(SearchConstants.SORT) &&
-                (queryParameters.containsKey(SearchConstants.INCLUDE)
-                        || queryParameters.containsKey(SearchConstants.REVINCLUDE))) {
+        if (queryParameters.containsKey(SearchConstants.SORT) && hasInclusionParameters(queryParameters)) {
             throw SearchExceptionUtil.buildNewInvalidSearchException(
                     "_sort search result parameter not supported with _include or _revinclude.");
         }
@@ -650,8 +656,7 @@ public class SearchUtil {
         if (Resource.class.equals(resourceType)) {
             // Because _include and _revinclude searches all require certain resource type modifier in
             // search parameter, so we just don't support it.
-            if (queryParameters.containsKey(SearchConstants.INCLUDE)
-                        || queryParameters.containsKey(SearchConstants.REVINCLUDE)) {
+            if (hasInclusionParameters(queryParameters)) {
                 throw SearchExceptionUtil.buildNewInvalidSearchException(
                         "system search not supported with _include or _revinclude.");
             }
@@ -701,6 +706,14 @@ public class SearchUtil {
                     }
                 } else if (isGeneralParameter(name) ) {
                     // we'll handle it somewhere else, so just ignore it here
+                } else if (isReverseChainedParameter(name)) {
+                    if (Resource.class.equals(resourceType)) {
+                        throw SearchExceptionUtil.buildNewInvalidSearchException(
+                                "system search not supported with _has.");
+                    }
+                    for (String reverseChainedParameterString : params) {
+                        parameters.add(parseReverseChainedParameter(resourceType, name, reverseChainedParameterString));
+                    }
                 } else if (isChainedParameter(name)) {
                     List<String> chainedParemeters = params;
                     for (String chainedParameterString : chainedParemeters) {
@@ -1030,23 +1043,46 @@ public class SearchUtil {
      */
     public static FHIRSearchContext parseQueryParameters(String compartmentName, String compartmentLogicalId,
             Class<?> resourceType, Map<String, List<String>> queryParameters, boolean lenient) throws Exception {
+        return parseCompartmentQueryParameters(compartmentName,
+                compartmentLogicalId == null ? null : Collections.singletonList(compartmentLogicalId),
+                resourceType, queryParameters, lenient);
+    }
+
+    /**
+     * Parses the query parameters of a search for the resources in any of the passed compartments, e.g, the resources
+     * in the Patient compartments of a page of patients for a bulk export. A resource which is in more than one of the
+     * compartments, or which meets more than one inclusion criterion, is only returned once.
+     *
+     * @param compartmentName
+     *                Name of the compartment, e.g, Patient
+     * @param compartmentLogicalIds
+     *                Logical ids of the compartments to search
+     * @param lenient
+     *                Whether to ignore unknown or unsupported parameter
+     * @return
+     * @throws Exception
+     */
+    public static FHIRSearchContext parseCompartmentQueryParameters(String compartmentName, Collection<String> compartmentLogicalIds,
+            Class<?> resourceType, Map<String, List<String>> queryParameters, boolean lenient) throws Exception {
         List<QueryParameter> parameters = new ArrayList<>();
         QueryParameter parameter;
         QueryParameterValue value;
         QueryParameter rootParameter = null;
 
-        if (compartmentName != null && compartmentLogicalId != null) {
-            // The inclusion criteria are represented as a chain of parameters, each with a value of the
-            // compartmentLogicalId.
+        if (compartmentName != null && compartmentLogicalIds != null) {
+            // The inclusion criteria are represented as a chain of parameters, each with a value for each of the
+            // compartmentLogicalIds.
             // The query parsers will OR these parameters to achieve the compartment search.
             List<String> inclusionCriteria =
                     CompartmentUtil.getCompartmentResourceTypeInclusionCriteria(compartmentName,
                             resourceType.getSimpleName());
             for (String criteria : inclusionCriteria) {
                 parameter = new QueryParameter(Type.REFERENCE, criteria, null, null, true);
-                value     = new QueryParameterValue();
-                value.setValueString(compartmentName + "/" + compartmentLogicalId);
-                parameter.getValues().add(value);
+                for (String compartmentLogicalId : compartmentLogicalIds) {
+                    value = new QueryParameterValue();
+                    value.setValueString(compartmentName + "/" + compartmentLogicalId);
+                    parameter.getValues().add(value);
+                }
                 if (rootParameter == null) {
                     rootParameter = parameter;
                 } else {
@@ -1081,7 +1117,26 @@ public class SearchUtil {
     }
 
     public static boolean isSearchResultParameter(String name) {
-        return SearchConstants.SEARCH_RESULT_PARAMETER_NAMES.contains(name);
+        return SearchConstants.SEARCH_RESULT_PARAMETER_NAMES.contains(name) || isIterateInclusionParameter(name);
+    }
+
+    /**
+     * @param name
+     * @return true if the name is _include:iterate or _revinclude:iterate
+     */
+    private static boolean isIterateInclusionParameter(String name) {
+        return (SearchConstants.INCLUDE + SearchConstants.COLON_DELIMITER + SearchConstants.ITERATE).equals(name)
+                || (SearchConstants.REVINCLUDE + SearchConstants.COLON_DELIMITER + SearchConstants.ITERATE).equals(name);
+    }
+
+    private static boolean hasInclusionParameters(Map<String, List<String>> queryParameters) {
+        for (String name : queryParameters.keySet()) {
+            if (SearchConstants.INCLUDE.equals(name) || SearchConstants.REVINCLUDE.equals(name)
+                    || isIterateInclusionParameter(name)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public static boolean isGeneralParameter(String name) {
@@ -1135,6 +1190,99 @@ public class SearchUtil {
         return name.contains(SearchConstants.CHAINED_PARAMETER_CHARACTER);
     }
 
+    public static boolean isReverseChainedParameter(String name) {
+        return name.startsWith(SearchConstants.HAS + SearchConstants.COLON_DELIMITER);
+    }
+
+    /**
+     * Parses a reverse chained parameter of the form _has:[type]:[reference]:[parameter][:modifier], which selects
+     * the resources referred to by a resource of the given type, through the given reference parameter, that matches
+     * the parameter, e.g. Patient?_has:Observation:patient:code=1234-5.
+     * <br>
+     * The returned parameter is the reference parameter of the referencing resource type, and its next parameter is the
+     * parameter which holds the values. Nested reverse chains and chained parameters are not supported.
+     * <br>
+     * The :not modifier excludes the resources referred to by a matching resource, e.g.
+     * Patient?_has:Observation:patient:code:not=1234-5 selects the patients without an Observation of that code. It is
+     * therefore set on the returned reference parameter, and the next parameter matches the values without a modifier.
+     *
+     * @param resourceType the type of the searched resources
+     * @param name
+     * @param valuesString
+     * @return
+     * @throws Exception
+     */
+    private static QueryParameter parseReverseChainedParameter(Class<?> resourceType, String name, String valuesString)
+            throws Exception {
+        String[] components = name.split(SearchConstants.COLON_DELIMITER_STR);
+        if (components.length < 4 || components.length > 5 || !ModelSupport.isResourceType(components[1])
+                || isChainedParameter(components[3])) {
+            throw SearchExceptionUtil.buildNewInvalidSearchException(
+                    String.format(INVALID_REVERSE_CHAINED_PARAMETER_EXCEPTION, name));
+        }
+        String referencingResourceTypeName = components[1];
+        String referenceCode = components[2];
+        String parameterCode = components[3];
+        Class<?> referencingResourceType = ModelSupport.getResourceType(referencingResourceTypeName);
+
+        // The reference parameter must be able to refer to the searched resource type
+        SearchParameter referenceParameter = getSearchParameter(referencingResourceType, referenceCode);
+        if (referenceParameter == null
+                || !Type.REFERENCE.equals(Type.fromValue(referenceParameter.getType().getValue()))
+                || !referenceParameter.getTarget().contains(ResourceType.of(resourceType.getSimpleName()))) {
+            throw SearchExceptionUtil.buildNewInvalidSearchException(
+                    String.format(REFERENCE_NOT_ALLOWED_FOR_REVERSE_CHAINED_PARAMETER_EXCEPTION, referenceCode,
+                            referencingResourceTypeName, resourceType.getSimpleName()));
+        }
+
+        SearchParameter searchParameter = getSearchParameter(referencingResourceType, parameterCode);
+        if (searchParameter == null) {
+            throw SearchExceptionUtil.buildNewInvalidSearchException(
+                    "Search parameter '" + parameterCode + "' for resource type '" + referencingResourceTypeName
+                            + "' was not found.");
+        }
+        Type type = Type.fromValue(searchParameter.getType().getValue());
+
+        Modifier modifier = null;
+        String modifierResourceTypeName = null;
+        if (components.length == 5) {
+            String mod = components[4];
+            if (ModelSupport.isResourceType(mod)) {
+                modifier                 = Modifier.TYPE;
+                modifierResourceTypeName = mod;
+            } else {
+                try {
+                    modifier = Modifier.fromValue(mod);
+                } catch (IllegalArgumentException e) {
+                    throw SearchExceptionUtil.buildNewInvalidSearchException("Undefined Modifier: " + mod);
+                }
+            }
+            // The parameter is matched within the referencing resources, so modifiers about their absence don't apply
+            if (Modifier.MISSING.equals(modifier) || Modifier.NOT_IN.equals(modifier)) {
+                throw SearchExceptionUtil.buildNewInvalidSearchException(
+                        String.format(MODIFIER_NOT_ALLOWED_WITH_REVERSE_CHAINED_EXCEPTION, modifier.value()));
+            }
+            if (!isAllowed(type, modifier)) {
+                throw SearchExceptionUtil.buildNewInvalidSearchException(
+                        "Unsupported type/modifier combination: " + type.value() + "/" + modifier.value());
+            }
+        }
+
+        // :not applies to the referencing resources as a whole rather than to the values of the parameter
+        Modifier rootModifier = null;
+        if (Modifier.NOT.equals(modifier)) {
+            rootModifier = modifier;
+            modifier     = null;
+        }
+
+        QueryParameter rootParameter = new QueryParameter(Type.REFERENCE, referenceCode, rootModifier, referencingResourceTypeName, false, true);
+        QueryParameter parameter = new QueryParameter(type, parameterCode, modifier, modifierResourceTypeName);
+        parameter.getValues().addAll(
+                processQueryParameterValueString(referencingResourceType, searchParameter, modifier, valuesString));
+        rootParameter.setNextParameter(parameter);
+        return rootParameter;
+    }
+
     private static QueryParameter parseChainedParameter(HashSet<String> resourceTypes, String name, String valuesString)
             throws Exception {
         QueryParameter rootParameter = null;
@@ -1425,7 +1573,7 @@ public class SearchUtil {
      * @param context
      *     the search context
      * @param inclusionKeyword
-     *     the type of inclusion, either '_include' or '_revinclude'
+     *     the type of inclusion, either '_include' or '_revinclude', optionally with the ':iterate' modifier
      * @param inclusionValues
      *     the inclusion values, each containing joinResourceType, searchParameterName,
      *     and optionally searchParameterTargetType, colon-delimited
@@ -1442,9 +1590,14 @@ public class SearchUtil {
         String searchParameterTargetType;
 
         SearchParameter searchParm;
-        InclusionParameter newInclusionParm;
         List<InclusionParameter> newInclusionParms;
 
+        // With :iterate, the inclusion also applies to included resources, which may be of any resource type
+        boolean iterate = inclusionKeyword.endsWith(SearchConstants.COLON_DELIMITER + SearchConstants.ITERATE);
+        if (iterate) {
+            inclusionKeyword = inclusionKeyword.substring(0, inclusionKeyword.indexOf(SearchConstants.COLON_DELIMITER));
+        }
+
         for (String inclusionValue : inclusionValues) {
 
             // Parse value into 3 parts: joinResourceType, searchParameterName, searchParameterTargetType
@@ -1457,13 +1610,13 @@ public class SearchUtil {
             searchParameterTargetType = inclusionValueParts.length == 3 ? inclusionValueParts[2] : null;
 
             // For _include parameter, join resource type must match resource type being searched
-            if (SearchConstants.INCLUDE.equals(inclusionKeyword) && !joinResourceType.equals(resourceType.getSimpleName())) {
+            if (SearchConstants.INCLUDE.equals(inclusionKeyword) && !iterate && !joinResourceType.equals(resourceType.getSimpleName())) {
                 throw SearchExceptionUtil.buildNewInvalidSearchException(
                         "The join resource type must match the resource type being searched.");
             }
 
             // For _revinclude parameter, target resource type, if specified, must match resource type being searched
-            if (SearchConstants.REVINCLUDE.equals(inclusionKeyword) && searchParameterTargetType != null
+            if (SearchConstants.REVINCLUDE.equals(inclusionKeyword) && !iterate && searchParameterTargetType != null
                     && !searchParameterTargetType.equals(resourceType.getSimpleName())) {
                 throw SearchExceptionUtil.buildNewInvalidSearchException("The search parameter target type must match the resource type being searched.");
             }
@@ -1471,7 +1624,8 @@ public class SearchUtil {
             // Ensure that the Inclusion Parameter being parsed is a valid search parameter of type 'reference'.
             Map<String, SearchParameter> searchParametersMap;
             if (SearchConstants.WILDCARD.equals(searchParameterName)) {
-                searchParametersMap = getInclusionWildcardSearchParameters(resourceType.getSimpleName(), joinResourceType, searchParameterTargetType, inclusionKeyword);
+                searchParametersMap = getInclusionWildcardSearchParameters(iterate ? null : resourceType.getSimpleName(), joinResourceType,
+                        searchParameterTargetType, inclusionKeyword);
                 if (searchParametersMap.isEmpty()) {
                     log.fine("No valid inclusion parameters found for wildcard search.");
                 }
@@ -1495,12 +1649,12 @@ public class SearchUtil {
             for (Map.Entry<String, SearchParameter> entry : searchParametersMap.entrySet()) {
                 if (inclusionKeyword.equals(SearchConstants.INCLUDE)) {
                     newInclusionParms =
-                            buildIncludeParameter(resourceType, joinResourceType, entry.getValue(), entry.getKey(), searchParameterTargetType);
+                            buildIncludeParameter(resourceType, joinResourceType, entry.getValue(), entry.getKey(), searchParameterTargetType, iterate);
                     context.getIncludeParameters().addAll(newInclusionParms);
                 } else {
-                    newInclusionParm =
-                            buildRevIncludeParameter(resourceType, joinResourceType, entry.getValue(), entry.getKey(), searchParameterTargetType);
-                    context.getRevIncludeParameters().add(newInclusionParm);
+                    newInclusionParms =
+                            buildRevIncludeParameter(resourceType, joinResourceType, entry.getValue(), entry.getKey(), searchParameterTargetType, iterate);
+                    context.getRevIncludeParameters().addAll(newInclusionParms);
                 }
             }
         }
@@ -1513,7 +1667,7 @@ public class SearchUtil {
      * @throws FHIRSearchException
      */
     private static List<InclusionParameter> buildIncludeParameter(Class<?> resourceType, String joinResourceType, SearchParameter searchParm,
-        String searchParameterName, String searchParameterTargetType) throws FHIRSearchException {
+        String searchParameterName, String searchParameterTargetType, boolean iterate) throws FHIRSearchException {
 
         List<InclusionParameter> includeParms = new ArrayList<>();
 
@@ -1523,7 +1677,7 @@ public class SearchUtil {
             for (Code targetType : searchParm.getTarget()) {
                 searchParameterTargetType = targetType.getValue();
                 includeParms
-                        .add(new InclusionParameter(joinResourceType, searchParameterName, searchParameterTargetType));
+                        .add(new InclusionParameter(joinResourceType, searchParameterName, searchParameterTargetType, iterate));
             }
         }
         // Validate the specified target type is correct.
@@ -1531,7 +1685,7 @@ public class SearchUtil {
             if (!isValidTargetType(searchParameterTargetType, searchParm)) {
                 throw SearchExceptionUtil.buildNewInvalidSearchException(INVALID_TARGET_TYPE_EXCEPTION);
             }
-            includeParms.add(new InclusionParameter(joinResourceType, searchParameterName, searchParameterTargetType));
+            includeParms.add(new InclusionParameter(joinResourceType, searchParameterName, searchParameterTargetType, iterate));
         }
         return includeParms;
     }
@@ -1542,8 +1696,18 @@ public class SearchUtil {
      *
      * @throws FHIRSearchException
      */
-    private static InclusionParameter buildRevIncludeParameter(Class<?> resourceType, String joinResourceType, SearchParameter searchParm,
-        String searchParameterName, String searchParameterTargetType) throws FHIRSearchException {
+    private static List<InclusionParameter> buildRevIncludeParameter(Class<?> resourceType, String joinResourceType, SearchParameter searchParm,
+        String searchParameterName, String searchParameterTargetType, boolean iterate) throws FHIRSearchException {
+
+        List<InclusionParameter> revIncludeParms = new ArrayList<>();
+
+        // An iterated _revinclude without a target type applies to each of the search parameter's target types
+        if (searchParameterTargetType == null && iterate) {
+            for (Code targetType : searchParm.getTarget()) {
+                revIncludeParms.add(new InclusionParameter(joinResourceType, searchParameterName, targetType.getValue(), iterate));
+            }
+            return revIncludeParms;
+        }
 
         // Verify that the search parameter target type is correct
         if (searchParameterTargetType == null) {
@@ -1552,8 +1716,8 @@ public class SearchUtil {
         if (!isValidTargetType(searchParameterTargetType, searchParm)) {
             throw SearchExceptionUtil.buildNewInvalidSearchException(INVALID_TARGET_TYPE_EXCEPTION);
         }
-        return new InclusionParameter(joinResourceType, searchParameterName, searchParameterTargetType);
-
+        revIncludeParms.add(new InclusionParameter(joinResourceType, searchParameterName, searchParameterTargetType, iterate));
+        return revIncludeParms;
     }
 
     /**
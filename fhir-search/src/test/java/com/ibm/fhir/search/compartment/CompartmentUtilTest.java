@@ -108,6 +108,15 @@ public class CompartmentUtilTest extends BaseSearchTest {
         assertFalse(results.isEmpty());
     }
 
+    @Test()
+    public void testIsCompartmentInclusionCriteria() {
+        assertTrue(CompartmentUtil.isCompartmentInclusionCriteria("Patient", "Observation", "subject"));
+        assertTrue(CompartmentUtil.isCompartmentInclusionCriteria("Practitioner", "Observation", "performer"));
+        assertFalse(CompartmentUtil.isCompartmentInclusionCriteria("Patient", "Observation", "encounter"));
+        assertFalse(CompartmentUtil.isCompartmentInclusionCriteria("Patient", "FrenchFood", "subject"));
+        assertFalse(CompartmentUtil.isCompartmentInclusionCriteria("FredF", "Observation", "subject"));
+    }
+
     @Test()
     public void testBuildCompositeBundle() {
         try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream(); PrintStream out = new PrintStream(outputStream);) {
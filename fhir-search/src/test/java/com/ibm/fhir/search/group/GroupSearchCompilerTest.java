@@ -8,13 +8,19 @@ package com.ibm.fhir.search.group;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
 
 import javax.ws.rs.core.MultivaluedMap;
 
 import org.testng.annotations.Test;
 
 import com.ibm.fhir.model.resource.Group;
+import com.ibm.fhir.model.resource.Patient;
 import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.search.SearchConstants.Modifier;
+import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.parameters.QueryParameter;
+import com.ibm.fhir.search.util.SearchUtil;
 
 /**
  * Tests the Group Search Compiler
@@ -76,14 +82,33 @@ public class GroupSearchCompilerTest {
         assertEquals(queryParams.get("gender").get(0),"female");
     }
 
+    @Test
+    public void testAgeRangeGenderAndExcludeGroupToSearchContext() throws Exception {
+        // The Patient search of the group parses into a single search context with the reverse chained parameter
+        GroupSearchCompiler compiler = GroupSearchCompilerFactory.getInstance();
+        Group group = (Group) TestUtil.readExampleResource("json/ibm/bulk-data/group/age-range-with-gender-and-exclude-group.json");
+        MultivaluedMap<String,String> queryParams = compiler.groupToSearch(group, "Patient");
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Patient.class, queryParams);
+        QueryParameter has = searchContext.getSearchParameters().stream()
+                .filter(QueryParameter::isReverseChained).findFirst().get();
+        assertEquals(has.getCode(),"patient");
+        assertEquals(has.getModifierResourceTypeName(),"Observation");
+        assertEquals(has.getModifier(),Modifier.NOT);
+        assertEquals(has.getNextParameter().getCode(),"component-value-concept");
+        assertNull(has.getNextParameter().getModifier());
+        assertEquals(has.getNextParameter().getValues().get(0).getValueCode(),"LA15173-0");
+    }
+
     @Test
     public void testAgeRangeGenderAndExcludeGroup() throws Exception {
         GroupSearchCompiler compiler = GroupSearchCompilerFactory.getInstance();
         Group group = (Group) TestUtil.readExampleResource("json/ibm/bulk-data/group/age-range-with-gender-and-exclude-group.json");
         MultivaluedMap<String,String> queryParams = compiler.groupToSearch(group, "Patient");
         assertNotNull(queryParams);
-        assertEquals(queryParams.size(),2);
+        assertEquals(queryParams.size(),3);
         assertEquals(queryParams.get("birthdate").size(),2);
+        assertEquals(queryParams.get("_has:Observation:patient:component-value-concept:not").size(),1);
+        assertEquals(queryParams.get("_has:Observation:patient:component-value-concept:not").get(0),"LA15173-0");
         queryParams = compiler.groupToSearch(group, "Observation");
         assertNotNull(queryParams);
         assertEquals(queryParams.size(),1);
@@ -0,0 +1,83 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.search.location;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.search.location.bounding.BoundingBox;
+import com.ibm.fhir.search.location.bounding.BoundingRadius;
+import com.ibm.fhir.search.location.util.Geohash;
+
+public class GeohashTest {
+
+    @Test
+    public void testEncode() {
+        assertEquals(Geohash.encode(42.6, -5.6, 5), "ezs42");
+        assertEquals(Geohash.encode(57.64911, 10.40744, 11), "u4pruydqqvj");
+        assertEquals(Geohash.encode(57.64911, 10.40744, Geohash.MAX_PRECISION).length(), Geohash.MAX_PRECISION);
+    }
+
+    @Test(expectedExceptions = { IllegalArgumentException.class })
+    public void testEncodeBadPrecision() {
+        Geohash.encode(42.6, -5.6, Geohash.MAX_PRECISION + 1);
+    }
+
+    @Test
+    public void testCover() {
+        List<String> cover = Geohash.cover(42.0, 43.0, -6.0, -5.0, Geohash.DEFAULT_MAX_CELLS);
+        assertTrue(cover.size() <= Geohash.DEFAULT_MAX_CELLS);
+        // every position within the box is in one of the cells
+        for (double lat = 42.0; lat <= 43.0; lat += 0.1) {
+            for (double lon = -6.0; lon <= -5.0; lon += 0.1) {
+                String hash = Geohash.encode(lat, lon, Geohash.MAX_PRECISION);
+                assertTrue(cover.stream().anyMatch(hash::startsWith), hash);
+            }
+        }
+    }
+
+    @Test
+    public void testCoverPoint() {
+        assertEquals(Geohash.cover(42.6, 42.6, -5.6, -5.6, 1),
+                Arrays.asList(Geohash.encode(42.6, -5.6, Geohash.MAX_PRECISION)));
+    }
+
+    @Test
+    public void testCoverWorld() {
+        assertEquals(Geohash.cover(-90.0, 90.0, -180.0, 180.0, Geohash.DEFAULT_MAX_CELLS).size(), 0);
+        assertEquals(Geohash.cover(-90.0, 90.0, -180.0, 180.0, 32).size(), 32);
+    }
+
+    @Test
+    public void testNext() {
+        assertEquals(Geohash.next("ezs42"), "ezs43");
+        assertEquals(Geohash.next("ezs4z"), "ezs50");
+        assertNull(Geohash.next("zz"));
+    }
+
+    @Test
+    public void testUpperBound() {
+        assertEquals(Geohash.upperBound("ezs42"), "ezs42zzzzzzz");
+    }
+
+    @Test
+    public void testNearLocationHandlerCover() throws Exception {
+        NearLocationHandler handler = new NearLocationHandler();
+        BoundingBox box = handler.createBoundingBox(42.6, -5.6, 10.0, "km");
+        assertEquals(handler.createGeohashCover(box), Geohash.cover(box.getMinLatitude(), box.getMaxLatitude(),
+                box.getMinLongitude(), box.getMaxLongitude(), Geohash.DEFAULT_MAX_CELLS));
+
+        BoundingRadius radius = BoundingRadius.builder().latitude(42.6).longitude(-5.6).radius(10.0).build();
+        assertEquals(handler.createGeohashCover(radius), handler.createGeohashCover(box));
+    }
+}
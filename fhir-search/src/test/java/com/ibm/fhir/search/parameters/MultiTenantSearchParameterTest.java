@@ -299,6 +299,7 @@ public class MultiTenantSearchParameterTest extends BaseSearchTest {
         // Copy our first hidden file into place.
         // This should add two tenant-specific search parameters.
         copyFile(hiddenFile1, mainFile);
+        waitForSearchParameter(Patient.class, "favorite-mlb-team", true);
 
         // Verify that we can now "see" the two tenant-specific search parameters.
         searchParameter = SearchUtil.getSearchParameter(Patient.class, "favorite-mlb-team");
@@ -312,6 +313,7 @@ public class MultiTenantSearchParameterTest extends BaseSearchTest {
         // Next, copy our second hidden file into place.
         // This should effectively remove the "favorite-nfl-team" search parameter.
         copyFile(hiddenFile2, mainFile);
+        waitForSearchParameter(Patient.class, "favorite-nfl-team", false);
 
         // Verify that we can now "see" only the first tenant-specific search parameter.
         searchParameter = SearchUtil.getSearchParameter(Patient.class, "favorite-mlb-team");
@@ -322,6 +324,7 @@ public class MultiTenantSearchParameterTest extends BaseSearchTest {
         // Finally, remove the tenant-specific file altogether and make sure we
         // can't find either search parameter again.
         deleteFile(mainFile);
+        waitForSearchParameter(Patient.class, "favorite-mlb-team", false);
         searchParameter = SearchUtil.getSearchParameter(Patient.class, "favorite-mlb-team");
         assertNull(searchParameter);
         searchParameter = SearchUtil.getSearchParameter(Patient.class, "favorite-nfl-team");
@@ -358,6 +361,7 @@ public class MultiTenantSearchParameterTest extends BaseSearchTest {
         // Copy our first hidden file into place.
         // This should add two tenant-specific search parameters.
         copyFile(hiddenFile1, mainFile);
+        waitForSearchParameter(Patient.class, "favorite-mlb-team", true);
 
         // Verify that we can now see the two tenant-specific search parameters and NOT the default tenant ones
         searchParameter = SearchUtil.getSearchParameter(Patient.class, "favorite-mlb-team");
@@ -375,6 +379,7 @@ public class MultiTenantSearchParameterTest extends BaseSearchTest {
 
         // Finally, delete the tenant-specific config file and verify that we fall back to the default ones
         deleteFile(mainFile);
+        waitForSearchParameter(Patient.class, "favorite-mlb-team", false);
         searchParameter = SearchUtil.getSearchParameter(Patient.class, "favorite-mlb-team");
         assertNull(searchParameter);
         searchParameter = SearchUtil.getSearchParameter(Patient.class, "favorite-color");
@@ -411,4 +416,17 @@ public class MultiTenantSearchParameterTest extends BaseSearchTest {
         assertTrue(codes.contains("favorite-number"));
         assertFalse(codes.contains("favorite-color"));
     }
+
+    /**
+     * Changes to the search parameter files are detected in the background, so wait (up to 10 seconds)
+     * for the specified search parameter to appear or disappear.
+     */
+    private void waitForSearchParameter(Class<?> resourceType, String code, boolean present) throws Exception {
+        for (int i = 0; i < 100; i++) {
+            if ((SearchUtil.getSearchParameter(resourceType, code) != null) == present) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+    }
 }
@@ -15,6 +15,7 @@ import static org.testng.Assert.fail;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -126,6 +127,36 @@ public class CompartmentParseQueryParmsTest extends BaseSearchTest {
         assertEquals(3, parmCount);
     }
 
+    /**
+     * This method tests parsing compartment related query parms for multiple compartments. Each inclusion criterion
+     * is expected to have a value for each of the compartments.
+     */
+    @Test
+    public void testMultiCompartmentInclusionCriteria() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        String compartmentName = "RelatedPerson";
+        List<String> compartmentLogicalIds = Arrays.asList("22", "23", "24");
+        Class<? extends Resource> resourceType = CommunicationRequest.class;
+        FHIRSearchContext context = SearchUtil.parseCompartmentQueryParameters(compartmentName, compartmentLogicalIds, resourceType, queryParameters, false);
+
+        assertNotNull(context);
+        assertNotNull(context.getSearchParameters());
+        assertEquals(1, context.getSearchParameters().size());
+
+        QueryParameter searchParm = context.getSearchParameters().get(0);
+        int parmCount = 0;
+        while (searchParm != null) {
+            parmCount++;
+            assertTrue(searchParm.isInclusionCriteria());
+            assertEquals(3, searchParm.getValues().size());
+            for (int i = 0; i < compartmentLogicalIds.size(); i++) {
+                assertEquals(compartmentName + "/" + compartmentLogicalIds.get(i), searchParm.getValues().get(i).getValueString());
+            }
+            searchParm = searchParm.getNextParameter();
+        }
+        assertEquals(3, parmCount);
+    }
+
     /**
      * This method tests parsing compartment related query parms together with non-compartment related query parms..
      * Based on the compartment and resource type, multiple inclusion criteria is expectedExceptions to be returned by
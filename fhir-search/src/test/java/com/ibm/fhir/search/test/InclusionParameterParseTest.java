@@ -628,4 +628,51 @@ public class InclusionParameterParseTest extends BaseSearchTest {
         assertTrue(selfUri.contains(revinclude3));
     }
 
+    @Test
+    public void testIncludeIterate() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        Class<Encounter> resourceType = Encounter.class;
+        String queryString = "&_include:iterate=Patient:organization";
+
+        // The join resource type of an iterated _include need not be the resource type being searched
+        queryParameters.put("_include", Collections.singletonList("Encounter:subject:Patient"));
+        queryParameters.put("_include:iterate", Collections.singletonList("Patient:organization"));
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(resourceType, queryParameters);
+
+        assertNotNull(searchContext);
+        assertTrue(searchContext.hasIncludeParameters());
+        assertEquals(2, searchContext.getIncludeParameters().size());
+        assertTrue(searchContext.getIncludeParameters().contains(new InclusionParameter("Encounter", "subject", "Patient")));
+        assertTrue(searchContext.getIncludeParameters().contains(new InclusionParameter("Patient", "organization", "Organization", true)));
+        assertFalse(searchContext.getIncludeParameters().contains(new InclusionParameter("Patient", "organization", "Organization")));
+
+        String selfUri = SearchUtil.buildSearchSelfUri("http://example.com/Encounter", searchContext);
+        assertTrue(selfUri.contains(queryString));
+    }
+
+    @Test
+    public void testRevIncludeIterateNoTargetType() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        Class<Patient> resourceType = Patient.class;
+
+        queryParameters.put("_revinclude:iterate", Collections.singletonList("Encounter:diagnosis"));
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(resourceType, queryParameters);
+
+        assertNotNull(searchContext);
+        assertTrue(searchContext.hasRevIncludeParameters());
+        assertEquals(2, searchContext.getRevIncludeParameters().size());
+        assertTrue(searchContext.getRevIncludeParameters().contains(new InclusionParameter("Encounter", "diagnosis", "Condition", true)));
+        assertTrue(searchContext.getRevIncludeParameters().contains(new InclusionParameter("Encounter", "diagnosis", "Procedure", true)));
+    }
+
+    @Test(expectedExceptions = FHIRSearchException.class)
+    public void testIncludeIterateInvalidWithSort() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        Class<Patient> resourceType = Patient.class;
+
+        queryParameters.put("_sort", Collections.singletonList("birthDate"));
+        queryParameters.put("_include:iterate", Collections.singletonList("Patient:general-practitioner"));
+        SearchUtil.parseQueryParameters(resourceType, queryParameters);
+    }
+
 }
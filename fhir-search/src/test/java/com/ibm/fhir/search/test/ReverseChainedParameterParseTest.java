@@ -0,0 +1,101 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.search.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.search.SearchConstants.Modifier;
+import com.ibm.fhir.search.SearchConstants.Type;
+import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.exception.FHIRSearchException;
+import com.ibm.fhir.search.parameters.QueryParameter;
+import com.ibm.fhir.search.util.SearchUtil;
+
+/**
+ * This TestNG test class contains methods that test the parsing of reverse chained (_has) search parameters in the
+ * SearchUtil class.
+ */
+public class ReverseChainedParameterParseTest extends BaseSearchTest {
+
+    @Test
+    public void testReverseChainedParameter() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_has:Observation:patient:code", Collections.singletonList("http://loinc.org|1234-5"));
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Patient.class, queryParameters);
+
+        assertEquals(searchContext.getSearchParameters().size(), 1);
+        QueryParameter parameter = searchContext.getSearchParameters().get(0);
+        assertTrue(parameter.isReverseChained());
+        assertFalse(parameter.isChained());
+        assertEquals(parameter.getType(), Type.REFERENCE);
+        assertEquals(parameter.getCode(), "patient");
+        assertEquals(parameter.getModifierResourceTypeName(), "Observation");
+        assertTrue(parameter.getValues().isEmpty());
+
+        QueryParameter nextParameter = parameter.getNextParameter();
+        assertEquals(nextParameter.getType(), Type.TOKEN);
+        assertEquals(nextParameter.getCode(), "code");
+        assertNull(nextParameter.getModifier());
+        assertEquals(nextParameter.getValues().get(0).getValueSystem(), "http://loinc.org");
+        assertEquals(nextParameter.getValues().get(0).getValueCode(), "1234-5");
+    }
+
+    @Test
+    public void testReverseChainedParameterWithModifier() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_has:Observation:patient:component-value-concept:not", Collections.singletonList("LA15173-0"));
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Patient.class, queryParameters);
+
+        // :not excludes the patients with a matching Observation, so it is set on the reverse chained parameter
+        QueryParameter parameter = searchContext.getSearchParameters().get(0);
+        assertEquals(parameter.getModifier(), Modifier.NOT);
+        QueryParameter nextParameter = parameter.getNextParameter();
+        assertNull(nextParameter.getModifier());
+        assertEquals(nextParameter.getValues().get(0).getValueCode(), "LA15173-0");
+    }
+
+    @Test(expectedExceptions = FHIRSearchException.class)
+    public void testReverseChainedParameterInvalidSyntax() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_has:Observation:patient", Collections.singletonList("1234-5"));
+        SearchUtil.parseQueryParameters(Patient.class, queryParameters);
+    }
+
+    @Test(expectedExceptions = FHIRSearchException.class)
+    public void testReverseChainedParameterInvalidTarget() throws Exception {
+        // Observation.device doesn't refer to a Patient
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_has:Observation:device:code", Collections.singletonList("1234-5"));
+        SearchUtil.parseQueryParameters(Patient.class, queryParameters);
+    }
+
+    @Test(expectedExceptions = FHIRSearchException.class)
+    public void testReverseChainedParameterMissingModifier() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_has:Observation:patient:code:missing", Collections.singletonList("true"));
+        SearchUtil.parseQueryParameters(Patient.class, queryParameters);
+    }
+
+    @Test(expectedExceptions = FHIRSearchException.class)
+    public void testReverseChainedParameterSystemSearch() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_has:Observation:patient:code", Collections.singletonList("1234-5"));
+        SearchUtil.parseQueryParameters(Resource.class, queryParameters);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.server.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Response;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.core.FHIRMediaType;
+import com.ibm.fhir.model.resource.Bundle;
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.test.TestUtil;
+
+/**
+ * Tests the Patient/[id]/$everything operation.
+ */
+public class FHIREverythingOperationTest extends FHIRServerTestBase {
+    private static final int OBSERVATION_COUNT = 3;
+
+    private String patientId = null;
+    private Set<String> observationIds = new HashSet<>();
+
+    @Test(groups = { "fhir-operation" })
+    public void testCreatePatient() throws Exception {
+        WebTarget target = getWebTarget();
+
+        Patient patient = TestUtil.readLocalResource("Patient_JohnDoe.json");
+        Entity<Patient> entity = Entity.entity(patient, FHIRMediaType.APPLICATION_FHIR_JSON);
+        Response response = target.path("Patient").request().post(entity, Response.class);
+        assertResponse(response, Response.Status.CREATED.getStatusCode());
+        patientId = getLocationLogicalId(response);
+    }
+
+    @Test(groups = { "fhir-operation" }, dependsOnMethods = { "testCreatePatient" })
+    public void testCreateObservations() throws Exception {
+        WebTarget target = getWebTarget();
+
+        for (int i = 0; i < OBSERVATION_COUNT; i++) {
+            Observation observation = TestUtil.buildPatientObservation(patientId, "Observation1.json");
+            Entity<Observation> entity = Entity.entity(observation, FHIRMediaType.APPLICATION_FHIR_JSON);
+            Response response = target.path("Observation").request().post(entity, Response.class);
+            assertResponse(response, Response.Status.CREATED.getStatusCode());
+            observationIds.add(getLocationLogicalId(response));
+        }
+    }
+
+    @Test(groups = { "fhir-operation" }, dependsOnMethods = { "testCreateObservations" })
+    public void testEverything() throws Exception {
+        WebTarget target = getWebTarget();
+
+        Response response = target.path("Patient/" + patientId + "/$everything")
+                .request(FHIRMediaType.APPLICATION_FHIR_JSON).get();
+        assertResponse(response, Response.Status.OK.getStatusCode());
+        Bundle bundle = response.readEntity(Bundle.class);
+        assertNotNull(bundle);
+
+        assertEquals(bundle.getEntry().size(), OBSERVATION_COUNT + 1);
+        assertEquals(bundle.getEntry().get(0).getResource().getId(), patientId);
+        for (Bundle.Entry entry : bundle.getEntry().subList(1, bundle.getEntry().size())) {
+            assertTrue(observationIds.contains(entry.getResource().getId()));
+        }
+        assertFalse(bundle.getLink().stream().anyMatch(l -> "next".equals(l.getRelation().getValue())));
+    }
+
+    @Test(groups = { "fhir-operation" }, dependsOnMethods = { "testCreateObservations" })
+    public void testEverythingPaged() throws Exception {
+        WebTarget target = getWebTarget();
+
+        // Page through the patient and its observations two resources at a time by following the 'next' links
+        Set<String> ids = new HashSet<>();
+        Response response = target.path("Patient/" + patientId + "/$everything")
+                .queryParam("_type", "Observation")
+                .queryParam("_count", 2)
+                .request(FHIRMediaType.APPLICATION_FHIR_JSON).get();
+        int pages = 0;
+        while (true) {
+            assertResponse(response, Response.Status.OK.getStatusCode());
+            Bundle bundle = response.readEntity(Bundle.class);
+            pages++;
+            assertTrue(bundle.getEntry().size() <= 2);
+            for (Bundle.Entry entry : bundle.getEntry()) {
+                assertTrue(ids.add(entry.getResource().getClass().getSimpleName() + "/" + entry.getResource().getId()));
+            }
+
+            Bundle.Link next = bundle.getLink().stream()
+                    .filter(l -> "next".equals(l.getRelation().getValue())).findFirst().orElse(null);
+            if (next == null) {
+                break;
+            }
+            response = getFHIRClient().getWebTarget(next.getUrl().getValue())
+                    .request(FHIRMediaType.APPLICATION_FHIR_JSON).get();
+        }
+
+        assertTrue(pages >= 2);
+        assertEquals(ids.size(), OBSERVATION_COUNT + 1);
+        assertTrue(ids.contains("Patient/" + patientId));
+    }
+
+    @Test(groups = { "fhir-operation" }, dependsOnMethods = { "testCreatePatient" })
+    public void testEverythingInvalidType() throws Exception {
+        WebTarget target = getWebTarget();
+
+        Response response = target.path("Patient/" + patientId + "/$everything")
+                .queryParam("_type", "Organization")
+                .request(FHIRMediaType.APPLICATION_FHIR_JSON).get();
+        assertResponse(response, Response.Status.BAD_REQUEST.getStatusCode());
+    }
+}
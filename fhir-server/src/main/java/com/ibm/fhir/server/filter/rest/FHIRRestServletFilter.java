@@ -29,6 +29,7 @@ import javax.ws.rs.core.UriBuilder;
 import org.owasp.encoder.Encode;
 
 import com.ibm.fhir.config.FHIRConfigHelper;
+import com.ibm.fhir.config.FHIRConfigSnapshot;
 import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.config.FHIRRequestContext;
 import com.ibm.fhir.config.PropertyGroup;
@@ -198,9 +199,9 @@ public class FHIRRestServletFilter extends HttpFilter {
     }
 
     private HTTPHandlingPreference computeHandlingPref(ServletRequest request) throws FHIRException {
-        HTTPHandlingPreference handlingPref = HTTPHandlingPreference.from(FHIRConfigHelper.getStringProperty(FHIRConfiguration.PROPERTY_DEFAULT_HANDLING, "strict"));
-        boolean allowClientHandlingPref = FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_ALLOW_CLIENT_HANDLING_PREF, true);
-        if (allowClientHandlingPref) {
+        FHIRConfigSnapshot config = FHIRConfigHelper.getConfigSnapshot();
+        HTTPHandlingPreference handlingPref = config.getDefaultHandlingPreference();
+        if (config.isAllowClientHandlingPref()) {
             String handlingPrefString = ((HttpServletRequest) request).getHeader(preferHeaderName + ":" + preferHandlingHeaderSectionName);
             if (handlingPrefString != null && !handlingPrefString.isEmpty()) {
                 try {
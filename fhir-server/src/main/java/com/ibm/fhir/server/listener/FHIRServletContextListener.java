@@ -8,9 +8,11 @@ package com.ibm.fhir.server.listener;
 
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_CHECK_REFERENCE_TYPES;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_BOOTSTRAP_DB;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_KAFKA_BATCH_SIZE;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_KAFKA_CONNECTIONPROPS;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_KAFKA_ENABLED;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_KAFKA_TOPICNAME;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_NATS_BATCH_SIZE;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_NATS_CHANNEL;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_NATS_CLIENT;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_NATS_CLUSTER;
@@ -41,6 +43,7 @@ import javax.websocket.server.ServerContainer;
 
 import org.owasp.encoder.Encode;
 
+import com.ibm.fhir.audit.logging.api.AuditLogServiceFactory;
 import com.ibm.fhir.config.FHIRConfigHelper;
 import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.config.FHIRRequestContext;
@@ -48,6 +51,7 @@ import com.ibm.fhir.config.PropertyGroup;
 import com.ibm.fhir.config.PropertyGroup.PropertyEntry;
 import com.ibm.fhir.model.config.FHIRModelConfig;
 import com.ibm.fhir.model.util.FHIRUtil;
+import com.ibm.fhir.notification.FHIRNotificationService;
 import com.ibm.fhir.notification.websocket.impl.FHIRNotificationServiceEndpointConfig;
 import com.ibm.fhir.notifications.kafka.impl.FHIRNotificationKafkaPublisher;
 import com.ibm.fhir.notifications.nats.impl.FHIRNotificationNATSPublisher;
@@ -138,8 +142,11 @@ public class FHIRServletContextListener implements ServletContextListener {
                     }
                 }
 
+                // Retrieve the maximum number of events to publish at once (0 means use the notification service default).
+                int batchSize = fhirConfig.getIntProperty(PROPERTY_KAFKA_BATCH_SIZE, 0);
+
                 log.info("Initializing Kafka notification publisher.");
-                kafkaPublisher = new FHIRNotificationKafkaPublisher(topicName, kafkaProps);
+                kafkaPublisher = new FHIRNotificationKafkaPublisher(topicName, kafkaProps, batchSize);
             } else {
                 log.info("Bypassing Kafka notification init.");
             }
@@ -164,8 +171,11 @@ public class FHIRServletContextListener implements ServletContextListener {
                 tlsProps.setProperty("keystore", fhirConfig.getStringProperty(PROPERTY_NATS_KEYSTORE));
                 tlsProps.setProperty("keystorePass", fhirConfig.getStringProperty(PROPERTY_NATS_KEYSTORE_PW));
 
+                // Retrieve the maximum number of events to publish at once (0 means use the notification service default).
+                int batchSize = fhirConfig.getIntProperty(PROPERTY_NATS_BATCH_SIZE, 0);
+
                 log.info("Initializing NATS notification publisher.");
-                natsPublisher = new FHIRNotificationNATSPublisher(clusterId, channelName, clientId, servers, tlsProps);
+                natsPublisher = new FHIRNotificationNATSPublisher(clusterId, channelName, clientId, servers, tlsProps, batchSize);
             } else {
                 log.info("Bypassing NATS notification init.");
             }
@@ -334,6 +344,12 @@ public class FHIRServletContextListener implements ServletContextListener {
                 natsPublisher.shutdown();
                 natsPublisher = null;
             }
+
+            // Stop the remaining notification dispatchers (e.g. websocket subscribers).
+            FHIRNotificationService.getInstance().shutdown();
+
+            // Publish any pending audit events.
+            AuditLogServiceFactory.shutdown();
         } catch (Exception e) {
         } finally {
             if (log.isLoggable(Level.FINER)) {
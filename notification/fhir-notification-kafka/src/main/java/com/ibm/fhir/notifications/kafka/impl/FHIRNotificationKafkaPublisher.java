@@ -6,6 +6,7 @@
 
 package com.ibm.fhir.notifications.kafka.impl;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -21,7 +22,6 @@ import com.ibm.fhir.notification.FHIRNotificationEvent;
 import com.ibm.fhir.notification.FHIRNotificationService;
 import com.ibm.fhir.notification.FHIRNotificationSubscriber;
 import com.ibm.fhir.notification.exception.FHIRNotificationException;
-import com.ibm.fhir.notification.util.FHIRNotificationUtil;
 
 /**
  * This class implements the FHIR server notification service via a Kafka topic.
@@ -29,10 +29,11 @@ import com.ibm.fhir.notification.util.FHIRNotificationUtil;
 public class FHIRNotificationKafkaPublisher implements FHIRNotificationSubscriber {
     private static final Logger log = Logger.getLogger(FHIRNotificationKafkaPublisher.class.getName());
 
-    private static FHIRNotificationService service = FHIRNotificationService.getInstance();
+    private static final String DEFAULT_LINGER_MS = "5";
 
     private String topicName = null;
-    private Producer<String, String> producer = null;
+    private int batchSize = 0;
+    private Producer<String, byte[]> producer = null;
 
     private Properties kafkaProps = null;
 
@@ -41,8 +42,19 @@ public class FHIRNotificationKafkaPublisher implements FHIRNotificationSubscribe
     }
 
     public FHIRNotificationKafkaPublisher(String topicName, Properties kafkaProps) {
+        this(topicName, kafkaProps, 0);
+    }
+
+    /**
+     * @param topicName
+     * @param kafkaProps
+     * @param batchSize
+     *            the maximum number of events handed to this publisher at once; 0 selects the notification service default
+     */
+    public FHIRNotificationKafkaPublisher(String topicName, Properties kafkaProps, int batchSize) {
         log.entering(this.getClass().getName(), "ctor");
         try {
+            this.batchSize = batchSize;
             init(topicName, kafkaProps);
         } finally {
             log.exiting(this.getClass().getName(), "ctor");
@@ -63,10 +75,15 @@ public class FHIRNotificationKafkaPublisher implements FHIRNotificationSubscribe
             }
 
             // We'll hard-code some properties to ensure they are set correctly.
+            // Events are serialized once by the notification service, so the value is sent as-is.
             this.kafkaProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringSerializer");
-            this.kafkaProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringSerializer");
+            this.kafkaProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.ByteArraySerializer");
             this.kafkaProps.put(ProducerConfig.CLIENT_ID_CONFIG, "fhir-server");
 
+            // Batch events for a short time unless the connection properties say otherwise;
+            // batch.size and compression.type can be set through the connection properties as well.
+            this.kafkaProps.putIfAbsent(ProducerConfig.LINGER_MS_CONFIG, DEFAULT_LINGER_MS);
+
             // Make sure that the properties file contains the bootstrap.servers property at a minimum.
             String bootstrapServers = this.kafkaProps.getProperty(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG);
             if (bootstrapServers == null) {
@@ -74,11 +91,11 @@ public class FHIRNotificationKafkaPublisher implements FHIRNotificationSubscribe
             }
 
             // Create our producer object to be used for publishing.
-            producer = new KafkaProducer<String, String>(this.kafkaProps);
+            producer = new KafkaProducer<String, byte[]>(this.kafkaProps);
 
             // Register this Kafka implementation as a "subscriber" with our Notification Service.
             // This means that our "notify" method will be called when the server publishes an event.
-            service.subscribe(this);
+            FHIRNotificationService.getInstance().subscribe(this, batchSize);
             log.info("Initialized Kafka publisher for topic '" + topicName + "' using bootstrap servers: " + bootstrapServers + ".");
         } catch (Throwable t) {
             String msg = "Caught exception while initializing Kafka publisher.";
@@ -99,6 +116,8 @@ public class FHIRNotificationKafkaPublisher implements FHIRNotificationSubscribe
             if (log.isLoggable(Level.FINE)) {
                 log.fine("Shutting down Kafka publisher for topic: '" + topicName + "'.");
             }
+            // Deliver any queued events before closing the producer.
+            FHIRNotificationService.getInstance().unsubscribe(this);
             if (producer != null) {
                 producer.close();
             }
@@ -107,25 +126,31 @@ public class FHIRNotificationKafkaPublisher implements FHIRNotificationSubscribe
         }
     }
 
+    @Override
+    public String getName() {
+        return "kafka-" + topicName;
+    }
+
     @Override
     public void notify(FHIRNotificationEvent event) throws FHIRNotificationException {
         log.entering(this.getClass().getName(), "notify");
         String topicId = "[" + this.kafkaProps.getProperty(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG) + "]/" + topicName;
-        String jsonString = null;
+        byte[] json = null;
         try {
-            jsonString = FHIRNotificationUtil.toJsonString(event, true);
+            json = event.getJsonBytes(true);
 
             if (log.isLoggable(Level.FINE)) {
-                log.fine("Publishing kafka notification event to topic '" + topicId + "',\nmessage: " + jsonString);
+                log.fine("Publishing kafka notification event to topic '" + topicId + "',\nmessage: " + new String(json, StandardCharsets.UTF_8));
             }
 
-            producer.send(new ProducerRecord<String, String>(topicName, jsonString), new KafkaPublisherCallback(event, jsonString, topicId));
+            // Key the record by resource so that all events for a resource land on the same partition (in order).
+            producer.send(new ProducerRecord<String, byte[]>(topicName, getRecordKey(event), json), new KafkaPublisherCallback(event, json, topicId));
 
             if (log.isLoggable(Level.FINE)) {
                 log.fine("Returned from async kafka send...");
             }
         } catch (Throwable e) {
-            String msg = buildNotificationErrorMessage(topicId, (jsonString == null ? "<null>" : jsonString));
+            String msg = buildNotificationErrorMessage(topicId, (json == null ? "<null>" : new String(json, StandardCharsets.UTF_8)));
             log.log(Level.SEVERE, msg , e);
             throw new FHIRNotificationException(msg, e);
         } finally {
@@ -133,12 +158,29 @@ public class FHIRNotificationKafkaPublisher implements FHIRNotificationSubscribe
         }
     }
 
+    /**
+     * @return the record key for the event, in the form "resourceType/id"
+     */
+    public static String getRecordKey(FHIRNotificationEvent event) {
+        if (event.getResource() != null) {
+            return event.getResource().getClass().getSimpleName() + "/" + event.getResourceId();
+        }
+        // Fall back to the first two segments of the location (e.g. "Patient/123/_history/1")
+        String location = event.getLocation();
+        if (location != null) {
+            int index = location.indexOf('/');
+            index = index < 0 ? -1 : location.indexOf('/', index + 1);
+            return index < 0 ? location : location.substring(0, index);
+        }
+        return event.getResourceId();
+    }
+
     public class KafkaPublisherCallback implements Callback {
         private FHIRNotificationEvent event;
-        private String notificationEvent;
+        private byte[] notificationEvent;
         private String topicId;
 
-        public KafkaPublisherCallback(FHIRNotificationEvent event, String notificationEvent, String topicId) {
+        public KafkaPublisherCallback(FHIRNotificationEvent event, byte[] notificationEvent, String topicId) {
             super();
             this.event = event;
             this.notificationEvent = notificationEvent;
@@ -161,7 +203,7 @@ public class FHIRNotificationKafkaPublisher implements FHIRNotificationSubscribe
                 // If we detected a 'send' failure, then log an error message that includes the notification message
                 // that we tried to send.
                 else {
-                    String msg = buildNotificationErrorMessage(topicId, notificationEvent);
+                    String msg = buildNotificationErrorMessage(topicId, new String(notificationEvent, StandardCharsets.UTF_8));
                     log.log(Level.SEVERE, msg, exception);
                 }
             } finally {
@@ -0,0 +1,53 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.notifications.kafka.impl.test;
+
+import static com.ibm.fhir.model.type.String.string;
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.type.CodeableConcept;
+import com.ibm.fhir.model.type.code.ObservationStatus;
+import com.ibm.fhir.notification.FHIRNotificationEvent;
+import com.ibm.fhir.notifications.kafka.impl.FHIRNotificationKafkaPublisher;
+
+public class FHIRNotificationKafkaPublisherTest {
+
+    @Test
+    public void testRecordKeyFromResource() {
+        Observation observation = Observation.builder()
+                .id("123")
+                .status(ObservationStatus.FINAL)
+                .code(CodeableConcept.builder().text(string("code")).build())
+                .build();
+        FHIRNotificationEvent event = event("Observation/123/_history/2", "123");
+        event.setResource(observation);
+        assertEquals(FHIRNotificationKafkaPublisher.getRecordKey(event), "Observation/123");
+    }
+
+    @Test
+    public void testRecordKeyFromLocation() {
+        assertEquals(FHIRNotificationKafkaPublisher.getRecordKey(event("Patient/123/_history/1", "123")), "Patient/123");
+        assertEquals(FHIRNotificationKafkaPublisher.getRecordKey(event("Patient/123", "123")), "Patient/123");
+        assertEquals(FHIRNotificationKafkaPublisher.getRecordKey(event("Patient", "123")), "Patient");
+    }
+
+    @Test
+    public void testRecordKeyFromResourceId() {
+        assertEquals(FHIRNotificationKafkaPublisher.getRecordKey(event(null, "123")), "123");
+    }
+
+    private static FHIRNotificationEvent event(String location, String resourceId) {
+        FHIRNotificationEvent event = new FHIRNotificationEvent();
+        event.setOperationType("update");
+        event.setLocation(location);
+        event.setResourceId(resourceId);
+        return event;
+    }
+}
@@ -8,6 +8,7 @@ package com.ibm.fhir.notifications.nats.impl;
 
 import java.io.BufferedInputStream;
 import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyStore;
 import java.security.SecureRandom;
 import javax.net.ssl.KeyManager;
@@ -32,7 +33,6 @@ import com.ibm.fhir.notification.FHIRNotificationEvent;
 import com.ibm.fhir.notification.FHIRNotificationService;
 import com.ibm.fhir.notification.FHIRNotificationSubscriber;
 import com.ibm.fhir.notification.exception.FHIRNotificationException;
-import com.ibm.fhir.notification.util.FHIRNotificationUtil;
 
 /**
  * This class implements the FHIR server notification service via a NATS channel.
@@ -44,14 +44,24 @@ public class FHIRNotificationNATSPublisher implements FHIRNotificationSubscriber
     private StreamingConnection sc = null;
     private AckHandler acb = null;
     private String channelName = null;
+    private int batchSize = 0;
 
     // "Hide" the default constructor.
     protected FHIRNotificationNATSPublisher() {
     }
 
     public FHIRNotificationNATSPublisher(String clusterId, String channelName, String clientId, String servers, Properties tlsProps) {
+        this(clusterId, channelName, clientId, servers, tlsProps, 0);
+    }
+
+    /**
+     * @param batchSize
+     *            the maximum number of events handed to this publisher at once; 0 selects the notification service default
+     */
+    public FHIRNotificationNATSPublisher(String clusterId, String channelName, String clientId, String servers, Properties tlsProps, int batchSize) {
         log.entering(this.getClass().getName(), "constructor");
         try {
+            this.batchSize = batchSize;
             init(clusterId, channelName, clientId, servers, tlsProps);
         } finally {
             log.exiting(this.getClass().getName(), "constructor");
@@ -118,7 +128,7 @@ public class FHIRNotificationNATSPublisher implements FHIRNotificationSubscriber
 
             // Register this NATS implementation as a "subscriber" with our Notification Service.
             // This means that our "notify" method will be called when the server publishes an event.
-            service.subscribe(this);
+            service.subscribe(this, batchSize);
             log.info("Initialized NATS publisher for channel '" + channelName + "' using servers: '" + servers + "'.");
         } catch (Throwable t) {
             String msg = "Caught exception while initializing NATS publisher.";
@@ -139,6 +149,8 @@ public class FHIRNotificationNATSPublisher implements FHIRNotificationSubscriber
             if (log.isLoggable(Level.FINE)) {   
                 log.fine("Shutting down NATS publisher for channel: '" + channelName + "'.");
             }
+            // Deliver any queued events before closing the connection.
+            service.unsubscribe(this);
             if (sc != null) {
                sc.close();
             }
@@ -151,27 +163,32 @@ public class FHIRNotificationNATSPublisher implements FHIRNotificationSubscriber
         }
     }
 
+    @Override
+    public String getName() {
+        return "nats-" + channelName;
+    }
+
     /**
      * Publishes an event to NATS.
      */
     @Override
     public void notify(FHIRNotificationEvent event) throws FHIRNotificationException {
         log.entering(this.getClass().getName(), "notify");
-        String jsonString = null;
+        byte[] json = null;
         try {
-            jsonString = FHIRNotificationUtil.toJsonString(event, true);
+            json = event.getJsonBytes(true);
 
             if (log.isLoggable(Level.FINE)) { 
-                log.fine("Publishing NATS notification event to channel '" + channelName + "',\nmessage: '" + jsonString + "'.");
+                log.fine("Publishing NATS notification event to channel '" + channelName + "',\nmessage: '" + new String(json, StandardCharsets.UTF_8) + "'.");
             }
             
-            sc.publish("FHIRNotificationEvent", jsonString.getBytes(), acb);
+            sc.publish("FHIRNotificationEvent", json, acb);
     
             if (log.isLoggable(Level.FINE)) {
                 log.fine("Published NATS notification event to channel '" + channelName + "'");
             }
         } catch (Throwable e) {
-            String msg = buildNotificationErrorMessage(channelName, (jsonString == null ? "<null>" : jsonString));
+            String msg = buildNotificationErrorMessage(channelName, (json == null ? "<null>" : new String(json, StandardCharsets.UTF_8)));
             log.log(Level.SEVERE, msg , e);
             throw new FHIRNotificationException(msg, e);
         } finally {
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016,2019
+ * (C) Copyright IBM Corp. 2016,2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -16,6 +16,8 @@ import javax.websocket.Endpoint;
 import javax.websocket.EndpointConfig;
 import javax.websocket.Session;
 
+import com.ibm.fhir.config.FHIRConfigHelper;
+import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.notification.FHIRNotificationService;
 import com.ibm.fhir.notification.FHIRNotificationSubscriber;
 
@@ -45,7 +47,8 @@ public class FHIRNotificationServiceEndpoint extends Endpoint {
         log.entering(this.getClass().getName(), "onOpen");
         try {
             FHIRNotificationSubscriber subscriber = new FHIRNotificationSubscriberImpl(session);
-            notificationService.subscribe(subscriber);
+            int batchSize = FHIRConfigHelper.getIntProperty(FHIRConfiguration.PROPERTY_WEBSOCKET_BATCH_SIZE, 0);
+            notificationService.subscribe(subscriber, batchSize);
             subscribers.put(session, subscriber);
             log.info(String.format("Notification client [sessionId=%s] has registered.", session.getId()));
         } finally {
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016,2019
+ * (C) Copyright IBM Corp. 2016,2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -23,9 +23,21 @@ public class FHIRNotificationSubscriberImpl implements FHIRNotificationSubscribe
         this.session = session;
     }
 
+    @Override
+    public String getName() {
+        return "websocket-" + session.getId();
+    }
+
+    @Override
+    public boolean isDurable() {
+        // A websocket session doesn't survive a restart
+        return false;
+    }
+
     public void notify(FHIRNotificationEvent event) throws FHIRNotificationException {
         log.entering(this.getClass().getName(), "notify");
         try {
+            // The serialized event is cached, so it is shared by all websocket sessions
             String message = FHIRNotificationUtil.toJsonString(event, false);
             if (log.isLoggable(Level.FINE)) { 
                 log.fine("Publishing websocket notification event on session [id=" + session.getId() + "],\nmessage:" + message);
@@ -42,6 +42,10 @@ public class BulkDataConstants {
                 "application/ndjson",
                 "ndjson"
             ));
+    // The export storage type which writes the exported files to the export directory instead of the object store
+    public static final String EXPORT_STORAGE_TYPE_FILE = "file";
+    // The export compression which gzips the exported NDJSON files
+    public static final String EXPORT_COMPRESSION_GZIP = "gzip";
 
     // Export
     public static final String PARAM_OUTPUT_FORMAT = "_outputFormat";
@@ -50,6 +54,7 @@ public class BulkDataConstants {
     public static final String PARAM_TYPE_FILTER = "_typeFilter";
     public static final String PARAM_GROUP_ID = "groupId";
     public static final String PARAM_JOB = "job";
+    public static final String PARAM_FILE = "file";
 
     // Encryption key used for JavaBatch Job ID
     public static final SecretKeySpec BATCHJOBID_ENCRYPTION_KEY =
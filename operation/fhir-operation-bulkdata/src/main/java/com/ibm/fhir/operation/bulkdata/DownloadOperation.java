@@ -0,0 +1,57 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.operation.bulkdata;
+
+import java.io.InputStream;
+
+import com.ibm.fhir.exception.FHIROperationException;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.OperationDefinition;
+import com.ibm.fhir.model.resource.Parameters;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.code.IssueType;
+import com.ibm.fhir.operation.bulkdata.processor.BulkDataFactory;
+import com.ibm.fhir.operation.bulkdata.util.BulkDataExportUtil;
+import com.ibm.fhir.server.operation.spi.AbstractOperation;
+import com.ibm.fhir.server.operation.spi.FHIROperationContext;
+import com.ibm.fhir.server.operation.spi.FHIRResourceHelpers;
+
+/**
+ * Downloads a file of a completed bulkdata export job which was exported to the file system
+ * (export.fhir.storagetype "file"); the polling response of such a job links its files to this operation.
+ */
+public class DownloadOperation extends AbstractOperation {
+    private static final String FILE = "download.json";
+
+    public DownloadOperation() {
+        super();
+    }
+
+    @Override
+    protected OperationDefinition buildOperationDefinition() {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(FILE);) {
+            return FHIRParser.parser(Format.JSON).parse(in);
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+
+    @Override
+    protected Parameters doInvoke(FHIROperationContext operationContext, Class<? extends Resource> resourceType,
+            String logicalId, String versionId, Parameters parameters, FHIRResourceHelpers resourceHelper)
+            throws FHIROperationException {
+        if (logicalId == null && versionId == null && resourceType == null) {
+            String job = BulkDataExportUtil.checkAndValidateJob(parameters);
+            String file = BulkDataExportUtil.checkAndValidateFile(parameters);
+            return BulkDataFactory.getTenantInstance().download(job, file, operationContext);
+        } else {
+            // Root operation is only supported
+            throw buildExceptionWithIssue("Invalid call $bulkdata-download operation call", IssueType.INVALID);
+        }
+    }
+}
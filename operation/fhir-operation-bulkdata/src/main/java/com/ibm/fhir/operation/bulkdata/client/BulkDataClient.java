@@ -11,6 +11,9 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
@@ -27,6 +30,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
 import javax.crypto.KeyGenerator;
 import javax.ws.rs.client.ClientBuilder;
@@ -62,6 +66,8 @@ public class BulkDataClient {
     private static final String CLASSNAME = BulkDataClient.class.getName();
     private static final Logger log = Logger.getLogger(CLASSNAME);
     private static final SecureRandom RANDOM = new SecureRandom();
+    // The names of the files written by the export jobs, e.g, Patient_1.ndjson or Patient_1.ndjson.gz
+    private static final Pattern EXPORTED_FILE_NAME = Pattern.compile("[A-Za-z]+_[0-9]+\\.(ndjson|ndjson\\.gz|parquet)");
 
     // @formatter:off
     private static final DateTimeFormatter DATE_TIME_PARSER_FORMATTER =
@@ -222,7 +228,17 @@ public class BulkDataClient {
             builder.fhirTypeFilters(properties.get(BulkDataConstants.PARAM_TYPE_FILTER));
         }
 
-        builder.fhirExportFormat(properties.getOrDefault(BulkDataConstants.PARAM_OUTPUT_FORMAT, FHIRMediaType.APPLICATION_NDJSON));
+        String exportFormat = properties.getOrDefault(BulkDataConstants.PARAM_OUTPUT_FORMAT, FHIRMediaType.APPLICATION_NDJSON);
+        builder.fhirExportFormat(exportFormat);
+
+        // Gzip the NDJSON files, if configured; parquet files are compressed anyway
+        if (!FHIRMediaType.APPLICATION_PARQUET.equals(exportFormat)) {
+            builder.exportCompression(properties.get(BulkDataConfigUtil.JOB_PARAMETERS_EXPORT_COMPRESSION));
+        }
+
+        // Export to the file system instead of the object store, if configured
+        builder.exportStorageType(properties.get(BulkDataConfigUtil.JOB_PARAMETERS_EXPORT_STORAGE_TYPE));
+        builder.exportDirectory(properties.get(BulkDataConfigUtil.JOB_PARAMETERS_EXPORT_DIRECTORY));
 
         String entityStr = JobInstanceRequest.Writer.generate(builder.build(), true);
         Entity<String> entity = Entity.json(entityStr);
@@ -298,7 +314,7 @@ public class BulkDataClient {
                 throw BulkDataExportUtil.buildOperationException("Error while reading the bulk export status",
                         IssueType.INVALID);
             } else if (BulkDataConstants.SUCCESS_STATUS.contains(batchStatus)) {
-                result = process(bulkExportJobExecutionResponse);
+                result = process(job, bulkExportJobExecutionResponse);
             } else if (BulkDataConstants.FAILED_STATUS.contains(batchStatus)) {
                 /*
                  * In the case of a partial success, the server SHALL use a 200 status code instead of 4XX or 5XX.
@@ -328,6 +344,64 @@ public class BulkDataClient {
         return result;
     }
 
+    /**
+     * Resolves a file of a completed export job which was exported to the file system.
+     *
+     * @param job
+     * @param fileName the name of the exported file, e.g, Patient_1.ndjson
+     * @return the path of the exported file
+     * @throws Exception
+     */
+    public Path getExportedFile(String job, String fileName) throws Exception {
+        if (fileName == null || !EXPORTED_FILE_NAME.matcher(fileName).matches()) {
+            throw BulkDataExportUtil.buildOperationException("Invalid file sent to $bulkdata-download", IssueType.INVALID);
+        }
+
+        String baseUrl = properties.get(BulkDataConfigUtil.BATCH_URL) + "/" + job;
+        Response r = getWebTarget(baseUrl).request().get();
+        String responseStr = r.readEntity(String.class);
+
+        if (responseStr == null || responseStr.isEmpty() || responseStr.startsWith("Unexpected request/response.")) {
+            throw BulkDataExportUtil.buildOperationException("Invalid job id sent to $bulkdata-download",
+                    IssueType.INVALID);
+        }
+
+        Path file;
+        try {
+            JobInstanceResponse jobInstanceResponse = JobInstanceResponse.Parser.parse(responseStr);
+            baseUrl = properties.get(BulkDataConfigUtil.BATCH_URL) + "/" + jobInstanceResponse.getInstanceId()
+                    + "/jobexecutions/" + jobInstanceResponse.getExecutionId();
+            r = getWebTarget(baseUrl).request().get();
+            responseStr = r.readEntity(String.class);
+
+            JobExecutionResponse jobExecutionResponse = JobExecutionResponse.Parser.parse(responseStr);
+            JobParameter jobParameters = jobExecutionResponse.getJobParameters();
+            verifyTenant(jobParameters);
+
+            if (!BulkDataConstants.SUCCESS_STATUS.contains(jobExecutionResponse.getBatchStatus())
+                    || !BulkDataConstants.EXPORT_STORAGE_TYPE_FILE.equals(jobParameters.getExportStorageType())) {
+                throw BulkDataExportUtil.buildOperationException("The job has no exported file to download",
+                        IssueType.NOT_FOUND);
+            }
+
+            String exportDirectory = jobParameters.getExportDirectory();
+            if (exportDirectory == null) {
+                exportDirectory = properties.get(BulkDataConfigUtil.JOB_PARAMETERS_EXPORT_DIRECTORY);
+            }
+            file = Paths.get(exportDirectory, jobParameters.getCosBucketPathPrefix(), fileName);
+        } catch (FHIROperationException fe) {
+            throw fe;
+        } catch (Exception ex) {
+            throw BulkDataExportUtil.buildOperationException(
+                    "An unexpected error has ocurred while downloading the exported file", IssueType.TRANSIENT);
+        }
+
+        if (!Files.isRegularFile(file)) {
+            throw BulkDataExportUtil.buildOperationException("The exported file is not found", IssueType.NOT_FOUND);
+        }
+        return file;
+    }
+
     /**
      * @param job
      * @return status code
@@ -522,10 +596,11 @@ public class BulkDataClient {
     }
 
     /**
+     * @param job
      * @param response
      * @return
      */
-    private PollingLocationResponse process(JobExecutionResponse response) {
+    private PollingLocationResponse process(String job, JobExecutionResponse response) {
         PollingLocationResponse result = new PollingLocationResponse();
 
         // Assemble the URL
@@ -554,6 +629,14 @@ public class BulkDataClient {
         if (!"COMPLETED".equals(exitStatus) && request.contains("$export")) {
             List<String> resourceTypeInfs = Arrays.asList(exitStatus.split("\\s*:\\s*"));
             List<PollingLocationResponse.Output> outputList = new ArrayList<>();
+            boolean isExportToFile = BulkDataConstants.EXPORT_STORAGE_TYPE_FILE.equals(response.getJobParameters().getExportStorageType());
+            // Gzipped files are advertised with their content encoding.
+            String contentEncoding = null;
+            String extension = ".ndjson";
+            if (BulkDataConstants.EXPORT_COMPRESSION_GZIP.equals(response.getJobParameters().getExportCompression())) {
+                contentEncoding = BulkDataConstants.EXPORT_COMPRESSION_GZIP;
+                extension = ".ndjson.gz";
+            }
             for (String resourceTypeInf : resourceTypeInfs) {
                 String resourceType = resourceTypeInf.substring(0, resourceTypeInf.indexOf("["));
                 String[] resourceCounts =
@@ -562,8 +645,16 @@ public class BulkDataClient {
                 for (int i = 0; i < resourceCounts.length; i++) {
                     String downloadUrl =
                             baseCosUrl + "/" + bucket + "/" + cosBucketPathPrefix + "/" + resourceType + "_" + (i + 1)
-                                    + ".ndjson";
-                    outputList.add(new PollingLocationResponse.Output(resourceType, downloadUrl, resourceCounts[i]));
+                                    + extension;
+                    if (isExportToFile) {
+                        // The files are served by the $bulkdata-download operation of this server.
+                        downloadUrl = properties.get(BulkDataConfigUtil.BASE_URI) + "/$bulkdata-download?job="
+                                + BulkDataExportUtil.encryptBatchJobId(job, BulkDataConstants.BATCHJOBID_ENCRYPTION_KEY)
+                                + "&file=" + resourceType + "_" + (i + 1) + extension;
+                    }
+                    PollingLocationResponse.Output output = new PollingLocationResponse.Output(resourceType, downloadUrl, resourceCounts[i]);
+                    output.setContentEncoding(contentEncoding);
+                    outputList.add(output);
                 }
             }
             result.setOutput(outputList);
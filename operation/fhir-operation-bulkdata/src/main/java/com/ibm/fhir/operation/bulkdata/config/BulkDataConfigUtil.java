@@ -33,6 +33,9 @@ public class BulkDataConfigUtil {
     public static final String JOB_PARAMETERS_IBM = "cos.credential.ibm";
     public static final String JOB_PARAMETERS_KEY = "cos.api.key";
     public static final String JOB_PARAMETERS_ID = "cos.srvinst.id";
+    public static final String JOB_PARAMETERS_EXPORT_STORAGE_TYPE = "export.fhir.storagetype";
+    public static final String JOB_PARAMETERS_EXPORT_DIRECTORY = "export.fhir.directory";
+    public static final String JOB_PARAMETERS_EXPORT_COMPRESSION = "export.fhir.compression";
 
     public static final String BATCH_USER = "batch-user";
     public static final String BATCH_USER_PASS = "batch-user-password";
@@ -70,6 +73,9 @@ public class BulkDataConfigUtil {
             properties.put(JOB_PARAMETERS_IBM, jobParameters.getStringProperty(JOB_PARAMETERS_IBM));
             properties.put(JOB_PARAMETERS_KEY, jobParameters.getStringProperty(JOB_PARAMETERS_KEY));
             properties.put(JOB_PARAMETERS_ID, jobParameters.getStringProperty(JOB_PARAMETERS_ID));
+            properties.put(JOB_PARAMETERS_EXPORT_STORAGE_TYPE, jobParameters.getStringProperty(JOB_PARAMETERS_EXPORT_STORAGE_TYPE, null));
+            properties.put(JOB_PARAMETERS_EXPORT_DIRECTORY, jobParameters.getStringProperty(JOB_PARAMETERS_EXPORT_DIRECTORY, null));
+            properties.put(JOB_PARAMETERS_EXPORT_COMPRESSION, jobParameters.getStringProperty(JOB_PARAMETERS_EXPORT_COMPRESSION, null));
         }
         return properties;
     }
@@ -326,6 +326,24 @@ public class JobExecutionResponse {
             return this;
         }
 
+        @Override
+        public Builder exportStorageType(String exportStorageType) {
+            jobParameter.setExportStorageType(exportStorageType);
+            return this;
+        }
+
+        @Override
+        public Builder exportDirectory(String exportDirectory) {
+            jobParameter.setExportDirectory(exportDirectory);
+            return this;
+        }
+
+        @Override
+        public Builder exportCompression(String exportCompression) {
+            jobParameter.setExportCompression(exportCompression);
+            return this;
+        }
+
         @Override
         public Builder fhirPatientGroupId(String fhirPatientGroupId) {
             jobParameter.setFhirPatientGroupId(fhirPatientGroupId);
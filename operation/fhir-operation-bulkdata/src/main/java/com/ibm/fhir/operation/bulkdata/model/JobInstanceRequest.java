@@ -196,6 +196,24 @@ public class JobInstanceRequest {
             return this;
         }
 
+        @Override
+        public Builder exportStorageType(String exportStorageType) {
+            jobParameter.setExportStorageType(exportStorageType);
+            return this;
+        }
+
+        @Override
+        public Builder exportDirectory(String exportDirectory) {
+            jobParameter.setExportDirectory(exportDirectory);
+            return this;
+        }
+
+        @Override
+        public Builder exportCompression(String exportCompression) {
+            jobParameter.setExportCompression(exportCompression);
+            return this;
+        }
+
         @Override
         public Builder fhirDataSourcesInfo(List<Input> inputs) {
             jobParameter.setInputs(inputs);
@@ -75,6 +75,7 @@ public class PollingLocationResponse {
         private String url;
         private String count;
         private String inputUrl;
+        private String contentEncoding;
 
         // constructor is used for $export
         public Output(String type, String url, String count) {
@@ -125,9 +126,21 @@ public class PollingLocationResponse {
             this.inputUrl = inputUrl;
         }
 
+        /**
+         * @return the Content-Encoding of the file, e.g, gzip, or null if the file isn't compressed
+         */
+        public String getContentEncoding() {
+            return contentEncoding;
+        }
+
+        public void setContentEncoding(String contentEncoding) {
+            this.contentEncoding = contentEncoding;
+        }
+
         @Override
         public String toString() {
-            return "Output [type=" + type + ", url=" + url + ", count=" + count + ", inputUrl=" + inputUrl + "]";
+            return "Output [type=" + type + ", url=" + url + ", count=" + count + ", inputUrl=" + inputUrl
+                    + ", contentEncoding=" + contentEncoding + "]";
         }
 
         /*
@@ -159,6 +172,13 @@ public class PollingLocationResponse {
 
                 }
 
+                if (output.getContentEncoding() != null) {
+                    // The bulk data spec reserves "extension" for server specific information.
+                    generatorOutput.writeStartObject("extension");
+                    generatorOutput.write("contentEncoding", output.getContentEncoding());
+                    generatorOutput.writeEnd();
+                }
+
                 generatorOutput.writeEnd();
             }
         }
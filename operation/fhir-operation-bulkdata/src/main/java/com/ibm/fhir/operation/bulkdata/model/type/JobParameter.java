@@ -52,6 +52,9 @@ public class JobParameter {
     private String cosApiKey;
     private String cosSrvInstId;
     private String cosBucketPathPrefix;
+    private String exportStorageType;
+    private String exportDirectory;
+    private String exportCompression;
 
     public String getCosOperationBucketNameOo() {
         return cosOperationBucketNameOo;
@@ -77,6 +80,30 @@ public class JobParameter {
         this.cosBucketPathPrefix = cosBucketPathPrefix;
     }
 
+    public String getExportStorageType() {
+        return exportStorageType;
+    }
+
+    public void setExportStorageType(String exportStorageType) {
+        this.exportStorageType = exportStorageType;
+    }
+
+    public String getExportDirectory() {
+        return exportDirectory;
+    }
+
+    public void setExportDirectory(String exportDirectory) {
+        this.exportDirectory = exportDirectory;
+    }
+
+    public String getExportCompression() {
+        return exportCompression;
+    }
+
+    public void setExportCompression(String exportCompression) {
+        this.exportCompression = exportCompression;
+    }
+
     public String getFhirResourceType() {
         return fhirResourceType;
     }
@@ -279,6 +306,20 @@ public class JobParameter {
                 generator.write("fhir.exportFormat", parameter.getFhirExportFormat());
             }
 
+            if (parameter.getExportStorageType() != null) {
+                generator.write("export.fhir.storagetype", parameter.getExportStorageType());
+            }
+
+            if (parameter.getExportCompression() != null) {
+                generator.write("export.fhir.compression", parameter.getExportCompression());
+            }
+
+            if (withSensitive) {
+                if (parameter.getExportDirectory() != null) {
+                    generator.write("export.fhir.directory", parameter.getExportDirectory());
+                }
+            }
+
             if (parameter.getInputs() != null) {
                 generator.write("fhir.dataSourcesInfo", writeToBase64(parameter.getInputs()));
             }
@@ -351,6 +392,12 @@ public class JobParameter {
         public Builder fhirStorageType(StorageDetail storageDetail);
 
         public Builder fhirExportFormat(String mediaType);
+
+        public Builder exportStorageType(String exportStorageType);
+
+        public Builder exportDirectory(String exportDirectory);
+
+        public Builder exportCompression(String exportCompression);
     }
 
     public static class Parser {
@@ -431,6 +478,21 @@ public class JobParameter {
                 builder.fhirPatientGroupId(fhirPatientGroupId);
             }
 
+            if (obj.containsKey("export.fhir.storagetype")) {
+                String exportStorageType = obj.getString("export.fhir.storagetype");
+                builder.exportStorageType(exportStorageType);
+            }
+
+            if (obj.containsKey("export.fhir.directory")) {
+                String exportDirectory = obj.getString("export.fhir.directory");
+                builder.exportDirectory(exportDirectory);
+            }
+
+            if (obj.containsKey("export.fhir.compression")) {
+                String exportCompression = obj.getString("export.fhir.compression");
+                builder.exportCompression(exportCompression);
+            }
+
             if (obj.containsKey("fhir.dataSourcesInfo")) {
                 String dataSourcesInfo = obj.getString("fhir.dataSourcesInfo");
                 // Base64 at this point, and we just dump it into an intermediate value until it's needed.
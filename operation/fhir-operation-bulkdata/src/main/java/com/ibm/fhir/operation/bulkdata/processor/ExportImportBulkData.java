@@ -24,6 +24,7 @@ import com.ibm.fhir.server.operation.spi.FHIRResourceHelpers;
  * <li>Export</li>
  * <li>Import</li>
  * <li>polling location/status</li>
+ * <li>download of the files exported to the file system</li>
  */
 public interface ExportImportBulkData {
 
@@ -83,4 +84,15 @@ public interface ExportImportBulkData {
      * @throws FHIROperationException
      */
     public Parameters status(String job, FHIROperationContext operationContext) throws FHIROperationException;
-}
\ No newline at end of file
+
+    /**
+     * downloads a file of the export job, if the job exported to the file system
+     *
+     * @param job
+     * @param file
+     * @param operationContext
+     * @return
+     * @throws FHIROperationException
+     */
+    public Parameters download(String job, String file, FHIROperationContext operationContext) throws FHIROperationException;
+}
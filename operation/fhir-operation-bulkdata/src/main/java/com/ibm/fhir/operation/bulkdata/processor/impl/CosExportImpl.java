@@ -6,6 +6,8 @@
 
 package com.ibm.fhir.operation.bulkdata.processor.impl;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -15,8 +17,11 @@ import java.util.logging.Logger;
 
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 
+import com.ibm.fhir.core.FHIRMediaType;
 import com.ibm.fhir.exception.FHIROperationException;
 import com.ibm.fhir.model.resource.Parameters;
 import com.ibm.fhir.model.type.Instant;
@@ -159,6 +164,38 @@ public class CosExportImpl implements ExportImportBulkData {
         }
     }
 
+    @Override
+    public Parameters download(String job, String file, FHIROperationContext operationContext) throws FHIROperationException {
+        try {
+            Map<String, String> tmpProperties = new HashMap<>();
+            tmpProperties.putAll(properties);
+            addBaseUri(operationContext, tmpProperties);
+            BulkDataClient client = new BulkDataClient(tmpProperties);
+            Path exportedFile = client.getExportedFile(job, file);
+
+            // Stream the file straight from the disk rather than reading it into memory.
+            StreamingOutput entity = out -> Files.copy(exportedFile, out);
+            String mediaType = file.endsWith(".parquet") ? FHIRMediaType.APPLICATION_PARQUET : FHIRMediaType.APPLICATION_NDJSON;
+            ResponseBuilder responseBuilder = Response.status(Status.OK).entity(entity).type(mediaType)
+                    .header("Content-Length", Files.size(exportedFile));
+            if (file.endsWith(".gz")) {
+                // Served as stored; clients which accept gzip decompress it on the fly.
+                responseBuilder.header("Content-Encoding", BulkDataConstants.EXPORT_COMPRESSION_GZIP);
+            }
+            Response response = responseBuilder.build();
+
+            // Set to accepted for signaling purposes, it does not OVERRIDE the above Status
+            operationContext.setProperty(FHIROperationContext.PROPNAME_STATUS_TYPE, Response.Status.ACCEPTED);
+            operationContext.setProperty(FHIROperationContext.PROPNAME_RESPONSE, response);
+
+            return FHIROperationUtil.getOutputParameters(null);
+        } catch (FHIROperationException fe) {
+            throw fe;
+        } catch (Exception e) {
+            throw new FHIROperationException("exception with $bulkdata-download operation", e);
+        }
+    }
+
     @Override
     public Parameters importBulkData(String inputFormat, String inputSource, List<Input> inputs,
             StorageDetail storageDetail, FHIROperationContext operationContext) throws FHIROperationException {
@@ -151,4 +151,9 @@ public class DummyImportExportImpl implements ExportImportBulkData {
             throw new FHIROperationException("$import operation", e);
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public Parameters download(String job, String file, FHIROperationContext operationContext) throws FHIROperationException {
+        throw new FHIROperationException("$bulkdata-download is not supported by the dummy implementation");
+    }
+}
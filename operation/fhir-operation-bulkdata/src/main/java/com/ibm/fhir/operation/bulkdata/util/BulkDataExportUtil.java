@@ -268,6 +268,23 @@ public class BulkDataExportUtil {
         throw new FHIROperationException("no job identifier is passed");
     }
 
+    public static String checkAndValidateFile(Parameters parameters) throws FHIROperationException {
+        if (parameters != null) {
+            for (Parameters.Parameter parameter : parameters.getParameter()) {
+                if (BulkDataConstants.PARAM_FILE.equals(parameter.getName().getValue())
+                        && parameter.getValue() != null && parameter.getValue().is(com.ibm.fhir.model.type.String.class)) {
+                    String file = parameter.getValue().as(com.ibm.fhir.model.type.String.class).getValue();
+                    if (file.contains("/") || file.contains("\\") || file.contains("..")) {
+                        throw new FHIROperationException("file passed is invalid and is not supported");
+                    }
+                    return file;
+                }
+            }
+        }
+
+        throw new FHIROperationException("no file name is passed");
+    }
+
 
     public static String encryptBatchJobId(String strToEncrypt, SecretKeySpec key) {
         // Encrypt and UrlEncode the batch job id.
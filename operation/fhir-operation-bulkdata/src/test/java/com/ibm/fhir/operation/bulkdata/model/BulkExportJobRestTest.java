@@ -5,7 +5,10 @@
  */
 package com.ibm.fhir.operation.bulkdata.model;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 import java.io.ByteArrayInputStream;
@@ -399,6 +402,39 @@ public class BulkExportJobRestTest {
         }
     }
 
+    @Test
+    public void testBulkExportJobInstanceRequestExportToFile() throws Exception {
+        String jsonString =
+                "{\n" +
+                        "    \"applicationName\": \"fhir-bulkimportexport-webapp\",\n" +
+                        "    \"moduleName\": \"fhir-bulkimportexport-webapp-4.0.0-SNAPSHOT.war\",\n" +
+                        "    \"jobXMLName\": \"FhirBulkExportChunkJob\",\n" +
+                        "    \"jobParameters\": {\n" +
+                        "        \"fhir.resourcetype\": \"Patient\",\n" +
+                        "        \"fhir.tenant\": \"default\",\n" +
+                        "        \"cos.bucket.pathprefix\": \"mytest\",\n" +
+                        "        \"export.fhir.storagetype\": \"file\",\n" +
+                        "        \"export.fhir.directory\": \"/output/bulkdata\"\n" +
+                        "    }\n" +
+                        "}";
+
+        try (InputStream in = new ByteArrayInputStream(jsonString.getBytes())) {
+            JobInstanceRequest parsedObj = JobInstanceRequest.Parser.parse(in);
+            assertEquals(parsedObj.getJobParameters().getExportStorageType(), "file");
+            assertEquals(parsedObj.getJobParameters().getExportDirectory(), "/output/bulkdata");
+
+            String str = JobInstanceRequest.Writer.generate(parsedObj, true);
+            JSONAssert.assertEquals(jsonString, str, false);
+
+            // The export directory is sensitive
+            str = JobInstanceRequest.Writer.generate(parsedObj, false);
+            assertTrue(str.contains("export.fhir.storagetype"));
+            assertFalse(str.contains("export.fhir.directory"));
+        } catch (Exception e) {
+            fail("failed to parse", e);
+        }
+    }
+
     @Test
     public void testBulkExportJobInstanceRequestEmpty() throws Exception {
         String jsonString = "{}";
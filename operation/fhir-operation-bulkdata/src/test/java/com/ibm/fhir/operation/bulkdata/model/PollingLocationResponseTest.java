@@ -113,6 +113,24 @@ public class PollingLocationResponseTest {
         assertEquals(actual, expected);
     }
 
+    @Test
+    public void testOutputSerializationWithContentEncoding() throws IOException {
+        PollingLocationResponse.Output output = new PollingLocationResponse.Output("Patient", "url1", "10");
+        output.setContentEncoding("gzip");
+        assertEquals(output.getContentEncoding(), "gzip");
+        String expected =
+                "\n{\n" + "    \"type\": \"Patient\",\n" + "    \"url\": \"url1\",\n" + "    \"count\": 10,\n"
+                        + "    \"extension\": {\n" + "        \"contentEncoding\": \"gzip\"\n" + "    }\n" + "}";
+        String actual = null;
+        try (StringWriter writerx = new StringWriter();) {
+            try (JsonGenerator generator = PRETTY_PRINTING_GENERATOR_FACTORY.createGenerator(writerx);) {
+                PollingLocationResponse.Output.Writer.generate(generator, output);
+            }
+            actual = writerx.toString();
+        }
+        assertEquals(actual, expected);
+    }
+
     @Test
     public void testResponseMetadataJsonEmpty() throws IOException {
         PollingLocationResponse metadata = new PollingLocationResponse();
@@ -0,0 +1,361 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.operation.everything;
+
+import static com.ibm.fhir.model.type.String.string;
+
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.exception.FHIROperationException;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Bundle;
+import com.ibm.fhir.model.resource.OperationDefinition;
+import com.ibm.fhir.model.resource.Parameters;
+import com.ibm.fhir.model.resource.Parameters.Parameter;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.Url;
+import com.ibm.fhir.model.type.code.BundleType;
+import com.ibm.fhir.model.type.code.IssueType;
+import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.FHIRPersistenceTransaction;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
+import com.ibm.fhir.persistence.interceptor.FHIRPersistenceEvent;
+import com.ibm.fhir.persistence.interceptor.impl.FHIRPersistenceInterceptorMgr;
+import com.ibm.fhir.search.SearchConstants;
+import com.ibm.fhir.search.compartment.CompartmentUtil;
+import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.util.SearchUtil;
+import com.ibm.fhir.server.operation.spi.AbstractOperation;
+import com.ibm.fhir.server.operation.spi.FHIROperationContext;
+import com.ibm.fhir.server.operation.spi.FHIRResourceHelpers;
+import com.ibm.fhir.server.util.FHIROperationUtil;
+
+/**
+ * Implements the Patient/[id]/$everything operation.
+ * <br>
+ * The result holds the patient and the resources of its Patient compartment, one resource type after the other. Each
+ * resource type is read with a single compartment search that pages by (lastUpdated, resourceId) keyset, so no count
+ * query is run and the server never holds more than one page. The 'beforeSearch' and 'afterSearch' interceptors are
+ * fired for the search of each resource type, so the interceptors which authorize searches also apply here. The 'next'
+ * link of a page carries a cursor with the resource type and the keyset of the last resource returned.
+ *
+ * @see https://www.hl7.org/fhir/R4/patient-operation-everything.html
+ */
+public class EverythingOperation extends AbstractOperation {
+    private static final Logger log = Logger.getLogger(EverythingOperation.class.getName());
+
+    private static final String COMPARTMENT = "Patient";
+    private static final String PARAM_SINCE = "_since";
+    private static final String PARAM_TYPE = "_type";
+    private static final String PARAM_COUNT = "_count";
+    private static final String PARAM_CURSOR = "_cursor";
+    private static final String PARAM_LAST_UPDATED = "_lastUpdated";
+    private static final String CURSOR_SEPARATOR = "|";
+
+    public EverythingOperation() {
+        super();
+    }
+
+    @Override
+    protected OperationDefinition buildOperationDefinition() {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("everything.json")) {
+            return FHIRParser.parser(Format.JSON).parse(in);
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+
+    @Override
+    protected Parameters doInvoke(FHIROperationContext operationContext, Class<? extends Resource> resourceType,
+            String logicalId, String versionId, Parameters parameters, FHIRResourceHelpers resourceHelper)
+            throws FHIROperationException {
+        try {
+            if (logicalId == null) {
+                throw buildExceptionWithIssue("The $everything operation must be invoked on a Patient instance",
+                        IssueType.NOT_SUPPORTED);
+            }
+            Instant since = getSince(parameters);
+            List<String> resourceTypes = getResourceTypes(parameters);
+            int count = getCount(parameters);
+            Cursor cursor = getCursor(parameters, resourceTypes);
+
+            Patient patient = (Patient) resourceHelper.doRead(COMPARTMENT, logicalId, true, false, null, null);
+
+            FHIRPersistence persistence =
+                    (FHIRPersistence) operationContext.getProperty(FHIROperationContext.PROPNAME_PERSISTENCE_IMPL);
+            List<Resource> resources = new ArrayList<>();
+            Cursor nextCursor = null;
+
+            // The patient itself starts the first page
+            if (cursor == null && (since == null || !since.isAfter(getLastUpdated(patient)))) {
+                resources.add(patient);
+            }
+
+            FHIRPersistenceTransaction tx = resourceHelper.getTransaction();
+            tx.begin();
+            try {
+                int typeIndex = cursor != null ? resourceTypes.indexOf(cursor.resourceType) : 0;
+                while (typeIndex < resourceTypes.size()) {
+                    String compartmentType = resourceTypes.get(typeIndex);
+                    if (resources.size() >= count) {
+                        nextCursor = new Cursor(compartmentType, null, null);
+                        break;
+                    }
+                    boolean resume = cursor != null && compartmentType.equals(cursor.resourceType);
+                    int pageSize = count - resources.size();
+
+                    // The search of each resource type fires the search interceptors, as a search request would
+                    FHIRPersistenceEvent event =
+                            new FHIRPersistenceEvent(null, buildPersistenceEventProperties(persistence, compartmentType));
+                    FHIRPersistenceInterceptorMgr.getInstance().fireBeforeSearchEvent(event);
+
+                    FHIRSearchContext searchContext = buildSearchContext(logicalId, compartmentType, since, pageSize);
+                    searchContext.setKeyset(resume ? cursor.lastUpdated : null, resume ? cursor.resourceId : null);
+                    FHIRPersistenceContext persistenceContext =
+                            FHIRPersistenceContextFactory.createPersistenceContext(event, searchContext);
+                    List<Resource> page = persistence.search(persistenceContext,
+                            ModelSupport.getResourceType(compartmentType)).getResource();
+
+                    event.setFhirResource(buildPageBundle(page));
+                    FHIRPersistenceInterceptorMgr.getInstance().fireAfterSearchEvent(event);
+
+                    for (Resource resource : page) {
+                        // A Patient may link to itself
+                        if (!(resource instanceof Patient && logicalId.equals(resource.getId()))) {
+                            resources.add(resource);
+                        }
+                    }
+
+                    // A full page may not be the last one of the resource type
+                    if (page.size() == pageSize) {
+                        nextCursor = new Cursor(compartmentType, searchContext.getKeysetLastUpdated(),
+                                searchContext.getKeysetResourceId());
+                        break;
+                    }
+                    typeIndex++;
+                }
+            } catch (Throwable t) {
+                tx.setRollbackOnly();
+                throw t;
+            } finally {
+                tx.end();
+            }
+
+            Bundle bundle =
+                    buildBundle(operationContext, logicalId, resources, since, parameters, count, cursor, nextCursor);
+            return FHIROperationUtil.getOutputParameters(bundle);
+        } catch (FHIROperationException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new FHIROperationException("Unexpected error occurred while processing request for operation '"
+                    + getName() + "': " + t.getClass().getName() + ": " + t.getMessage(), t);
+        }
+    }
+
+    /**
+     * Builds the compartment search of one resource type, which ORs all the inclusion criteria of the resource type
+     * and returns each matching resource only once.
+     */
+    private FHIRSearchContext buildSearchContext(String logicalId, String resourceType, Instant since, int pageSize)
+            throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        if (since != null) {
+            queryParameters.put(PARAM_LAST_UPDATED, Collections.singletonList("ge" + since.toString()));
+        }
+        FHIRSearchContext searchContext = SearchUtil.parseCompartmentQueryParameters(COMPARTMENT,
+                Collections.singletonList(logicalId), ModelSupport.getResourceType(resourceType), queryParameters, false);
+        searchContext.setPageSize(pageSize);
+        searchContext.setKeysetPaging(true);
+        return searchContext;
+    }
+
+    private Map<String, Object> buildPersistenceEventProperties(FHIRPersistence persistence, String resourceType) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(FHIRPersistenceEvent.PROPNAME_PERSISTENCE_IMPL, persistence);
+        properties.put(FHIRPersistenceEvent.PROPNAME_RESOURCE_TYPE, resourceType);
+        return properties;
+    }
+
+    /**
+     * Builds the searchset Bundle of the resources of one type, which is passed to the 'afterSearch' interceptors.
+     */
+    private Bundle buildPageBundle(List<Resource> page) {
+        Bundle.Builder bundleBuilder = Bundle.builder().type(BundleType.SEARCHSET);
+        for (Resource resource : page) {
+            bundleBuilder.entry(Bundle.Entry.builder().resource(resource).build());
+        }
+        return bundleBuilder.build();
+    }
+
+    private Bundle buildBundle(FHIROperationContext operationContext, String logicalId, List<Resource> resources,
+            Instant since, Parameters parameters, int count, Cursor cursor, Cursor nextCursor) throws Exception {
+        String requestBaseURI = (String) operationContext.getProperty(FHIROperationContext.PROPNAME_REQUEST_BASE_URI);
+
+        Bundle.Builder bundleBuilder = Bundle.builder()
+                .type(BundleType.SEARCHSET)
+                .id(UUID.randomUUID().toString());
+        for (Resource resource : resources) {
+            Bundle.Entry.Builder entryBuilder = Bundle.Entry.builder().resource(resource);
+            if (requestBaseURI != null) {
+                entryBuilder.fullUrl(Uri.of(requestBaseURI + "/" + resource.getClass().getSimpleName() + "/"
+                        + resource.getId()));
+            }
+            bundleBuilder.entry(entryBuilder.build());
+        }
+
+        if (requestBaseURI != null) {
+            StringBuilder operationUri = new StringBuilder(requestBaseURI)
+                    .append("/").append(COMPARTMENT).append("/").append(logicalId).append("/$everything?")
+                    .append(PARAM_COUNT).append("=").append(count);
+            if (since != null) {
+                operationUri.append("&").append(PARAM_SINCE).append("=").append(encode(since.toString()));
+            }
+            for (Parameter typeParameter : getParameters(parameters, PARAM_TYPE)) {
+                operationUri.append("&").append(PARAM_TYPE).append("=")
+                        .append(encode(typeParameter.getValue().as(com.ibm.fhir.model.type.Code.class).getValue()));
+            }
+            String selfUri = cursor != null
+                    ? operationUri + "&" + PARAM_CURSOR + "=" + cursor.encode() : operationUri.toString();
+            bundleBuilder.link(Bundle.Link.builder().relation(string("self")).url(Url.of(selfUri)).build());
+            if (nextCursor != null) {
+                String nextUri = operationUri + "&" + PARAM_CURSOR + "=" + nextCursor.encode();
+                bundleBuilder.link(Bundle.Link.builder().relation(string("next")).url(Url.of(nextUri)).build());
+            }
+        }
+        return bundleBuilder.build();
+    }
+
+    private Instant getLastUpdated(Resource resource) {
+        if (resource.getMeta() == null || resource.getMeta().getLastUpdated() == null) {
+            return Instant.MAX;
+        }
+        return resource.getMeta().getLastUpdated().getValue().toInstant();
+    }
+
+    private Instant getSince(Parameters parameters) {
+        Parameter sinceParameter = getParameter(parameters, PARAM_SINCE);
+        if (sinceParameter == null) {
+            return null;
+        }
+        return sinceParameter.getValue().as(com.ibm.fhir.model.type.Instant.class).getValue().toInstant();
+    }
+
+    /**
+     * @return the resource types of the Patient compartment to search, sorted by name so that a cursor remains valid
+     *         on every server
+     */
+    private List<String> getResourceTypes(Parameters parameters) throws Exception {
+        List<String> compartmentTypes = new ArrayList<>(CompartmentUtil.getCompartmentResourceTypes(COMPARTMENT));
+        Collections.sort(compartmentTypes);
+        List<String> requestedTypes = new ArrayList<>();
+        for (Parameter typeParameter : getParameters(parameters, PARAM_TYPE)) {
+            String value = typeParameter.getValue().as(com.ibm.fhir.model.type.Code.class).getValue();
+            for (String type : value.split(",")) {
+                type = type.trim();
+                if (!compartmentTypes.contains(type)) {
+                    throw buildExceptionWithIssue("Resource type '" + type + "' is not in the Patient compartment",
+                            IssueType.INVALID);
+                }
+                requestedTypes.add(type);
+            }
+        }
+        if (requestedTypes.isEmpty()) {
+            return compartmentTypes;
+        }
+        List<String> resourceTypes = new ArrayList<>(compartmentTypes);
+        resourceTypes.retainAll(requestedTypes);
+        return resourceTypes;
+    }
+
+    private int getCount(Parameters parameters) throws FHIROperationException {
+        Parameter countParameter = getParameter(parameters, PARAM_COUNT);
+        if (countParameter == null) {
+            return SearchConstants.MAX_PAGE_SIZE;
+        }
+        int count = countParameter.getValue().as(com.ibm.fhir.model.type.Integer.class).getValue();
+        if (count < 1) {
+            throw buildExceptionWithIssue("The _count parameter must be a positive integer", IssueType.INVALID);
+        }
+        return Math.min(count, SearchConstants.MAX_PAGE_SIZE);
+    }
+
+    private Cursor getCursor(Parameters parameters, List<String> resourceTypes) throws FHIROperationException {
+        Parameter cursorParameter = getParameter(parameters, PARAM_CURSOR);
+        if (cursorParameter == null) {
+            return null;
+        }
+        String value = cursorParameter.getValue().as(com.ibm.fhir.model.type.String.class).getValue();
+        Cursor cursor = Cursor.decode(value);
+        if (cursor == null || !resourceTypes.contains(cursor.resourceType)) {
+            log.fine("Invalid _cursor value: " + value);
+            throw buildExceptionWithIssue("The _cursor parameter is invalid", IssueType.INVALID);
+        }
+        return cursor;
+    }
+
+    private static String encode(String value) throws Exception {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+    }
+
+    /**
+     * The position of the next page: the resource type being read, and the keyset of the last resource of this type
+     * which was returned, or no keyset to start from the first resource of the type.
+     */
+    static class Cursor {
+        private final String resourceType;
+        private final Instant lastUpdated;
+        private final Long resourceId;
+
+        Cursor(String resourceType, Instant lastUpdated, Long resourceId) {
+            this.resourceType = resourceType;
+            this.lastUpdated = lastUpdated;
+            this.resourceId = resourceId;
+        }
+
+        String encode() {
+            String value = resourceType;
+            if (lastUpdated != null && resourceId != null) {
+                value += CURSOR_SEPARATOR + lastUpdated + CURSOR_SEPARATOR + resourceId;
+            }
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * @return the decoded cursor, or null if the value isn't a valid cursor
+         */
+        static Cursor decode(String value) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8)
+                        .split("\\" + CURSOR_SEPARATOR);
+                if (parts.length == 1) {
+                    return new Cursor(parts[0], null, null);
+                } else if (parts.length == 3) {
+                    return new Cursor(parts[0], Instant.parse(parts[1]), Long.valueOf(parts[2]));
+                }
+            } catch (RuntimeException e) {
+                log.fine("Unable to decode cursor: " + e.getMessage());
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.operation.everything;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.exception.FHIROperationException;
+import com.ibm.fhir.model.resource.Bundle;
+import com.ibm.fhir.model.resource.OperationDefinition;
+import com.ibm.fhir.model.resource.Parameters;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Meta;
+import com.ibm.fhir.model.type.code.IssueType;
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.FHIRPersistenceTransaction;
+import com.ibm.fhir.persistence.MultiResourceResult;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
+import com.ibm.fhir.search.SearchConstants.Prefix;
+import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.parameters.QueryParameter;
+import com.ibm.fhir.server.operation.spi.FHIROperationContext;
+import com.ibm.fhir.server.operation.spi.FHIRResourceHelpers;
+import com.ibm.fhir.server.util.FHIROperationUtil;
+
+public class EverythingOperationTest {
+    private final EverythingOperation operation = new EverythingOperation();
+
+    @Test
+    public void testEverythingOperation() {
+        OperationDefinition operationDefinition = operation.buildOperationDefinition();
+        assertNotNull(operationDefinition);
+    }
+
+    @Test
+    public void testCursorWithKeyset() {
+        Instant lastUpdated = Instant.parse("2020-03-08T02:30:00.123Z");
+        String value = new EverythingOperation.Cursor("Observation", lastUpdated, 42L).encode();
+        // The cursor is passed in the 'next' link, so it must not need to be URL encoded
+        assertTrue(value.matches("[A-Za-z0-9_-]+"), value);
+        EverythingOperation.Cursor cursor = EverythingOperation.Cursor.decode(value);
+        assertNotNull(cursor);
+        assertEquals(cursor.encode(), value);
+    }
+
+    @Test
+    public void testCursorWithoutKeyset() {
+        String value = new EverythingOperation.Cursor("Observation", null, null).encode();
+        EverythingOperation.Cursor cursor = EverythingOperation.Cursor.decode(value);
+        assertNotNull(cursor);
+        assertEquals(cursor.encode(), value);
+        assertEquals(value, base64("Observation"));
+    }
+
+    @DataProvider
+    public Object[][] invalidCursors() {
+        return new Object[][] {
+            { "not a cursor!" },
+            { base64("Observation|2020-03-08T02:30:00Z") },
+            { base64("Observation|yesterday|42") },
+            { base64("Observation|2020-03-08T02:30:00Z|forty-two") },
+            { base64("Observation|2020-03-08T02:30:00Z|42|1") }
+        };
+    }
+
+    @Test(dataProvider = "invalidCursors")
+    public void testDecodeInvalidCursor(String value) {
+        assertNull(EverythingOperation.Cursor.decode(value));
+    }
+
+    @Test(dataProvider = "invalidCursors")
+    public void testInvalidCursor(String value) throws Exception {
+        assertInvalid(parameters("_cursor", value), "The _cursor parameter is invalid");
+    }
+
+    @Test
+    public void testCursorOfExcludedType() throws Exception {
+        // A cursor of a resource type left out by _type is rejected, as it is for a tampered resource type
+        String value = new EverythingOperation.Cursor("Condition", null, null).encode();
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_type", Collections.singletonList("Observation"));
+        queryParameters.put("_cursor", Collections.singletonList(value));
+        assertInvalid(parameters(queryParameters), "The _cursor parameter is invalid");
+
+        value = new EverythingOperation.Cursor("Patientx", null, null).encode();
+        assertInvalid(parameters("_cursor", value), "The _cursor parameter is invalid");
+    }
+
+    @Test
+    public void testCountNotPositive() throws Exception {
+        assertInvalid(parameters("_count", "0"), "The _count parameter must be a positive integer");
+        assertInvalid(parameters("_count", "-1"), "The _count parameter must be a positive integer");
+    }
+
+    @Test(expectedExceptions = FHIROperationException.class)
+    public void testCountNotInteger() throws Exception {
+        parameters("_count", "ten");
+    }
+
+    @Test
+    public void testTypeNotInCompartment() throws Exception {
+        assertInvalid(parameters("_type", "Organization"),
+                "Resource type 'Organization' is not in the Patient compartment");
+        assertInvalid(parameters("_type", "Observation,Foo"), "Resource type 'Foo' is not in the Patient compartment");
+    }
+
+    @Test(expectedExceptions = FHIROperationException.class)
+    public void testSinceNotInstant() throws Exception {
+        // _since is an instant, so it needs the time and time zone
+        parameters("_since", "2020-03-08");
+    }
+
+    @Test
+    public void testNotInvokedOnInstance() throws Exception {
+        try {
+            operation.doInvoke(null, Patient.class, null, null, parameters(Collections.emptyMap()), null);
+            fail();
+        } catch (FHIROperationException e) {
+            assertEquals(e.getIssues().get(0).getCode(), IssueType.NOT_SUPPORTED);
+        }
+    }
+
+    @Test
+    public void testSince() throws Exception {
+        Patient patient = Patient.builder()
+                .id("1")
+                .meta(Meta.builder().lastUpdated(com.ibm.fhir.model.type.Instant.of("2020-03-08T01:00:00Z")).build())
+                .build();
+        List<FHIRSearchContext> searchContexts = new ArrayList<>();
+        FHIROperationContext operationContext = FHIROperationContext.createInstanceOperationContext();
+        operationContext.setProperty(FHIROperationContext.PROPNAME_PERSISTENCE_IMPL,
+                Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { FHIRPersistence.class },
+                    (proxy, method, args) -> {
+                        if ("search".equals(method.getName())) {
+                            searchContexts.add(((FHIRPersistenceContext) args[0]).getSearchContext());
+                            return MultiResourceResult.builder(Resource.class).success(true).build();
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }));
+
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_type", Collections.singletonList("Observation"));
+        queryParameters.put("_since", Collections.singletonList("2020-03-08T02:30:00Z"));
+        Parameters result = operation.doInvoke(operationContext, Patient.class, "1", null, parameters(queryParameters),
+                resourceHelpers(patient));
+
+        // The patient was last updated before _since, and the only search has the _lastUpdated criterion
+        Bundle bundle = result.getParameter().get(0).getResource().as(Bundle.class);
+        assertTrue(bundle.getEntry().isEmpty());
+        assertEquals(searchContexts.size(), 1);
+        FHIRSearchContext searchContext = searchContexts.get(0);
+        assertTrue(searchContext.isKeysetPaging());
+        boolean lastUpdated = false;
+        for (QueryParameter queryParameter : searchContext.getSearchParameters()) {
+            if ("_lastUpdated".equals(queryParameter.getCode())) {
+                assertEquals(queryParameter.getValues().get(0).getPrefix(), Prefix.GE);
+                assertEquals(queryParameter.getValues().get(0).getValueDateLowerBound(),
+                        Instant.parse("2020-03-08T02:30:00Z"));
+                lastUpdated = true;
+            }
+        }
+        assertTrue(lastUpdated);
+    }
+
+    private Parameters parameters(String name, String value) throws FHIROperationException {
+        return parameters(Collections.singletonMap(name, Collections.singletonList(value)));
+    }
+
+    private Parameters parameters(Map<String, List<String>> queryParameters) throws FHIROperationException {
+        return FHIROperationUtil.getInputParameters(operation.getDefinition(), queryParameters);
+    }
+
+    /**
+     * The parameters are validated before the patient is read, so no resource helpers are needed.
+     */
+    private void assertInvalid(Parameters parameters, String message) throws Exception {
+        try {
+            operation.doInvoke(null, Patient.class, "1", null, parameters, null);
+            fail();
+        } catch (FHIROperationException e) {
+            assertEquals(e.getIssues().get(0).getCode(), IssueType.INVALID);
+            assertEquals(e.getMessage(), message);
+        }
+    }
+
+    private FHIRResourceHelpers resourceHelpers(Patient patient) {
+        FHIRPersistenceTransaction transaction = (FHIRPersistenceTransaction) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[] { FHIRPersistenceTransaction.class },
+                (proxy, method, args) -> null);
+        return (FHIRResourceHelpers) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { FHIRResourceHelpers.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "doRead":
+                        return patient;
+                    case "getTransaction":
+                        return transaction;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static String base64(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}